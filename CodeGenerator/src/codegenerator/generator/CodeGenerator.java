@@ -23,7 +23,10 @@ package codegenerator.generator;
 
 
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import codegenerator.generator.tags.*;
 import codegenerator.generator.utils.*;
@@ -37,6 +40,207 @@ import coreutil.logging.*;
  */
 public class CodeGenerator {
 
+	// Data members
+	private int			m_threadCount			= 1;		// More than one turns on parallel generation of the files.
+	private boolean		m_useVirtualThreads		= false;
+	private boolean		m_skipUnchangedFiles	= false;
+	private File		m_manifestFile			= null;		// Only set in incremental mode.
+	private boolean		m_forceRebuild			= false;
+	private int			m_ioThreadCount			= 0;		// More than zero turns on write-behind output.
+	private int			m_writeBehindBudget		= 0;
+	private Charset		m_outputCharset			= Charset.defaultCharset();
+	private File		m_stagingDirectory		= null;		// Only set in staging mode.
+	private int			m_syncPolicy			= OutputStaging.SYNC_NONE;
+	private File		m_archiveFile			= null;		// Only set in archive mode.
+	private File		m_archiveBaseDirectory	= null;
+	private boolean		m_checkOnly				= false;
+	private int			m_duplicatePolicy		= FileTag.DUPLICATE_WARN;
+	private OutputFilters	m_outputFilters		= OutputFilters.NONE;
+	private OutputCheck	m_lastOutputCheck		= null;		// What the last generation in check mode found.
+	private List<String>	m_streamedNodeNames	= null;		// Only set when the config's big top-level nodes are streamed.
+	private boolean		m_useConfigSnapshot		= true;
+	private boolean		m_useCompactConfig		= false;
+
+
+	//*********************************
+	/**
+	 * @param p_threadCount	The number of files to generate at the same time.  One (the default) generates them one after another in the
+	 * calling thread, the way it always has.
+	 */
+	public void SetThreadCount(int p_threadCount) {
+		m_threadCount = Math.max(1, p_threadCount);
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_useVirtualThreads	In parallel mode, generate the files on virtual threads instead of a pool of platform threads.  The
+	 * thread count still limits how many are generated at the same time.
+	 */
+	public void SetUseVirtualThreads(boolean p_useVirtualThreads) {
+		m_useVirtualThreads = p_useVirtualThreads;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_skipUnchangedFiles	Leave any existing file whose generated content hasn't changed alone instead of writing it again.
+	 * See {@link FileSystemOutput}.
+	 */
+	public void SetSkipUnchangedFiles(boolean p_skipUnchangedFiles) {
+		m_skipUnchangedFiles = p_skipUnchangedFiles;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_manifestFile	Turns on incremental generation.  What each file was generated from is recorded in this file and a file
+	 * that would come out the same as it did in the last generation isn't evaluated at all.  See {@link GenerationManifest}.  NULL, the
+	 * default, generates every file.
+	 */
+	public void SetManifestFile(File p_manifestFile) {
+		m_manifestFile = p_manifestFile;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_forceRebuild	In incremental mode, ignore the manifest from the last generation and generate every file.  A new
+	 * manifest is still saved.
+	 */
+	public void SetForceRebuild(boolean p_forceRebuild) {
+		m_forceRebuild = p_forceRebuild;
+	}
+
+
+	//*********************************
+	/**
+	 * Turns on write-behind output.  See {@link OutputPipeline}.
+	 *
+	 * @param p_ioThreadCount	The number of files that can be written at the same time.  Zero, the default, writes each file in the
+	 * thread that generates it.
+	 * @param p_budgetBytes		How much generated text can be waiting to be written before generation has to wait for it.
+	 */
+	public void SetWriteBehind(int p_ioThreadCount, int p_budgetBytes) {
+		m_ioThreadCount		= Math.max(0, p_ioThreadCount);
+		m_writeBehindBudget	= p_budgetBytes;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputCharset	The charset to write the files in.  Existing files are read in it, too, when they are scanned for custom
+	 * code, so that the custom code comes back out the way it went in.
+	 */
+	public void SetOutputCharset(Charset p_outputCharset) {
+		m_outputCharset = p_outputCharset;
+	}
+
+
+	//*********************************
+	/**
+	 * Turns on staging mode.  See {@link OutputStaging}.
+	 *
+	 * @param p_stagingDirectory	Where the generated and copied files are held until the whole generation has succeeded.  It should be
+	 * on the same file system as the output so that they can be moved into place atomically.  NULL, the default, writes them straight
+	 * into the output.
+	 * @param p_syncPolicy			One of the OutputStaging.SYNC_ values.
+	 */
+	public void SetStaging(File p_stagingDirectory, int p_syncPolicy) {
+		m_stagingDirectory	= p_stagingDirectory;
+		m_syncPolicy		= p_syncPolicy;
+	}
+
+
+	//*********************************
+	/**
+	 * Turns on archive mode.  See {@link OutputArchive}.  It can't be used with staging, incremental generation or skipping unchanged
+	 * files since they all work on the files in the output directories.
+	 *
+	 * @param p_archiveFile			The zip or jar file to generate into.  NULL, the default, generates into the file system.
+	 * @param p_baseDirectory		The directory that the entry names are relative to.  NULL for the working directory.
+	 */
+	public void SetArchive(File p_archiveFile, File p_baseDirectory) {
+		m_archiveFile			= p_archiveFile;
+		m_archiveBaseDirectory	= p_baseDirectory;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_duplicatePolicy	What to do with a file that is generated more than once.  One of the FileTag.DUPLICATE_ values.  See
+	 * {@link FileTag#SetDuplicatePolicy(int)}.
+	 */
+	public void SetDuplicatePolicy(int p_duplicatePolicy) {
+		m_duplicatePolicy = p_duplicatePolicy;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputFilters	The line ending, trailing whitespace and final newline clean-ups to do as every file is written.  A file
+	 * tag can override them.  See {@link OutputFilters}.
+	 */
+	public void SetOutputFilters(OutputFilters p_outputFilters) {
+		m_outputFilters = p_outputFilters;
+	}
+
+
+	//*********************************
+	/**
+	 * Streams the top-level config nodes with these names instead of loading them with the rest of the config file.  See
+	 * {@link StreamedConfig}.  This is for config files that are too big to load all at once, and it only works if the template gets to
+	 * those nodes through forEach tags on the root node.  It can't be used with incremental generation since the manifest needs the
+	 * whole config tree to tell what changed.
+	 *
+	 * @param p_nodeNames	NULL or empty to load the whole file the usual way.
+	 */
+	public void SetStreamedNodes(List<String> p_nodeNames) {
+		m_streamedNodeNames = ((p_nodeNames != null) && !p_nodeNames.isEmpty()) ? new ArrayList<>(p_nodeNames) : null;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_useConfigSnapshot	False to always parse the config values file, even if it has a current snapshot.  See {@link ConfigSnapshot}.
+	 * The snapshot is never used when the config is streamed since the streamed nodes have to come from the XML.
+	 */
+	public void SetUseConfigSnapshot(boolean p_useConfigSnapshot) {
+		m_useConfigSnapshot = p_useConfigSnapshot;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_useCompactConfig	True to parse the config values file into the smaller, faster to search tree that {@link CompactConfig}
+	 * builds instead of the usual one.  A config that is mapped from a snapshot or streamed isn't parsed this way.
+	 */
+	public void SetUseCompactConfig(boolean p_useCompactConfig) {
+		m_useCompactConfig = p_useCompactConfig;
+	}
+
+
+	//*********************************
+	/**
+	 * Turns on check mode.  See {@link OutputCheck}.  The generation writes nothing and only finds out which files in the output are
+	 * stale or missing, which {@link #GetLastOutputCheck()} returns afterwards.  It can't be used with staging, archive mode or
+	 * incremental generation since they all write something.
+	 *
+	 * @param p_checkOnly
+	 */
+	public void SetCheckOnly(boolean p_checkOnly) {
+		m_checkOnly = p_checkOnly;
+	}
+
+
+	//*********************************
+	/**
+	 * @return What the last generation in check mode found.  NULL if there hasn't been one.
+	 */
+	public OutputCheck GetLastOutputCheck() {
+		return m_lastOutputCheck;
+	}
+
 
 	//*********************************
 	/**
@@ -50,6 +254,24 @@ public class CodeGenerator {
 	public synchronized boolean Execute(String p_templateFilename,
 										String p_configFilename)
 	{
+		return Execute(p_templateFilename, List.of(p_configFilename));
+	}
+
+
+	//*********************************
+	/**
+	 * The same as {@link #Execute(String, String)} except that the values can be split over several files, which are parsed in
+	 * parallel and merged into one config tree.  See {@link MultiFileConfig}.  Streaming, snapshots and the compact config only apply
+	 * when there is just one file.
+	 *
+	 * @param p_templateFilename	File contains the "root" template to be used for the generation run.
+	 * @param p_configFilenames		The config values files, in the order to merge them.  A directory stands for all of its ".xml" files.
+	 * @return
+	 */
+	public synchronized boolean Execute(String			p_templateFilename,
+										List<String>	p_configFilenames)
+	{
+		ExecutorService t_loader = null;
 		try
 		{
 			// Parse the template file, which should be the next parameter.
@@ -60,10 +282,23 @@ public class CodeGenerator {
 			}
 
 
-			long t_startTemplateParse = Calendar.getInstance().getTimeInMillis();
+			// The templates and the config values don't depend on each other, so they are loaded at the same time, the config on this
+			// thread and the templates on their own.  Each one logs its own errors as it goes, but they are only checked once both are
+			// done, in the order they used to be loaded in, so a failure is still reported the same way.
+			AtomicInteger			t_preloadCount	= new AtomicInteger();
+			LoadPhase<Tag_Base>		t_templatePhase	= new LoadPhase<>(() -> LoadTemplates(t_templateFile, t_preloadCount));
+			LoadPhase<ConfigLoad>	t_configPhase	= new LoadPhase<>(() -> LoadConfigValues(p_configFilenames));
+
+			long t_startLoad = Calendar.getInstance().getTimeInMillis();
+
+			t_loader = Executors.newSingleThreadExecutor();
+			Future<Tag_Base> t_templateResult = t_loader.submit(t_templatePhase);
+
+			ConfigLoad	t_configLoad	= t_configPhase.call();
+			Tag_Base	t_template		= t_templateResult.get();
+
+			long t_endLoad = Calendar.getInstance().getTimeInMillis();
 
-			TemplateParser	t_parser	= new TemplateParser();
-			Tag_Base		t_template	= t_parser.ParseTemplate(t_templateFile);
 			if (t_template == null) {
 				Logger.LogFatal("CodeGenerator.Execute() failed to parse the template file [" + p_templateFilename + "].");
 				return false;
@@ -71,47 +306,481 @@ public class CodeGenerator {
 
 			//Logger.LogDebug("Template tree dump:\n" + t_template.Dump(""));
 
-			long t_endTemplateParse = Calendar.getInstance().getTimeInMillis();
+			if (t_configLoad == null) {
+				Logger.LogFatal("CodeGenerator.Execute() failed to load the config variables " + p_configFilenames + ".");
+				return false;
+			}
 
+			ConfigManager.AddValueSetFirst(t_configLoad.m_configValues);		// I used the config substitution in a template config file but it turned out that it can only work through the ConfigManager so I had to add the parsed config file set to the ConfigManager to get it to work.
 
-			// Parse the config file that contains the information that will be merged into the template.
-			FileConfigValueSet t_configValues = new FileConfigValueSet();
-			if (!t_configValues.Load(p_configFilename)) {
-				Logger.LogFatal("CodeGenerator.Execute() failed to parse the config variables file [" + p_configFilename + "].");
-				return false;
+			ConfigNode t_templateConfig = t_configLoad.m_configValues.GetRootNode();
+
+
+			long t_phaseTotal = t_templatePhase.GetMillis() + t_configPhase.GetMillis();
+
+			Logger.LogInfo("Template parse (millisec):      "	+ t_templatePhase.GetMillis());
+			Logger.LogInfo("Preloaded template count:       "	+ t_preloadCount.get());
+			Logger.LogInfo("Config values parse (millisec): "	+ t_configPhase.GetMillis() + (t_configLoad.m_snapshotLoaded ? " (mapped from the snapshot)" : ""));
+			Logger.LogInfo("Load wall time (millisec):      "	+ (t_endLoad - t_startLoad) + " (" + Math.max(0, t_phaseTotal - (t_endLoad - t_startLoad)) + " overlapped)");
+
+			if (t_configLoad.m_streamedConfig != null)
+				Logger.LogInfo("Streamed config nodes:          "	+ t_configLoad.m_streamedConfig.GetLeftOutNodeCount() + " left out of the loaded config");
+
+			if (t_configLoad.m_multiFileConfig != null)
+				Logger.LogInfo("Config values files:            "	+ t_configLoad.m_fileCount + " (" + t_configLoad.m_multiFileConfig.GetCollisionCount() + " name collisions)");
+
+			return Evaluate(t_template, t_templateConfig, t_templateFile.getAbsolutePath(), null, t_configLoad.m_streamedConfig);
+		}
+		catch (Throwable t_error)
+		{
+			Logger.LogFatal("CodeGenerator.Execute() failed with error: ", t_error);
+			return false;
+		}
+		finally {
+			if (t_loader != null)
+				t_loader.shutdown();
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Times one of the loads that {@link CodeGenerator#Execute(String, List)} runs at the same time.
+	 */
+	static private class LoadPhase<T> implements Callable<T> {
+		private final		Callable<T>	m_load;
+		private volatile	long		m_startTime	= 0;
+		private volatile	long		m_endTime	= 0;
+
+		public LoadPhase(Callable<T> p_load) {
+			m_load = p_load;
+		}
+
+		@Override
+		public T call() throws Exception {
+			m_startTime = Calendar.getInstance().getTimeInMillis();
+			try {
+				return m_load.call();
+			}
+			finally {
+				m_endTime = Calendar.getInstance().getTimeInMillis();
+			}
+		}
+
+		public long GetMillis() {
+			return m_endTime - m_startTime;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * What {@link CodeGenerator#LoadConfigValues(List)} loaded.
+	 */
+	static private class ConfigLoad {
+		private ConfigValueSet	m_configValues		= null;
+		private StreamedConfig	m_streamedConfig	= null;		// Only set when the config is streamed.
+		private MultiFileConfig	m_multiFileConfig	= null;		// Only set when there is more than one file.
+		private boolean			m_snapshotLoaded	= false;
+		private int				m_fileCount			= 0;
+	}
+
+
+	//*********************************
+	/**
+	 * Parses the root template and then all of the templates it references, in parallel, instead of one at a time as each file and
+	 * include tag is first evaluated.
+	 *
+	 * @return NULL if the root template couldn't be parsed.
+	 */
+	private Tag_Base LoadTemplates(File p_templateFile, AtomicInteger p_preloadCount) {
+		try {
+			Tag_Base t_template = TemplateCache.GetTemplate(p_templateFile);
+			if (t_template == null)
+				return null;
+
+			p_preloadCount.set(TemplateCache.PreloadReferencedTemplates(p_templateFile, t_template, Runtime.getRuntime().availableProcessors()));
+			return t_template;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("CodeGenerator.LoadTemplates() failed with error for template file [" + p_templateFile.getPath() + "]: ", t_error);
+			return null;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Parses the config file(s) that contain the information that will be merged into the template.
+	 *
+	 * @return NULL if they couldn't be loaded.
+	 */
+	private ConfigLoad LoadConfigValues(List<String> p_configFilenames) {
+		try {
+			List<File> t_configFiles = MultiFileConfig.ListConfigFiles(p_configFilenames);
+			if ((t_configFiles == null) || t_configFiles.isEmpty()) {
+				Logger.LogError("CodeGenerator.LoadConfigValues() failed to find the config variables file(s) " + p_configFilenames + ".");
+				return null;
 			}
 
-			ConfigManager.AddValueSetFirst(t_configValues);		// I used the config substitution in a template config file but it turned out that it can only work through the ConfigManager so I had to add the parsed config file set to the ConfigManager to get it to work.
+			if ((t_configFiles.size() > 1) && (m_streamedNodeNames != null)) {
+				Logger.LogError("CodeGenerator.LoadConfigValues() can't stream the config nodes when the config variables are split over several files.");
+				return null;
+			}
 
-			ConfigNode t_templateConfig = t_configValues.GetRootNode();
+			ConfigLoad	t_configLoad		= new ConfigLoad();
+			File		t_configFile		= t_configFiles.get(0);
+			String		t_configFilename	= t_configFile.getPath();
 
-			long t_endConfigValuesParse = Calendar.getInstance().getTimeInMillis();
+			t_configLoad.m_fileCount = t_configFiles.size();
+			if (t_configFiles.size() > 1) {
+				t_configLoad.m_multiFileConfig = new MultiFileConfig(t_configFiles, MultiFileConfig.DEFAULT_MERGED_NODE_NAMES);
+				if (!t_configLoad.m_multiFileConfig.Load(Runtime.getRuntime().availableProcessors())) {
+					Logger.LogError("CodeGenerator.LoadConfigValues() failed to parse the config variables files " + p_configFilenames + ".");
+					return null;
+				}
 
+				t_configLoad.m_configValues = new NodeConfigValueSet(t_configFile.getName(), t_configLoad.m_multiFileConfig.GetRootNode());
+			}
+			else if (m_streamedNodeNames != null) {
+				t_configLoad.m_streamedConfig = new StreamedConfig(t_configFile, m_streamedNodeNames);
+				if (!t_configLoad.m_streamedConfig.Load()) {
+					Logger.LogError("CodeGenerator.LoadConfigValues() failed to parse the config variables file [" + t_configFilename + "].");
+					return null;
+				}
+
+				t_configLoad.m_configValues = t_configLoad.m_streamedConfig.GetValueSet();
+			}
+			else {
+				// A snapshot that was made from the file as it is now is mapped instead of parsing the file.
+				if (m_useConfigSnapshot && ConfigSnapshot.IsCurrent(t_configFile, ConfigSnapshot.GetSnapshotFile(t_configFile))) {
+					t_configLoad.m_configValues		= LoadConfigSnapshot(t_configFile);
+					t_configLoad.m_snapshotLoaded	= (t_configLoad.m_configValues != null);
+				}
+
+				if ((t_configLoad.m_configValues == null) && m_useCompactConfig) {
+					ConfigNode t_rootNode = CompactConfig.Load(t_configFile);
+					if (t_rootNode == null) {
+						Logger.LogError("CodeGenerator.LoadConfigValues() failed to parse the config variables file [" + t_configFilename + "].");
+						return null;
+					}
+
+					t_configLoad.m_configValues = new NodeConfigValueSet(t_configFile.getName(), t_rootNode);
+				}
+				else if (t_configLoad.m_configValues == null) {
+					FileConfigValueSet t_fileConfigValues = new FileConfigValueSet();
+					if (!t_fileConfigValues.Load(t_configFilename)) {
+						Logger.LogError("CodeGenerator.LoadConfigValues() failed to parse the config variables file [" + t_configFilename + "].");
+						return null;
+					}
+
+					t_configLoad.m_configValues = t_fileConfigValues;
+				}
+			}
+
+			return t_configLoad;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("CodeGenerator.LoadConfigValues() failed with error: ", t_error);
+			return null;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * @return The config values file's snapshot as a value set or NULL if it can't be used, in which case the file is parsed instead.
+	 */
+	private ConfigValueSet LoadConfigSnapshot(File p_configFile) {
+		File		t_snapshotFile	= ConfigSnapshot.GetSnapshotFile(p_configFile);
+		ConfigNode	t_rootNode		= ConfigSnapshot.Load(t_snapshotFile, p_configFile);
+		if (t_rootNode == null) {
+			Logger.LogWarning("CodeGenerator.LoadConfigSnapshot() couldn't use the snapshot [" + t_snapshotFile.getPath() + "], so the config variables file will be parsed instead.");
+			return null;
+		}
 
+		return new NodeConfigValueSet(p_configFile.getName(), t_rootNode);
+	}
+
+
+	//*********************************
+	/**
+	 * Generates into memory instead of the file system and returns what was generated.  All of the other settings apply the same as
+	 * they do to {@link #Execute(String, String)} except for staging, archive mode, incremental generation and skipping unchanged files,
+	 * which all work on the files in the output directories and can't be turned on with this.  See {@link MemoryOutput}.
+	 *
+	 * @param p_template		An already parsed template, like from {@link TemplateCache#GetTemplate(File)}.
+	 * @param p_configRoot		The root node of the values to substitute into it.
+	 * @param p_priorContents	The previous version of each file by its relative output path, for its custom code.  NULL if there
+	 * aren't any.
+	 * @return The content of each generated file by its relative output path, in path order.  NULL if the generation failed.
+	 */
+	public synchronized Map<String, String> Generate(Tag_Base p_template, ConfigNode p_configRoot, Map<String, String> p_priorContents) {
+		MemoryOutput t_memoryOutput = new MemoryOutput(p_priorContents, null, m_outputCharset);
+		if (!Evaluate(p_template, p_configRoot, "in-memory template", t_memoryOutput, null))
+			return null;
+
+		return new TreeMap<>(t_memoryOutput.GetGeneratedContents());
+	}
+
+
+	//*********************************
+	/**
+	 * Like {@link #Generate(Tag_Base, ConfigNode, Map)} except that each file is published as soon as it is finished instead of all of
+	 * them being returned at the end.  The generation runs on its own thread once something subscribes, and only one subscriber can.
+	 * When it has buffered as many files as the subscriber hasn't asked for yet, up to the buffer size, the generation waits for it, so
+	 * a slow subscriber slows the generation down instead of the files piling up in memory.  A subscriber that cancels stops the
+	 * generation.  A generation that fails ends with onError and the details are in the log.
+	 *
+	 * @param p_bufferSize	How many finished files can be waiting for the subscriber.
+	 */
+	public Flow.Publisher<MemoryOutput.GeneratedOutput> GeneratePublisher(Tag_Base				p_template,
+																		   ConfigNode			p_configRoot,
+																		   Map<String, String>	p_priorContents,
+																		   int					p_bufferSize)
+	{
+		return new GenerationPublisher(p_template, p_configRoot, p_priorContents, Math.max(1, p_bufferSize));
+	}
+
+
+	//*********************************
+	/**
+	 * Evaluates the parsed template with the config to generate all of the file outputs.  The {@link OutputDestination} for whichever
+	 * output mode is turned on is picked here, once, so that the tags never have to know which one it is.
+	 *
+	 * @param p_templateName	For the messages and the manifest.
+	 * @param p_memoryOutput	NULL to generate into the file system.
+	 * @param p_streamedConfig	Where the streamed nodes come from if p_templateConfig was loaded without them.  NULL if it wasn't.
+	 */
+	private synchronized boolean Evaluate(Tag_Base			p_template,
+										  ConfigNode		p_templateConfig,
+										  String			p_templateName,
+										  MemoryOutput		p_memoryOutput,
+										  StreamedConfig	p_streamedConfig)
+	{
+		try
+		{
 			long t_startGenerate = Calendar.getInstance().getTimeInMillis();
 
-			// And finally, "evaluate" the template with the config to generate the all of the file outputs.
-			EvaluationContext t_context = new EvaluationContext(t_templateConfig, t_templateConfig, null, new LoopCounter());
-			if (!t_template.Evaluate(t_context)) {
-				Logger.LogFatal("CodeGenerator.Execute() failed to evaluate the template file [" + t_templateFile.getAbsolutePath() + "].");
+			EvaluationContext		t_context		= new EvaluationContext(p_templateConfig, p_templateConfig, null, new LoopCounter());
+			ParallelFileEvaluator	t_fileEvaluator	= null;
+			if (m_threadCount > 1) {
+				t_fileEvaluator = new ParallelFileEvaluator(m_threadCount, m_useVirtualThreads);
+				t_context.SetFileEvaluator(t_fileEvaluator);
+			}
+
+			if (p_streamedConfig != null) {
+				if (m_manifestFile != null) {
+					Logger.LogFatal("CodeGenerator.Evaluate() can't stream the config with incremental generation turned on.");
+					return false;
+				}
+
+				t_context.SetStreamedConfig(p_streamedConfig);
+			}
+
+			m_lastOutputCheck = null;
+
+			OutputDestination	t_destination;
+			OutputCheck			t_outputCheck	= null;
+			if (p_memoryOutput != null) {
+				if ((m_archiveFile != null) || (m_stagingDirectory != null) || (m_manifestFile != null) || m_skipUnchangedFiles || m_checkOnly) {
+					Logger.LogFatal("CodeGenerator.Evaluate() can't generate into memory with archive mode, staging, incremental generation, skipping unchanged files or check mode turned on.");
+					return false;
+				}
+
+				t_destination = p_memoryOutput;
+			}
+			else if (m_checkOnly) {
+				if ((m_archiveFile != null) || (m_stagingDirectory != null) || (m_manifestFile != null)) {
+					Logger.LogFatal("CodeGenerator.Evaluate() can't check the output with archive mode, staging or incremental generation turned on.");
+					return false;
+				}
+
+				t_outputCheck = new OutputCheck(t_context.GetFileSystemCache(), m_outputCharset);
+				t_destination = t_outputCheck;
+			}
+			else if (m_archiveFile != null) {
+				if ((m_stagingDirectory != null) || (m_manifestFile != null) || m_skipUnchangedFiles) {
+					Logger.LogFatal("CodeGenerator.Evaluate() can't generate into an archive with staging, incremental generation or skipping unchanged files turned on.");
+					return false;
+				}
+
+				OutputArchive t_archive = new OutputArchive(m_archiveFile, m_archiveBaseDirectory, m_outputCharset);
+				if (!t_archive.Open()) {
+					Logger.LogFatal("CodeGenerator.Evaluate() failed to open the archive [" + m_archiveFile.getPath() + "].");
+					return false;
+				}
+
+				t_destination = t_archive;
+			}
+			else if (m_stagingDirectory != null) {
+				OutputStaging t_staging = new OutputStaging(m_stagingDirectory, m_syncPolicy, t_context.GetFileSystemCache(), m_outputCharset, m_skipUnchangedFiles);
+				if (!t_staging.Open()) {
+					Logger.LogFatal("CodeGenerator.Evaluate() failed to set up the staging directory [" + m_stagingDirectory.getPath() + "].");
+					return false;
+				}
+
+				t_destination = t_staging;
+			}
+			else
+				t_destination = new FileSystemOutput(t_context.GetFileSystemCache(), m_outputCharset, m_skipUnchangedFiles);
+
+			// There's nothing to write behind when the files stay in memory.
+			if ((m_ioThreadCount > 0) && (p_memoryOutput == null))
+				t_destination = new OutputPipeline(m_ioThreadCount, m_writeBehindBudget, m_outputCharset, t_destination);
+
+			t_context.SetOutputDestination(t_destination);
+			t_context.SetOutputFilters(m_outputFilters);
+
+			FileTag.SetDuplicatePolicy(m_duplicatePolicy);
+
+			GenerationManifest t_manifest = null;
+			if (m_manifestFile != null) {
+				t_manifest = new GenerationManifest(m_manifestFile, m_forceRebuild);
+				if (!t_manifest.Load(p_templateConfig)) {
+					Logger.LogFatal("CodeGenerator.Evaluate() failed to load the generation manifest [" + m_manifestFile.getPath() + "].");
+					return false;
+				}
+
+				t_context.SetGenerationManifest(t_manifest);
+				t_context.SetCurrentTemplate(p_templateName);
+			}
+
+			Variable.DefineVariables(p_template);	// The root template's variables are defined first, the same as when it was parsed right before it was evaluated.
+
+			boolean t_success = p_template.Evaluate(t_context);
+
+			// The files that were handed off to other threads have to finish before we can call the generation done.  If the template itself failed, then anything that hasn't started yet is cancelled first.
+			if (t_fileEvaluator != null) {
+				if (!t_success)
+					t_fileEvaluator.Fail();
+
+				if (!t_fileEvaluator.WaitForCompletion())
+					t_success = false;
+			}
+
+			if (!t_success) {
+				t_destination.Abandon();
+				Logger.LogFatal("CodeGenerator.Evaluate() failed to evaluate the template [" + p_templateName + "].");
+				return false;
+			}
+
+			// Only now that everything has been generated does any of it go into the output.  In write-behind mode, that waits for the files still being written.  The manifest records the files as they are in the output, so it has to wait for this.
+			if (!t_destination.Commit()) {
+				Logger.LogFatal("CodeGenerator.Evaluate() failed to put the generated files into the output for the template [" + p_templateName + "].");
+				return false;
+			}
+
+			if ((t_manifest != null) && !t_manifest.Save()) {
+				Logger.LogFatal("CodeGenerator.Evaluate() failed to save the generation manifest [" + m_manifestFile.getPath() + "].");
 				return false;
 			}
 
 			long t_endGenerate = Calendar.getInstance().getTimeInMillis();
 
+			m_lastOutputCheck = t_outputCheck;
+
 
-			Logger.LogInfo("Template parse (millisec):      "	+ (t_endTemplateParse		- t_startTemplateParse));
-			Logger.LogInfo("Config values parse (millisec): "	+ (t_endConfigValuesParse	- t_endTemplateParse));
 			Logger.LogInfo("Generation time (millisec):     "	+ (t_endGenerate			- t_startGenerate));
 			Logger.LogInfo("Generated file count:           "	+ FileTag.GetFileCount());
+			Logger.LogInfo("    Written:                    "	+ FileTag.GetWrittenFileCount());
+			Logger.LogInfo("    Unchanged:                  "	+ FileTag.GetUnchangedFileCount() + ((m_skipUnchangedFiles || m_checkOnly) ? "" : " (not checked)"));
+			Logger.LogInfo("    New:                        "	+ FileTag.GetNewFileCount());
+			Logger.LogInfo("Duplicate output files:         "	+ FileTag.GetDuplicateFileCount() + ((m_duplicatePolicy == FileTag.DUPLICATE_SKIP) ? " (skipped)" : ""));
+
+			if (t_manifest != null) {
+				Logger.LogInfo("Up to date (not evaluated):     "	+ t_manifest.GetUpToDateCount() + (m_forceRebuild ? " (rebuild forced)" : ""));
+				Logger.LogInfo("Recorded in manifest:           "	+ t_manifest.GetRecordedCount());
+			}
+
+			if (t_fileEvaluator != null) {
+				Logger.LogInfo("Generation threads:             "	+ m_threadCount + (m_useVirtualThreads ? " (virtual)" : ""));
+				Logger.LogInfo("Files generated in parallel:    "	+ t_fileEvaluator.GetForkedFileCount());
+			}
+
+			OutputFileSystemCache t_fileSystemCache = t_context.GetFileSystemCache();
+			Logger.LogInfo("Output file system calls:       "	+ t_fileSystemCache.GetFileSystemCallCount() + " (" + t_fileSystemCache.GetCachedAnswerCount() + " checks answered from " + t_fileSystemCache.GetDirectoryCount() + " directory listings)");
+
+			t_destination.LogStatistics();
+
+			if (p_streamedConfig != null)
+				Logger.LogInfo("Config nodes streamed:          "	+ p_streamedConfig.GetStreamedNodeCount() + " in " + p_streamedConfig.GetPassCount() + " reads of the config file");
+
 			Logger.LogInfo("Copied file count:              "	+ CopyFile.GetFileCopyCount());
+			Logger.LogInfo("Template cache hits:            "	+ TemplateCache.GetHitCount());
+			Logger.LogInfo("Template cache misses:          "	+ TemplateCache.GetMissCount());
+			Logger.LogInfo("Template cache evictions:       "	+ TemplateCache.GetEvictionCount());
+			Logger.LogInfo("Templates loaded from bundle:   "	+ TemplateBundle.GetLoadCount());
+			Logger.LogInfo("Stale bundle templates:         "	+ TemplateBundle.GetStaleCount());
 
 			return true;
 		}
 		catch (Throwable t_error)
 		{
-			Logger.LogFatal("CodeGenerator.Execute() failed with error: ", t_error);
+			Logger.LogFatal("CodeGenerator.Evaluate() failed with error: ", t_error);
 			return false;
 		}
 	}
+
+
+
+	/**
+	 * Publishes the files from one in-memory generation.  A SubmissionPublisher does the buffering and delivery, and since its submit()
+	 * blocks while the subscriber's buffer is full, the generation thread is what waits for the subscriber.
+	 */
+	private class GenerationPublisher implements Flow.Publisher<MemoryOutput.GeneratedOutput> {
+
+		// Data members
+		private final	Tag_Base				m_template;
+		private final	ConfigNode				m_configRoot;
+		private final	Map<String, String>		m_priorContents;
+		private final	int						m_bufferSize;
+		private final	AtomicBoolean			m_isSubscribed	= new AtomicBoolean(false);
+
+
+		//*********************************
+		public GenerationPublisher(Tag_Base p_template, ConfigNode p_configRoot, Map<String, String> p_priorContents, int p_bufferSize) {
+			m_template		= p_template;
+			m_configRoot	= p_configRoot;
+			m_priorContents	= p_priorContents;
+			m_bufferSize	= p_bufferSize;
+		}
+
+
+		//*********************************
+		@Override
+		public void subscribe(Flow.Subscriber<? super MemoryOutput.GeneratedOutput> p_subscriber) {
+			if (!m_isSubscribed.compareAndSet(false, true)) {
+				p_subscriber.onSubscribe(new Flow.Subscription() {
+					@Override public void request(long p_count) {}
+					@Override public void cancel() {}
+				});
+
+				p_subscriber.onError(new IllegalStateException("CodeGenerator.GenerationPublisher only generates once and it already has a subscriber."));
+				return;
+			}
+
+			SubmissionPublisher<MemoryOutput.GeneratedOutput> t_publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), m_bufferSize);
+			t_publisher.subscribe(p_subscriber);
+
+			Thread t_thread = new Thread(() -> {
+				// Once the subscriber cancels, there's no one left to generate for.
+				MemoryOutput t_memoryOutput = new MemoryOutput(m_priorContents, p_output -> {
+					if (t_publisher.getNumberOfSubscribers() == 0)
+						return false;
+
+					t_publisher.submit(p_output);
+					return true;
+				}, m_outputCharset);
+
+				if (Evaluate(m_template, m_configRoot, "in-memory template", t_memoryOutput, null))
+					t_publisher.close();
+				else
+					t_publisher.closeExceptionally(new IOException("CodeGenerator failed to generate the in-memory template.  See the log for the details."));
+			}, "CodeGenerator publisher");
+
+			t_thread.setDaemon(true);
+			t_thread.start();
+		}
+	}
 }
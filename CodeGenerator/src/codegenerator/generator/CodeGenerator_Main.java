@@ -22,6 +22,12 @@ package codegenerator.generator;
 
 
 
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import codegenerator.generator.tags.FileTag;
+import codegenerator.generator.utils.*;
 import coreutil.config.*;
 import coreutil.logging.*;
 
@@ -29,14 +35,88 @@ import coreutil.logging.*;
 /**
 	This is a simple wrapper class that lets you easily run the code generator from the command line.
 
-	<p>Usage:</p> <pre><code>java -cp .:coreutil.jar:code_generator.jar CodeGenerator_Main &lt;configFilename&gt; &lt;templateFilename&gt; &lt;variablesFilename&gt;</code></pre>
+	<p>Usage:</p> <pre><code>java -cp .:coreutil.jar:code_generator.jar CodeGenerator_Main [options] &lt;configFilename&gt; &lt;templateFilename&gt; &lt;variablesFilename&gt; [&lt;variablesFilename&gt;...]</code></pre>
+
+	<p>The variables can be split over several files, like one per module, and any of them can be a directory, which stands for all of the
+	".xml" files in it in name order.  They are parsed at the same time and merged in the order they are given, with the "global" nodes
+	combined into one.  See {@link MultiFileConfig}.  --streamNodes, --noConfigSnapshot and --compactConfig only apply to a single file.</p>
+
+	<p>Options:</p>
+	<pre>	--templateBundle &lt;bundleFilename&gt;	Load the templates from a bundle compiled by {@link TemplateCompiler_Main} instead of parsing them.
+						Any template that has changed since the bundle was compiled is still parsed from its file.
+	--threads &lt;count&gt;			Generate up to this many files at the same time.  The default of 1 generates them one
+						after another.  The generated files are the same either way.
+	--virtualThreads			With --threads, generate the files on virtual threads if the JVM has them.
+	--skipUnchanged				Compare each file that already exists with what is generated for it and leave it alone,
+						last-modified time and all, if it hasn't changed.
+	--incremental &lt;manifestFilename&gt;	Record what each file was generated from in the manifest file and don't evaluate a file
+						at all if none of it has changed since the last generation.
+	--forceRebuild				With --incremental, generate every file anyway and save a new manifest.
+	--writeBehind &lt;ioThreadCount&gt;		Hand the generated text off to this many I/O threads to be encoded and written to the
+						files so that generation doesn't wait on the disk.
+	--writeBehindBudget &lt;kilobytes&gt;		With --writeBehind, how much generated text can be waiting to be written before
+						generation has to wait for it.  The default is 32768 (32 MB).
+	--outputCharset &lt;charsetName&gt;		Write the files, and read them back for custom code, in this charset instead of the
+						platform default.
+	--staging &lt;stagingDirectory&gt;		Generate and copy the files into a directory under this one and only move them into place
+						once the whole generation has succeeded.  It should be on the same file system as the output.
+	--fsync &lt;none|file|run&gt;		With --staging, force the files to disk as each one is finished (file) or all at once before
+						they are moved into place (run).  The default is none.
+	--archive &lt;archiveFilename&gt;		Generate into this zip or jar file instead of the file system.  Custom code comes from the
+						previous version of the archive.  It can't be used with --staging, --incremental or
+						--skipUnchanged.
+	--archiveBase &lt;directory&gt;		With --archive, the directory that the entry names are relative to.  The default is the
+						working directory.
+	--check					Generate without writing anything and compare each file with the one in the output instead.
+						The stale and missing files are logged and the exit code is 2 if there are any.  It
+						can't be used with --staging, --archive or --incremental.
+	--duplicates &lt;warn|skip|fail&gt;		What to do when a file is generated more than once in the same run: log a warning and
+						generate it again so the last one wins (warn, the default), log a warning and keep the
+						first one without evaluating the later one (skip) or fail the generation (fail).
+	--lineEndings &lt;keep|lf|crlf&gt;		Convert the line endings in every generated file as it is written.  The default is keep.
+	--trimTrailingWhitespace		Strip the spaces and tabs off the end of each line of every generated file as it is written.
+	--finalNewline				Make sure every generated file ends with a line ending.
+						A file tag can override any of these three for its own file.
+	--streamNodes &lt;name[,name...]&gt;		Don't load the top-level config nodes with these names.  Read them from the variables file
+						one at a time in each forEach loop over them on the root node instead, for a variables file
+						that is too big to load.  It can't be used with --incremental.
+	--noConfigSnapshot			Parse the variables file even if {@link ConfigSnapshot_Main} has written a snapshot of it
+						that is still current.
+	--compactConfig				Parse the variables file into a tree that takes less memory and is faster to search.  It is
+						for big variables files and the output is the same either way.</pre>
 */
 public class CodeGenerator_Main {
 
 
+	//===========================================
+	static private final String		OPTION_TEMPLATE_BUNDLE		= "--templateBundle";
+	static private final String		OPTION_THREADS				= "--threads";
+	static private final String		OPTION_VIRTUAL_THREADS		= "--virtualThreads";
+	static private final String		OPTION_SKIP_UNCHANGED		= "--skipUnchanged";
+	static private final String		OPTION_INCREMENTAL			= "--incremental";
+	static private final String		OPTION_FORCE_REBUILD		= "--forceRebuild";
+	static private final String		OPTION_WRITE_BEHIND			= "--writeBehind";
+	static private final String		OPTION_WRITE_BEHIND_BUDGET	= "--writeBehindBudget";
+	static private final String		OPTION_OUTPUT_CHARSET		= "--outputCharset";
+	static private final String		OPTION_STAGING				= "--staging";
+	static private final String		OPTION_FSYNC				= "--fsync";
+	static private final String		OPTION_ARCHIVE				= "--archive";
+	static private final String		OPTION_ARCHIVE_BASE			= "--archiveBase";
+	static private final String		OPTION_CHECK				= "--check";
+	static private final String		OPTION_DUPLICATES			= "--duplicates";
+	static private final String		OPTION_LINE_ENDINGS			= "--lineEndings";
+	static private final String		OPTION_TRIM_WHITESPACE		= "--trimTrailingWhitespace";
+	static private final String		OPTION_FINAL_NEWLINE		= "--finalNewline";
+	static private final String		OPTION_STREAM_NODES			= "--streamNodes";
+	static private final String		OPTION_NO_CONFIG_SNAPSHOT	= "--noConfigSnapshot";
+	static private final String		OPTION_COMPACT_CONFIG		= "--compactConfig";
+
+	static private final int		EXIT_OUT_OF_DATE			= 2;		// For check mode, so that a build can tell stale output apart from a failure.
+
+
 	//===========================================
 	static protected void Usage() {
-		Logger.LogError("Usage: java -cp .,coreutil.jar CodeGenerator_Main <configFilename> <templateFilename> <variablesFilename>");
+		Logger.LogError("Usage: java -cp .,coreutil.jar CodeGenerator_Main [--templateBundle <bundleFilename>] [--threads <count>] [--virtualThreads] [--skipUnchanged] [--incremental <manifestFilename> [--forceRebuild]] [--writeBehind <ioThreadCount> [--writeBehindBudget <kilobytes>]] [--outputCharset <charsetName>] [--staging <stagingDirectory> [--fsync <none|file|run>]] [--archive <archiveFilename> [--archiveBase <directory>]] [--check] [--duplicates <warn|skip|fail>] [--lineEndings <keep|lf|crlf>] [--trimTrailingWhitespace] [--finalNewline] [--streamNodes <name[,name...]>] [--noConfigSnapshot] [--compactConfig] <configFilename> <templateFilename> <variablesFilename> [<variablesFilename>...]");
 	}
 
 
@@ -44,7 +124,145 @@ public class CodeGenerator_Main {
 	public static void main(String[] p_args) {
 		try
 		{
-			if (p_args.length != 3) {
+			// Options all start with "--" and have to come before the three required arguments.
+			String				t_templateBundleName	= null;
+			int					t_threadCount			= 1;
+			boolean				t_useVirtualThreads		= false;
+			boolean				t_skipUnchangedFiles	= false;
+			String				t_manifestFileName		= null;
+			boolean				t_forceRebuild			= false;
+			int					t_ioThreadCount			= 0;
+			int					t_writeBehindBudget		= 32 * 1024;
+			boolean				t_hasWriteBehindBudget	= false;
+			Charset				t_outputCharset			= null;
+			String				t_stagingDirectoryName	= null;
+			int					t_syncPolicy			= -1;
+			String				t_archiveName			= null;
+			String				t_archiveBaseName		= null;
+			boolean				t_checkOnly				= false;
+			int					t_duplicatePolicy		= FileTag.DUPLICATE_WARN;
+			int					t_lineEndings			= OutputFilters.LINE_ENDINGS_KEEP;
+			boolean				t_trimWhitespace		= false;
+			boolean				t_finalNewline			= false;
+			ArrayList<String>	t_streamedNodeNames		= new ArrayList<>();
+			boolean				t_useConfigSnapshot		= true;
+			boolean				t_useCompactConfig		= false;
+			ArrayList<String>	t_arguments				= new ArrayList<>();
+			for (int i = 0; i < p_args.length; ++i) {
+				if (p_args[i].equals(OPTION_TEMPLATE_BUNDLE) && (i + 1 < p_args.length))
+					t_templateBundleName = p_args[++i];
+				else if (p_args[i].equals(OPTION_THREADS) && (i + 1 < p_args.length)) {
+					try {
+						t_threadCount = Integer.parseInt(p_args[++i]);
+					}
+					catch (NumberFormatException t_error) {
+						t_threadCount = 0;
+					}
+
+					if (t_threadCount < 1) {
+						Usage();
+						System.exit(1);
+					}
+				}
+				else if (p_args[i].equals(OPTION_VIRTUAL_THREADS))
+					t_useVirtualThreads = true;
+				else if (p_args[i].equals(OPTION_SKIP_UNCHANGED))
+					t_skipUnchangedFiles = true;
+				else if (p_args[i].equals(OPTION_INCREMENTAL) && (i + 1 < p_args.length))
+					t_manifestFileName = p_args[++i];
+				else if (p_args[i].equals(OPTION_FORCE_REBUILD))
+					t_forceRebuild = true;
+				else if ((p_args[i].equals(OPTION_WRITE_BEHIND) || p_args[i].equals(OPTION_WRITE_BEHIND_BUDGET)) && (i + 1 < p_args.length)) {
+					boolean	t_isBudget	= p_args[i].equals(OPTION_WRITE_BEHIND_BUDGET);
+					int		t_value;
+					try {
+						t_value = Integer.parseInt(p_args[++i]);
+					}
+					catch (NumberFormatException t_error) {
+						t_value = 0;
+					}
+
+					if ((t_value < 1) || (t_isBudget && (t_value > Integer.MAX_VALUE / 1024))) {
+						Usage();
+						System.exit(1);
+					}
+
+					if (t_isBudget) {
+						t_writeBehindBudget		= t_value;
+						t_hasWriteBehindBudget	= true;
+					}
+					else
+						t_ioThreadCount = t_value;
+				}
+				else if (p_args[i].equals(OPTION_OUTPUT_CHARSET) && (i + 1 < p_args.length)) {
+					try {
+						t_outputCharset = Charset.forName(p_args[++i]);
+					}
+					catch (IllegalArgumentException t_error) {
+						Usage();
+						System.exit(1);
+					}
+				}
+				else if (p_args[i].equals(OPTION_STAGING) && (i + 1 < p_args.length))
+					t_stagingDirectoryName = p_args[++i];
+				else if (p_args[i].equals(OPTION_FSYNC) && (i + 1 < p_args.length)) {
+					t_syncPolicy = OutputStaging.ParseSyncPolicy(p_args[++i]);
+					if (t_syncPolicy < 0) {
+						Usage();
+						System.exit(1);
+					}
+				}
+				else if (p_args[i].equals(OPTION_ARCHIVE) && (i + 1 < p_args.length))
+					t_archiveName = p_args[++i];
+				else if (p_args[i].equals(OPTION_ARCHIVE_BASE) && (i + 1 < p_args.length))
+					t_archiveBaseName = p_args[++i];
+				else if (p_args[i].equals(OPTION_CHECK))
+					t_checkOnly = true;
+				else if (p_args[i].equals(OPTION_DUPLICATES) && (i + 1 < p_args.length)) {
+					t_duplicatePolicy = FileTag.ParseDuplicatePolicy(p_args[++i]);
+					if (t_duplicatePolicy < 0) {
+						Usage();
+						System.exit(1);
+					}
+				}
+				else if (p_args[i].equals(OPTION_LINE_ENDINGS) && (i + 1 < p_args.length)) {
+					t_lineEndings = OutputFilters.ParseLineEndings(p_args[++i]);
+					if (t_lineEndings < 0) {
+						Usage();
+						System.exit(1);
+					}
+				}
+				else if (p_args[i].equals(OPTION_TRIM_WHITESPACE))
+					t_trimWhitespace = true;
+				else if (p_args[i].equals(OPTION_FINAL_NEWLINE))
+					t_finalNewline = true;
+				else if (p_args[i].equals(OPTION_STREAM_NODES) && (i + 1 < p_args.length)) {
+					for (String t_name: p_args[++i].split(",")) {
+						if (t_name.isBlank()) {
+							Usage();
+							System.exit(1);
+						}
+
+						t_streamedNodeNames.add(t_name.trim());
+					}
+				}
+				else if (p_args[i].equals(OPTION_NO_CONFIG_SNAPSHOT))
+					t_useConfigSnapshot = false;
+				else if (p_args[i].equals(OPTION_COMPACT_CONFIG))
+					t_useCompactConfig = true;
+				else if (p_args[i].startsWith("--")) {
+					Usage();
+					System.exit(1);
+				}
+				else
+					t_arguments.add(p_args[i]);
+			}
+
+			if ((t_arguments.size() < 3) || (t_forceRebuild && (t_manifestFileName == null)) || (t_hasWriteBehindBudget && (t_ioThreadCount == 0)) || ((t_syncPolicy >= 0) && (t_stagingDirectoryName == null))
+				|| ((t_archiveBaseName != null) && (t_archiveName == null)) || ((t_archiveName != null) && ((t_stagingDirectoryName != null) || (t_manifestFileName != null) || t_skipUnchangedFiles))
+				|| (t_checkOnly && ((t_stagingDirectoryName != null) || (t_archiveName != null) || (t_manifestFileName != null)))
+				|| (!t_streamedNodeNames.isEmpty() && (t_manifestFileName != null)))
+			{
 				Usage();
 				System.exit(1);
 			}
@@ -52,7 +270,7 @@ public class CodeGenerator_Main {
 			// The ConfigManager can be given, theoretically, any number of configuration info sources.  In practice, it will probably only be a couple of sources: the config file as default first source and either a database source or network source depending on whether the app is a client/server or a multi-tier architecture (respectively).
 			// Load the config file and add its "source" to the ConfigManager first.  This will make its values the "default" values for anything not in other config sources added later.
 			FileConfigValueSet	t_configValues		= new FileConfigValueSet();
-			String				t_configFileName	= p_args[0];
+			String				t_configFileName	= t_arguments.get(0);
 			if (!t_configValues.Load(t_configFileName)) {
 				System.out.println("CodeGenerator_Main() failed to import the config file [" + t_configFileName + "].");
 				System.exit(1);
@@ -68,14 +286,58 @@ public class CodeGenerator_Main {
 				System.exit(1);
 			}
 
+			// Logging every template token is only useful when debugging the parsers, so it's off unless the config file turns it on.
+			ConfigValue t_logTemplateTokens = ConfigManager.GetValue("logging.logTemplateTokens");
+			if ((t_logTemplateTokens != null) && Boolean.TRUE.equals(t_logTemplateTokens.GetBooleanValue()))
+				TemplateTokenizer.SetTokenLogging(true);
+
+			if ((t_templateBundleName != null) && !TemplateBundle.Load(new File(t_templateBundleName))) {
+				Logger.LogFatal("CodeGenerator_Main.main() failed to load the template bundle [" + t_templateBundleName + "].");
+				Cleanup();
+				System.exit(1);
+			}
+
 
 			CodeGenerator t_codeGenerator = new CodeGenerator();
-			if (!t_codeGenerator.Execute(p_args[1], p_args[2])) {
+			t_codeGenerator.SetThreadCount(t_threadCount);
+			t_codeGenerator.SetUseVirtualThreads(t_useVirtualThreads);
+			t_codeGenerator.SetSkipUnchangedFiles(t_skipUnchangedFiles);
+			t_codeGenerator.SetForceRebuild(t_forceRebuild);
+			if (t_manifestFileName != null)
+				t_codeGenerator.SetManifestFile(new File(t_manifestFileName));
+
+			if (t_ioThreadCount > 0)
+				t_codeGenerator.SetWriteBehind(t_ioThreadCount, t_writeBehindBudget * 1024);
+
+			if (t_outputCharset != null)
+				t_codeGenerator.SetOutputCharset(t_outputCharset);
+
+			if (t_stagingDirectoryName != null)
+				t_codeGenerator.SetStaging(new File(t_stagingDirectoryName), Math.max(t_syncPolicy, OutputStaging.SYNC_NONE));
+
+			if (t_archiveName != null)
+				t_codeGenerator.SetArchive(new File(t_archiveName), (t_archiveBaseName != null) ? new File(t_archiveBaseName) : null);
+
+			t_codeGenerator.SetCheckOnly(t_checkOnly);
+			t_codeGenerator.SetDuplicatePolicy(t_duplicatePolicy);
+			t_codeGenerator.SetOutputFilters(new OutputFilters(t_lineEndings, t_trimWhitespace, t_finalNewline));
+			t_codeGenerator.SetStreamedNodes(t_streamedNodeNames);
+			t_codeGenerator.SetUseConfigSnapshot(t_useConfigSnapshot);
+			t_codeGenerator.SetUseCompactConfig(t_useCompactConfig);
+
+			if (!t_codeGenerator.Execute(t_arguments.get(1), t_arguments.subList(2, t_arguments.size()))) {
 				Logger.LogFatal("CodeGenerator_Main.main() failed to execute the code generator.");
 				Cleanup();
 				System.exit(1);
 			}
 
+			OutputCheck t_outputCheck = t_codeGenerator.GetLastOutputCheck();
+			if ((t_outputCheck != null) && (!t_outputCheck.GetStaleFiles().isEmpty() || !t_outputCheck.GetMissingFiles().isEmpty())) {
+				Logger.LogError("CodeGenerator_Main.main() found that the output is out of date.");
+				Cleanup();
+				System.exit(EXIT_OUT_OF_DATE);
+			}
+
 
 			Cleanup();
 		}
@@ -0,0 +1,112 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package codegenerator.generator;
+
+
+
+import java.io.*;
+
+import codegenerator.generator.utils.*;
+import coreutil.config.*;
+import coreutil.logging.*;
+
+
+/**
+	Converts config values files into the binary snapshots that {@link CodeGenerator} memory-maps instead of parsing the XML.  Each
+	snapshot is written next to its file with ".snapshot" added to the name, and it is used as long as the file hasn't changed since.
+	See {@link ConfigSnapshot}.
+
+	<p>Usage:</p> <pre><code>java -cp .:coreutil.jar:code_generator.jar codegenerator.generator.ConfigSnapshot_Main &lt;configFilename&gt; &lt;variablesFilename&gt; [&lt;variablesFilename&gt; ...]</code></pre>
+*/
+public class ConfigSnapshot_Main {
+
+
+	//===========================================
+	static protected void Usage() {
+		Logger.LogError("Usage: java -cp .,coreutil.jar,code_generator.jar codegenerator.generator.ConfigSnapshot_Main <configFilename> <variablesFilename> [<variablesFilename> ...]");
+	}
+
+
+	//===========================================
+	public static void main(String[] p_args) {
+		try
+		{
+			if (p_args.length < 2) {
+				Usage();
+				System.exit(1);
+			}
+
+			FileConfigValueSet	t_configValues		= new FileConfigValueSet();
+			String				t_configFileName	= p_args[0];
+			if (!t_configValues.Load(t_configFileName)) {
+				System.out.println("ConfigSnapshot_Main() failed to import the config file [" + t_configFileName + "].");
+				System.exit(1);
+			}
+
+			ConfigManager.AddValueSetFirst(t_configValues);
+
+
+			// Set up the logger(s) that we need for this app.  This is controlled by the logging config info in the config file.
+			if (!Logger.Init()) {
+				System.out.println("ConfigSnapshot_Main() failed initializing the Logger.");
+				Cleanup();
+				System.exit(1);
+			}
+
+
+			for (int i = 1; i < p_args.length; ++i) {
+				File t_variablesFile	= new File(p_args[i]);
+				File t_snapshotFile		= ConfigSnapshot.GetSnapshotFile(t_variablesFile);
+
+				long	t_start		= System.currentTimeMillis();
+				int		t_nodeCount	= ConfigSnapshot.Write(t_variablesFile, t_snapshotFile);
+				if (t_nodeCount < 0) {
+					Logger.LogFatal("ConfigSnapshot_Main.main() failed to write the snapshot for the variables file [" + p_args[i] + "].");
+					Cleanup();
+					System.exit(1);
+				}
+
+				Logger.LogInfo("Wrote [" + t_snapshotFile.getPath() + "] with [" + t_nodeCount + "] nodes in [" + (System.currentTimeMillis() - t_start) + "] millisec.");
+			}
+
+
+			Cleanup();
+		}
+		catch (Throwable t_error)
+		{
+			Logger.LogFatal("ConfigSnapshot_Main.main() failed with error: ", t_error);
+			Cleanup();
+			System.exit(1);
+		}
+	}
+
+
+	//===========================================
+	private static void Cleanup() {
+		try {
+			Logger.Shutdown();
+		}
+		catch (Throwable t_error)
+		{
+			Logger.LogException("ConfigSnapshot_Main.Cleanup() failed with error: ", t_error);
+		}
+	}
+}
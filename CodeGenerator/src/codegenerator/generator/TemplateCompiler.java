@@ -0,0 +1,111 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator;
+
+
+
+import java.io.*;
+import java.util.*;
+
+import codegenerator.generator.tags.*;
+import codegenerator.generator.utils.*;
+import coreutil.logging.*;
+
+
+
+/**
+	<p>Parses a root template and every template that it can reach through <code>file</code> and <code>include</code> tags and
+	writes all of the resulting trees to a {@link TemplateBundle}.</p>
+
+	<p>Template names are resolved the same way they are during generation, i.e. relative to the current directory, so the
+	compiler needs to be run from the same directory that the generator will be run from.  Template names that contain tags
+	that have to be evaluated can't be resolved here, so those templates are left out of the bundle and will be parsed
+	during generation as usual.</p>
+*/
+public class TemplateCompiler {
+
+
+	//*********************************
+	/**
+	 * @param p_templateFilename	The "root" template that would be passed to {@link CodeGenerator#Execute(String, String)}.
+	 * @param p_bundleFilename		The bundle file to write.  Any existing file will be replaced.
+	 * @return
+	 */
+	public boolean Compile(String p_templateFilename,
+						   String p_bundleFilename)
+	{
+		try {
+			long t_startCompile = Calendar.getInstance().getTimeInMillis();
+
+			LinkedHashMap<String, Tag_Base>	t_templates			= new LinkedHashMap<>();
+			ArrayDeque<String>				t_templateNames		= new ArrayDeque<>();
+			int								t_referenceCount	= 0;
+
+			t_templateNames.add(p_templateFilename);
+
+			while (!t_templateNames.isEmpty()) {
+				String	t_templateName	= t_templateNames.poll();
+				File	t_templateFile	= new File(t_templateName);
+				if (!t_templateFile.exists()) {
+					Logger.LogError("TemplateCompiler.Compile() could not find the template file [" + t_templateName + "].");
+					return false;
+				}
+
+				String t_templatePath = t_templateFile.getCanonicalPath();
+				if (t_templates.containsKey(t_templatePath))
+					continue;
+
+				TemplateParser	t_parser	= new TemplateParser();
+				Tag_Base		t_template	= t_parser.ParseTemplate(t_templateFile);
+				if (t_template == null) {
+					Logger.LogError("TemplateCompiler.Compile() failed to parse the template file [" + t_templateName + "].");
+					return false;
+				}
+
+				t_templates.put(t_templatePath, t_template);
+
+				LinkedList<String> t_references = new LinkedList<>();
+				t_template.CollectTemplateReferences(t_references);
+
+				t_referenceCount += t_references.size();
+				t_templateNames.addAll(t_references);
+			}
+
+			if (!TemplateBundle.Write(new File(p_bundleFilename), t_templates)) {
+				Logger.LogError("TemplateCompiler.Compile() failed to write the bundle file [" + p_bundleFilename + "].");
+				return false;
+			}
+
+			long t_endCompile = Calendar.getInstance().getTimeInMillis();
+
+			Logger.LogInfo("Compiled template count:        "	+ t_templates.size());
+			Logger.LogInfo("Template references found:      "	+ t_referenceCount);
+			Logger.LogInfo("Compile time (millisec):        "	+ (t_endCompile - t_startCompile));
+
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("TemplateCompiler.Compile() failed with error: ", t_error);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator;
+
+
+
+import coreutil.config.*;
+import coreutil.logging.*;
+
+
+/**
+	Compiles a root template and every template it references into a template bundle that {@link CodeGenerator_Main} can
+	load with its <code>--templateBundle</code> option so that the templates don't have to be parsed on every run.
+
+	<p>Usage:</p> <pre><code>java -cp .:coreutil.jar:code_generator.jar codegenerator.generator.TemplateCompiler_Main &lt;configFilename&gt; &lt;templateFilename&gt; &lt;bundleFilename&gt;</code></pre>
+*/
+public class TemplateCompiler_Main {
+
+
+	//===========================================
+	static protected void Usage() {
+		Logger.LogError("Usage: java -cp .,coreutil.jar,code_generator.jar codegenerator.generator.TemplateCompiler_Main <configFilename> <templateFilename> <bundleFilename>");
+	}
+
+
+	//===========================================
+	public static void main(String[] p_args) {
+		try
+		{
+			if (p_args.length != 3) {
+				Usage();
+				System.exit(1);
+			}
+
+			FileConfigValueSet	t_configValues		= new FileConfigValueSet();
+			String				t_configFileName	= p_args[0];
+			if (!t_configValues.Load(t_configFileName)) {
+				System.out.println("TemplateCompiler_Main() failed to import the config file [" + t_configFileName + "].");
+				System.exit(1);
+			}
+
+			ConfigManager.AddValueSetFirst(t_configValues);
+
+
+			// Set up the logger(s) that we need for this app.  This is controlled by the logging config info in the config file.
+			if (!Logger.Init()) {
+				System.out.println("TemplateCompiler_Main() failed initializing the Logger.");
+				Cleanup();
+				System.exit(1);
+			}
+
+
+			TemplateCompiler t_compiler = new TemplateCompiler();
+			if (!t_compiler.Compile(p_args[1], p_args[2])) {
+				Logger.LogFatal("TemplateCompiler_Main.main() failed to compile the templates.");
+				Cleanup();
+				System.exit(1);
+			}
+
+
+			Cleanup();
+		}
+		catch (Throwable t_error)
+		{
+			Logger.LogFatal("TemplateCompiler_Main.main() failed with error: ", t_error);
+			Cleanup();
+			System.exit(1);
+		}
+	}
+
+
+	//===========================================
+	private static void Cleanup() {
+		try {
+			Logger.Shutdown();
+		}
+		catch (Throwable t_error)
+		{
+			Logger.LogException("TemplateCompiler_Main.Cleanup() failed with error: ", t_error);
+		}
+	}
+}
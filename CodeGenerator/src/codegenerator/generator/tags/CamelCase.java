@@ -193,6 +193,28 @@ public class CamelCase extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteTag(m_value);
+		p_writer.WriteString(m_inputSeparator);
+		p_writer.WriteString(m_optionalOutputSeparator);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_value						= p_reader.ReadTag();
+		m_inputSeparator			= p_reader.ReadString();
+		m_optionalOutputSeparator	= p_reader.ReadString();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
@@ -26,6 +26,8 @@ import codegenerator.generator.utils.*;
 import coreutil.config.*;
 import coreutil.logging.*;
 
+import java.io.*;
+
 
 /**
 This accesses values in the config tree so that they can be inserted into the template output or passed to
@@ -186,6 +188,10 @@ public class ConfigValue extends Tag_Base {
 					return false;
 				}
 
+				DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+				if (t_recorder != null)
+					t_recorder.RecordCurrentValue(t_currentValue);
+
 				p_evaluationContext.GetCursor().Write(t_value);
 				return true;
 			}
@@ -226,6 +232,10 @@ public class ConfigValue extends Tag_Base {
 				return false;
 			}
 
+			DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+			if (t_recorder != null)
+				t_recorder.RecordValue(t_currentNode, t_valueName, t_value);
+
 			p_evaluationContext.GetCursor().Write(t_value);
 		}
 		catch (Throwable t_error) {
@@ -237,6 +247,26 @@ public class ConfigValue extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_valueName);
+		p_writer.WriteInt(m_parentReferenceCount);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_valueName				= p_reader.ReadString();
+		m_parentReferenceCount	= p_reader.ReadInt();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
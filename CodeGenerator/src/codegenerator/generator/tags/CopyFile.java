@@ -20,8 +20,8 @@
 
 package codegenerator.generator.tags;
 
+import java.io.*;
 import java.nio.file.*;
-import java.nio.file.attribute.*;
 import java.util.concurrent.locks.*;
 
 import codegenerator.generator.utils.*;
@@ -209,29 +209,16 @@ public class CopyFile extends Tag_Base {
 			}
 
 			Path t_destinationPath = Paths.get(t_destinationDirectory);
-			if (Files.notExists(t_destinationPath) && (Files.createDirectory(t_destinationPath) == null)) {
-				Logger.LogError("CopyFile.Evaluate() failed to create the destination directory [" + t_destinationPath.toString() + "].");
-				return false;
-			}
-
 
 			Logger.LogDebug("CopyFile.Evaluate() is copying the source file [" + t_sourcePath.toString() + "] to directory [" + t_destinationPath.toString() + "].");
 
 
-			Path t_targetPath = t_destinationPath.resolve(t_sourcePath.getFileName());
-			Files.deleteIfExists(t_targetPath);
-
-			if (Files.copy(t_sourcePath, t_targetPath) == null) {
-				Logger.LogError("CopyFile.Evaluate() failed to copy the source file [" + t_sourcePath.toString() + "] to directory [" + t_destinationPath.toString() + "].");
+			// The destination decides where the copy goes.  In staging mode, it's staged with the generated files and goes into place when they do, and in check mode, it's only compared with the one that's there.
+			Path t_outputPath = t_destinationPath.resolve(t_sourcePath.getFileName());
+			if (!p_evaluationContext.GetOutputDestination().CopyFile(t_outputPath.toFile(), t_sourcePath, m_makeFileExecutable)) {
+				Logger.LogError("CopyFile.Evaluate() failed to copy the source file [" + t_sourcePath.toString() + "] to directory [" + t_destinationPath.toString() + "] at line [" + m_lineNumber + "].");
 				return false;
 			}
-
-			if (m_makeFileExecutable) {
-				if (Files.setPosixFilePermissions(t_targetPath, PosixFilePermissions.fromString("rwxr--r--")) == null) {
-					Logger.LogError("CopyFile.Evaluate() failed to set the permissions for the destination file [" + t_destinationPath.toString() + "].");
-					return false;
-				}
-			}
 		}
 		catch (Throwable t_error) {
 			Logger.LogException("CopyFile.Evaluate() failed with error: ", t_error);
@@ -240,10 +227,37 @@ public class CopyFile extends Tag_Base {
 
 		IncrementFileCopyCount();	// We'll count the number of files that are copies so that we get a better picture of how much was done.
 
+		// Skipping the file this is in would skip the copy, so the manifest can't be allowed to skip it.
+		DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+		if (t_recorder != null)
+			t_recorder.MarkNotRecordable();
+
 		return true;
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteEvalValue(m_sourceFileName);
+		p_writer.WriteEvalValue(m_destinationDirectory);
+		p_writer.WriteBoolean(m_makeFileExecutable);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_sourceFileName		= p_reader.ReadEvalValue();
+		m_destinationDirectory	= p_reader.ReadEvalValue();
+		m_makeFileExecutable	= p_reader.ReadBoolean();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
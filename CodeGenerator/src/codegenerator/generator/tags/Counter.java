@@ -23,6 +23,9 @@ package codegenerator.generator.tags;
 
 
 import coreutil.logging.*;
+
+import java.io.*;
+
 import codegenerator.generator.utils.*;
 
 
@@ -138,6 +141,10 @@ public class Counter extends Tag_Base {
 				return false;
 			}
 
+			DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+			if (t_recorder != null)
+				t_recorder.RecordCounter(t_iterationCounter, m_optionalCounterName);
+
 			p_evaluationContext.GetCursor().Write(Integer.toString(t_iterationCounter.GetCounter()));
 		}
 		catch (Throwable t_error) {
@@ -149,6 +156,24 @@ public class Counter extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_optionalCounterName);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_optionalCounterName = p_reader.ReadString();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
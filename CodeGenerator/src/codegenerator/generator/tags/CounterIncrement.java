@@ -23,6 +23,9 @@ package codegenerator.generator.tags;
 
 
 import coreutil.logging.*;
+
+import java.io.*;
+
 import codegenerator.generator.utils.*;
 
 
@@ -128,6 +131,34 @@ public class CounterIncrement extends Tag_Base {
 	}
 
 
+	//*********************************
+	/**
+	 * Changing a counter from outside the file has to be seen by the files that are generated after this one.
+	 */
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		return p_check.IsLocalCounter(m_optionalCounterName);
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_optionalCounterName);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_optionalCounterName = p_reader.ReadString();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
@@ -24,6 +24,9 @@ package codegenerator.generator.tags;
 
 import coreutil.logging.*;
 
+import java.io.*;
+import java.util.*;
+
 import codegenerator.generator.utils.*;
 
 
@@ -215,4 +218,54 @@ public class CounterVariable extends Tag_Base {
 
 		return true;
 	}
+
+
+	//*********************************
+	@Override
+	public void CollectTemplateReferences(Collection<String> p_templateNames) {
+		if (m_contentBlock != null)
+			m_contentBlock.CollectTemplateReferences(p_templateNames);
+	}
+
+
+	//*********************************
+	@Override
+	public void CollectVariableDefinitions(Collection<Variable> p_definitions) {
+		if (m_contentBlock != null)
+			m_contentBlock.CollectVariableDefinitions(p_definitions);
+	}
+
+
+	//*********************************
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		if (m_contentBlock == null)
+			return true;
+
+		p_check.EnterCounterVariable(m_counterName);
+		boolean t_isSafe = m_contentBlock.CheckForkSafety(p_check);
+		p_check.ExitCounterVariable();
+
+		return t_isSafe;
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_counterName);
+		p_writer.WriteTag(m_contentBlock);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_counterName	= p_reader.ReadString();
+		m_contentBlock	= (GeneralBlock)p_reader.ReadTag();
+	}
 }
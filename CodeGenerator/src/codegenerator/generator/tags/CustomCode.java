@@ -189,7 +189,7 @@ public class CustomCode extends Tag_Base {
 
 			// Now begin with the opening comment line.
 			Cursor t_writer				= p_evaluationContext.GetCursor();
-			String t_leadingWhiteSpace	= t_writer.GetCurrentLineContents();		// Grab the current contents of the line because we want to use the same whitespace offset for the closing comment line below as is before this tag in the template so that the two comments line up at the same indention.
+			String t_leadingWhiteSpace	= t_writer.GetLeadingWhiteSpace().toString();		// Grab the leading whitespace of the line because we want to use the same whitespace offset for the closing comment line below as is before this tag in the template so that the two comments line up at the same indention.
 
 			t_writer.Write(m_openingCommentCharacters + "	" + CustomCodeManager.START_CUSTOM_CODE + ":" + t_keyWriter.toString());
 
@@ -225,6 +225,28 @@ public class CustomCode extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteTag(m_key);
+		p_writer.WriteString(m_openingCommentCharacters);
+		p_writer.WriteString(m_closingCommentCharacters);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_key						= p_reader.ReadTag();
+		m_openingCommentCharacters	= p_reader.ReadString();
+		m_closingCommentCharacters	= p_reader.ReadString();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
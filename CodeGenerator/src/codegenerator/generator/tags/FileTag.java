@@ -26,8 +26,7 @@ import coreutil.config.*;
 import coreutil.logging.*;
 
 import java.io.*;
-import java.nio.file.*;
-import java.nio.file.attribute.*;
+import java.util.*;
 import java.util.concurrent.locks.*;
 
 import codegenerator.generator.utils.*;
@@ -76,6 +75,17 @@ completes successfully, then the original file will be deleted and the temp file
 <p><code><b>optionalMakeFileExecutable</b></code>: [values: <code><b>true</b></code>|<code><b>false</b></code>, default: false]  an optional boolean attribute to indicate that once the
 file has been copied then it needs to be marked as executable.  This will probably be used mostly with batch files, for example.</p>
 
+<p><code><b>optionalLineEndings</b></code>: [values: <code><b>keep</b></code>|<code><b>lf</b></code>|<code><b>crlf</b></code>]  converts every line ending in the file,
+including the ones in its custom code, as it is written.  <code><b>keep</b></code> writes them the way the template has them.</p>
+
+<p><code><b>optionalTrimTrailingWhitespace</b></code>: [values: <code><b>true</b></code>|<code><b>false</b></code>]  strips the spaces and tabs off the end of each line
+as it is written.</p>
+
+<p><code><b>optionalFinalNewline</b></code>: [values: <code><b>true</b></code>|<code><b>false</b></code>]  makes sure that the file ends with a line ending.</p>
+
+<p>These three override the global settings from {@link EvaluationContext#SetOutputFilters(OutputFilters)} for this file only.  Any that aren't given
+use the global setting.  See {@link OutputFilters}.</p>
+
 <p><code><b>optionalContextName</b></code>: it is now possible to nest this file tag inside another file template.  To that ends, the optional
 attribute <code><b>optionalContextName</b></code> is used if you need to have the	nested file tag execute inside an outer context
 instead of the local context it is defined in.  The value you give this attribute will be the <code>contextName</code>
@@ -96,14 +106,63 @@ public class FileTag extends Tag_Base {
 	static private final String		ATTRIBUTE_OPTIONAL_USE_TEMP_FILE	= "optionalUseTempFile";	// A boolean to indicate that generation should go to a temp file so that if an error occurs, then the original file and any custom code it contains will not be lost.
 	static private final String		ATTRIBUTE_OPTIONAL_MAKE_EXECUTABLE	= "optionalMakeFileExecutable";
 	static private final String		ATTRIBUTE_OPTIONAL_CONTEXT_NAME		= "optionalContextName";
+	static private final String		ATTRIBUTE_OPTIONAL_LINE_ENDINGS		= "optionalLineEndings";
+	static private final String		ATTRIBUTE_OPTIONAL_TRIM_WHITESPACE	= "optionalTrimTrailingWhitespace";
+	static private final String		ATTRIBUTE_OPTIONAL_FINAL_NEWLINE	= "optionalFinalNewline";
 
+	// What to do with a file that has already been generated once in this generation.
+	static public final int			DUPLICATE_WARN						= 0;	// Log a warning and generate it again, so the last one wins, the same as it always has.
+	static public final int			DUPLICATE_SKIP						= 1;	// Log a warning and keep the first one without evaluating the later one at all.
+	static public final int			DUPLICATE_FAIL						= 2;	// Fail the generation.
 
-	// Static members
-	// These locks were only really necessary when I was trying to multi-thread the file tags.  Now that I've backed that out and gone back to single-threading for the time being, these aren't strictly necessary but I'll leave them in anyway.
-	static private final ReentrantLock	s_directoryCreateLock	= new ReentrantLock();
 
+	// Static members
 	static private final ReentrantLock	s_countLock				= new ReentrantLock();
 	static private 		 int			s_fileCount				= 0;	// Simple way to count the number of files generated.
+	static private 		 int			s_writtenFileCount		= 0;	// Files that already existed and were written over.
+	static private 		 int			s_unchangedFileCount	= 0;	// Files that already existed with the same content and were left alone.
+	static private 		 int			s_newFileCount			= 0;	// Files that didn't exist yet.
+	static private 		 int			s_duplicateFileCount	= 0;	// File tags whose output file had already been generated in the same generation.
+
+	static private volatile int			s_duplicatePolicy		= DUPLICATE_WARN;
+
+
+	//===========================================
+	/**
+	 * Sets what happens when a file tag's output file has already been generated by another file tag, or by the same one in an
+	 * earlier pass through a loop, in the same generation.  Only the last one ends up in the output, so generating it more than once
+	 * is almost always a template mistake, and it costs a whole evaluation of the file each time.
+	 *
+	 * @param p_duplicatePolicy	One of the DUPLICATE_ values.
+	 */
+	static public void SetDuplicatePolicy(int p_duplicatePolicy) {
+		s_duplicatePolicy = p_duplicatePolicy;
+	}
+
+
+	//===========================================
+	static public int GetDuplicatePolicy() {
+		return s_duplicatePolicy;
+	}
+
+
+	//===========================================
+	/**
+	 * @param p_policyName	"warn", "skip" or "fail".
+	 * @return The matching DUPLICATE_ value or -1 if the name isn't one of them.
+	 */
+	static public int ParseDuplicatePolicy(String p_policyName) {
+		if (p_policyName.equalsIgnoreCase("warn"))
+			return DUPLICATE_WARN;
+
+		if (p_policyName.equalsIgnoreCase("skip"))
+			return DUPLICATE_SKIP;
+
+		if (p_policyName.equalsIgnoreCase("fail"))
+			return DUPLICATE_FAIL;
+
+		return -1;
+	}
 
 
 	//===========================================
@@ -119,6 +178,32 @@ public class FileTag extends Tag_Base {
 	}
 
 
+	//===========================================
+	/**
+	 * Counts the file in the total and in the written, unchanged or new count.
+	 *
+	 * @param p_isNewFile
+	 * @param p_isUnchanged
+	 */
+	static public void IncrementFileCount(boolean p_isNewFile, boolean p_isUnchanged) {
+		try {
+			s_countLock.lock();
+
+			++s_fileCount;
+
+			if (p_isNewFile)
+				++s_newFileCount;
+			else if (p_isUnchanged)
+				++s_unchangedFileCount;
+			else
+				++s_writtenFileCount;
+		}
+		finally {
+			s_countLock.unlock();
+		}
+	}
+
+
 	//===========================================
 	/**
 	 * This should only be called after all of the file threads have been completed, but we'll lock it just in case.
@@ -137,12 +222,80 @@ public class FileTag extends Tag_Base {
 	}
 
 
+	//===========================================
+	static public int GetWrittenFileCount() {
+		try {
+			s_countLock.lock();
+
+			return s_writtenFileCount;
+		}
+		finally {
+			s_countLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public int GetUnchangedFileCount() {
+		try {
+			s_countLock.lock();
+
+			return s_unchangedFileCount;
+		}
+		finally {
+			s_countLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public int GetDuplicateFileCount() {
+		try {
+			s_countLock.lock();
+
+			return s_duplicateFileCount;
+		}
+		finally {
+			s_countLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static private void IncrementDuplicateFileCount() {
+		try {
+			s_countLock.lock();
+
+			++s_duplicateFileCount;
+		}
+		finally {
+			s_countLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public int GetNewFileCount() {
+		try {
+			s_countLock.lock();
+
+			return s_newFileCount;
+		}
+		finally {
+			s_countLock.unlock();
+		}
+	}
+
+
 
 	// Data members
 	private	OptionalEvalValue	m_templateFileName		= null;		// This attribute is now optional if you are going to include the "contents" inside the tag and a matching <endFile> tag.
 	private boolean				m_useTempFile			= true;		// Optional flag indicating whether the output should go to a temp file or directly overwriting the original file.  We'll default to using the temp file so that we err on the side of saving people from themselves.
 	private	String				m_contextName			= null;		// The optional outer context in which to evaluate this variable.
 	private boolean				m_makeFileExecutable	= false;
+	private int					m_lineEndings			= OutputFilters.SETTING_UNSET;	// These three override the global output filters when they are set.
+	private int					m_trimWhitespace		= OutputFilters.SETTING_UNSET;
+	private int					m_finalNewline			= OutputFilters.SETTING_UNSET;
 
 	// These values can themselves be composites of evaluation-time config variables and text, so we have to store them in their Text object form and evaluate them at runtime to get their final values.
 	private	OptionalEvalValue	m_fileName				= null;
@@ -249,37 +402,66 @@ public class FileTag extends Tag_Base {
 			}
 		}
 
+
+		// The output filter attributes are optional, too.
+		t_nodeAttribute = p_tagParser.GetNamedAttribute(ATTRIBUTE_OPTIONAL_LINE_ENDINGS);
+		if (t_nodeAttribute != null) {
+			String t_value = t_nodeAttribute.GetAttributeValueAsString();
+			m_lineEndings = (t_value != null) ? OutputFilters.ParseLineEndings(t_value.trim()) : -1;
+			if (m_lineEndings < 0) {
+				Logger.LogError("FileTag.Init() received an invalid value [" + t_value + "] for attribute [" + ATTRIBUTE_OPTIONAL_LINE_ENDINGS + "] at line number [" + m_lineNumber + "].  It has to be keep, lf or crlf.");
+				return false;
+			}
+		}
+
+		t_nodeAttribute = p_tagParser.GetNamedAttribute(ATTRIBUTE_OPTIONAL_TRIM_WHITESPACE);
+		if (t_nodeAttribute != null) {
+			String t_value = t_nodeAttribute.GetAttributeValueAsString();
+			if ((t_value != null) && !t_value.isBlank())
+				m_trimWhitespace = Boolean.parseBoolean(t_value.trim()) ? 1 : 0;
+		}
+
+		t_nodeAttribute = p_tagParser.GetNamedAttribute(ATTRIBUTE_OPTIONAL_FINAL_NEWLINE);
+		if (t_nodeAttribute != null) {
+			String t_value = t_nodeAttribute.GetAttributeValueAsString();
+			if ((t_value != null) && !t_value.isBlank())
+				m_finalNewline = Boolean.parseBoolean(t_value.trim()) ? 1 : 0;
+		}
+
 		return true;
 	}
 
 
 	//*********************************
-	public boolean ParseFile(String p_fileName) {
+	/**
+	 * Gets the parsed template file.  Here we are going to get the indicated template file's execution tree so that when the
+	 * parent's execution tree is being evaluated, this template file's tree can also be evaluated.  The tree comes from the shared
+	 * TemplateCache so that the file is only parsed once no matter how many tags point at it.
+	 *
+	 * @param p_fileName
+	 * @return NULL if the file doesn't exist or couldn't be parsed.
+	 */
+	public Tag_Base LoadTemplate(String p_fileName) {
 		try {
 			File t_templateFile = new File(p_fileName);
 			if (!t_templateFile.exists()) {
-				Logger.LogFatal("FileTag.ParseFile() could not open the template file [" + p_fileName + "] at line number [" + m_lineNumber + "].");
-				return false;
+				Logger.LogFatal("FileTag.LoadTemplate() could not open the template file [" + p_fileName + "] at line number [" + m_lineNumber + "].");
+				return null;
 			}
 
-			if (m_tagList != null)
-				m_tagList.clear();	// We have to be sure to clear any existing contents that might exist from a previous evaluation.
-
-			// Parse the template file.  The passed in p_tokenizer is from a parent file's contents, but here we are going to parse the indicated template file for this tag and add its execution tree to this tag object so that when the parent's execution tree is being evaluated, this template file's tree can also be evaluated.
-			TemplateParser t_parser = new TemplateParser();
-			Tag_Base t_template = t_parser.ParseTemplate(t_templateFile);
+			Tag_Base t_template = TemplateCache.GetTemplate(t_templateFile);
 			if (t_template == null) {
-				Logger.LogError("FileTag.ParseFile() failed in file [" + t_templateFile.getAbsolutePath() + "] at line number [" + m_lineNumber + "].");
-				return false;
+				Logger.LogError("FileTag.LoadTemplate() failed in file [" + t_templateFile.getAbsolutePath() + "] at line number [" + m_lineNumber + "].");
+				return null;
 			}
 
-			AddChildTag(t_template);
+			Variable.DefineVariables(t_template);	// The same as when every tag parsed its own copy, the template's "set" tags define their variables each time a tag loads it, whether it was cached or not.
 
-			return true;
+			return t_template;
 		}
 		catch (Throwable t_error) {
-			Logger.LogException("FileTag.ParseFile() failed with error at line number [" + m_lineNumber + "] in file [" + p_fileName + "]: ", t_error);
-			return false;
+			Logger.LogException("FileTag.LoadTemplate() failed with error at line number [" + m_lineNumber + "] in file [" + p_fileName + "]: ", t_error);
+			return null;
 		}
 	}
 
@@ -332,22 +514,32 @@ public class FileTag extends Tag_Base {
 	public boolean Evaluate(EvaluationContext p_evaluationContext)
 	{
 		try {
-			String t_templateFileName = "wrapped contents";		// We'll default this for the case where tag is using wrapped contents instead of a template file.
+			String			t_templateFileName	= "wrapped contents";		// We'll default this for the case where tag is using wrapped contents instead of a template file.
+			List<Tag_Base>	t_contents			= m_tagList;
 			if ((m_templateFileName != null)) {
 				 t_templateFileName = m_templateFileName.Evaluate(p_evaluationContext);
 				if ((t_templateFileName == null) || t_templateFileName.isBlank()) {
 					Logger.LogError("FileTag.Evaluate() failed to evaluate the template file name at line [" + m_lineNumber + "].");
 					return false;
 				}
-				else if (!HasContentTags() || !m_templateFileName.IsConstant()) {	// We only need to parse the file if this is the first time through (no child tags exist i.e. file not loaded) or if the filename is not constant (i.e. the filename has to be evaluated and loaded every time we pass through).
-					if (!ParseFile(t_templateFileName)) {
+
+				// We only need to load the file if this is the first time through or if the filename is not constant (i.e. the filename has to be evaluated and loaded every time we pass through).
+				Tag_Base t_template = p_evaluationContext.GetResolvedTemplate(this);
+				if (t_template == null) {
+					t_template = LoadTemplate(t_templateFileName);
+					if (t_template == null) {
 						Logger.LogFatal("FileTag.Evaluate() failed parsing the template file [" + t_templateFileName + "] at line number [" + m_lineNumber + "].");
 						return false;
 					}
+
+					if (m_templateFileName.IsConstant())
+						p_evaluationContext.SetResolvedTemplate(this, t_template);	// This used to go in m_tagList, but the tag must not change during evaluation since other threads may be evaluating it too.  If two threads get here at the same time, they both get the same tree from the cache, so it doesn't matter which one sets it.
 				}
+
+				t_contents = Collections.singletonList(t_template);
 			}
 
-			if (!HasContentTags()) {
+			if ((t_contents == null) || t_contents.isEmpty()) {
 				Logger.LogError("FileTag.Evaluate() failed to load the file [" + t_templateFileName + "] at line [" + m_lineNumber + "].");
 				return false;
 			}
@@ -359,21 +551,6 @@ public class FileTag extends Tag_Base {
 				return false;
 			}
 
-			File t_destDirectory = new File(t_filePath.toString());
-			try {
-				// I put this lock in when I was trying to multi-thread things.  I didn't go far enough with that effort to completely get it to work, but I didn't remove this because I might try again and it's not causing any harm now that we're back to single-threading.
-				s_directoryCreateLock.lock();
-
-				if (!t_destDirectory.exists() && !t_destDirectory.mkdirs()) {
-					Logger.LogError("FileTag.Evaluate() failed to create the destination directory [" + t_destDirectory.getAbsolutePath() + "].");
-					return false;
-				}
-			}
-			finally {
-				s_directoryCreateLock.unlock();
-			}
-
-
 			String t_fileName = m_fileName.Evaluate(p_evaluationContext);
 			if ((t_fileName == null) || t_fileName.isBlank()) {
 				Logger.LogError("FileTag.Evaluate() failed to evaluate the filename.");
@@ -381,66 +558,236 @@ public class FileTag extends Tag_Base {
 			}
 
 
-			// Create the full filename path and see if it exists.
-			File t_originalFile = new File(t_filePath.toString() + File.separator + t_fileName.toString());
-			if (t_originalFile.exists()) {
-				if (!p_evaluationContext.GetCustomCodeManager().ScanFile(t_originalFile)) {	// Check to see if the file has any custom code in it.  If it does, this will save it so that the CustomCode tags can re-insert it during the file generation.
-					Logger.LogError("FileTag.Evaluate() failed to scan the file [" + t_originalFile.getAbsolutePath() + "] for custom code blocks.");
+			// The addition of outer contexts means that if you use a file tag inside an inner context, you may need to point it to the outer context to get the correct values in the evaluation of the file.
+			ConfigNode t_currentNode = p_evaluationContext.GetCurrentNode();
+			if (m_contextName != null) {
+				t_currentNode = p_evaluationContext.GetOuterContextManager().GetOuterContext(m_contextName);
+				if (t_currentNode == null) {
+					Logger.LogError("FileTag.Evaluate() failed to find the outer context [" + m_contextName + "] for the evaluation mode at line [" + m_lineNumber + "].");
 					return false;
 				}
+
+				DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+				if (t_recorder != null)
+					t_recorder.RecordOuterContext(m_contextName, t_currentNode);
 			}
-			else {
-				p_evaluationContext.GetCustomCodeManager().ClearCache();	// If a new file is being generated after an existing file was regenerated and the custom code blocks aren't unique, then the new file will inherit the previous file's custom code blocks.  !!!That's really BAD!!!  This will clear the custom code cache in those cases.
+
+
+			ParallelFileEvaluator	t_fileEvaluator	= p_evaluationContext.GetFileEvaluator();
+			GenerationManifest		t_manifest		= p_evaluationContext.GetGenerationManifest();
+			if (((t_fileEvaluator != null) && t_fileEvaluator.HasFailed()) || p_evaluationContext.GetOutputDestination().HasFailed())
+				return false;	// Another file has already failed, so we need to stop generating just like we would in serial mode.
+
+
+			// This is checked before anything else is done with the file so that a duplicate that is skipped or fails costs nothing.  The first file tag to get here claims the file, which in parallel mode is still the first one in template order unless they are both nested in files that were handed off.
+			String t_outputPath		= new File(t_filePath, t_fileName).toPath().toAbsolutePath().normalize().toString();
+			String t_source			= "the file tag at line [" + m_lineNumber + "] with template [" + t_templateFileName + "]";
+			String t_firstSource	= p_evaluationContext.ClaimOutputPath(t_outputPath, t_source);
+			if (t_firstSource != null) {
+				IncrementDuplicateFileCount();
+
+				String t_message = "FileTag.Evaluate() found that the file [" + t_outputPath + "] from " + t_source + " was already generated in this generation by " + t_firstSource;
+				if (s_duplicatePolicy == DUPLICATE_FAIL) {
+					Logger.LogError(t_message + ".");
+					return false;
+				}
+
+				if (s_duplicatePolicy == DUPLICATE_SKIP) {
+					Logger.LogWarning(t_message + ", so it was skipped.");
+					return true;
+				}
+
+				Logger.LogWarning(t_message + ", so it will be generated again and the last one will be kept.");
 			}
 
+			// A file that can be forked only depends on what it reads, which is what lets the manifest record it, too.
+			ForkSafetyCheck	t_forkSafety	= ((t_fileEvaluator != null) || (t_manifest != null)) ? CheckForkSafety(p_evaluationContext, t_contents) : null;
+			boolean			t_isSafeToFork	= (t_forkSafety != null);
 
-			// Now we need to figure out if we are doing a temp file or not.
-			File t_targetFile = t_originalFile;	// We'll default the target file to the "original" file and only switch it to a temp file if needed.
-			if (m_useTempFile) {
-				t_targetFile = new File(t_originalFile.getAbsolutePath() + ".temp");
-				if (t_targetFile.exists()) {
-					if (!t_targetFile.delete()) {	// This should theoretically never happen if this code is properly cleaning up after itself, but just in case, we'll delete it here before we move on.
-						Logger.LogError("FileTag.Evaluate() failed to delete the unexpected temp file [" + t_targetFile.getAbsolutePath() + "].");
-						return false;
-					}
+
+			// In incremental mode, a file that would come out the same as it did in the last generation isn't evaluated at all.
+			String t_manifestSettings = null;
+			if ((t_manifest != null) && t_isSafeToFork) {
+				t_manifestSettings = GetManifestSettings(p_evaluationContext, t_manifest, t_templateFileName, t_currentNode);
+
+				GenerationManifest.Entry t_upToDateEntry = t_manifest.GetUpToDateEntry(t_manifest.GetOutputKey(t_filePath, t_fileName), t_manifestSettings, p_evaluationContext);
+				if (t_upToDateEntry != null) {
+					Logger.LogDebug("FileTag.Evaluate() found that the file [" + t_filePath + File.separator + t_fileName + "] is up to date.");
+					t_manifest.CarryForward(t_upToDateEntry);
+
+					DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+					if (t_recorder != null)
+						t_recorder.RecordUpToDateFile(t_upToDateEntry, p_evaluationContext);
+
+					return true;
 				}
 			}
 
-			Logger.LogDebug("FileTag.Evaluate() is writing to file [" + t_targetFile.getPath() + "]");
 
+			// In parallel mode, everything the file needs from the parent template has been evaluated by now, so the file itself can be generated on another thread with a fork of the context while the parent moves on.  A file nested in a file that is being recorded stays with it so that what it reads is recorded in order.
+			if ((t_fileEvaluator != null) && t_isSafeToFork && (p_evaluationContext.GetDependencyRecorder() == null)) {
+				EvaluationContext	t_forkedContext		= p_evaluationContext.Fork();
+				t_forkedContext.SetVariableDefinitions(t_forkSafety.GetVariableDefinitions());
 
-			// The addition of outer contexts means that if you use a file tag inside an inner context, you may need to point it to the outer context to get the correct values in the evaluation of the file.
-			ConfigNode t_currentNode = p_evaluationContext.GetCurrentNode();
-			if (m_contextName != null) {
-				t_currentNode = p_evaluationContext.GetOuterContextManager().GetOuterContext(m_contextName);
-				if (t_currentNode == null) {
-					Logger.LogError("FileTag.Evaluate() failed to find the outer context [" + m_contextName + "] for the evaluation mode at line [" + m_lineNumber + "].");
+				List<Tag_Base>		t_forkedContents	= t_contents;
+				String				t_forkedTemplate	= t_templateFileName;
+				ConfigNode			t_forkedNode		= t_currentNode;
+				String				t_forkedSettings	= t_manifestSettings;
+
+				if (t_fileEvaluator.Submit(() -> WriteFile(t_forkedContext, t_forkedContents, t_forkedTemplate, t_filePath, t_fileName, t_forkedNode, t_forkedSettings)))
+					return true;
+
+				if (t_fileEvaluator.HasFailed())
+					return false;
+			}
+
+			return WriteFile(p_evaluationContext, t_contents, t_templateFileName, t_filePath, t_fileName, t_currentNode, t_manifestSettings);
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("FileTag.Evaluate() failed with error: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * A file can only be handed off to another thread if none of the tags in it depend on or change state that the files after it
+	 * will see.  See {@link ForkSafetyCheck}.
+	 *
+	 * @return The finished check, which has the variable definitions the forked file needs, or NULL if the file can't be forked.
+	 */
+	private ForkSafetyCheck CheckForkSafety(EvaluationContext p_evaluationContext, List<Tag_Base> p_contents) {
+		ForkSafetyCheck t_check = new ForkSafetyCheck(p_evaluationContext);
+		for (Tag_Base t_nextTag: p_contents) {
+			if (!t_nextTag.CheckForkSafety(t_check))
+				return null;
+		}
+
+		return t_check;
+	}
+
+
+	//*********************************
+	/**
+	 * What the manifest has to match besides the file's reads.  That is this tag's own settings and the things the file gets from
+	 * the context around it that don't go through a tag that records them: the node it starts on, the name of any forEach value it is
+	 * inside of and the tab settings.
+	 */
+	private String GetManifestSettings(EvaluationContext	p_evaluationContext,
+									   GenerationManifest	p_manifest,
+									   String				p_templateFileName,
+									   ConfigNode			p_currentNode)
+	{
+		StringBuilder t_settings = new StringBuilder();
+		if (m_templateFileName != null)
+			t_settings.append(p_templateFileName);
+		else
+			t_settings.append(p_evaluationContext.GetCurrentTemplate()).append(':').append(m_lineNumber);
+
+		t_settings.append('|').append(m_useTempFile).append('|').append(m_makeFileExecutable).append('|').append(m_contextName);
+
+		OutputFilters t_outputFilters = GetFileOutputFilters(p_evaluationContext);
+		if (!t_outputFilters.IsEmpty())
+			t_settings.append('|').append(t_outputFilters.GetSettings());	// Only when there are any so that manifests from before there were filters still match.
+		t_settings.append('|').append(p_manifest.GetNodePath(p_currentNode));
+
+		coreutil.config.ConfigValue t_currentValue = p_evaluationContext.GetCurrentValue();
+		t_settings.append('|').append((t_currentValue != null) ? t_currentValue.GetName() : "");
+
+		TabSettingsManager t_tabSettingsManager = p_evaluationContext.GetTabSettingsManager();
+		if (t_tabSettingsManager != null)
+			t_settings.append('|').append(t_tabSettingsManager.GetTabSize()).append(':').append(t_tabSettingsManager.GetOutputType()).append(':').append(t_tabSettingsManager.GetMarker());
+
+		return t_settings.toString();
+	}
+
+
+	//*********************************
+	/**
+	 * Generates the file from the already evaluated names.  In parallel mode, this runs on a worker thread with a forked context.  Where
+	 * the text ends up is up to the context's {@link OutputDestination}.  In write-behind mode, the file may still be being written when
+	 * this returns, and anything that goes wrong after that is reported by the {@link OutputPipeline}.
+	 *
+	 * @param p_manifestSettings	In incremental mode, the settings to record the file with.  NULL if it can't be recorded.
+	 */
+	private boolean WriteFile(EvaluationContext	p_evaluationContext,
+							  List<Tag_Base>	p_contents,
+							  String			p_templateFileName,
+							  String			p_filePath,
+							  String			p_fileName,
+							  ConfigNode		p_currentNode,
+							  String			p_manifestSettings)
+	{
+		// Each file gets its own custom code blocks.  A forked context starts out without a manager, and in serial mode this keeps a nested file tag from wiping out the custom code that was scanned for the file it is nested in.
+		CustomCodeManager t_outerCustomCodeManager = p_evaluationContext.GetCustomCodeManager();
+		p_evaluationContext.SetCustomCodeManager(new CustomCodeManager());
+
+		// In incremental mode, the file gets its own recorder, too.  A nested file that can't be recorded on its own still needs one so that what it reads goes to the file it is nested in.
+		GenerationManifest	t_manifest			= p_evaluationContext.GetGenerationManifest();
+		DependencyRecorder	t_outerRecorder		= p_evaluationContext.GetDependencyRecorder();
+		DependencyRecorder	t_recorder			= null;
+		String				t_outerTemplate		= p_evaluationContext.GetCurrentTemplate();
+		if (t_manifest != null) {
+			if ((p_manifestSettings != null) || (t_outerRecorder != null)) {
+				t_recorder = new DependencyRecorder(t_manifest, t_outerRecorder, p_evaluationContext);
+				t_recorder.RecordTemplate((m_templateFileName != null) ? p_templateFileName : t_outerTemplate);
+				p_evaluationContext.SetDependencyRecorder(t_recorder);
+			}
+
+			if (m_templateFileName != null)
+				p_evaluationContext.SetCurrentTemplate(p_templateFileName);
+		}
+
+		GenerationManifest.OutputStamp t_output = null;
+		try {
+			// The destination sets up the file for whichever output mode is on.  In write-behind mode, it waits first for an earlier file tag that generated this same file to finish so that the right custom code is scanned.
+			File t_originalFile = new File(p_filePath + File.separator + p_fileName);
+
+			// The stamp is filled in once the file is finished, which in write-behind mode is after this returns, but the manifest isn't saved until every file is.
+			if (t_recorder != null)
+				t_output = GenerationManifest.OutputStamp.Pending(t_manifest.GetOutputKey(p_filePath, p_fileName));
+
+			String		t_source		= "the file tag at line [" + m_lineNumber + "] with template [" + p_templateFileName + "]";
+			OutputFile	t_outputFile	= p_evaluationContext.GetOutputDestination().OpenFile(t_originalFile, m_useTempFile, m_makeFileExecutable, t_output, t_source);
+			if (t_outputFile == null)
+				return false;
+
+			if (!t_outputFile.IsNewFile()) {
+				// Check to see if the file has any custom code in it.  If it does, this will save it so that the CustomCode tags can re-insert it during the file generation.
+				if (!t_outputFile.ScanCustomCode(p_evaluationContext.GetCustomCodeManager())) {
+					Logger.LogError("FileTag.WriteFile() failed to scan the file [" + t_originalFile.getAbsolutePath() + "] for custom code blocks.");
 					return false;
 				}
 			}
 
-			p_evaluationContext.PushNewCurrentNode(t_currentNode);	// This is unnecessarily redundant if we aren't changing the context above, but it simpler and cleaner, particularly if we error out in the if() below.
+			Logger.LogDebug("FileTag.WriteFile() is writing to file [" + t_originalFile.getPath() + "]");
+
+
+			p_evaluationContext.PushNewCurrentNode(p_currentNode);	// This is unnecessarily redundant if we aren't changing the context above, but it simpler and cleaner, particularly if we error out in the if() below.
 
 			int t_tagSettingsManagerStackDepth = p_evaluationContext.GetTabSettingsManagerStackDepth();	// This is kinda fugly, but it's the only way I could come up with to figure out if the file contains a TagSettings tag so that we can pop it below if it does.
 
 
-			BufferedWriter	t_fileWriter		= new BufferedWriter(new FileWriter(t_targetFile));
-			Cursor			t_fileWriterCursor	= new Cursor(t_fileWriter);
+			Writer t_fileWriter = GetFileOutputFilters(p_evaluationContext).Wrap(t_outputFile.OpenWriter());		// The cursor writes to the filters so that its columns are for the text before it's filtered.
+
+			Cursor t_fileWriterCursor = new Cursor(t_fileWriter);
 
 			p_evaluationContext.PushNewCursor(t_fileWriterCursor);
 
-			for (Tag_Base t_nextTag: m_tagList) {
+			for (Tag_Base t_nextTag: p_contents) {
 				if (!t_nextTag.Evaluate(p_evaluationContext)) {
+					t_outputFile.Abandon();
 					t_fileWriter.close();
-					Logger.LogError("FileTag.Evaluate() failed for template file [" + t_templateFileName + "] writing to output file [" + t_targetFile.getAbsolutePath() + "].");
+					Logger.LogError("FileTag.WriteFile() failed for template file [" + p_templateFileName + "] writing to output file [" + t_originalFile.getAbsolutePath() + "].");
 					p_evaluationContext.PopCurrentCursor();	// We need to clean up the temp cursor before we fail out of the function.
 
 // NOTE!!! I put this in at first, but then I remembered that it can be useful sometimes to see where the generator failed in the file so I commented it out.  I'll leave this here just in case there's ever a reason to bring it back.
 					// If we were using a temp file, we need to delete it before we return.
 //					if (m_useTempFile) {
-//						Logger.LogError("FileTag.Evaluate() will delete the temp file [" + t_targetFile.getAbsolutePath() + "].");
+//						Logger.LogError("FileTag.WriteFile() will delete the temp file [" + t_targetFile.getAbsolutePath() + "].");
 //						if (!t_targetFile.delete()) {
-//							Logger.LogError("FileTag.Evaluate() failed to delete the temp file [" + t_targetFile.getAbsolutePath() + "].");
+//							Logger.LogError("FileTag.WriteFile() failed to delete the temp file [" + t_targetFile.getAbsolutePath() + "].");
 //							return false;
 //						}
 //					}
@@ -455,42 +802,108 @@ public class FileTag extends Tag_Base {
 
 			p_evaluationContext.PopCurrentNode();
 
-			t_fileWriter.close();
+			t_fileWriter.close();	// In write-behind mode, this hands the rest of the file off.
 			p_evaluationContext.PopCurrentCursor();	// We need to throw away the file cursor now that we're done with it.
 
-
-			// Finally, if we were using a temp file, we need to delete the original file and replace it with the temp file.
-			if (m_useTempFile) {
-				if (t_originalFile.exists() && !t_originalFile.delete()) {
-					Logger.LogError("FileTag.Evaluate() failed to delete the original file [" + t_targetFile.getAbsolutePath() + "].");
-					return false;
-				}
-
-				if (!t_targetFile.renameTo(t_originalFile)) {
-					Logger.LogError("FileTag.Evaluate() failed to rename the temp file [" + t_targetFile.getAbsolutePath() + "] to the original file name [" + t_originalFile.getAbsolutePath() + "].");
-					return false;
-				}
-
-				Logger.LogDebug("FileTag.Evaluate() replaced the original file [" + t_originalFile.getPath() + "] with the temp file [" + t_targetFile.getPath() + "]");
-			}
-
-			if (m_makeFileExecutable) {
-				if (Files.setPosixFilePermissions(Paths.get(t_originalFile.getAbsolutePath()), PosixFilePermissions.fromString("rwxr--r--")) == null) {
-					Logger.LogError("FileTag.Evaluate() failed to set the permissions for the destination file [" + t_originalFile.getAbsolutePath() + "].");
-					return false;
-				}
-			}
+			if (!t_outputFile.Close())
+				return false;
 		}
 		catch (Throwable t_error) {
-			Logger.LogException("FileTag.Evaluate() failed with error: ", t_error);
+			Logger.LogException("FileTag.WriteFile() failed with error: ", t_error);
 			return false;
 		}
+		finally {
+			p_evaluationContext.SetCustomCodeManager(t_outerCustomCodeManager);
+			p_evaluationContext.SetDependencyRecorder(t_outerRecorder);
+			p_evaluationContext.SetCurrentTemplate(t_outerTemplate);
+		}
+
+		if (t_recorder != null) {
+			if (t_outerRecorder != null)
+				t_outerRecorder.RecordNestedOutput(t_output);
+
+			if ((p_manifestSettings != null) && t_recorder.IsRecordable())
+				t_manifest.AddEntry(p_manifestSettings, t_output, t_recorder);
+		}
 
-		IncrementFileCount();
 		return true;
 	}
 
 
+	//*********************************
+	/**
+	 * @return The global output filters with this tag's settings in place of any that it sets.
+	 */
+	private OutputFilters GetFileOutputFilters(EvaluationContext p_evaluationContext) {
+		return p_evaluationContext.GetOutputFilters().Override(m_lineEndings, m_trimWhitespace, m_finalNewline);
+	}
+
+
+	//*********************************
+	/**
+	 * If the template name is constant, then it can be compiled into a template bundle ahead of time.  Wrapped contents are
+	 * already in m_tagList and get walked by the base class.
+	 */
+	@Override
+	public void CollectTemplateReferences(Collection<String> p_templateNames) {
+		if (m_templateFileName != null) {
+			String t_templateFileName = m_templateFileName.GetConstantText();
+			if (t_templateFileName != null)
+				p_templateNames.add(t_templateFileName);
+		}
+
+		super.CollectTemplateReferences(p_templateNames);
+	}
+
+
+	//*********************************
+	/**
+	 * A nested file tag is checked as part of the file it is nested in since, if it can't be forked, it will be evaluated inline
+	 * in whatever thread is generating that file.
+	 */
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		if (m_templateFileName == null)
+			return super.CheckForkSafety(p_check);
+
+		return p_check.CheckTemplate(m_templateFileName.GetConstantText());
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteEvalValue(m_templateFileName);
+		p_writer.WriteBoolean(m_useTempFile);
+		p_writer.WriteString(m_contextName);
+		p_writer.WriteBoolean(m_makeFileExecutable);
+		p_writer.WriteEvalValue(m_fileName);
+		p_writer.WriteEvalValue(m_destinationDirectory);
+		p_writer.WriteInt(m_lineEndings);
+		p_writer.WriteInt(m_trimWhitespace);
+		p_writer.WriteInt(m_finalNewline);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_templateFileName		= p_reader.ReadEvalValue();
+		m_useTempFile			= p_reader.ReadBoolean();
+		m_contextName			= p_reader.ReadString();
+		m_makeFileExecutable	= p_reader.ReadBoolean();
+		m_fileName				= p_reader.ReadEvalValue();
+		m_destinationDirectory	= p_reader.ReadEvalValue();
+		m_lineEndings			= p_reader.ReadInt();
+		m_trimWhitespace		= p_reader.ReadInt();
+		m_finalNewline			= p_reader.ReadInt();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
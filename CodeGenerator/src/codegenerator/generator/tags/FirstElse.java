@@ -24,6 +24,7 @@ package codegenerator.generator.tags;
 
 import coreutil.logging.*;
 
+import java.io.*;
 import java.util.*;
 
 import codegenerator.generator.utils.*;
@@ -74,8 +75,6 @@ public class FirstElse extends Tag_Base {
 
 	static private final String		ATTRIBUTE_OPTIONAL_COUNTER_NAME		= "optionalCounterName";
 
-	private LoopCounter			m_currentCounter		= null;
-	private int					m_lastCounterValue		= 0;
 	private GeneralBlock		m_firstBlock			= null;
 	private GeneralBlock		m_elseBlock				= null;
 	private	String				m_optionalCounterName	= null;	// Providing a name for the loop counter lets you specify using a named loop counter from a forEach tag other than the one directly containing this first tag.
@@ -177,27 +176,18 @@ public class FirstElse extends Tag_Base {
 				return false;
 			}
 
-			// Since an instance of First will exist across any number of passes for different config nodes and even output files, each time we come into a particular instance of First we have to check to see if the counter we are working with has changed and, if it has, reset this instance as if it has never seen the counter.
-			if (m_currentCounter != null) {
-				if (m_currentCounter != t_iterationCounter) {
-					m_currentCounter	= t_iterationCounter;
-					m_lastCounterValue	= 0;
-				}
-			}
-			else
-				m_currentCounter = t_iterationCounter;
-
-
+			// Since an instance of First will exist across any number of passes for different config nodes and even output files, the last counter value it saw is kept on the counter itself instead of on this tag.  That way a new counter starts out as if this tag has never seen it and, since nothing is stored here, the same parsed tree can be evaluated by more than one thread at a time.
 			boolean	t_firstTimeThrough	= false;
+			int		t_lastCounterValue	= t_iterationCounter.GetLastValueSeenBy(this);
 			int		t_nextCounterValue	= t_iterationCounter.GetCounter();
 			if (t_nextCounterValue == 0)
 				return true;					// Until the counter is > 0, we can't even do the "first" pass, much less the "else", so we'll short-circuit out here.
-			else if (m_lastCounterValue == 0)
+			else if (t_lastCounterValue == 0)
 				t_firstTimeThrough	= true;
-			else if (m_lastCounterValue == t_nextCounterValue)
+			else if (t_lastCounterValue == t_nextCounterValue)
 				return true;					// I don't think this can happen, but just in case, if the value hasn't changed, then we need to exit this loop.
 
-			m_lastCounterValue	= t_nextCounterValue;
+			t_iterationCounter.SetLastValueSeenBy(this, t_nextCounterValue);
 
 			if (t_firstTimeThrough) {
 				LinkedList<Tag_Base> t_contents = m_firstBlock.GetChildTagList();
@@ -225,4 +215,65 @@ public class FirstElse extends Tag_Base {
 
 		return true;
 	}
+
+
+	//*********************************
+	@Override
+	public void CollectTemplateReferences(Collection<String> p_templateNames) {
+		if (m_firstBlock != null)
+			m_firstBlock.CollectTemplateReferences(p_templateNames);
+
+		if (m_elseBlock != null)
+			m_elseBlock.CollectTemplateReferences(p_templateNames);
+	}
+
+
+	//*********************************
+	@Override
+	public void CollectVariableDefinitions(Collection<Variable> p_definitions) {
+		if (m_firstBlock != null)
+			m_firstBlock.CollectVariableDefinitions(p_definitions);
+
+		if (m_elseBlock != null)
+			m_elseBlock.CollectVariableDefinitions(p_definitions);
+	}
+
+
+	//*********************************
+	/**
+	 * A counter from outside the file carries what this tag has seen from one file to the next, so a snapshot of it would
+	 * lose that.
+	 */
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		if (!p_check.IsLocalCounter(m_optionalCounterName))
+			return false;
+
+		if ((m_firstBlock != null) && !m_firstBlock.CheckForkSafety(p_check))
+			return false;
+
+		return (m_elseBlock == null) || m_elseBlock.CheckForkSafety(p_check);
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteTag(m_firstBlock);
+		p_writer.WriteTag(m_elseBlock);
+		p_writer.WriteString(m_optionalCounterName);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_firstBlock			= (GeneralBlock)p_reader.ReadTag();
+		m_elseBlock				= (GeneralBlock)p_reader.ReadTag();
+		m_optionalCounterName	= p_reader.ReadString();
+	}
 }
@@ -142,9 +142,9 @@ public class FirstLetterToLowerCase extends Tag_Base {
 			StringBuilder	t_newValue		= new StringBuilder();
 
 			t_newValue.append(Character.toLowerCase(t_sourceValue.charAt(0)));
-			t_newValue.append(t_sourceValue.subSequence(1, t_sourceValue.length()));
+			t_newValue.append(t_sourceValue, 1, t_sourceValue.length());
 
-			p_evaluationContext.GetCursor().Write(t_newValue.toString());
+			p_evaluationContext.GetCursor().Write(t_newValue, 0, t_newValue.length());
 		}
 		catch (Throwable t_error) {
 			Logger.LogException("FirstLetterToLowerCase.Evaluate() failed with error: ", t_error);
@@ -155,6 +155,24 @@ public class FirstLetterToLowerCase extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteTag(m_value);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_value = p_reader.ReadTag();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
@@ -25,6 +25,8 @@ package codegenerator.generator.tags;
 import coreutil.config.*;
 import coreutil.logging.*;
 
+import java.io.*;
+
 import codegenerator.generator.utils.*;
 
 
@@ -151,6 +153,10 @@ in those inner template files start with a <code><b>table</b></code> node as the
 not whatever outer current node is seen by the parent (which itself may be a child of some other parent node).  Looking at the
 examples in the <code><b>Examples/codegenerator</b></code> folders is the best way to understand this.</p>
 
+<p>If the generator was told to stream the config's <code><b>table</b></code> nodes (see {@link codegenerator.generator.utils.StreamedConfig}),
+they aren't in the tree at all and a <code><b>forEach</b></code> over them on <code><b>root</b></code> reads them from the config file
+one at a time instead.  Nothing changes for the tags inside the loop.</p>
+
 <h3>Attribute descriptions</h3>
 
 <p>NOTE!!!  Only one of either the <code><b>node</b></code> or <code><b>value</b></code> attributes can be used!  If both attributes are used at the same
@@ -331,27 +337,27 @@ public class ForEach extends Tag_Base {
 
 			p_evaluationContext.PushLoopCounter(t_iterationCount);	// This PushLoopCounter() has to be bookended with a matching PopCurrentLoopCounter() below!
 
-			if (m_configType == CONFIG_TYPE.NODE) {
-				for (ConfigNode t_nextConfigNode: t_currentNode.GetChildNodeList()) {
+			StreamedConfig t_streamedConfig = p_evaluationContext.GetStreamedConfig();
+			if ((m_configType == CONFIG_TYPE.NODE) && (t_streamedConfig != null) && t_streamedConfig.IsStreamed(t_currentNode, m_nodeName)) {
+				// The nodes aren't in the tree, so they are read in one at a time and each one is dropped once its iteration is done.
+				if (!t_streamedConfig.StreamNodes(m_nodeName, t_nextConfigNode -> EvaluateNode(p_evaluationContext, t_iterationCount, t_nextConfigNode))) {
+					p_evaluationContext.PopCurrentLoopCounter();
+					return false;
+				}
+			}
+			else if (m_configType == CONFIG_TYPE.NODE) {
+				for (ConfigNode t_nextConfigNode: CompactConfig.GetChildNodes(t_currentNode)) {
 					// For each child config node of the name t_nodeName, we will re-evaluate all of our child tags.
 					if (t_nextConfigNode.GetName().compareToIgnoreCase(m_nodeName) == 0) {
-						t_iterationCount.IncrementCounter();	// Now that I've changed LoopCounter to default to 0 so that it works correctly with CounterVariable, then we need to increment it here at the start of the if() instead of the end of the if().
-						p_evaluationContext.PushNewCurrentNode(t_nextConfigNode);
-
-						for (Tag_Base t_nextTag: m_tagList) {
-							if (!t_nextTag.Evaluate(p_evaluationContext)) {
-								p_evaluationContext.PopCurrentNode();
-								p_evaluationContext.PopCurrentLoopCounter();
-								return false;
-							}
+						if (!EvaluateNode(p_evaluationContext, t_iterationCount, t_nextConfigNode)) {
+							p_evaluationContext.PopCurrentLoopCounter();
+							return false;
 						}
-
-						p_evaluationContext.PopCurrentNode();
 					}
 				}
 			}
 			else if (m_configType == CONFIG_TYPE.VALUE) {
-				for (coreutil.config.ConfigValue t_nextConfigValue: t_currentNode.GetChildValueList()) {
+				for (coreutil.config.ConfigValue t_nextConfigValue: CompactConfig.GetChildValues(t_currentNode)) {
 					// For each child config node of the name t_nodeName, we will re-evaluate all of our child tags.
 					if (t_nextConfigValue.GetName().compareToIgnoreCase(m_nodeName) == 0) {
 						t_iterationCount.IncrementCounter();	// Now that I've changed LoopCounter to default to 0 so that it works correctly with CounterVariable, then we need to increment it here at the start of the if() instead of the end of the if().
@@ -371,6 +377,15 @@ public class ForEach extends Tag_Base {
 			}
 
 			p_evaluationContext.PopCurrentLoopCounter();
+
+			// The loop only depends on how many nodes it went through since the tags inside it record what they read from each one.  A value loop has nothing inside it to record the values, so all of them are recorded.
+			DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+			if (t_recorder != null) {
+				if (m_configType == CONFIG_TYPE.NODE)
+					t_recorder.RecordNodeCount(t_currentNode, m_nodeName);
+				else if (m_configType == CONFIG_TYPE.VALUE)
+					t_recorder.RecordValueList(t_currentNode, m_nodeName);
+			}
 		}
 		catch (Throwable t_error) {
 			Logger.LogException("ForEach.Evaluate() failed with error: ", t_error);
@@ -381,6 +396,61 @@ public class ForEach extends Tag_Base {
 	}
 
 
+	//*********************************
+	/**
+	 * Evaluates all of our child tags for one of the nodes we are looping over.
+	 */
+	private boolean EvaluateNode(EvaluationContext p_evaluationContext, LoopCounter p_iterationCount, ConfigNode p_configNode) throws Throwable {
+		p_iterationCount.IncrementCounter();	// Now that I've changed LoopCounter to default to 0 so that it works correctly with CounterVariable, then we need to increment it here at the start of the if() instead of the end of the if().
+		p_evaluationContext.PushNewCurrentNode(p_configNode);
+
+		for (Tag_Base t_nextTag: m_tagList) {
+			if (!t_nextTag.Evaluate(p_evaluationContext)) {
+				p_evaluationContext.PopCurrentNode();
+				return false;
+			}
+		}
+
+		p_evaluationContext.PopCurrentNode();
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		p_check.EnterLoop(m_optionalCounterName);
+		boolean t_isSafe = super.CheckForkSafety(p_check);
+		p_check.ExitLoop();
+
+		return t_isSafe;
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_nodeName);
+		p_writer.WriteInt(m_configType.ordinal());
+		p_writer.WriteInt(m_parentReferenceCount);
+		p_writer.WriteString(m_optionalCounterName);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_nodeName				= p_reader.ReadString();
+		m_configType			= CONFIG_TYPE.values()[p_reader.ReadInt()];
+		m_parentReferenceCount	= p_reader.ReadInt();
+		m_optionalCounterName	= p_reader.ReadString();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
@@ -25,6 +25,7 @@ package codegenerator.generator.tags;
 import coreutil.config.*;
 import coreutil.logging.*;
 
+import java.io.*;
 import java.util.*;
 
 import codegenerator.generator.utils.*;
@@ -267,7 +268,31 @@ public class IfElse extends Tag_Base {
 		//*********************************
 		@Override
 		public Tag_Base GetInstance() {
-			return null;	// This should never be called for this class.
+			return new IfCondition();	// The parser never calls this for this class, but CompiledTagReader does when it loads a compiled template.
+		}
+
+
+		//*********************************
+		@Override
+		public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+			super.WriteCompiled(p_writer);
+
+			p_writer.WriteBoolean(m_testExists);
+			p_writer.WriteTag(m_attributeName);
+			p_writer.WriteTag(m_attributeValue);
+			p_writer.WriteInt(m_lineNumber);
+		}
+
+
+		//*********************************
+		@Override
+		public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+			super.ReadCompiled(p_reader);
+
+			m_testExists		= p_reader.ReadBoolean();
+			m_attributeName		= p_reader.ReadTag();
+			m_attributeValue	= p_reader.ReadTag();
+			m_lineNumber		= p_reader.ReadInt();
 		}
 
 
@@ -306,6 +331,10 @@ public class IfElse extends Tag_Base {
 						t_righthandValue = t_righthandValue.replace("^", "");
 					}
 
+					DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+					if (t_recorder != null)
+						t_recorder.RecordExists(t_nextConfigNode, t_righthandValue);
+
 					// Now that nodes and values are separate inside the ConfigManager, we have to check separately for values if there is no node by the target name.
 					if ((t_nextConfigNode.GetNode(t_righthandValue) != null) ||
 						(t_nextConfigNode.GetValue(t_righthandValue) != null))
@@ -25,6 +25,7 @@ package codegenerator.generator.tags;
 import coreutil.logging.*;
 
 import java.io.*;
+import java.util.*;
 
 import codegenerator.generator.utils.*;
 
@@ -93,32 +94,33 @@ public class Include extends Tag_Base {
 
 
 	//*********************************
-	public boolean ParseFile(String p_fileName) {
+	/**
+	 * Gets the parsed template file from the shared TemplateCache so that the file is only parsed once no matter how many tags point at it.
+	 *
+	 * @param p_fileName
+	 * @return NULL if the file doesn't exist or couldn't be parsed.
+	 */
+	public Tag_Base LoadTemplate(String p_fileName) {
 		try {
 			File t_templateFile = new File(p_fileName);
 			if (!t_templateFile.exists()) {
-				Logger.LogFatal("Include.ParseFile() could not open the template file [" + m_templateFileName + "] at line number [" + m_lineNumber + "].");
-				return false;
+				Logger.LogFatal("Include.LoadTemplate() could not open the template file [" + p_fileName + "] at line number [" + m_lineNumber + "].");
+				return null;
 			}
 
-			if (m_tagList != null)
-				m_tagList.clear();	// We have to be sure to clear any existing contents that might exist from a previous evaluation.
-
-			// Parse the template file.  The passed in p_tokenizer is from a parent file's contents, but here we are going to parse the indicated template file for this tag and add its execution tree to this tag object so that when the parent's execution tree is being evaluated, this template file's tree can also be evaluated.
-			TemplateParser t_parser = new TemplateParser();
-			Tag_Base t_template = t_parser.ParseTemplate(t_templateFile);
+			Tag_Base t_template = TemplateCache.GetTemplate(t_templateFile);
 			if (t_template == null) {
-				Logger.LogError("Include.ParseFile() failed in file [" + t_templateFile.getAbsolutePath() + "] at line number [" + m_lineNumber + "].");
-				return false;
+				Logger.LogError("Include.LoadTemplate() failed in file [" + t_templateFile.getAbsolutePath() + "] at line number [" + m_lineNumber + "].");
+				return null;
 			}
 
-			AddChildTag(t_template);
+			Variable.DefineVariables(t_template);	// The same as when every tag parsed its own copy, the template's "set" tags define their variables each time a tag loads it, whether it was cached or not.
 
-			return true;
+			return t_template;
 		}
 		catch (Throwable t_error) {
-			Logger.LogException("Include.ParseFile() failed with error at line number [" + m_lineNumber + "] in file [" + m_templateFileName + "]: ", t_error);
-			return false;
+			Logger.LogException("Include.LoadTemplate() failed with error at line number [" + m_lineNumber + "] in file [" + p_fileName + "]: ", t_error);
+			return null;
 		}
 	}
 
@@ -141,31 +143,40 @@ public class Include extends Tag_Base {
 				return false;
 			}
 
-			// We only need to parse the file if this is the first time through (no child tags exist i.e. file not loaded) or if the filename is not constant (i.e. the filename has to be evaluated and loaded every time we pass through).
-			if (!HasContentTags() || !m_templateFileName.IsConstant()) {
-				if (!ParseFile(t_templateFileName)) {
+			// We only need to load the file if this is the first time through or if the filename is not constant (i.e. the filename has to be evaluated and loaded every time we pass through).
+			Tag_Base t_template = p_evaluationContext.GetResolvedTemplate(this);
+			if (t_template == null) {
+				t_template = LoadTemplate(t_templateFileName);
+				if (t_template == null) {
 					Logger.LogFatal("Include.Evaluate() failed to parse the template file [" + t_templateFileName + "] at line number [" + m_lineNumber + "].");
 					return false;
 				}
-			}
 
-			// I realize that I could mash this check into the nested if() above, but I feel more comfortable with it here since there isn't any way for SURE of getting past here if no tags were read from a file.
-			if (!HasContentTags()) {
-				Logger.LogError("Include.Evaluate() found no content for the template file [" + t_templateFileName + "] at line [" + m_lineNumber + "].");
-				return false;
+				if (m_templateFileName.IsConstant())
+					p_evaluationContext.SetResolvedTemplate(this, t_template);	// The included tree is kept in the context rather than in m_tagList so that this tag is never changed by evaluating it.
 			}
 
 			// We don't do all of the context changes that a regular FileTab object does because an include is always executing inside another file, so the passed-in context is correct and should not be changed.
 			// However, it is possible that the included file has its own TabSettings tag, so we do need to be able to pop it if it gets added.
 			int t_tagSettingsManagerStackDepth = p_evaluationContext.GetTabSettingsManagerStackDepth();	// This is kinda fugly, but it's the only way I could come up with to figure out if the file contains a TagSettings tag so that we can pop it below if it does.
 
-			for (Tag_Base t_nextTag: m_tagList) {
-				if (!t_nextTag.Evaluate(p_evaluationContext)) {
-					Logger.LogError("Include.Evaluate() failed in template file [" + t_templateFileName + "] at line number [" + m_lineNumber + "].");
-					return false;
-				}
+			// In incremental mode, the file this is in depends on the included template, too.
+			String t_outerTemplate = p_evaluationContext.GetCurrentTemplate();
+			if (p_evaluationContext.GetGenerationManifest() != null) {
+				DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+				if (t_recorder != null)
+					t_recorder.RecordTemplate(t_templateFileName);
+
+				p_evaluationContext.SetCurrentTemplate(t_templateFileName);
 			}
 
+			if (!t_template.Evaluate(p_evaluationContext)) {
+				Logger.LogError("Include.Evaluate() failed in template file [" + t_templateFileName + "] at line number [" + m_lineNumber + "].");
+				return false;
+			}
+
+			p_evaluationContext.SetCurrentTemplate(t_outerTemplate);
+
 			// If the file added a TabSettingsManager, then we need to pop it here.  And since it's possible for someone to have accidently included more than one tabSettings tag, we need to loop here to be sure that we've gotten all of them.
 			while(t_tagSettingsManagerStackDepth < p_evaluationContext.GetTabSettingsManagerStackDepth())
 				p_evaluationContext.PopTabSettingsManager();
@@ -179,6 +190,45 @@ public class Include extends Tag_Base {
 	}
 
 
+	//*********************************
+	/**
+	 * If the template name is constant, then it can be compiled into a template bundle ahead of time.
+	 */
+	@Override
+	public void CollectTemplateReferences(Collection<String> p_templateNames) {
+		String t_templateFileName = m_templateFileName.GetConstantText();
+		if (t_templateFileName != null)
+			p_templateNames.add(t_templateFileName);
+
+		super.CollectTemplateReferences(p_templateNames);
+	}
+
+
+	//*********************************
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		return p_check.CheckTemplate(m_templateFileName.GetConstantText());
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteEvalValue(m_templateFileName);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_templateFileName = p_reader.ReadEvalValue();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
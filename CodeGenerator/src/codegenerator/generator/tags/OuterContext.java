@@ -25,6 +25,9 @@ package codegenerator.generator.tags;
 import coreutil.config.*;
 import coreutil.logging.*;
 
+import java.io.*;
+import java.util.*;
+
 import codegenerator.generator.utils.*;
 
 
@@ -258,4 +261,49 @@ public class OuterContext extends Tag_Base {
 
 		return true;
 	}
+
+
+	//*********************************
+	@Override
+	public void CollectTemplateReferences(Collection<String> p_templateNames) {
+		if (m_contents != null)
+			m_contents.CollectTemplateReferences(p_templateNames);
+	}
+
+
+	//*********************************
+	@Override
+	public void CollectVariableDefinitions(Collection<Variable> p_definitions) {
+		if (m_contents != null)
+			m_contents.CollectVariableDefinitions(p_definitions);
+	}
+
+
+	//*********************************
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		return (m_contents == null) || m_contents.CheckForkSafety(p_check);
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_contextName);
+		p_writer.WriteInt(m_jumpToParentContextCount);
+		p_writer.WriteTag(m_contents);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_contextName				= p_reader.ReadString();
+		m_jumpToParentContextCount	= p_reader.ReadInt();
+		m_contents					= (GeneralBlock)p_reader.ReadTag();
+	}
 }
@@ -26,6 +26,8 @@ import codegenerator.generator.utils.*;
 import coreutil.config.*;
 import coreutil.logging.*;
 
+import java.io.*;
+
 
 
 /**
@@ -143,6 +145,10 @@ public class OuterContextEval extends Tag_Base {
 				return false;
 			}
 
+			DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+			if (t_recorder != null)
+				t_recorder.RecordOuterContext(m_contextName, t_contextNode);
+
 			p_evaluationContext.PushNewCurrentNode(t_contextNode);
 
 			// We'll us a ConfigValue to do the dirty work of getting the value out of the config.
@@ -166,6 +172,26 @@ public class OuterContextEval extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_contextName);
+		p_writer.WriteString(m_valuePath);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_contextName	= p_reader.ReadString();
+		m_valuePath		= p_reader.ReadString();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
@@ -124,7 +124,7 @@ public class TabMarker extends Tag_Base {
 				return false;
 			}
 
-			t_tabsManager.SetMarker(t_tabsManager.GetCurrentLineLength(p_evaluationContext.GetCursor().GetCurrentLineContents()));
+			t_tabsManager.SetMarker(p_evaluationContext.GetCursor().GetColumn(t_tabsManager.GetTabSize()));
 		}
 		catch (Throwable t_error) {
 			Logger.LogException("TabMarker.Evaluate() failed with error: ", t_error);
@@ -25,6 +25,8 @@ package codegenerator.generator.tags;
 import codegenerator.generator.utils.*;
 import coreutil.logging.*;
 
+import java.io.*;
+
 
 
 /**
@@ -163,6 +165,26 @@ public class TabSettings extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteInt(m_tabLength);
+		p_writer.WriteInt(m_outputType);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_tabLength		= p_reader.ReadInt();
+		m_outputType	= p_reader.ReadInt();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
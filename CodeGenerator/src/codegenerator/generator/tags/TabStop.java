@@ -25,6 +25,8 @@ package codegenerator.generator.tags;
 import codegenerator.generator.utils.*;
 import coreutil.logging.*;
 
+import java.io.*;
+
 
 
 /**
@@ -192,49 +194,45 @@ public class TabStop extends Tag_Base {
 
 
 			Cursor	t_cursor		= p_evaluationContext.GetCursor();
-			int		t_lineLength	= t_tabSettingsManager.GetCurrentLineLength(t_cursor.GetCurrentLineContents());
+			int		t_lineLength	= t_cursor.GetColumn(t_tabsize);
 			if (t_lineLength >= t_stopOffset)
 				return true;	// We're already past the tab stop requested so we don't need to do anything.
 
 
-			// If the line length isn't at a tab stop, then we'll add one tab to get it up to the next tab stop and then loop from there to get any remaining tabs.
+			// The whole pad is worked out first and then written in one go instead of one tab or space at a time.  If the line length
+			// isn't at a tab stop, then one tab gets it up to the next tab stop, unless that would go past a non-stop-boundary marker,
+			// in which case we only need enough spaces to get to the final target offset.
+			int t_tabsToAdd		= 0;
+			int t_spacesToAdd	= 0;
 			if ((t_lineLength % t_tabsize) > 0) {
 				int t_roundUpTabLineLength = ((t_lineLength / t_tabsize) + 1) * t_tabsize;	// The current line length may or may not fall on a tab boundary and adding a tab to square it up might put it passed the final target offset if we are aiming for a non-stop-boundary marker.
 				if (t_roundUpTabLineLength <= t_stopOffset) {
-					// If it is safe to add a tab's worth of space without going past the final target offset, then do so.
 					t_lineLength = t_roundUpTabLineLength;
-
-					if (t_tabSettingsManager.GetOutputType() == TabSettingsManager.OUTPUT_TYPE_TABS)
-						t_cursor.Write("\t");
-					else
-						AddTabSpaces(t_cursor, t_tabsize - (t_lineLength % t_tabsize));
+					++t_tabsToAdd;
 				}
 				else {
-					// Otherwise, we are dealing with a non-stop-boundary marker and we only need to add enough spaces to get to the final target offset.
-					for (int i = (t_stopOffset - t_lineLength); i > 0; --i)
-						t_cursor.Write(" ");
-
-					return true;	// We're done if we get here.
+					t_spacesToAdd	= t_stopOffset - t_lineLength;
+					t_lineLength	= t_stopOffset;
 				}
 			}
 
 			// Now that we have the line length to a tab stop, we can add full tab stops (and, in the case of a non-stop-boundary marker, trailing spaces) until we reach the target offset.
-			int t_remainingLength		= t_stopOffset - t_lineLength;
-			int t_remainingTabsToAdd	= t_remainingLength / t_tabsize;
-			int t_remainingSpacesToAdd	= t_remainingLength % t_tabsize;
-
-			while (t_remainingTabsToAdd > 0) {
-				if (t_tabSettingsManager.GetOutputType() == TabSettingsManager.OUTPUT_TYPE_TABS)
-					t_cursor.Write("\t");
-				else
-					AddTabSpaces(t_cursor, t_tabsize);
-
-				--t_remainingTabsToAdd;
-			}
-
-			while (t_remainingSpacesToAdd > 0) {
-				t_cursor.Write(" ");
-				--t_remainingSpacesToAdd;
+			int t_remainingLength = t_stopOffset - t_lineLength;
+			t_tabsToAdd		+= t_remainingLength / t_tabsize;
+			t_spacesToAdd	+= t_remainingLength % t_tabsize;
+
+			// In spaces mode, every tab is written as a full tab's worth of spaces.  That includes the one that squares the line up to a
+			// tab stop, which overshoots the stop when the line was part way into a tab, but that's how this has always padded so
+			// existing output doesn't change.
+			CharSequence t_padding;
+			if (t_tabSettingsManager.GetOutputType() == TabSettingsManager.OUTPUT_TYPE_TABS)
+				t_padding = t_tabSettingsManager.GetPadding(t_tabsToAdd, t_spacesToAdd);
+			else
+				t_padding = t_tabSettingsManager.GetPadding(0, (t_tabsToAdd * t_tabsize) + t_spacesToAdd);
+
+			if (!t_cursor.Write(t_padding, 0, t_padding.length())) {
+				Logger.LogError("TabStop.Evaluate() failed to write the padding.");
+				return false;
 			}
 		}
 		catch (Throwable t_error) {
@@ -247,9 +245,22 @@ public class TabStop extends Tag_Base {
 
 
 	//*********************************
-	private void AddTabSpaces(Cursor p_writer, int p_spaceCount) {
-		for (int i = 0; i < p_spaceCount; i++)
-			p_writer.Write(" ");
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteInt(m_stopType);
+		p_writer.WriteInt(m_offset);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_stopType	= p_reader.ReadInt();
+		m_offset	= p_reader.ReadInt();
 	}
 
 
@@ -34,6 +34,12 @@ import codegenerator.generator.utils.*;
 /**
 	The base class definition for all tag subclasses.  Most tags can contain child
 	tags so this also provides the common functionality to add and evaluate child tags.
+
+	<p>A tag tree must not be changed once it has been parsed (or read from a {@link TemplateBundle}).  The TemplateCache shares
+	one tree between every tag that uses the same template and, in parallel mode, the same tree is evaluated by several threads at
+	once, so Evaluate() must only change things that belong to the {@link EvaluationContext} it is given.  Anything a tag needs to
+	remember from one evaluation to the next has to be kept there, or on something the context owns like a {@link LoopCounter},
+	and not in the tag's own members.</p>
 */
 public abstract class Tag_Base {
 
@@ -216,6 +222,108 @@ public abstract class Tag_Base {
 	}
 
 
+	//*********************************
+	/**
+	 * Used by {@link codegenerator.generator.TemplateCompiler} to find every template file that this tree can reach through <code>file</code> and
+	 * <code>include</code> tags so that they can all be compiled into the same bundle.  The base class just walks the child
+	 * tags.  Tags that keep child content outside of m_tagList need to override this so that content gets walked, too.
+	 *
+	 * @param p_templateNames	The constant template file names found so far.  Names that have to be evaluated can't be known
+	 * until generation time so they aren't added.
+	 */
+	public void CollectTemplateReferences(Collection<String> p_templateNames) {
+		if (m_tagList == null)
+			return;
+
+		for (Tag_Base t_nextTag: m_tagList)
+			t_nextTag.CollectTemplateReferences(p_templateNames);
+	}
+
+
+	//*********************************
+	/**
+	 * Used by {@link Variable#DefineVariables(Tag_Base)} to find the variable "set" tags in a template that has just been
+	 * loaded.  The base class just walks the child tags.  Tags that keep child content outside of m_tagList need to override this so
+	 * that content gets walked, too.
+	 *
+	 * @param p_definitions		The "set" tags found so far, in template order.
+	 */
+	public void CollectVariableDefinitions(Collection<Variable> p_definitions) {
+		if (m_tagList == null)
+			return;
+
+		for (Tag_Base t_nextTag: m_tagList)
+			t_nextTag.CollectVariableDefinitions(p_definitions);
+	}
+
+
+	//*********************************
+	/**
+	 * Used by {@link FileTag} in parallel mode to find out if its file can be evaluated in a forked context.  The base class just
+	 * walks the child tags.  Tags that keep child content outside of m_tagList, create counters or touch state that outlives the
+	 * file need to override this.  See {@link ForkSafetyCheck} for what makes a file unsafe.
+	 *
+	 * @param p_check
+	 * @return false if evaluating this tag in a forked context could change the output.
+	 */
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		if (m_tagList == null)
+			return true;
+
+		for (Tag_Base t_nextTag: m_tagList) {
+			if (!t_nextTag.CheckForkSafety(p_check))
+				return false;
+		}
+
+		return true;
+	}
+
+
+	//*********************************
+	/**
+	 * Writes this tag's parsed state for a {@link TemplateBundle}.  The base class writes the line number and the child
+	 * tags.  A child class that has its own members set by Init() or Parse() needs to override this and
+	 * {@link #ReadCompiled(CompiledTagReader)} to write and read them in the same order.  Members that only hold parse-time
+	 * or evaluation-time state are not written.  If what any tag writes changes, then TemplateBundle's version has to be
+	 * bumped so that old bundles are rejected instead of misread.
+	 *
+	 * @param p_writer
+	 * @throws IOException
+	 */
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		p_writer.WriteInt(m_lineNumber);
+
+		if (m_tagList == null) {
+			p_writer.WriteInt(-1);
+			return;
+		}
+
+		p_writer.WriteInt(m_tagList.size());
+		for (Tag_Base t_nextTag: m_tagList)
+			p_writer.WriteTag(t_nextTag);
+	}
+
+
+	//*********************************
+	/**
+	 * Reads back the state that {@link #WriteCompiled(CompiledTagWriter)} wrote into this freshly created tag.
+	 *
+	 * @param p_reader
+	 * @throws IOException
+	 */
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		m_lineNumber = p_reader.ReadInt();
+
+		int t_childCount = p_reader.ReadInt();
+		if (t_childCount < 0)
+			return;
+
+		m_tagList = new LinkedList<Tag_Base>();
+		for (int i = 0; i < t_childCount; ++i)
+			m_tagList.add(p_reader.ReadTag());
+	}
+
+
 	//*********************************
 	/**
 	 * Output descriptive information about the tag for debugging purposes.  The output will show
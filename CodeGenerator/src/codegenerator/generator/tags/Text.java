@@ -156,7 +156,8 @@ public class Text extends Tag_Base {
 			TagParser			t_tagParser;
 			Tag_Base	t_newTag;
 
-			while ((t_nextToken = p_tokenizer.GetNextToken()) != null) {
+			// The contents of a text tag only need to be split at the delimiters, so we let the tokenizer hand us the text between them in one piece.  Tag elements (i.e. attribute names and values) still need the fine-grained tokens.
+			while ((t_nextToken = (m_parsingTagElement ? p_tokenizer.GetNextToken() : p_tokenizer.GetNextTextToken())) != null) {
 				switch (t_nextToken.m_tokenType) {
 					case Token.TOKEN_TYPE_OPENING_DELIMITER:
 						t_tagParser = new TagParser();
@@ -235,14 +236,14 @@ public class Text extends Tag_Base {
 							return true;
 						}
 
-						t_collectedText.append(t_nextToken.m_tokenValue);
+						t_nextToken.AppendTo(t_collectedText);
 						break;
 
 					case Token.TOKEN_TYPE_WHITE_SPACE:
 						if (m_parsingTagElement) {
 							// If we are parsing a tag element and quotes are to be treated as the end of the text, then white spaces are part of the text and have to be added to the local text.
 							if (m_expectClosingQuotes) {
-								t_collectedText.append(t_nextToken.m_tokenValue);
+								t_nextToken.AppendTo(t_collectedText);
 								break;
 							}
 
@@ -254,11 +255,15 @@ public class Text extends Tag_Base {
 						}
 
 						// Otherwise, white space is always part of the text block so we need to capture it.
-						t_collectedText.append(t_nextToken.m_tokenValue);
+						t_nextToken.AppendTo(t_collectedText);
 						break;
 
 					case Token.TOKEN_TYPE_WORD:
-						t_collectedText.append(t_nextToken.m_tokenValue);	// We always have to capture words as part of the text block.
+						t_nextToken.AppendTo(t_collectedText);	// We always have to capture words as part of the text block.
+						break;
+
+					case Token.TOKEN_TYPE_TEXT:
+						t_nextToken.AppendTo(t_collectedText);	// A raw span of text from the template that runs up to the next delimiter.
 						break;
 
 					case Token.TOKEN_TYPE_DOUBLE_QUOTE:
@@ -283,7 +288,7 @@ public class Text extends Tag_Base {
 						}
 
 						// Otherwise, quotes are always part of the text block so we need to capture them.
-						t_collectedText.append(t_nextToken.m_tokenValue);
+						t_nextToken.AppendTo(t_collectedText);
 						break;
 
 					default:
@@ -385,6 +390,24 @@ public class Text extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_text);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_text = p_reader.ReadString();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
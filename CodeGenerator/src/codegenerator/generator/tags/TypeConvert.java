@@ -25,6 +25,8 @@ package codegenerator.generator.tags;
 import codegenerator.generator.utils.*;
 import coreutil.logging.*;
 
+import java.io.*;
+
 
 
 /**
@@ -267,6 +269,10 @@ public class TypeConvert extends Tag_Base {
 
 			String t_convertedType = DataTypeManager.GetTypeConversion(m_targetLanguage, t_sourceTypeValue, m_groupID);
 
+			DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+			if (t_recorder != null)
+				t_recorder.RecordTypeConversion(m_targetLanguage, t_sourceTypeValue, m_groupID, t_convertedType);
+
 			if ((t_convertedType != null) && !t_convertedType.isEmpty())
 				p_evaluationContext.GetCursor().Write(t_convertedType);
 			else
@@ -282,6 +288,28 @@ public class TypeConvert extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_targetLanguage);
+		p_writer.WriteTag(m_sourceType);
+		p_writer.WriteString(m_groupID);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_targetLanguage	= p_reader.ReadString();
+		m_sourceType		= p_reader.ReadTag();
+		m_groupID			= p_reader.ReadString();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
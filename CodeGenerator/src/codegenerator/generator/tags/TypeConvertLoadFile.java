@@ -25,6 +25,8 @@ package codegenerator.generator.tags;
 import codegenerator.generator.utils.*;
 import coreutil.logging.*;
 
+import java.io.*;
+
 
 
 /**
@@ -48,7 +50,6 @@ public class TypeConvertLoadFile extends Tag_Base {
 
 	// Data members
 	private OptionalEvalValue	m_filePath		= null;
-	private boolean				m_fileLoaded	= false;
 
 
 	//*********************************
@@ -108,25 +109,50 @@ public class TypeConvertLoadFile extends Tag_Base {
 	@Override
 	public boolean Evaluate(EvaluationContext p_evaluationContext)
 	{
-		if (!m_fileLoaded) {
-			String t_filePath = m_filePath.Evaluate(p_evaluationContext);
-			if ((t_filePath == null) || t_filePath.isBlank()) {
-				Logger.LogError("TypeConvertLoadFile.Evaluate() failed to evaluate the destination directory path.");
-				return false;
-			}
-
-			if (!DataTypeManager.LoadConfigFile(t_filePath)) {
-				Logger.LogError("TypeConvertLoadFile.Evaluate() failed to load the file [" + m_filePath +"] into the DataTypeManager at line number [" + m_lineNumber + "].");
-				return false;
-			}
+		String t_filePath = m_filePath.Evaluate(p_evaluationContext);
+		if ((t_filePath == null) || t_filePath.isBlank()) {
+			Logger.LogError("TypeConvertLoadFile.Evaluate() failed to evaluate the destination directory path.");
+			return false;
+		}
 
-			m_fileLoaded = true;
+		// This used to keep a flag on the tag so that it only loaded the file the first time through, but the DataTypeManager now remembers which files it has loaded, so it's safe to call every time and the tag doesn't change during evaluation.
+		if (!DataTypeManager.LoadConfigFile(t_filePath)) {
+			Logger.LogError("TypeConvertLoadFile.Evaluate() failed to load the file [" + m_filePath +"] into the DataTypeManager at line number [" + m_lineNumber + "].");
+			return false;
 		}
 
 		return true;
 	}
 
 
+	//*********************************
+	/**
+	 * The types have to be loaded before the files after this one are generated, so this has to run in order.
+	 */
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		return false;
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteEvalValue(m_filePath);
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_filePath = p_reader.ReadEvalValue();
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
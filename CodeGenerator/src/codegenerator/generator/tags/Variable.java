@@ -25,7 +25,9 @@ package codegenerator.generator.tags;
 import coreutil.config.*;
 import coreutil.logging.*;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import codegenerator.generator.utils.*;
 
@@ -58,6 +60,11 @@ Obviously, all of the config value references inside the  must also be valid for
 <p><code><b>optionalContextName</b></code>:  this is an optional attribute.  Now that outer contexts exist, I had to add this so that
 variables could be made to work even inside inner contexts when the variable's definition uses values from the outer context.
 
+<p>A "set" defines its variable each time a <code>file</code> or <code>include</code> tag loads the template it is in, which is the
+first time that tag is evaluated, or every time if its template name has to be evaluated.  The root template's are defined when the
+generation starts.  If more than one template sets the same name, the one that was loaded last wins.  See
+{@link #DefineVariables(Tag_Base)}.</p>
+
 */
 public class Variable extends Tag_Base {
 
@@ -77,13 +84,49 @@ public class Variable extends Tag_Base {
 
 
 	// Static members
-	static protected final TreeMap<String, Tag_Base>		m_variableMap	= new TreeMap<>();
+	static private final ConcurrentHashMap<String, Variable>	s_definitions	= new ConcurrentHashMap<>();	// The "set" tag that currently defines each variable.  In parallel mode, files are evaluated on many threads at once while a template that is loaded on one of them may be defining more.
 
 
 	// Data members
-	private String		m_variableName	= null;
-	private int			m_evalMode		= EVAL_MODE_VALUE_UNDEFINED;	// This is the name of the config node that will be the temporary "root" node for each iteration of the loop.  For example, if this is == "class", then when we enter Evaluate(), we will run through the loop once for each "class" child node we find on the passed-in p_currentNode.
-	private	String		m_contextName	= null;					// The optional outer context in which to evaluate this variable.
+	private String		m_variableName		= null;
+	private int			m_evalMode			= EVAL_MODE_VALUE_UNDEFINED;	// This is the name of the config node that will be the temporary "root" node for each iteration of the loop.  For example, if this is == "class", then when we enter Evaluate(), we will run through the loop once for each "class" child node we find on the passed-in p_currentNode.
+	private	String		m_contextName		= null;					// The optional outer context in which to evaluate this variable.
+	private Tag_Base	m_setBlock			= null;					// Only for a "set":  the contents that define the variable.
+	private String		m_sourceTemplate	= null;					// Only for a "set":  the template file it is in so that a file that uses the variable can record that it depends on it.
+
+
+	//===========================================
+	/**
+	 * Makes the "set" tags in a template the current definitions of their variables, in the order they are in the template.  The
+	 * tags that load a template call this every time they load it, even if the {@link TemplateCache} already had it, so the
+	 * definitions come in the same order they did when every tag parsed its own copy.
+	 *
+	 * @param p_template
+	 */
+	static public void DefineVariables(Tag_Base p_template) {
+		ArrayList<Variable> t_definitions = new ArrayList<>();
+		p_template.CollectVariableDefinitions(t_definitions);
+
+		for (Variable t_definition: t_definitions)
+			s_definitions.put(t_definition.m_variableName, t_definition);
+	}
+
+
+	//===========================================
+	/**
+	 * @return The definition that a variable evaluates to in the context:  the one the file was forked with if it was forked, since the
+	 * parent may have loaded a template that sets it again since then, or the current one.
+	 */
+	static private Variable GetDefinition(EvaluationContext p_evaluationContext, String p_variableName) {
+		Map<String, Variable> t_forkedDefinitions = p_evaluationContext.GetVariableDefinitions();
+		if (t_forkedDefinitions != null) {
+			Variable t_definition = t_forkedDefinitions.get(p_variableName);
+			if (t_definition != null)
+				return t_definition;
+		}
+
+		return s_definitions.get(p_variableName);
+	}
 
 
 	//*********************************
@@ -180,7 +223,11 @@ public class Variable extends Tag_Base {
 				return false;
 			}
 
-			m_variableMap.put(m_variableName, t_generalBlock);
+			// The variable isn't defined until the whole template has been loaded.  See DefineVariables().
+			m_setBlock = t_generalBlock;
+
+			File t_sourceTemplateFile = p_tokenizer.GetSourceTemplateFile();
+			m_sourceTemplate = (t_sourceTemplateFile != null) ? t_sourceTemplateFile.getAbsolutePath() : null;
 
 			return true;
 		}
@@ -199,8 +246,8 @@ public class Variable extends Tag_Base {
 			if (m_evalMode == EVAL_MODE_VALUE_SET)		// Don't do anything for instances that are "set"s.  Those are never "evaluated".
 				return true;
 			else if (m_evalMode == EVAL_MODE_VALUE_EVALUATE) {
-				Tag_Base t_evalBlock = m_variableMap.get(m_variableName);
-				if (t_evalBlock == null) {
+				Variable t_definition = GetDefinition(p_evaluationContext, m_variableName);
+				if (t_definition == null) {
 					Logger.LogError("Variable.Evaluate() did not find a evaluation tag for variable [" + m_variableName + "] at line [" + m_lineNumber + "].");
 					return false;
 				}
@@ -215,9 +262,18 @@ public class Variable extends Tag_Base {
 					}
 				}
 
+				// The variable's contents usually come from a different template than the one using it, so that template has to be recorded, too.
+				DependencyRecorder t_recorder = p_evaluationContext.GetDependencyRecorder();
+				if (t_recorder != null) {
+					t_recorder.RecordTemplate(t_definition.m_sourceTemplate);
+
+					if (m_contextName != null)
+						t_recorder.RecordOuterContext(m_contextName, t_currentNode);
+				}
+
 				p_evaluationContext.PushNewCurrentNode(t_currentNode);	// This is unnecessarily redundant if we aren't changing the context above, but it simpler and cleaner, particularly if we error out in the if() below.
 
-				if (!t_evalBlock.Evaluate(p_evaluationContext)) {
+				if (!t_definition.m_setBlock.Evaluate(p_evaluationContext)) {
 					p_evaluationContext.PopCurrentNode();
 					return false;
 				}
@@ -238,6 +294,84 @@ public class Variable extends Tag_Base {
 	}
 
 
+	//*********************************
+	@Override
+	public void CollectTemplateReferences(Collection<String> p_templateNames) {
+		if (m_setBlock != null)
+			m_setBlock.CollectTemplateReferences(p_templateNames);
+	}
+
+
+	//*********************************
+	@Override
+	public void CollectVariableDefinitions(Collection<Variable> p_definitions) {
+		if (m_evalMode != EVAL_MODE_VALUE_SET)
+			return;
+
+		p_definitions.add(this);
+
+		if (m_setBlock != null)
+			m_setBlock.CollectVariableDefinitions(p_definitions);
+	}
+
+
+	//*********************************
+	/**
+	 * A "set" is never evaluated, but one in a template that the file pulls in is defined when that template is loaded, so it keeps
+	 * the file in order.  An "evaluate" checks the contents of the definition that it would evaluate.  If the variable isn't defined
+	 * yet, the file isn't forked so that the error, or the template that defines it in the meantime, comes in the same order as serial
+	 * mode.
+	 */
+	@Override
+	public boolean CheckForkSafety(ForkSafetyCheck p_check) {
+		if (m_evalMode == EVAL_MODE_VALUE_SET)
+			return !p_check.IsInPulledInTemplate();	// The tag that pulls the template in defines it when it is evaluated, so the file has to stay in order.
+
+		if (m_evalMode != EVAL_MODE_VALUE_EVALUATE)
+			return true;
+
+		Variable t_definition = GetDefinition(p_check.GetEvaluationContext(), m_variableName);
+		if (t_definition == null)
+			return false;
+
+		p_check.AddVariableDefinition(m_variableName, t_definition);
+		return p_check.CheckTemplate(t_definition.m_setBlock);
+	}
+
+
+	//*********************************
+	@Override
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		super.WriteCompiled(p_writer);
+
+		p_writer.WriteString(m_variableName);
+		p_writer.WriteInt(m_evalMode);
+		p_writer.WriteString(m_contextName);
+
+		// A "set" keeps its contents outside of m_tagList, so they have to be written here or the variable won't exist when the bundle is read.
+		if (m_evalMode == EVAL_MODE_VALUE_SET) {
+			p_writer.WriteTag(m_setBlock);
+			p_writer.WriteString(m_sourceTemplate);
+		}
+	}
+
+
+	//*********************************
+	@Override
+	public void ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		super.ReadCompiled(p_reader);
+
+		m_variableName	= p_reader.ReadString();
+		m_evalMode		= p_reader.ReadInt();
+		m_contextName	= p_reader.ReadString();
+
+		if (m_evalMode == EVAL_MODE_VALUE_SET) {
+			m_setBlock			= p_reader.ReadTag();
+			m_sourceTemplate	= p_reader.ReadString();
+		}
+	}
+
+
 	//*********************************
 	@Override
 	public String Dump(String p_tabs) {
@@ -247,7 +381,8 @@ public class Variable extends Tag_Base {
 		t_dump.append(p_tabs + "Variable name   :  " + m_variableName	+ "\n");
 		t_dump.append(p_tabs + "Evaluation mode :  " + m_evalMode		+ "\n");
 
-		t_dump.append("\n\n" + m_variableMap.get(m_variableName).Dump(p_tabs + "\t"));
+		if (m_setBlock != null)
+			t_dump.append("\n\n" + m_setBlock.Dump(p_tabs + "\t"));
 
 		return t_dump.toString();
 	}
@@ -0,0 +1,409 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.util.*;
+
+import javax.xml.parsers.*;
+
+import org.xml.sax.*;
+import org.xml.sax.helpers.*;
+
+import coreutil.config.*;
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>Loads a config values file into a more compact tree than XMLConfigParser builds, for big config files.  ConfigNode keeps its
+ * children in two LinkedLists and finds them by walking the list and comparing each name without case, and every node and value
+ * has its own copy of its name even though a big file has the same few names ("table", "column", "name", "sqlName", ...) tens of
+ * thousands of times.  The nodes here are still ConfigNodes, so the tags use them the same way, but:</p>
+ *
+ * <ul>
+ * <li>every name and value is interned for the load, so each distinct one is only in memory once.  Values like "String", "true"
+ * and "false" repeat about as often as the names do,</li>
+ * <li>the children are in arrays sized to fit and</li>
+ * <li>each node keeps the lower-case form of its children's names, also interned, so finding a child by name is a string compare
+ * against a key that is lower-cased once per lookup instead of a case-insensitive compare against every child.</li>
+ * </ul>
+ *
+ * <p>The lower-casing uses the root locale, which gives the same matches as ConfigNode's compareToIgnoreCase() for the names that
+ * config files use.  ConfigNode's own lists are left empty, so the child lists that GetChildNodeList() and GetChildValueList() return
+ * are built from the arrays the first time each one is asked for and kept after that.  The tags that loop over the children use
+ * {@link #GetChildNodes(ConfigNode)} and {@link #GetChildValues(ConfigNode)} instead, which just wrap the arrays.  The tree is
+ * read-only once it is loaded.</p>
+ */
+public class CompactConfig {
+
+	static private final ConfigNode[]	NO_NODES	= new ConfigNode[0];
+	static private final ConfigValue[]	NO_VALUES	= new ConfigValue[0];
+	static private final String[]		NO_KEYS		= new String[0];
+
+
+	//===========================================
+	/**
+	 * Parses the config values file the same way XMLConfigParser does.
+	 *
+	 * @return The root node or NULL if it failed.
+	 */
+	static public ConfigNode Load(File p_configFile) {
+		if (!p_configFile.exists()) {
+			Logger.LogError("CompactConfig.Load() could not find the config values file [" + p_configFile.getPath() + "].");
+			return null;
+		}
+
+		try {
+			CompactParser t_parser = new CompactParser();
+			SAXParserFactory.newInstance().newSAXParser().parse(p_configFile, t_parser);
+
+			return t_parser.GetRootNode();
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("CompactConfig.Load() failed to parse the config values file [" + p_configFile.getPath() + "]: ", t_error);
+			return null;
+		}
+	}
+
+
+	//===========================================
+	/**
+	 * @return The node's child nodes, without copying them if it's a compact node.
+	 */
+	static public List<ConfigNode> GetChildNodes(ConfigNode p_node) {
+		if (p_node instanceof CompactNode)
+			return Arrays.asList(((CompactNode)p_node).m_childNodes);
+
+		return p_node.GetChildNodeList();
+	}
+
+
+	//===========================================
+	/**
+	 * @return The node's child values, without copying them if it's a compact node.
+	 */
+	static public List<ConfigValue> GetChildValues(ConfigNode p_node) {
+		if (p_node instanceof CompactNode)
+			return Arrays.asList(((CompactNode)p_node).m_childValues);
+
+		return p_node.GetChildValueList();
+	}
+
+
+
+	/**
+	 * A node with its children in arrays.  The keys are the lower-case names of the children, in the same order.
+	 */
+	static private class CompactNode extends ConfigNode {
+
+		// Data members
+		private ConfigNode[]	m_childNodes		= NO_NODES;
+		private String[]		m_childNodeKeys		= NO_KEYS;
+		private ConfigValue[]	m_childValues		= NO_VALUES;
+		private String[]		m_childValueKeys	= NO_KEYS;
+
+		private volatile	LinkedList<ConfigNode>	m_childNodeList		= null;
+		private volatile	LinkedList<ConfigValue>	m_childValueList	= null;
+
+
+		//*********************************
+		public CompactNode(String p_name, ConfigNode p_parentNode) {
+			super(p_name, p_parentNode);
+		}
+
+
+		//*********************************
+		@Override
+		public LinkedList<ConfigNode> GetChildNodeList() {
+			LinkedList<ConfigNode> t_childNodeList = m_childNodeList;
+			if (t_childNodeList == null) {
+				// Built once, when it's first asked for, since the threads that generate files in parallel can all be asking.
+				synchronized (this) {
+					if (m_childNodeList == null)
+						m_childNodeList = new LinkedList<>(Arrays.asList(m_childNodes));
+
+					t_childNodeList = m_childNodeList;
+				}
+			}
+
+			return t_childNodeList;
+		}
+
+
+		//*********************************
+		@Override
+		public LinkedList<ConfigValue> GetChildValueList() {
+			LinkedList<ConfigValue> t_childValueList = m_childValueList;
+			if (t_childValueList == null) {
+				synchronized (this) {
+					if (m_childValueList == null)
+						m_childValueList = new LinkedList<>(Arrays.asList(m_childValues));
+
+					t_childValueList = m_childValueList;
+				}
+			}
+
+			return t_childValueList;
+		}
+
+
+		//*********************************
+		@Override
+		public int GetChildNodeCount() {
+			return m_childNodes.length;
+		}
+
+
+		//*********************************
+		@Override
+		public ListIterator<ConfigNode> GetChildNodeIterator() {
+			return Collections.unmodifiableList(Arrays.asList(m_childNodes)).listIterator();
+		}
+
+
+		//*********************************
+		/**
+		 * Same as ConfigNode's:  the path is the dot-separated names of the nodes to go down through, matched without case.
+		 */
+		@Override
+		public ConfigNode GetNode(String p_path) {
+			ConfigNode t_node = this;
+			for (String t_name: p_path.split("\\.")) {
+				t_node = FindChildNode(t_node, t_name);
+				if (t_node == null)
+					return null;
+			}
+
+			return t_node;
+		}
+
+
+		//*********************************
+		/**
+		 * Same as ConfigNode's:  the last name in the path is the value's.
+		 */
+		@Override
+		public ConfigValue GetValue(String p_path) {
+			String[]	t_names	= p_path.split("\\.");
+			ConfigNode	t_node	= this;
+			for (int i = 0; i < t_names.length - 1; ++i) {
+				t_node = FindChildNode(t_node, t_names[i]);
+				if (t_node == null)
+					return null;
+			}
+
+			return FindChildValue(t_node, t_names[t_names.length - 1]);
+		}
+
+
+		//*********************************
+		@Override
+		public ConfigNode AddNode(String p_name) {
+			Logger.LogError("CompactConfig.CompactNode.AddNode() can't add the node [" + p_name + "] because a compact config is read-only.");
+			return null;
+		}
+
+
+		//*********************************
+		@Override
+		public ConfigValue AddValue(String p_name, String p_value) {
+			Logger.LogError("CompactConfig.CompactNode.AddValue() can't add the value [" + p_name + "] because a compact config is read-only.");
+			return null;
+		}
+
+
+		//*********************************
+		static private ConfigNode FindChildNode(ConfigNode p_node, String p_name) {
+			if (!(p_node instanceof CompactNode))
+				return p_node.GetNode(p_name);
+
+			CompactNode	t_node	= (CompactNode)p_node;
+			String		t_key	= p_name.toLowerCase(Locale.ROOT);
+			for (int i = 0; i < t_node.m_childNodeKeys.length; ++i) {
+				if (t_node.m_childNodeKeys[i].equals(t_key))
+					return t_node.m_childNodes[i];
+			}
+
+			return null;
+		}
+
+
+		//*********************************
+		static private ConfigValue FindChildValue(ConfigNode p_node, String p_name) {
+			if (!(p_node instanceof CompactNode))
+				return p_node.GetValue(p_name);
+
+			CompactNode	t_node	= (CompactNode)p_node;
+			String		t_key	= p_name.toLowerCase(Locale.ROOT);
+			for (int i = 0; i < t_node.m_childValueKeys.length; ++i) {
+				if (t_node.m_childValueKeys[i].equals(t_key))
+					return t_node.m_childValues[i];
+			}
+
+			return null;
+		}
+	}
+
+
+
+	/**
+	 * Follows XMLConfigParser's rules:  an optional "Config" root element, otherwise the first node is the root, and a value's text
+	 * is everything inside its element.  The children of each open node are collected in lists and moved into arrays when it ends.
+	 */
+	static private class CompactParser extends DefaultHandler {
+
+		/**
+		 * A node that is still being parsed.
+		 */
+		static private class OpenNode {
+			private final CompactNode				m_node;
+			private final ArrayList<ConfigNode>		m_childNodes	= new ArrayList<>();
+			private final ArrayList<ConfigValue>	m_childValues	= new ArrayList<>();
+
+			public OpenNode(CompactNode p_node) {
+				m_node = p_node;
+			}
+		}
+
+
+		// Data members
+		private final	HashMap<String, String>		m_names				= new HashMap<>();		// The interned names, values and lower-case keys.  It's only needed while loading.
+		private final	ArrayDeque<OpenNode>		m_openNodes			= new ArrayDeque<>();
+		private			CompactNode					m_rootNode			= null;
+		private			boolean						m_hasConfigRoot		= false;
+		private			String						m_valueName			= null;					// Only set inside a value.
+		private			String						m_valueDescription	= null;
+		private final	StringBuilder				m_valueText			= new StringBuilder();
+
+
+		//*********************************
+		public ConfigNode GetRootNode() {
+			return m_rootNode;
+		}
+
+
+		//*********************************
+		@Override
+		public void startElement(String p_uri, String p_localName, String p_qName, Attributes p_attributes) throws SAXException {
+			if (p_qName.equalsIgnoreCase(XMLConfigParser.CONFIG_TAG)) {
+				m_rootNode		= new CompactNode(null, null);
+				m_hasConfigRoot	= true;
+				m_openNodes.push(new OpenNode(m_rootNode));
+			}
+			else if (p_qName.equalsIgnoreCase(XMLConfigParser.NODE_TAG)) {
+				String		t_name			= Intern(p_attributes.getValue(XMLConfigParser.NAME_ATTR));
+				String		t_description	= p_attributes.getValue(XMLConfigParser.DESCRIPTION_ATTR);
+				OpenNode	t_parent		= m_openNodes.peek();
+				CompactNode	t_node			= new CompactNode(t_name, (t_parent != null) ? t_parent.m_node : null);
+				if (t_parent != null)
+					t_parent.m_childNodes.add(t_node);
+				else
+					m_rootNode = t_node;
+
+				if (t_description != null)
+					t_node.SetDescription(t_description);
+
+				m_openNodes.push(new OpenNode(t_node));
+			}
+			else if (p_qName.equalsIgnoreCase(XMLConfigParser.VALUE_TAG)) {
+				if (m_openNodes.isEmpty())
+					throw new SAXException("CompactConfig found the value [" + p_attributes.getValue(XMLConfigParser.NAME_ATTR) + "] outside of any node.");
+
+				m_valueName			= Intern(p_attributes.getValue(XMLConfigParser.NAME_ATTR));
+				m_valueDescription	= p_attributes.getValue(XMLConfigParser.DESCRIPTION_ATTR);
+				m_valueText.setLength(0);
+			}
+			else
+				throw new SAXException("CompactConfig found the unknown tag [" + p_qName + "].");
+		}
+
+
+		//*********************************
+		@Override
+		public void characters(char[] p_chars, int p_start, int p_length) throws SAXException {
+			if (m_valueName != null)
+				m_valueText.append(p_chars, p_start, p_length);
+		}
+
+
+		//*********************************
+		@Override
+		public void ignorableWhitespace(char[] p_chars, int p_start, int p_length) throws SAXException {
+			characters(p_chars, p_start, p_length);
+		}
+
+
+		//*********************************
+		@Override
+		public void endElement(String p_uri, String p_localName, String p_qName) throws SAXException {
+			if (p_qName.equalsIgnoreCase(XMLConfigParser.VALUE_TAG)) {
+				ConfigValue t_value = new ConfigValue(m_valueName, Intern(m_valueText.toString()));
+				if (m_valueDescription != null)
+					t_value.SetDescription(m_valueDescription);
+
+				m_openNodes.peek().m_childValues.add(t_value);
+				m_valueName = null;
+			}
+			else if (p_qName.equalsIgnoreCase(XMLConfigParser.NODE_TAG) || (p_qName.equalsIgnoreCase(XMLConfigParser.CONFIG_TAG) && m_hasConfigRoot)) {
+				OpenNode	t_openNode	= m_openNodes.pop();
+				CompactNode	t_node		= t_openNode.m_node;
+				if (!t_openNode.m_childNodes.isEmpty()) {
+					t_node.m_childNodes		= t_openNode.m_childNodes.toArray(NO_NODES);
+					t_node.m_childNodeKeys	= new String[t_node.m_childNodes.length];
+					for (int i = 0; i < t_node.m_childNodes.length; ++i)
+						t_node.m_childNodeKeys[i] = GetKey(t_node.m_childNodes[i].GetName());
+				}
+
+				if (!t_openNode.m_childValues.isEmpty()) {
+					t_node.m_childValues	= t_openNode.m_childValues.toArray(NO_VALUES);
+					t_node.m_childValueKeys	= new String[t_node.m_childValues.length];
+					for (int i = 0; i < t_node.m_childValues.length; ++i)
+						t_node.m_childValueKeys[i] = GetKey(t_node.m_childValues[i].GetName());
+				}
+			}
+		}
+
+
+		//*********************************
+		/**
+		 * @return The one copy of the string.
+		 */
+		private String Intern(String p_string) {
+			if (p_string == null)
+				return null;
+
+			String t_string = m_names.putIfAbsent(p_string, p_string);
+			return (t_string != null) ? t_string : p_string;
+		}
+
+
+		//*********************************
+		/**
+		 * @return The one copy of the name's lookup key.  It's interned in the same map since most names are already in lower case.
+		 */
+		private String GetKey(String p_name) {
+			return (p_name != null) ? Intern(p_name.toLowerCase(Locale.ROOT)) : "";
+		}
+	}
+}
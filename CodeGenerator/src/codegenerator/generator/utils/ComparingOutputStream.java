@@ -0,0 +1,173 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+
+
+/**
+ * <p>Used by {@link codegenerator.generator.tags.FileTag} when it is skipping unchanged files.  Instead of writing the generated bytes, this compares them with
+ * the file that is already there as they come in.  As long as they match, nothing is written at all, so if the whole file matches and
+ * the old file has nothing left over, then the file is never touched and {@link #IsUnchanged()} returns true after close().</p>
+ *
+ * <p>At the first difference, the output switches over to the target file.  If the target is a temp file, the bytes that matched so
+ * far are copied into it from the original first.  If the target is the original file itself, it's opened for writing at the point
+ * where it stopped matching and cut off at the end of the new content when this is closed, since everything in front of that point
+ * is already what it should be.</p>
+ */
+public class ComparingOutputStream extends OutputStream {
+
+	// Data members
+	private final File			m_originalFile;
+	private final File			m_targetFile;
+	private		  InputStream	m_original;						// Set to NULL once the output stops matching.
+	private final byte[]		m_compareBuffer		= new byte[8192];
+	private		  long			m_matchedByteCount	= 0;
+	private		  OutputStream	m_output			= null;		// Only opened once the output stops matching.
+	private		  FileChannel	m_inPlaceChannel	= null;
+	private		  boolean		m_unchanged			= false;
+	private		  boolean		m_closed			= false;
+
+
+	//*********************************
+	/**
+	 * @param p_originalFile	The existing file to compare with.
+	 * @param p_targetFile		Where to write if the output turns out to be different.  It can be the original file.
+	 * @throws IOException
+	 */
+	public ComparingOutputStream(File p_originalFile, File p_targetFile) throws IOException {
+		m_originalFile	= p_originalFile;
+		m_targetFile	= p_targetFile;
+		m_original		= new FileInputStream(p_originalFile);
+	}
+
+
+	//*********************************
+	@Override
+	public void write(int p_byte) throws IOException {
+		write(new byte[] {(byte)p_byte}, 0, 1);
+	}
+
+
+	//*********************************
+	@Override
+	public void write(byte[] p_bytes, int p_offset, int p_length) throws IOException {
+		if (m_output != null) {
+			m_output.write(p_bytes, p_offset, p_length);
+			return;
+		}
+
+		int t_comparedCount = 0;
+		int t_readCount;
+		while (t_comparedCount < p_length) {
+			t_readCount = m_original.read(m_compareBuffer, 0, Math.min(p_length - t_comparedCount, m_compareBuffer.length));
+			if ((t_readCount <= 0) || !Arrays.equals(m_compareBuffer, 0, t_readCount, p_bytes, p_offset + t_comparedCount, p_offset + t_comparedCount + t_readCount)) {
+				StartWriting();
+				m_output.write(p_bytes, p_offset, p_length);	// m_matchedByteCount only counts whole writes that matched, so all of this one still has to go out.
+				return;
+			}
+
+			t_comparedCount += t_readCount;
+		}
+
+		m_matchedByteCount += p_length;
+	}
+
+
+	//*********************************
+	@Override
+	public void flush() throws IOException {
+		if (m_output != null)
+			m_output.flush();
+	}
+
+
+	//*********************************
+	@Override
+	public void close() throws IOException {
+		if (m_closed)
+			return;
+
+		m_closed = true;
+
+		if (m_output == null) {
+			if (m_original.read() < 0) {
+				m_original.close();
+				m_unchanged = true;
+				return;
+			}
+
+			StartWriting();		// The new content is a prefix of the old file, so all that has to happen is for the rest to be cut off.
+		}
+
+		if (m_inPlaceChannel != null) {
+			m_output.flush();
+			m_inPlaceChannel.truncate(m_inPlaceChannel.position());
+		}
+
+		m_output.close();
+	}
+
+
+	//*********************************
+	/**
+	 * @return True if close() found that the generated content is the same as the original file's.
+	 */
+	public boolean IsUnchanged() {
+		return m_unchanged;
+	}
+
+
+	//*********************************
+	private void StartWriting() throws IOException {
+		m_original.close();
+		m_original = null;
+
+		if (m_targetFile.getAbsoluteFile().equals(m_originalFile.getAbsoluteFile())) {
+			m_inPlaceChannel = FileChannel.open(m_targetFile.toPath(), StandardOpenOption.WRITE);
+			m_inPlaceChannel.position(m_matchedByteCount);
+			m_output = Channels.newOutputStream(m_inPlaceChannel);
+			return;
+		}
+
+		m_output = new BufferedOutputStream(new FileOutputStream(m_targetFile));
+
+		try (InputStream t_original = new FileInputStream(m_originalFile)) {
+			long	t_remainingCount = m_matchedByteCount;
+			int		t_readCount;
+			while (t_remainingCount > 0) {
+				t_readCount = t_original.read(m_compareBuffer, 0, (int)Math.min(t_remainingCount, m_compareBuffer.length));
+				if (t_readCount <= 0)
+					throw new IOException("The file [" + m_originalFile.getPath() + "] got shorter while it was being compared.");
+
+				m_output.write(m_compareBuffer, 0, t_readCount);
+				t_remainingCount -= t_readCount;
+			}
+		}
+	}
+}
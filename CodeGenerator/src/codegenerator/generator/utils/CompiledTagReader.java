@@ -0,0 +1,139 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import codegenerator.generator.tags.*;
+
+
+
+/**
+	Reads a tag tree written by {@link CompiledTagWriter}.  The tag class names in the tree are only looked up once each and
+	then used as Prototype-pattern objects, the same way {@link TagFactory} does it, to create the rest of the instances.
+*/
+public class CompiledTagReader {
+
+	// Data members
+	private ByteBuffer				m_input;		// Reading straight from the buffer is noticeably faster than going through a DataInputStream, which makes several synchronized calls for every int.
+	private ArrayList<Tag_Base>		m_prototypes	= new ArrayList<>();
+
+
+	//*********************************
+	public CompiledTagReader(ByteBuffer p_input) {
+		m_input = p_input;
+	}
+
+
+	//*********************************
+	public int ReadInt() throws IOException {
+		try {
+			return m_input.getInt();
+		}
+		catch (BufferUnderflowException t_error) {
+			throw new EOFException("CompiledTagReader.ReadInt() ran off the end of the compiled tree.");
+		}
+	}
+
+
+	//*********************************
+	public boolean ReadBoolean() throws IOException {
+		try {
+			return (m_input.get() != 0);
+		}
+		catch (BufferUnderflowException t_error) {
+			throw new EOFException("CompiledTagReader.ReadBoolean() ran off the end of the compiled tree.");
+		}
+	}
+
+
+	//*********************************
+	public String ReadString() throws IOException {
+		int t_length = ReadInt();
+		if (t_length < 0)
+			return null;
+
+		if (t_length > m_input.remaining())
+			throw new EOFException("CompiledTagReader.ReadString() ran off the end of the compiled tree.");
+
+		String t_value = new String(m_input.array(), m_input.arrayOffset() + m_input.position(), t_length, StandardCharsets.UTF_8);
+		m_input.position(m_input.position() + t_length);
+
+		return t_value;
+	}
+
+
+	//*********************************
+	public Tag_Base ReadTag() throws IOException {
+		int t_classNumber = ReadInt();
+		if (t_classNumber == CompiledTagWriter.NULL_TAG)
+			return null;
+
+		Tag_Base t_prototype;
+		if (t_classNumber == CompiledTagWriter.NEW_TAG_CLASS) {
+			t_prototype = CreatePrototype(ReadString());
+			m_prototypes.add(t_prototype);
+		}
+		else if ((t_classNumber >= 0) && (t_classNumber < m_prototypes.size()))
+			t_prototype = m_prototypes.get(t_classNumber);
+		else
+			throw new IOException("CompiledTagReader.ReadTag() found the unknown tag class number [" + t_classNumber + "].");
+
+		Tag_Base t_tag = t_prototype.GetInstance();
+		t_tag.ReadCompiled(this);
+
+		return t_tag;
+	}
+
+
+	//*********************************
+	public OptionalEvalValue ReadEvalValue() throws IOException {
+		if (!ReadBoolean())
+			return null;
+
+		return OptionalEvalValue.ReadCompiled(this);
+	}
+
+
+	//*********************************
+	private Tag_Base CreatePrototype(String p_className) throws IOException {
+		try {
+			Class<?> t_tagClass = Class.forName(p_className);
+			if (!Tag_Base.class.isAssignableFrom(t_tagClass))
+				throw new IOException("CompiledTagReader.CreatePrototype() found the class [" + p_className + "] that is not a tag class.");
+
+			Constructor<?> t_constructor = t_tagClass.getDeclaredConstructor();
+			t_constructor.setAccessible(true);	// Some of the helper tags like IfCondition aren't public.
+
+			return (Tag_Base)t_constructor.newInstance();
+		}
+		catch (ReflectiveOperationException t_error) {
+			throw new IOException("CompiledTagReader.CreatePrototype() could not create the tag class [" + p_className + "].", t_error);
+		}
+	}
+}
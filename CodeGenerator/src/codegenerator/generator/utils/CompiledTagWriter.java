@@ -0,0 +1,121 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import codegenerator.generator.tags.*;
+
+
+
+/**
+	<p>Writes a parsed tag tree in the compact binary form that {@link TemplateBundle} stores.  Each tag writes its own members
+	in {@link Tag_Base#WriteCompiled(CompiledTagWriter)} and reads them back in the same order in
+	{@link Tag_Base#ReadCompiled(CompiledTagReader)}, so there is no reflection involved in either direction.</p>
+
+	<p>The first time a tag class shows up in a tree, its name is written out in full and given the next class number.  After
+	that, only the number is written.  {@link CompiledTagReader} builds the same table as it reads.</p>
+*/
+public class CompiledTagWriter {
+
+	static final int	NULL_TAG		= -1;
+	static final int	NEW_TAG_CLASS	= -2;
+
+
+	// Data members
+	private DataOutputStream					m_output;
+	private HashMap<Class<?>, Integer>			m_classNumbers	= new HashMap<>();
+
+
+	//*********************************
+	public CompiledTagWriter(OutputStream p_output) {
+		m_output = new DataOutputStream(p_output);
+	}
+
+
+	//*********************************
+	public void WriteInt(int p_value) throws IOException {
+		m_output.writeInt(p_value);
+	}
+
+
+	//*********************************
+	public void WriteBoolean(boolean p_value) throws IOException {
+		m_output.writeBoolean(p_value);
+	}
+
+
+	//*********************************
+	/**
+	 * Unlike DataOutputStream.writeUTF(), this has no 64K limit, which a large text block could run into.
+	 */
+	public void WriteString(String p_value) throws IOException {
+		if (p_value == null) {
+			m_output.writeInt(-1);
+			return;
+		}
+
+		byte[] t_bytes = p_value.getBytes(StandardCharsets.UTF_8);
+		m_output.writeInt(t_bytes.length);
+		m_output.write(t_bytes);
+	}
+
+
+	//*********************************
+	public void WriteTag(Tag_Base p_tag) throws IOException {
+		if (p_tag == null) {
+			m_output.writeInt(NULL_TAG);
+			return;
+		}
+
+		Integer t_classNumber = m_classNumbers.get(p_tag.getClass());
+		if (t_classNumber == null) {
+			m_output.writeInt(NEW_TAG_CLASS);
+			WriteString(p_tag.getClass().getName());
+
+			m_classNumbers.put(p_tag.getClass(), m_classNumbers.size());
+		}
+		else
+			m_output.writeInt(t_classNumber);
+
+		p_tag.WriteCompiled(this);
+	}
+
+
+	//*********************************
+	public void WriteEvalValue(OptionalEvalValue p_value) throws IOException {
+		m_output.writeBoolean(p_value != null);
+
+		if (p_value != null)
+			p_value.WriteCompiled(this);
+	}
+
+
+	//*********************************
+	public void Flush() throws IOException {
+		m_output.flush();
+	}
+}
@@ -0,0 +1,582 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+import coreutil.config.*;
+import coreutil.logging.*;
+
+
+
+/**
+	<p>A config values file converted into a binary snapshot that can be memory-mapped and used as it is instead of being parsed.
+	{@link codegenerator.generator.ConfigSnapshot_Main} writes the snapshot next to the XML file, and {@link codegenerator.generator.CodeGenerator}
+	uses it instead of the XML file as long as the XML file still has the size, modification time and CRC-32C that are recorded in
+	the snapshot's header.  The modification time alone isn't enough since a file can be replaced by a copy with an older time or
+	edited within the file system's time resolution, and the CRC catches those.  It only has to notice an edit, so it doesn't need
+	to be a cryptographic hash, and it is still far cheaper than parsing the file.</p>
+
+	<p>After the header, the snapshot has fixed-size records for all of the nodes in depth-first order, so the root is node 0,
+	then the records for the values, grouped by the node they belong to, then the child node index arrays that the node records
+	point into and last the string table:  an array of offsets followed by all of the strings in UTF-8.  Every name, value and
+	description is an index into the string table and each distinct string is only in it once.</p>
+
+	<p>Loading a snapshot only maps it and checks the header.  The nodes are {@link ConfigNode}s, so the tags navigate them the
+	same way as a parsed tree, but each one only builds its lists of child nodes and values from the records the first time it's
+	asked for them, and each string is only decoded once.  So a generation only pays for the parts of the config it reads.</p>
+
+	<p>SNAPSHOT_VERSION has to be bumped whenever the layout changes.</p>
+*/
+public class ConfigSnapshot {
+
+	static private final int	SNAPSHOT_MAGIC		= 0x43474353;	// "CGCS"
+	static private final int	SNAPSHOT_VERSION	= 2;
+
+	static private final String	SNAPSHOT_EXTENSION	= ".snapshot";
+
+	static private final int	HEADER_SIZE			= 48;			// Magic, version, source size, modification time and CRC (longs) and the node, value, child and string counts.
+	static private final int	NODE_RECORD_SIZE	= 7 * 4;		// Name, description, parent, first child, child count, first value and value count.
+	static private final int	VALUE_RECORD_SIZE	= 3 * 4;		// Name, value and description.
+	static private final int	NO_STRING			= -1;
+
+
+	//===========================================
+	/**
+	 * @return Where the snapshot for the config values file goes.
+	 */
+	static public File GetSnapshotFile(File p_configFile) {
+		return new File(p_configFile.getPath() + SNAPSHOT_EXTENSION);
+	}
+
+
+	//===========================================
+	/**
+	 * Only reads the snapshot's header.  The contents of the config values file are checked against the CRC when it is loaded.
+	 *
+	 * @return True if the snapshot file exists and was made from a config values file with the same size and modification time.
+	 */
+	static public boolean IsCurrent(File p_configFile, File p_snapshotFile) {
+		if (!p_snapshotFile.isFile())
+			return false;
+
+		try (DataInputStream t_headerStream = new DataInputStream(new BufferedInputStream(new FileInputStream(p_snapshotFile), HEADER_SIZE))) {
+			return (p_snapshotFile.length() >= HEADER_SIZE)
+				&& (t_headerStream.readInt() == SNAPSHOT_MAGIC)
+				&& (t_headerStream.readInt() == SNAPSHOT_VERSION)
+				&& (t_headerStream.readLong() == p_configFile.length())
+				&& (t_headerStream.readLong() == p_configFile.lastModified());
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("ConfigSnapshot.IsCurrent() failed with error for the snapshot file [" + p_snapshotFile.getPath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//===========================================
+	/**
+	 * @return The CRC-32C of the file's contents.
+	 */
+	static private long GetSourceCRC(File p_configFile) throws IOException {
+		CRC32C t_crc = new CRC32C();
+		try (FileChannel t_configChannel = FileChannel.open(p_configFile.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer t_buffer = ByteBuffer.allocateDirect(65536);
+			while (t_configChannel.read(t_buffer) >= 0) {
+				t_buffer.flip();
+				t_crc.update(t_buffer);
+				t_buffer.clear();
+			}
+		}
+
+		return t_crc.getValue();
+	}
+
+
+	//===========================================
+	/**
+	 * Parses the config values file and writes its snapshot, replacing any existing one.
+	 *
+	 * @return The number of nodes written or -1 if it failed.
+	 */
+	static public int Write(File p_configFile, File p_snapshotFile) {
+		try {
+			// These are taken before the file is parsed so that an edit that lands in the middle of it makes the snapshot stale instead of wrong.
+			long t_sourceSize			= p_configFile.length();
+			long t_sourceModifiedTime	= p_configFile.lastModified();
+			long t_sourceCRC			= GetSourceCRC(p_configFile);
+
+			RawValueParser	t_parser	= new RawValueParser();
+			ConfigNode		t_rootNode	= t_parser.ParseConfigFile(p_configFile);
+			if (t_rootNode == null) {
+				Logger.LogError("ConfigSnapshot.Write() failed to parse the config values file [" + p_configFile.getPath() + "].");
+				return -1;
+			}
+
+			// Number the nodes depth first and pool the strings.
+			ArrayList<ConfigNode>		t_nodes			= new ArrayList<>();
+			HashMap<String, Integer>	t_stringIndexes	= new HashMap<>();
+			ArrayList<byte[]>			t_strings		= new ArrayList<>();
+			ArrayDeque<ConfigNode>		t_pending		= new ArrayDeque<>();
+			t_pending.push(t_rootNode);
+			while (!t_pending.isEmpty()) {
+				ConfigNode t_node = t_pending.pop();
+				t_nodes.add(t_node);
+
+				// Pushed in reverse so that they come back off in order.
+				Iterator<ConfigNode> t_children = t_node.GetChildNodeList().descendingIterator();
+				while (t_children.hasNext())
+					t_pending.push(t_children.next());
+			}
+
+			IdentityHashMap<ConfigNode, Integer> t_nodeIndexes = new IdentityHashMap<>(t_nodes.size());
+			for (int i = 0; i < t_nodes.size(); ++i)
+				t_nodeIndexes.put(t_nodes.get(i), i);
+
+			int t_valueCount = 0;
+			int t_childCount = 0;
+			for (ConfigNode t_node: t_nodes) {
+				t_valueCount += t_node.GetChildValueList().size();
+				t_childCount += t_node.GetChildNodeCount();
+			}
+
+			ByteArrayOutputStream	t_recordBytes	= new ByteArrayOutputStream();
+			DataOutputStream		t_records		= new DataOutputStream(t_recordBytes);
+			int						t_nextChild		= 0;
+			int						t_nextValue		= 0;
+			for (ConfigNode t_node: t_nodes) {
+				ConfigNode t_parentNode = t_node.GetParentNode();
+
+				t_records.writeInt(AddString(t_node.GetName(), t_stringIndexes, t_strings));
+				t_records.writeInt(AddString(t_node.GetDescription(), t_stringIndexes, t_strings));
+				t_records.writeInt((t_parentNode != null) ? t_nodeIndexes.get(t_parentNode) : -1);
+				t_records.writeInt(t_nextChild);
+				t_records.writeInt(t_node.GetChildNodeCount());
+				t_records.writeInt(t_nextValue);
+				t_records.writeInt(t_node.GetChildValueList().size());
+
+				t_nextChild += t_node.GetChildNodeCount();
+				t_nextValue += t_node.GetChildValueList().size();
+			}
+
+			for (ConfigNode t_node: t_nodes) {
+				for (ConfigValue t_value: t_node.GetChildValueList()) {
+					t_records.writeInt(AddString(t_value.GetName(), t_stringIndexes, t_strings));
+					t_records.writeInt(AddString(t_parser.GetRawValue(t_value), t_stringIndexes, t_strings));
+					t_records.writeInt(AddString(t_value.GetDescription(), t_stringIndexes, t_strings));
+				}
+			}
+
+			for (ConfigNode t_node: t_nodes) {
+				for (ConfigNode t_childNode: t_node.GetChildNodeList())
+					t_records.writeInt(t_nodeIndexes.get(t_childNode));
+			}
+
+			t_records.flush();
+
+			// Writing to a temp file and moving it into place means that a generation that starts in the middle of this never sees half of a snapshot.
+			File t_tempFile = new File(p_snapshotFile.getPath() + ".tmp");
+			try (DataOutputStream t_snapshotStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(t_tempFile), 65536))) {
+				t_snapshotStream.writeInt(SNAPSHOT_MAGIC);
+				t_snapshotStream.writeInt(SNAPSHOT_VERSION);
+				t_snapshotStream.writeLong(t_sourceSize);
+				t_snapshotStream.writeLong(t_sourceModifiedTime);
+				t_snapshotStream.writeLong(t_sourceCRC);
+				t_snapshotStream.writeInt(t_nodes.size());
+				t_snapshotStream.writeInt(t_valueCount);
+				t_snapshotStream.writeInt(t_childCount);
+				t_snapshotStream.writeInt(t_strings.size());
+
+				t_recordBytes.writeTo(t_snapshotStream);
+
+				int t_stringOffset = 0;
+				for (byte[] t_string: t_strings) {
+					t_snapshotStream.writeInt(t_stringOffset);
+					t_stringOffset += t_string.length;
+				}
+
+				t_snapshotStream.writeInt(t_stringOffset);
+
+				for (byte[] t_string: t_strings)
+					t_snapshotStream.write(t_string);
+			}
+
+			Files.move(t_tempFile.toPath(), p_snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			return t_nodes.size();
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("ConfigSnapshot.Write() failed with error for the config values file [" + p_configFile.getPath() + "]: ", t_error);
+			return -1;
+		}
+	}
+
+
+	//===========================================
+	static private int AddString(String p_string, HashMap<String, Integer> p_stringIndexes, ArrayList<byte[]> p_strings) {
+		if (p_string == null)
+			return NO_STRING;
+
+		Integer t_index = p_stringIndexes.get(p_string);
+		if (t_index == null) {
+			t_index = p_strings.size();
+			p_stringIndexes.put(p_string, t_index);
+			p_strings.add(p_string.getBytes(StandardCharsets.UTF_8));
+		}
+
+		return t_index;
+	}
+
+
+	//===========================================
+	/**
+	 * Maps the snapshot.
+	 *
+	 * @param p_snapshotFile
+	 * @param p_configFile	The config values file it was made from.  It has to have the same size, modification time and contents as it did then.
+	 * @return The root node or NULL if it isn't a snapshot this can read or it's for a different version of the file.
+	 */
+	static public ConfigNode Load(File p_snapshotFile, File p_configFile) {
+		try {
+			ByteBuffer t_snapshot;
+			try (FileChannel t_snapshotChannel = FileChannel.open(p_snapshotFile.toPath(), StandardOpenOption.READ)) {
+				t_snapshot = t_snapshotChannel.map(FileChannel.MapMode.READ_ONLY, 0, t_snapshotChannel.size());	// The mapping stays valid after the channel is closed.
+			}
+
+			if ((t_snapshot.limit() < HEADER_SIZE) || (t_snapshot.getInt(0) != SNAPSHOT_MAGIC)) {
+				Logger.LogError("ConfigSnapshot.Load() found that the file [" + p_snapshotFile.getPath() + "] is not a config snapshot.");
+				return null;
+			}
+
+			int t_version = t_snapshot.getInt(4);
+			if (t_version != SNAPSHOT_VERSION) {
+				Logger.LogError("ConfigSnapshot.Load() found snapshot version [" + t_version + "] in the file [" + p_snapshotFile.getPath() + "] but it only reads version [" + SNAPSHOT_VERSION + "].  The snapshot needs to be rewritten.");
+				return null;
+			}
+
+			if ((t_snapshot.getLong(8) != p_configFile.length()) || (t_snapshot.getLong(16) != p_configFile.lastModified()) || (t_snapshot.getLong(24) != GetSourceCRC(p_configFile))) {
+				Logger.LogError("ConfigSnapshot.Load() found that the snapshot [" + p_snapshotFile.getPath() + "] was made from a different version of the config values file [" + p_configFile.getPath() + "].");
+				return null;
+			}
+
+			SnapshotData t_data = new SnapshotData(t_snapshot, t_snapshot.getInt(32), t_snapshot.getInt(36), t_snapshot.getInt(40), t_snapshot.getInt(44));
+			if (!t_data.IsComplete()) {
+				Logger.LogError("ConfigSnapshot.Load() found that the snapshot [" + p_snapshotFile.getPath() + "] is truncated.");
+				return null;
+			}
+
+			return t_data.GetNode(0, null);
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("ConfigSnapshot.Load() failed with error for the snapshot file [" + p_snapshotFile.getPath() + "]: ", t_error);
+			return null;
+		}
+	}
+
+
+
+	/**
+	 * ConfigValue's GetStringValue() does the config substitution, but the snapshot has to have the values the way they are in the
+	 * file so that the substitution is done when the snapshot's values are read instead.  So this keeps its own copy of each value's
+	 * text as it is parsed.
+	 */
+	static private class RawValueParser extends XMLConfigParser {
+
+		// Data members
+		private final IdentityHashMap<ConfigValue, StringBuilder>	m_rawValues	= new IdentityHashMap<>();
+
+
+		//*********************************
+		public String GetRawValue(ConfigValue p_value) {
+			StringBuilder t_rawValue = m_rawValues.get(p_value);
+			return (t_rawValue != null) ? t_rawValue.toString() : "";
+		}
+
+
+		//*********************************
+		@Override
+		public void characters(char[] p_chars, int p_start, int p_length) throws org.xml.sax.SAXException {
+			if (m_inValue && (m_currentValue != null))
+				m_rawValues.computeIfAbsent(m_currentValue, t_value -> new StringBuilder()).append(p_chars, p_start, p_length);
+
+			super.characters(p_chars, p_start, p_length);
+		}
+
+
+		//*********************************
+		@Override
+		public void ignorableWhitespace(char[] p_chars, int p_start, int p_length) throws org.xml.sax.SAXException {
+			if (m_inValue && (m_currentValue != null))
+				m_rawValues.computeIfAbsent(m_currentValue, t_value -> new StringBuilder()).append(p_chars, p_start, p_length);
+
+			super.ignorableWhitespace(p_chars, p_start, p_length);
+		}
+	}
+
+
+
+	/**
+	 * The mapped snapshot.  It is only ever read with absolute gets, so it is safe to share between the threads that generate files
+	 * in parallel.  The decoded strings are cached in a plain array since two threads decoding the same string just get equal ones.
+	 */
+	static private class SnapshotData {
+
+		// Data members
+		private final ByteBuffer	m_snapshot;
+		private final int			m_nodeStart;
+		private final int			m_valueStart;
+		private final int			m_childStart;
+		private final int			m_stringOffsetStart;
+		private final int			m_stringDataStart;
+		private final int			m_stringCount;
+		private final String[]		m_strings;
+
+
+		//*********************************
+		public SnapshotData(ByteBuffer p_snapshot, int p_nodeCount, int p_valueCount, int p_childCount, int p_stringCount) {
+			m_snapshot			= p_snapshot;
+			m_nodeStart			= HEADER_SIZE;
+			m_valueStart		= m_nodeStart	+ (p_nodeCount * NODE_RECORD_SIZE);
+			m_childStart		= m_valueStart	+ (p_valueCount * VALUE_RECORD_SIZE);
+			m_stringOffsetStart	= m_childStart	+ (p_childCount * 4);
+			m_stringDataStart	= m_stringOffsetStart + ((p_stringCount + 1) * 4);
+			m_stringCount		= p_stringCount;
+			m_strings			= new String[p_stringCount];
+		}
+
+
+		//*********************************
+		public boolean IsComplete() {
+			return (m_stringDataStart <= m_snapshot.limit()) && (m_stringDataStart + m_snapshot.getInt(m_stringOffsetStart + (m_stringCount * 4)) == m_snapshot.limit());
+		}
+
+
+		//*********************************
+		public SnapshotNode GetNode(int p_nodeIndex, ConfigNode p_parentNode) {
+			int t_record = m_nodeStart + (p_nodeIndex * NODE_RECORD_SIZE);
+			return new SnapshotNode(this, t_record, GetString(m_snapshot.getInt(t_record)), GetString(m_snapshot.getInt(t_record + 4)), p_parentNode);
+		}
+
+
+		//*********************************
+		public LinkedList<ConfigNode> GetChildNodes(int p_record, SnapshotNode p_parentNode) {
+			LinkedList<ConfigNode>	t_childNodes	= new LinkedList<>();
+			int						t_firstChild	= m_snapshot.getInt(p_record + 12);
+			int						t_childCount	= m_snapshot.getInt(p_record + 16);
+			for (int i = 0; i < t_childCount; ++i)
+				t_childNodes.add(GetNode(m_snapshot.getInt(m_childStart + ((t_firstChild + i) * 4)), p_parentNode));
+
+			return t_childNodes;
+		}
+
+
+		//*********************************
+		public LinkedList<ConfigValue> GetChildValues(int p_record) {
+			LinkedList<ConfigValue>	t_childValues	= new LinkedList<>();
+			int						t_firstValue	= m_snapshot.getInt(p_record + 20);
+			int						t_valueCount	= m_snapshot.getInt(p_record + 24);
+			int						t_valueRecord;
+			for (int i = 0; i < t_valueCount; ++i) {
+				t_valueRecord = m_valueStart + ((t_firstValue + i) * VALUE_RECORD_SIZE);
+
+				ConfigValue t_value = new ConfigValue(GetString(m_snapshot.getInt(t_valueRecord)), GetString(m_snapshot.getInt(t_valueRecord + 4)));
+
+				String t_description = GetString(m_snapshot.getInt(t_valueRecord + 8));
+				if (t_description != null)
+					t_value.SetDescription(t_description);
+
+				t_childValues.add(t_value);
+			}
+
+			return t_childValues;
+		}
+
+
+		//*********************************
+		private String GetString(int p_stringIndex) {
+			if (p_stringIndex == NO_STRING)
+				return null;
+
+			String t_string = m_strings[p_stringIndex];
+			if (t_string == null) {
+				int		t_offset	= m_snapshot.getInt(m_stringOffsetStart + (p_stringIndex * 4));
+				byte[]	t_bytes		= new byte[m_snapshot.getInt(m_stringOffsetStart + ((p_stringIndex + 1) * 4)) - t_offset];
+				m_snapshot.get(m_stringDataStart + t_offset, t_bytes);
+
+				t_string = new String(t_bytes, StandardCharsets.UTF_8);
+				m_strings[p_stringIndex] = t_string;
+			}
+
+			return t_string;
+		}
+	}
+
+
+
+	/**
+	 * A node in a snapshot.  ConfigNode's lookups go straight to its own lists, so all of them are overridden to go through the
+	 * lists that are built from the snapshot instead.  A snapshot is read-only, so nothing can be added to it.
+	 */
+	static private class SnapshotNode extends ConfigNode {
+
+		// Data members
+		private final		SnapshotData				m_data;
+		private final		int							m_record;
+		private volatile	LinkedList<ConfigNode>		m_childNodes	= null;
+		private volatile	LinkedList<ConfigValue>		m_childValues	= null;
+
+
+		//*********************************
+		public SnapshotNode(SnapshotData p_data, int p_record, String p_name, String p_description, ConfigNode p_parentNode) {
+			super(p_name, p_parentNode);
+
+			m_data		= p_data;
+			m_record	= p_record;
+
+			if (p_description != null)
+				SetDescription(p_description);
+		}
+
+
+		//*********************************
+		@Override
+		public LinkedList<ConfigNode> GetChildNodeList() {
+			LinkedList<ConfigNode> t_childNodes = m_childNodes;
+			if (t_childNodes == null) {
+				// Built once so that a node that is looked up twice is the same object both times, the way it is in a parsed tree.
+				synchronized (this) {
+					if (m_childNodes == null)
+						m_childNodes = m_data.GetChildNodes(m_record, this);
+
+					t_childNodes = m_childNodes;
+				}
+			}
+
+			return t_childNodes;
+		}
+
+
+		//*********************************
+		@Override
+		public LinkedList<ConfigValue> GetChildValueList() {
+			LinkedList<ConfigValue> t_childValues = m_childValues;
+			if (t_childValues == null) {
+				synchronized (this) {
+					if (m_childValues == null)
+						m_childValues = m_data.GetChildValues(m_record);
+
+					t_childValues = m_childValues;
+				}
+			}
+
+			return t_childValues;
+		}
+
+
+		//*********************************
+		@Override
+		public int GetChildNodeCount() {
+			return GetChildNodeList().size();
+		}
+
+
+		//*********************************
+		@Override
+		public ListIterator<ConfigNode> GetChildNodeIterator() {
+			return GetChildNodeList().listIterator();
+		}
+
+
+		//*********************************
+		/**
+		 * Same as ConfigNode's:  the path is the dot-separated names of the nodes to go down through, matched without case.
+		 */
+		@Override
+		public ConfigNode GetNode(String p_path) {
+			ConfigNode t_node = this;
+			for (String t_name: p_path.split("\\.")) {
+				t_node = FindChildNode(t_node, t_name);
+				if (t_node == null)
+					return null;
+			}
+
+			return t_node;
+		}
+
+
+		//*********************************
+		/**
+		 * Same as ConfigNode's:  the last name in the path is the value's.
+		 */
+		@Override
+		public ConfigValue GetValue(String p_path) {
+			String[]	t_names	= p_path.split("\\.");
+			ConfigNode	t_node	= this;
+			for (int i = 0; i < t_names.length - 1; ++i) {
+				t_node = FindChildNode(t_node, t_names[i]);
+				if (t_node == null)
+					return null;
+			}
+
+			for (ConfigValue t_value: t_node.GetChildValueList()) {
+				if (t_value.GetName().compareToIgnoreCase(t_names[t_names.length - 1]) == 0)
+					return t_value;
+			}
+
+			return null;
+		}
+
+
+		//*********************************
+		@Override
+		public ConfigNode AddNode(String p_name) {
+			Logger.LogError("ConfigSnapshot.SnapshotNode.AddNode() can't add the node [" + p_name + "] because a snapshot is read-only.");
+			return null;
+		}
+
+
+		//*********************************
+		@Override
+		public ConfigValue AddValue(String p_name, String p_value) {
+			Logger.LogError("ConfigSnapshot.SnapshotNode.AddValue() can't add the value [" + p_name + "] because a snapshot is read-only.");
+			return null;
+		}
+
+
+		//*********************************
+		static private ConfigNode FindChildNode(ConfigNode p_node, String p_name) {
+			for (ConfigNode t_childNode: p_node.GetChildNodeList()) {
+				if (t_childNode.GetName().compareToIgnoreCase(p_name) == 0)
+					return t_childNode;
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+/**
+ * <p>A growable array stack for {@link EvaluationContext}.  The evaluation pushes and pops the current node, cursor and loop
+ * counter for every tag that changes them, so this keeps them in one array that is only reallocated when it has to grow instead of
+ * allocating a list node for each push the way LinkedList does.</p>
+ *
+ * <p>Depth 0 is the top of the stack.</p>
+ */
+public class ContextStack<T> {
+
+	static private final int	DEFAULT_CAPACITY	= 8;
+
+
+	// Data members
+	private Object[]	m_elements;
+	private int			m_size		= 0;
+
+
+	//*********************************
+	public ContextStack() {
+		m_elements = new Object[DEFAULT_CAPACITY];
+	}
+
+
+	//*********************************
+	public void Push(T p_element) {
+		if (m_size == m_elements.length) {
+			Object[] t_newElements = new Object[m_elements.length * 2];
+			System.arraycopy(m_elements, 0, t_newElements, 0, m_size);
+			m_elements = t_newElements;
+		}
+
+		m_elements[m_size++] = p_element;
+	}
+
+
+	//*********************************
+	/**
+	 * @return NULL if the stack is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T Peek() {
+		if (m_size == 0)
+			return null;
+
+		return (T)m_elements[m_size - 1];
+	}
+
+
+	//*********************************
+	/**
+	 * @return NULL if the stack is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T Pop() {
+		if (m_size == 0)
+			return null;
+
+		T t_element = (T)m_elements[--m_size];
+		m_elements[m_size] = null;	// So the popped element doesn't stay reachable from here.
+		return t_element;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_depth	0 for the top of the stack.
+	 * @return NULL if the stack isn't that deep.
+	 */
+	@SuppressWarnings("unchecked")
+	public T Get(int p_depth) {
+		if ((p_depth < 0) || (p_depth >= m_size))
+			return null;
+
+		return (T)m_elements[m_size - 1 - p_depth];
+	}
+
+
+	//*********************************
+	public int Size() {
+		return m_size;
+	}
+
+
+	//*********************************
+	public boolean IsEmpty() {
+		return (m_size == 0);
+	}
+}
@@ -23,19 +23,32 @@ package codegenerator.generator.utils;
 
 
 import java.io.*;
+import java.util.*;
 
 import coreutil.logging.*;
 
 
 
 /**
- * This is the object passed in the evaluation context that is used by <code><b>text</b></code> tags to write out to the current file or text buffer.
+ * <p>This is the object passed in the evaluation context that is used by <code><b>text</b></code> tags to write out to the current file or text buffer.</p>
+ *
+ * <p>Text goes straight through to the writer in one write per call.  The only thing kept about the current line is what
+ * <code><b>tabStop</b></code>, <code><b>tabMarker</b></code> and <code><b>customCode</b></code> need: its visual column and its leading
+ * whitespace.  Both are updated as the text is written so that asking for them doesn't have to rescan or copy the line.</p>
  */
 public class Cursor {
 
 	// Data members
-	private Writer 			m_writer		= null;
-	private StringBuilder	m_currentLine	= new StringBuilder();
+	private Writer 			m_writer				= null;
+	private char[]			m_copyBuffer			= null;					// Only used to hand a CharSequence that isn't a String to the writer without making a String out of it.
+
+	private int[]			m_tabSegments			= new int[8];			// The number of characters before each tab on the current line, counted from the tab before it.  This is all it takes to work out the column for any tab size.
+	private int				m_tabCount				= 0;
+	private int				m_charsSinceLastTab		= 0;
+	private int				m_columnTabSize			= -1;					// The tab size that m_column is being kept for.  It's set by the first GetColumn() call.
+	private int				m_column				= 0;
+	private StringBuilder	m_leadingWhiteSpace		= new StringBuilder();
+	private boolean			m_pastLeadingWhiteSpace	= false;
 
 
 	//*********************************
@@ -46,27 +59,79 @@ public class Cursor {
 
 	//*********************************
 	public boolean Write(String p_newText) {
+		return Write(p_newText, 0, p_newText.length());
+	}
+
+
+	//*********************************
+	/**
+	 * Writes the characters from p_start up to, but not including, p_end.
+	 *
+	 * @param p_newText
+	 * @param p_start
+	 * @param p_end
+	 * @return
+	 */
+	public boolean Write(CharSequence p_newText, int p_start, int p_end) {
 		try {
-			// Since text tags can contain multiple lines, we have to step through the new text and write it out line by line so that we end up in the end with only the remaining text in the cursor.
-			int		t_nextNewLineIndex	= 0;
-			int		t_lastNewLineIndex	= 0;
-			String	t_fragment			= null;
-
-			while ((t_nextNewLineIndex = p_newText.indexOf('\n', t_lastNewLineIndex)) >= 0) {
-				t_nextNewLineIndex += 1;	// We want to write the newline with the line so we'll increment the index by one to be sure that we do.
-				t_fragment = p_newText.substring(t_lastNewLineIndex, t_nextNewLineIndex);
-				//m_currentLine.append(t_fragment);	// There's no point adding the fragment to the current line if we are just going to clear it two lines below.
-				m_writer.write(t_fragment);
-
-				m_currentLine.setLength(0);					// Clear the current line buffer for the next line.
-				t_lastNewLineIndex = t_nextNewLineIndex;
+			if (p_end <= p_start)
+				return true;
+
+			if (p_newText instanceof String)
+				m_writer.write((String)p_newText, p_start, p_end - p_start);
+			else {
+				int t_length = p_end - p_start;
+				if ((m_copyBuffer == null) || (m_copyBuffer.length < t_length))
+					m_copyBuffer = new char[Math.max(t_length, 256)];
+
+				if (p_newText instanceof StringBuilder)
+					((StringBuilder)p_newText).getChars(p_start, p_end, m_copyBuffer, 0);
+				else {
+					for (int i = p_start; i < p_end; ++i)
+						m_copyBuffer[i - p_start] = p_newText.charAt(i);
+				}
+
+				m_writer.write(m_copyBuffer, 0, t_length);
 			}
 
-			// Any part of the p_newText that remains after any complete lines have been written out needs to be captured in the current line.
-			if (t_lastNewLineIndex < p_newText.length()) {
-				t_fragment = p_newText.substring(t_lastNewLineIndex);
-				m_currentLine.append(t_fragment);
-				m_writer.write(t_fragment);	// We can't forget to push this fragment out to the writer, too.
+
+			// Only the text after the last newline is on the current line, so that's all we need to look at.
+			int t_lineStart = LastNewLineIndex(p_newText, p_start, p_end) + 1;
+			if (t_lineStart > 0) {
+				m_tabCount				= 0;
+				m_charsSinceLastTab		= 0;
+				m_column				= 0;
+				m_leadingWhiteSpace.setLength(0);
+				m_pastLeadingWhiteSpace	= false;
+			}
+			else
+				t_lineStart = p_start;
+
+			char t_nextChar;
+			for (int i = t_lineStart; i < p_end; ++i) {
+				t_nextChar = p_newText.charAt(i);
+
+				if (!m_pastLeadingWhiteSpace) {
+					if ((t_nextChar == ' ') || (t_nextChar == '\t'))
+						m_leadingWhiteSpace.append(t_nextChar);
+					else
+						m_pastLeadingWhiteSpace = true;
+				}
+
+				if (t_nextChar == '\t') {
+					if (m_tabCount == m_tabSegments.length)
+						m_tabSegments = Arrays.copyOf(m_tabSegments, m_tabCount * 2);
+
+					m_tabSegments[m_tabCount++]	= m_charsSinceLastTab;
+					m_charsSinceLastTab			= 0;
+
+					if (m_columnTabSize > 0)
+						m_column = ((m_column / m_columnTabSize) + 1) * m_columnTabSize;
+				}
+				else {
+					++m_charsSinceLastTab;
+					++m_column;			// This may not be internationalization safe if the template charset has characters that are more than one column wide.
+				}
 			}
 		}
 		catch (Throwable t_error) {
@@ -78,8 +143,55 @@ public class Cursor {
 	}
 
 
+	//===========================================
+	/**
+	 * @return The index of the last newline in the range or -1 if there isn't one.
+	 */
+	static private int LastNewLineIndex(CharSequence p_text, int p_start, int p_end) {
+		if (p_text instanceof String) {
+			int t_index = ((String)p_text).lastIndexOf('\n', p_end - 1);
+			return (t_index >= p_start) ? t_index : -1;
+		}
+
+		for (int i = p_end - 1; i >= p_start; --i) {
+			if (p_text.charAt(i) == '\n')
+				return i;
+		}
+
+		return -1;
+	}
+
+
+	//*********************************
+	/**
+	 * Returns the visual column at the end of the current line.  A tab moves the column up to the next multiple of the tab size
+	 * since you can type "into" a tab stop up to (tab size - 1) characters before the tab stops moving anything.  The column is kept
+	 * up to date as text is written for the last tab size that was asked for, so it only has to be worked out again from the tab
+	 * positions if a different tab size is asked for.
+	 *
+	 * @param p_tabSize
+	 * @return
+	 */
+	public int GetColumn(int p_tabSize) {
+		if (p_tabSize != m_columnTabSize) {
+			int t_column = 0;
+			for (int i = 0; i < m_tabCount; ++i)
+				t_column = (((t_column + m_tabSegments[i]) / p_tabSize) + 1) * p_tabSize;
+
+			m_column		= t_column + m_charsSinceLastTab;
+			m_columnTabSize	= p_tabSize;
+		}
+
+		return m_column;
+	}
+
+
 	//*********************************
-	public String GetCurrentLineContents() {
-		return m_currentLine.toString();
+	/**
+	 * @return The spaces and tabs at the start of the current line.  It's this cursor's own buffer so it will change with the next
+	 * Write() and has to be copied if it's needed after that.
+	 */
+	public CharSequence GetLeadingWhiteSpace() {
+		return m_leadingWhiteSpace;
 	}
 }
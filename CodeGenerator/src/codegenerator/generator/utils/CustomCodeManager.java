@@ -23,6 +23,7 @@ package codegenerator.generator.utils;
 
 
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
 
 import coreutil.logging.*;
@@ -57,6 +58,34 @@ public class CustomCodeManager {
 
 	//*********************************
 	public boolean ScanFile(File p_targetFile) {
+		return ScanFile(p_targetFile, Charset.defaultCharset());
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_targetFile
+	 * @param p_charset		The charset the file was generated in.  Reading it in any other one could mangle the custom code.
+	 */
+	public boolean ScanFile(File p_targetFile, Charset p_charset) {
+		try {
+			return Scan(new FileReader(p_targetFile, p_charset), p_targetFile.getAbsolutePath());
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("CustomeCodeManager.ScanFile() failed to open the file [" + p_targetFile.getAbsolutePath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Scans the previous version of a file that doesn't come from a file of its own, like an entry in an archive.
+	 *
+	 * @param p_reader		Closed when this is done.
+	 * @param p_fileName	What to call the file in errors.
+	 */
+	public boolean Scan(Reader p_reader, String p_fileName) {
 		BufferedReader t_lineReader = null;
 		try {
 			// We have to clear the maps when we start a new file.  We do not want to accidently cross-contaminate code into other files.
@@ -68,7 +97,7 @@ public class CustomCodeManager {
 			StringBuilder	t_customCode	= new StringBuilder();
 			int				t_lineCount		= 0;
 
-			t_lineReader = new BufferedReader(new FileReader(p_targetFile));
+			t_lineReader = new BufferedReader(p_reader);
 			while ((t_line = t_lineReader.readLine()) != null) {
 				t_lineCount++;
 				if (t_line.contains(START_CUSTOM_CODE)) {
@@ -79,7 +108,7 @@ public class CustomCodeManager {
 						t_startKey = t_startKey.substring(0, t_startKey.indexOf("\t"));
 
 					if (m_keyCodeMap.containsKey(t_startKey)) {
-						Logger.LogError("CustomeCodeManager.ScanFile() found a duplicate custom code marker key [" + t_startKey + "] in file [" + p_targetFile.getAbsolutePath() + "] at line [" + t_lineCount + "].  Duplicates are not allowed because that will lead to code loss.");
+						Logger.LogError("CustomeCodeManager.Scan() found a duplicate custom code marker key [" + t_startKey + "] in file [" + p_fileName + "] at line [" + t_lineCount + "].  Duplicates are not allowed because that will lead to code loss.");
 						return false;
 					}
 
@@ -87,7 +116,7 @@ public class CustomCodeManager {
 					while ((t_line = t_lineReader.readLine()) != null) {
 						t_lineCount++;
 						if (t_line.contains(START_CUSTOM_CODE)) {
-							Logger.LogError("CustomeCodeManager.ScanFile() found a nested custom code block in file [" + p_targetFile.getAbsolutePath() + "] at line [" + t_lineCount + "].");
+							Logger.LogError("CustomeCodeManager.Scan() found a nested custom code block in file [" + p_fileName + "] at line [" + t_lineCount + "].");
 							return false;
 						}
 
@@ -99,7 +128,7 @@ public class CustomCodeManager {
 								t_endKey = t_endKey.substring(0, t_endKey.indexOf("\t"));
 
 							if (!t_endKey.equals(t_startKey)) {
-								Logger.LogError("CustomeCodeManager.ScanFile() found a nested custom code block end marker key [" + t_startKey + "] in file [" + p_targetFile.getAbsolutePath() + "] at line [" + t_lineCount + "] that doesn't match the start marker key [" + t_startKey + "].");
+								Logger.LogError("CustomeCodeManager.Scan() found a nested custom code block end marker key [" + t_startKey + "] in file [" + p_fileName + "] at line [" + t_lineCount + "] that doesn't match the start marker key [" + t_startKey + "].");
 								return false;
 							}
 
@@ -111,7 +140,7 @@ public class CustomCodeManager {
 					}
 				}
 				else if (t_line.contains(END_CUSTOM_CODE)) {
-					Logger.LogError("CustomeCodeManager.ScanFile() found a custom code block end marker without a matching start marker in file [" + p_targetFile.getAbsolutePath() + "] at line [" + t_lineCount + "].");
+					Logger.LogError("CustomeCodeManager.Scan() found a custom code block end marker without a matching start marker in file [" + p_fileName + "] at line [" + t_lineCount + "].");
 					return false;
 				}
 			}
@@ -119,12 +148,11 @@ public class CustomCodeManager {
 			return true;
 		}
 		catch (Throwable t_error) {
-			Logger.LogException("CustomeCodeManager.ScanFile() failed with error: ", t_error);
+			Logger.LogException("CustomeCodeManager.Scan() failed with error: ", t_error);
 			return false;
 		}
 		finally {
-			if (t_lineReader != null)
-				try { t_lineReader.close(); } catch (Throwable t_dontCare) {}
+			try { p_reader.close(); } catch (Throwable t_dontCare) {}
 		}
 	}
 
@@ -24,6 +24,7 @@ package codegenerator.generator.utils;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.*;
 
 import coreutil.config.*;
 import coreutil.logging.*;
@@ -54,17 +55,25 @@ public class DataTypeManager {
 
 	// Static members
 	static private TreeMap<String, TreeMap<String, TreeMap<String, String>>>		s_typeMap	= new TreeMap<String, TreeMap<String, TreeMap<String, String>>>();
+	static private final TreeSet<String>										s_loadedFiles	= new TreeSet<>();		// The canonical paths of the files that have already been loaded.  A file is only loaded once no matter how many times the tag that loads it is evaluated.
+	static private final ReentrantReadWriteLock									s_typeMapLock	= new ReentrantReadWriteLock();	// In parallel mode, typeConvert tags are evaluated on many threads at once while a typeConvertLoadFile may be loading more types on another one.
 
 
 	//===========================================
 	static public boolean LoadConfigFile(String p_configFilePathname) {
 		try {
+			s_typeMapLock.writeLock().lock();
+
 			File t_configFile = new File(p_configFilePathname);
 			if (!t_configFile.exists() || !t_configFile.isFile()) {
 				Logger.LogError("DataTypeManager.LoadConfigFile() failed to find the file [" + p_configFilePathname + "].");
 				return false;
 			}
 
+			String t_canonicalPath = t_configFile.getCanonicalPath();
+			if (s_loadedFiles.contains(t_canonicalPath))
+				return true;
+
 			FileConfigValueSet t_newTypeFileSet = new FileConfigValueSet();
 			if (!t_newTypeFileSet.Load(p_configFilePathname)) {
 				Logger.LogError("DataTypeManager.LoadConfigFile() failed to load the config file [" + p_configFilePathname + "].");
@@ -162,18 +171,24 @@ public class DataTypeManager {
 				}
 			}
 
+			s_loadedFiles.add(t_canonicalPath);
 			return true;
 		}
 		catch (Throwable t_error) {
 			Logger.LogException("DataTypeManager.LoadConfigFile() failed with error: ", t_error);
 			return false;
 		}
+		finally {
+			s_typeMapLock.writeLock().unlock();
+		}
 	}
 
 
 	//===========================================
 	static public String GetTypeConversion(String p_targetLanguage, String p_sourceType, String p_targetType) {
 		try {
+			s_typeMapLock.readLock().lock();
+
 			TreeMap<String, TreeMap<String, String>> t_targetLanguage = s_typeMap.get(p_targetLanguage);
 			if (t_targetLanguage == null) {
 				Logger.LogError("DataTypeManager.GetTypeConversion() failed to find a source type map for the language [" + p_targetLanguage + "].");
@@ -192,5 +207,8 @@ public class DataTypeManager {
 			Logger.LogException("DataTypeManager.GetTypeConversion() failed with error: ", t_error);
 			return null;
 		}
+		finally {
+			s_typeMapLock.readLock().unlock();
+		}
 	}
 }
@@ -0,0 +1,278 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.util.*;
+
+import coreutil.config.*;
+
+
+
+/**
+	<p>Collects what one file reads while it is generated so that it can be saved in the {@link GenerationManifest}.  {@link codegenerator.generator.tags.FileTag}
+	puts one in the {@link EvaluationContext} for the length of the file and the tags that read the config tree, the counters or the type
+	map report what they read to it.</p>
+
+	<p>The counters, outer contexts and forEach value that the file can see from outside are captured when the file starts.  Only reads of
+	those are recorded since anything the file sets up for itself comes out the same as long as everything else it read is the same.  A
+	file nested in this one gets its own recorder, and what it records goes to this one as well, since regenerating this file regenerates
+	it, too.</p>
+
+	<p>A recorder is only ever used by the thread that is generating its file.</p>
+*/
+public class DependencyRecorder {
+
+	// Data members
+	private final GenerationManifest							m_manifest;
+	private final DependencyRecorder							m_parentRecorder;	// The recorder of the file this one is nested in, if there is one.
+	private final Set<LoopCounter>								m_outerCounters		= Collections.newSetFromMap(new IdentityHashMap<>());
+	private final OuterContextManager							m_outerContexts;
+	private final coreutil.config.ConfigValue					m_outerCurrentValue;
+	private final TreeSet<String>								m_templates			= new TreeSet<>();
+	private final LinkedHashMap<String, GenerationManifest.ConfigRead>	m_reads		= new LinkedHashMap<>();
+	private final ArrayList<GenerationManifest.OutputStamp>		m_nestedOutputs		= new ArrayList<>();
+	private		  boolean										m_isRecordable		= true;
+
+
+	//*********************************
+	/**
+	 * @param p_manifest
+	 * @param p_parentRecorder		NULL if the file isn't nested in a file that is being recorded.
+	 * @param p_evaluationContext	The context the file is being generated with, before the file has done anything to it.
+	 */
+	public DependencyRecorder(GenerationManifest	p_manifest,
+							  DependencyRecorder	p_parentRecorder,
+							  EvaluationContext		p_evaluationContext)
+	{
+		m_manifest			= p_manifest;
+		m_parentRecorder	= p_parentRecorder;
+		m_outerContexts		= new OuterContextManager(p_evaluationContext.GetOuterContextManager());
+		m_outerCurrentValue	= p_evaluationContext.GetCurrentValue();
+
+		p_evaluationContext.CollectCounters(m_outerCounters);
+	}
+
+
+	//*********************************
+	/**
+	 * For things that a file can do that the manifest can't check for, like copying a file.  A file that has done one of them, and
+	 * any file it is nested in, is always generated.
+	 */
+	public void MarkNotRecordable() {
+		for (DependencyRecorder t_recorder = this; t_recorder != null; t_recorder = t_recorder.m_parentRecorder)
+			t_recorder.m_isRecordable = false;
+	}
+
+
+	//*********************************
+	public boolean IsRecordable() {
+		return m_isRecordable;
+	}
+
+
+	//*********************************
+	public void RecordTemplate(String p_templateFileName) {
+		if (p_templateFileName == null) {
+			MarkNotRecordable();
+			return;
+		}
+
+		String t_templateKey = m_manifest.GetTemplateKey(p_templateFileName);
+		for (DependencyRecorder t_recorder = this; t_recorder != null; t_recorder = t_recorder.m_parentRecorder)
+			t_recorder.m_templates.add(t_templateKey);
+	}
+
+
+	//*********************************
+	/**
+	 * Everything that is recorded goes to the files this one is nested in, too, since they regenerate it.
+	 */
+	private void Record(GenerationManifest.ConfigRead p_read) {
+		String t_key = p_read.GetKey();
+		for (DependencyRecorder t_recorder = this; t_recorder != null; t_recorder = t_recorder.m_parentRecorder)
+			t_recorder.m_reads.putIfAbsent(t_key, p_read);
+	}
+
+
+	//*********************************
+	public void RecordValue(ConfigNode p_node, String p_valueName, String p_value) {
+		Record(new GenerationManifest.ConfigRead(GenerationManifest.READ_VALUE, m_manifest.GetNodePath(p_node), p_valueName, null, p_value));
+	}
+
+
+	//*********************************
+	public void RecordNodeCount(ConfigNode p_node, String p_nodeName) {
+		Record(new GenerationManifest.ConfigRead(GenerationManifest.READ_NODE_COUNT, m_manifest.GetNodePath(p_node), p_nodeName, null, GenerationManifest.CountChildNodes(p_node, p_nodeName)));
+	}
+
+
+	//*********************************
+	public void RecordValueList(ConfigNode p_node, String p_valueName) {
+		Record(new GenerationManifest.ConfigRead(GenerationManifest.READ_VALUE_LIST, m_manifest.GetNodePath(p_node), p_valueName, null, GenerationManifest.JoinChildValues(p_node, p_valueName)));
+	}
+
+
+	//*********************************
+	public void RecordExists(ConfigNode p_node, String p_name) {
+		Record(new GenerationManifest.ConfigRead(GenerationManifest.READ_EXISTS, m_manifest.GetNodePath(p_node), p_name, null, GenerationManifest.Exists(p_node, p_name)));
+	}
+
+
+	//*********************************
+	public void RecordTypeConversion(String p_targetLanguage, String p_sourceType, String p_groupID, String p_convertedType) {
+		Record(new GenerationManifest.ConfigRead(GenerationManifest.READ_TYPE, p_targetLanguage, p_sourceType, p_groupID, p_convertedType));
+	}
+
+
+	//*********************************
+	/**
+	 * The counter, current value and outer context reads are only recorded by the files that they came from outside of.  A file nested
+	 * in this one may see the same counter under the same name, but if it was set up inside this file, then this file has already
+	 * recorded what it depends on.  If a file outside it looked the same name up, it would get a different counter, so recording it
+	 * there would be wrong.  The lookups in {@link GenerationManifest} that check these again go by name, and a counter that came from
+	 * outside a file is found by the same name there as it was inside since the file can only add counters on top of it.
+	 *
+	 * @param p_counter				The counter that was read.
+	 * @param p_optionalCounterName	The name it was looked up by or NULL if it was the default loop counter.
+	 */
+	public void RecordCounter(LoopCounter p_counter, String p_optionalCounterName) {
+		GenerationManifest.ConfigRead t_read = null;
+		for (DependencyRecorder t_recorder = this; t_recorder != null; t_recorder = t_recorder.m_parentRecorder) {
+			if (!t_recorder.m_outerCounters.contains(p_counter))
+				continue;
+
+			if (t_read == null)
+				t_read = new GenerationManifest.ConfigRead(GenerationManifest.READ_COUNTER, null, p_optionalCounterName, null, Integer.toString(p_counter.GetCounter()));
+
+			t_recorder.m_reads.putIfAbsent(t_read.GetKey(), t_read);
+		}
+	}
+
+
+	//*********************************
+	public void RecordCurrentValue(coreutil.config.ConfigValue p_value) {
+		if (p_value == null)
+			return;
+
+		GenerationManifest.ConfigRead t_read = null;
+		for (DependencyRecorder t_recorder = this; t_recorder != null; t_recorder = t_recorder.m_parentRecorder) {
+			if (t_recorder.m_outerCurrentValue != p_value)
+				continue;
+
+			if (t_read == null)
+				t_read = new GenerationManifest.ConfigRead(GenerationManifest.READ_CURRENT_VALUE, null, p_value.GetName(), null, p_value.GetStringValue());
+
+			t_recorder.m_reads.putIfAbsent(t_read.GetKey(), t_read);
+		}
+	}
+
+
+	//*********************************
+	public void RecordOuterContext(String p_contextName, ConfigNode p_contextNode) {
+		if (p_contextNode == null)
+			return;
+
+		GenerationManifest.ConfigRead t_read = null;
+		for (DependencyRecorder t_recorder = this; t_recorder != null; t_recorder = t_recorder.m_parentRecorder) {
+			if (t_recorder.m_outerContexts.GetOuterContext(p_contextName) != p_contextNode)
+				continue;
+
+			if (t_read == null)
+				t_read = new GenerationManifest.ConfigRead(GenerationManifest.READ_OUTER_CONTEXT, null, p_contextName, null, m_manifest.GetNodePath(p_contextNode));
+
+			t_recorder.m_reads.putIfAbsent(t_read.GetKey(), t_read);
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Adds a file that was generated while this one was.
+	 */
+	public void RecordNestedOutput(GenerationManifest.OutputStamp p_output) {
+		for (DependencyRecorder t_recorder = this; t_recorder != null; t_recorder = t_recorder.m_parentRecorder)
+			t_recorder.m_nestedOutputs.add(p_output);
+	}
+
+
+	//*********************************
+	/**
+	 * Adds a nested file that was up to date, and so wasn't evaluated, as if it had been.  Its counter, current value and outer
+	 * context reads are looked up again in the context it would have been generated with so that they go to the right files.
+	 *
+	 * @param p_entry				What the nested file depended on in the last generation.
+	 * @param p_evaluationContext	The context the nested file would have been generated with.
+	 */
+	public void RecordUpToDateFile(GenerationManifest.Entry p_entry, EvaluationContext p_evaluationContext) {
+		RecordNestedOutput(p_entry.GetOutput());
+		for (GenerationManifest.OutputStamp t_nestedOutput: p_entry.GetNestedOutputs())
+			RecordNestedOutput(t_nestedOutput);
+
+		for (String t_template: p_entry.GetTemplates()) {
+			for (DependencyRecorder t_recorder = this; t_recorder != null; t_recorder = t_recorder.m_parentRecorder)
+				t_recorder.m_templates.add(t_template);
+		}
+
+		for (GenerationManifest.ConfigRead t_read: p_entry.GetReads()) {
+			switch (t_read.GetType()) {
+				case GenerationManifest.READ_COUNTER: {
+					String		t_name		= t_read.GetName();
+					LoopCounter	t_counter	= (t_name == null) ? p_evaluationContext.GetLoopCounter() : p_evaluationContext.GetNamedCounter(t_name);
+					if (t_counter != null)
+						RecordCounter(t_counter, t_name);
+					break;
+				}
+
+				case GenerationManifest.READ_CURRENT_VALUE:
+					RecordCurrentValue(p_evaluationContext.GetCurrentValue());
+					break;
+
+				case GenerationManifest.READ_OUTER_CONTEXT:
+					RecordOuterContext(t_read.GetName(), p_evaluationContext.GetOuterContextManager().GetOuterContext(t_read.GetName()));
+					break;
+
+				default:
+					Record(t_read);
+					break;
+			}
+		}
+	}
+
+
+	//*********************************
+	public Set<String> GetTemplates() {
+		return m_templates;
+	}
+
+
+	//*********************************
+	public Collection<GenerationManifest.ConfigRead> GetReads() {
+		return m_reads.values();
+	}
+
+
+	//*********************************
+	public List<GenerationManifest.OutputStamp> GetNestedOutputs() {
+		return m_nestedOutputs;
+	}
+}
@@ -22,10 +22,13 @@ package codegenerator.generator.utils;
 
 
 
+import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.*;
 
+import codegenerator.generator.tags.Tag_Base;
+import codegenerator.generator.tags.Variable;
 import coreutil.config.*;
-import coreutil.logging.*;
 
 
 
@@ -34,19 +37,40 @@ import coreutil.logging.*;
  *
  * <p>This was originally created when I tried to multi-thread things, but I also needed it to make outer contexts work so I kept
  * even though I remove the multi-threading stuff.</p>
+ *
+ * <p>Now that {@link codegenerator.generator.tags.FileTag} can hand its file off to a {@link ParallelFileEvaluator}, {@link #Fork()} makes the copy of the context
+ * that the file is evaluated with on the other thread.  Nothing in a context is locked, so a context must only ever be used by one
+ * thread at a time.</p>
+ *
+ * <p>The stacks are {@link ContextStack}s so that the pushes and pops that every loop and file does don't allocate anything, and
+ * the outer contexts and counter variables are {@link PersistentNameMap}s so that a fork can share them with its parent instead of
+ * copying them.  A fork only gets the top of the node and tab settings stacks since a file never pops past what it pushed itself.
+ * The loop counters are the one thing a fork still has to copy, one per enclosing loop or counter variable, because the parent keeps
+ * counting while the file is evaluated.</p>
  */
 public class EvaluationContext {
 
 	// Data members
-	private final	LinkedList<ConfigNode>			m_currentNodeStack		= new LinkedList<>();
+	private final	ContextStack<ConfigNode>		m_currentNodeStack		= new ContextStack<>();
 	private			ConfigValue						m_currentValue			= null;					// When I separated how the ConfigManager code handled Nodes and Values, I had to add this current value member so that ForEach loops that were iterating over values instead of nodes would have a way to pass that into the EvaluationContext.
 	private			ConfigNode						m_rootNode;
-	private final	LinkedList<Cursor> 				m_writerStack			= new LinkedList<>();
-	private final	LinkedList<LoopCounter>			m_iterationCounterStack	= new LinkedList<>();	// There are rare cases (i.e. FirstElse) where we need to grab a named counter from the current counter and set it as the temporary counter for the evaluation of the tag.
-	private final	TreeMap<String, LoopCounter>	m_counterVariableMap	= new TreeMap<>();		// Since counter variables aren't tied to forEach loops, we need to handle them separately.  If we pushed them onto the forEach loop counter stack, we could potentially seriously poison that stack because any first tags that weren't naming the counter they were working with could possibly use the wrong counter.
+	private final	ContextStack<Cursor> 			m_writerStack			= new ContextStack<>();
+	private final	ContextStack<LoopCounter>		m_iterationCounterStack	= new ContextStack<>();	// There are rare cases (i.e. FirstElse) where we need to grab a named counter from the current counter and set it as the temporary counter for the evaluation of the tag.
+	private			PersistentNameMap<LoopCounter>	m_counterVariableMap	= PersistentNameMap.Empty();	// Since counter variables aren't tied to forEach loops, we need to handle them separately.  If we pushed them onto the forEach loop counter stack, we could potentially seriously poison that stack because any first tags that weren't naming the counter they were working with could possibly use the wrong counter.
 	private			OuterContextManager				m_contextManager		= null;
 	private			CustomCodeManager				m_customCodeManager		= null;
-	private final	LinkedList<TabSettingsManager>	m_tabSettingsManager	= new LinkedList<>();
+	private final	ContextStack<TabSettingsManager>	m_tabSettingsManager	= new ContextStack<>();
+	private			ParallelFileEvaluator			m_fileEvaluator			= null;					// Only set in parallel mode.
+	private			OutputDestination				m_outputDestination;										// Where the generated files go.  It's shared by every fork of the context.
+	private			OutputFilters					m_outputFilters			= OutputFilters.NONE;		// What every file is written through unless its file tag overrides them.
+	private			StreamedConfig					m_streamedConfig		= null;					// Only set when the config's big top-level nodes are streamed.  It's shared by every fork of the context, too.
+	private final	OutputFileSystemCache			m_fileSystemCache;											// What's in the output directories.  It's shared by every fork of the context.
+	private final	ConcurrentHashMap<Object, Tag_Base>	m_resolvedTemplates;						// The template trees that file and include tags with constant template names have already loaded in this generation.  It's shared by every fork of the context.
+	private final	ConcurrentHashMap<String, String>	m_outputPaths;								// Where each file generated so far in this generation was generated from, by its absolute path.  It's shared by every fork of the context.
+	private			GenerationManifest				m_generationManifest	= null;					// Only set in incremental mode.
+	private			DependencyRecorder				m_dependencyRecorder	= null;					// Set by FileTag while it generates a file that is being recorded in the manifest.
+	private			String							m_currentTemplate		= null;					// The template file being evaluated.  Only kept in incremental mode so that a file tag with wrapped contents can record the template they came from.
+	private			Map<String, Variable>			m_variableDefinitions	= null;					// Only set in a forked context:  the definitions of the variables that the file uses, as they were when it was forked.
 
 
 	//*********************************
@@ -55,72 +79,247 @@ public class EvaluationContext {
 							 Cursor 		p_writer,
 							 LoopCounter	p_iterationCounter)
 	{
-		m_currentNodeStack.push(p_currentNode);
+		m_currentNodeStack.Push(p_currentNode);
 		m_rootNode = p_rootNode;
-		m_writerStack.push(p_writer);
-		m_iterationCounterStack.push(p_iterationCounter);
+		m_writerStack.Push(p_writer);
+		m_iterationCounterStack.Push(p_iterationCounter);
 
 		m_contextManager		= new OuterContextManager();
 		m_customCodeManager		= new CustomCodeManager();
+		m_resolvedTemplates		= new ConcurrentHashMap<>();
+		m_outputPaths			= new ConcurrentHashMap<>();
+		m_fileSystemCache		= new OutputFileSystemCache();
+		m_outputDestination		= new FileSystemOutput(m_fileSystemCache, Charset.defaultCharset(), false);	// The platform default charset, the same as the FileWriter that FileTag used to write with.
+	}
+
+
+	//*********************************
+	/**
+	 * Used by {@link #Fork()}.  The counters are snapshots so that the loops that are still running in the parent context can't
+	 * change them out from under the file being evaluated.  The outer contexts and counter variable names are shared as they are
+	 * since neither context can change the other's maps.
+	 */
+	private EvaluationContext(EvaluationContext	p_otherEvaluationContext)
+	{
+		m_currentNodeStack.Push(p_otherEvaluationContext.m_currentNodeStack.Peek());
+		m_currentValue		= p_otherEvaluationContext.m_currentValue;
+
+		m_rootNode			= p_otherEvaluationContext.m_rootNode;
+		//m_writerStack		= ;		// A forked context is always for a new file, which pushes its own Cursor, so we skip this member here.
+
+		ContextStack<LoopCounter> t_otherCounters = p_otherEvaluationContext.m_iterationCounterStack;
+		for (int i = t_otherCounters.Size() - 1; i >= 0; --i)	// Bottom first so that they end up in the same order.
+			m_iterationCounterStack.Push(t_otherCounters.Get(i).DuplicateCounterForNewFile());
+
+		m_counterVariableMap	= p_otherEvaluationContext.m_counterVariableMap.MapValues(LoopCounter::DuplicateCounterForNewFile);
+
+		m_contextManager		= new OuterContextManager(p_otherEvaluationContext.m_contextManager);
+		//m_customCodeManager	= ;		// FileTag gives every file its own manager so we skip this one, too.
+
+		TabSettingsManager t_tabSettingsManager = p_otherEvaluationContext.m_tabSettingsManager.Peek();
+		if (t_tabSettingsManager != null)
+			m_tabSettingsManager.Push(new TabSettingsManager(t_tabSettingsManager));
+
+		m_fileEvaluator			= p_otherEvaluationContext.m_fileEvaluator;
+		m_outputDestination		= p_otherEvaluationContext.m_outputDestination;
+		m_outputFilters			= p_otherEvaluationContext.m_outputFilters;
+		m_streamedConfig		= p_otherEvaluationContext.m_streamedConfig;
+		m_fileSystemCache		= p_otherEvaluationContext.m_fileSystemCache;
+		m_resolvedTemplates		= p_otherEvaluationContext.m_resolvedTemplates;
+		m_outputPaths			= p_otherEvaluationContext.m_outputPaths;
+		m_generationManifest	= p_otherEvaluationContext.m_generationManifest;
+		//m_dependencyRecorder	= ;		// FileTag only forks a file that isn't nested in a file being recorded, and it sets up the fork's recorder itself.
+		m_currentTemplate		= p_otherEvaluationContext.m_currentTemplate;
+		m_variableDefinitions	= p_otherEvaluationContext.m_variableDefinitions;
+	}
+
+
+	//*********************************
+	/**
+	 * @return A copy of this context that can be used to evaluate a file on another thread while this one carries on.
+	 */
+	public EvaluationContext Fork() {
+		return new EvaluationContext(this);
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_fileEvaluator	NULL to generate the files one at a time in the calling thread.
+	 */
+	public void SetFileEvaluator(ParallelFileEvaluator p_fileEvaluator) {
+		m_fileEvaluator = p_fileEvaluator;
+	}
+
+
+	//*********************************
+	public ParallelFileEvaluator GetFileEvaluator() {
+		return m_fileEvaluator;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputDestination	Where the generated and copied files go.  See {@link OutputDestination}.
+	 */
+	public void SetOutputDestination(OutputDestination p_outputDestination) {
+		m_outputDestination = p_outputDestination;
+	}
+
+
+	//*********************************
+	public OutputDestination GetOutputDestination() {
+		return m_outputDestination;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputFilters	The filters that every file is written through unless its file tag overrides them.
+	 */
+	public void SetOutputFilters(OutputFilters p_outputFilters) {
+		m_outputFilters = p_outputFilters;
+	}
+
+
+	//*********************************
+	public OutputFilters GetOutputFilters() {
+		return m_outputFilters;
+	}
+
+
+	//*********************************
+	public void SetStreamedConfig(StreamedConfig p_streamedConfig) {
+		m_streamedConfig = p_streamedConfig;
+	}
+
+
+	//*********************************
+	public StreamedConfig GetStreamedConfig() {
+		return m_streamedConfig;
+	}
+
+
+	//*********************************
+	/**
+	 * @return The cache of the output directories for this generation.
+	 */
+	public OutputFileSystemCache GetFileSystemCache() {
+		return m_fileSystemCache;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_generationManifest	NULL to generate every file without recording what it depends on.
+	 */
+	public void SetGenerationManifest(GenerationManifest p_generationManifest) {
+		m_generationManifest = p_generationManifest;
+	}
+
+
+	//*********************************
+	public GenerationManifest GetGenerationManifest() {
+		return m_generationManifest;
+	}
+
+
+	//*********************************
+	public void SetDependencyRecorder(DependencyRecorder p_dependencyRecorder) {
+		m_dependencyRecorder = p_dependencyRecorder;
+	}
+
+
+	//*********************************
+	/**
+	 * The tags that read the config check this before they record anything, so it has to stay NULL unless the file is being recorded.
+	 */
+	public DependencyRecorder GetDependencyRecorder() {
+		return m_dependencyRecorder;
+	}
+
+
+	//*********************************
+	public void SetCurrentTemplate(String p_templateFileName) {
+		m_currentTemplate = p_templateFileName;
+	}
+
+
+	//*********************************
+	public String GetCurrentTemplate() {
+		return m_currentTemplate;
+	}
+
+
+	//*********************************
+	/**
+	 * FileTag sets this on the forked context of a file to the variable definitions that the {@link ForkSafetyCheck} found, so that
+	 * a template that the parent loads while the file is being generated can't change what the file's variables evaluate to.
+	 *
+	 * @param p_variableDefinitions
+	 */
+	public void SetVariableDefinitions(Map<String, Variable> p_variableDefinitions) {
+		m_variableDefinitions = p_variableDefinitions;
 	}
 
 
 	//*********************************
-// This was only used when I tried to set up multi-threading of {@link FileTag} objects.  Since I backed that out when I realized it required more context management than I was willing to mess with at the time, this function is no longer needed.  However, since I can't say "Never" on trying multi-threading again, I'm going to leave it hear just in case.
-//	public EvaluationContext(EvaluationContext	p_otherEvaluationContext)
-//	{
-//		m_currentNodeStack.addAll(p_otherEvaluationContext.m_currentNodeStack);
-//		m_currentValue		= p_otherEvaluationContext.m_currentValue;
-//
-//		m_rootNode			= p_otherEvaluationContext.m_rootNode;
-//		//m_writerStack		= ;		// This copy constructor should never be called in a context where we don't create a new Cursor, so we'll skip this member here.
-//
-//		// In situations where this copy constructor is used, there is no way the new context we are entering can know about the other loop counters that may exist "outside", so we only need the "current" counter from here on.
-//		if (!p_otherEvaluationContext.m_iterationCounterStack.isEmpty())
-//			m_iterationCounterStack.push(p_otherEvaluationContext.m_iterationCounterStack.getFirst().DuplicateCountersForNewFile());
-//
-//		// Copy all of the named counter variables.
-//		for (Entry<String, LoopCounter> t_nextCounterVariable: p_otherEvaluationContext.m_counterVariableMap.entrySet())
-//			m_counterVariableMap.put(t_nextCounterVariable.getKey(), t_nextCounterVariable.getValue().DuplicateCountersForNewFile());
-//
-//		m_contextManager		= new OuterContextManager(p_otherEvaluationContext.m_contextManager);
-//		m_customCodeManager		= new CustomCodeManager();
-//		m_tabSettingsManager	= new TabSettingsManager();
-//	}
+	/**
+	 * @return NULL if the context isn't for a forked file.
+	 */
+	public Map<String, Variable> GetVariableDefinitions() {
+		return m_variableDefinitions;
+	}
+
+
+	//*********************************
+	/**
+	 * A parsed template tree isn't changed by evaluating it, so a file or include tag whose template name is constant keeps the
+	 * tree it loaded here instead of on itself.  That also means that the next generation with a new context goes back to the
+	 * TemplateCache and picks up any template that has changed since.
+	 *
+	 * @param p_tag	The tag that loaded the template.
+	 * @return NULL if the tag hasn't loaded its template yet in this generation.
+	 */
+	public Tag_Base GetResolvedTemplate(Object p_tag) {
+		return m_resolvedTemplates.get(p_tag);
+	}
+
+
+	//*********************************
+	public void SetResolvedTemplate(Object p_tag, Tag_Base p_template) {
+		m_resolvedTemplates.put(p_tag, p_template);
+	}
+
+
+	//*********************************
+	/**
+	 * Claims an output file for the file tag that is about to generate it.  Only the first claim on a path in a generation succeeds.
+	 *
+	 * @param p_outputFile	The file's absolute normalized path.
+	 * @param p_source		A description of the file tag that is claiming it, for the messages about duplicates.
+	 * @return NULL if this is the first claim, or the source of the claim that got there first.
+	 */
+	public String ClaimOutputPath(String p_outputFile, String p_source) {
+		return m_outputPaths.putIfAbsent(p_outputFile, p_source);
+	}
 
 
 	//*********************************
 	public void PushNewCurrentNode(ConfigNode p_newConfigNode) {
-		m_currentNodeStack.push(p_newConfigNode);
+		m_currentNodeStack.Push(p_newConfigNode);
 	}
 
 
 	//*********************************
 	public ConfigNode GetCurrentNode() {
-		try {
-			if (m_currentNodeStack.isEmpty())
-				return null;
-
-			return m_currentNodeStack.getFirst();
-		}
-		catch (Throwable t_error) {
-			Logger.LogException("EvaluationContext.GetCurrentNode() failed with error: ", t_error);
-			return null;
-		}
+		return m_currentNodeStack.Peek();
 	}
 
 
 	//*********************************
 	public void PopCurrentNode() {
-		try {
-			if (m_currentNodeStack.isEmpty())
-				return;
-
-			m_currentNodeStack.pop();
-		}
-		catch (Throwable t_error) {
-			Logger.LogException("EvaluationContext.PopCurrentNode() failed with error: ", t_error);
-		}
+		m_currentNodeStack.Pop();
 	}
 
 
@@ -150,103 +349,83 @@ public class EvaluationContext {
 
 	//*********************************
 	public void PushNewCursor(Cursor p_cursor) {
-		m_writerStack.push(p_cursor);
+		m_writerStack.Push(p_cursor);
 	}
 
 
 	//*********************************
 	public Cursor GetCursor() {
-		try {
-			if (m_writerStack.isEmpty())
-				return null;
-
-			return m_writerStack.getFirst();
-		}
-		catch (Throwable t_error) {
-			Logger.LogException("EvaluationContext.GetCursor() failed with error: ", t_error);
-			return null;
-		}
+		return m_writerStack.Peek();
 	}
 
 
 	//*********************************
 	public void PopCurrentCursor() {
-		try {
-			if (m_writerStack.isEmpty())
-				return;
-
-			m_writerStack.pop();
-		}
-		catch (Throwable t_error) {
-			Logger.LogException("EvaluationContext.PopCurrentCursor() failed with error: ", t_error);
-		}
+		m_writerStack.Pop();
 	}
 
 
 	//*********************************
 	public void PushLoopCounter(LoopCounter p_counter) {
-		m_iterationCounterStack.push(p_counter);
+		m_iterationCounterStack.Push(p_counter);
 	}
 
 
 	//*********************************
 	public LoopCounter GetLoopCounter() {
-		try {
-			if (m_iterationCounterStack.isEmpty())
-				return null;
-
-			return m_iterationCounterStack.getFirst();
-		}
-		catch (Throwable t_error) {
-			Logger.LogException("EvaluationContext.GetLoopCounter() failed with error: ", t_error);
-			return null;
-		}
+		return m_iterationCounterStack.Peek();
 	}
 
 
 	//*********************************
 	public void PopCurrentLoopCounter() {
-		try {
-			if (m_iterationCounterStack.isEmpty())
-				return;
-
-			m_iterationCounterStack.pop();
-		}
-		catch (Throwable t_error) {
-			Logger.LogException("EvaluationContext.PopCurrentLoopCounter() failed with error: ", t_error);
-		}
+		m_iterationCounterStack.Pop();
 	}
 
 
 	//*********************************
 	public void AddCounterVariable(String p_counterName, LoopCounter p_counter) {
 		p_counter.SetOptionalCounterName(p_counterName);	// We'll set this optional counter name just in case some code somewhere tries to us it.
-		m_counterVariableMap.put(p_counterName, p_counter);
+		m_counterVariableMap = m_counterVariableMap.Put(p_counterName, p_counter);
 	}
 
 
 	//*********************************
 	public LoopCounter GetCounterVariable(String p_counterName) {
-		return m_counterVariableMap.get(p_counterName);
+		return m_counterVariableMap.Get(p_counterName);
 	}
 
 
 	//*********************************
 	public LoopCounter GetNamedCounter(String p_optionalCounterName) {
-		String t_optionalCounterName;
-		for (LoopCounter t_nextCounter: m_iterationCounterStack) {
-			t_optionalCounterName = t_nextCounter.GetOptionalCounterName();
+		String		t_optionalCounterName;
+		LoopCounter	t_nextCounter;
+		for (int i = 0; i < m_iterationCounterStack.Size(); ++i) {	// From the top down so that the innermost loop with the name wins.
+			t_nextCounter			= m_iterationCounterStack.Get(i);
+			t_optionalCounterName	= t_nextCounter.GetOptionalCounterName();
 			if ((t_optionalCounterName != null) && t_optionalCounterName.equalsIgnoreCase(p_optionalCounterName))
 				return t_nextCounter;
 		}
 
-		return m_counterVariableMap.get(p_optionalCounterName);		// If no foreach iteration counter with that name was found, then we'll check for a CounterVariable instance.  This returning NULL if none is found is the correct behavior for this function.
+		return m_counterVariableMap.Get(p_optionalCounterName);		// If no foreach iteration counter with that name was found, then we'll check for a CounterVariable instance.  This returning NULL if none is found is the correct behavior for this function.
 	}
 
 
 	//*********************************
 	public void RemoveCounterVariable(String p_counterName) {
-		m_counterVariableMap.remove(p_counterName);
+		m_counterVariableMap = m_counterVariableMap.Remove(p_counterName);
+	}
+
+
+	//*********************************
+	/**
+	 * Adds every loop counter and counter variable that can currently be seen to the collection.
+	 */
+	public void CollectCounters(Collection<LoopCounter> p_counters) {
+		for (int i = 0; i < m_iterationCounterStack.Size(); ++i)
+			p_counters.add(m_iterationCounterStack.Get(i));
+
+		m_counterVariableMap.ForEachValue(p_counters::add);
 	}
 
 
@@ -262,43 +441,36 @@ public class EvaluationContext {
 	}
 
 
+	//*********************************
+	/**
+	 * Lets {@link codegenerator.generator.tags.FileTag} give each file its own custom code blocks so that a nested file doesn't wipe out the custom code that
+	 * was scanned from the file it is nested in.
+	 */
+	public void SetCustomCodeManager(CustomCodeManager p_customCodeManager) {
+		m_customCodeManager = p_customCodeManager;
+	}
+
+
 	//*********************************
 	public void PushTabSettingsManager(TabSettingsManager p_tabManager) {
-		m_tabSettingsManager.push(p_tabManager);
+		m_tabSettingsManager.Push(p_tabManager);
 	}
 
 
 	//*********************************
 	public int GetTabSettingsManagerStackDepth() {
-		return m_tabSettingsManager.size();
+		return m_tabSettingsManager.Size();
 	}
 
 
 	//*********************************
 	public TabSettingsManager GetTabSettingsManager() {
-		try {
-			if (m_tabSettingsManager.isEmpty())
-				return null;
-
-			return m_tabSettingsManager.getFirst();
-		}
-		catch (Throwable t_error) {
-			Logger.LogException("EvaluationContext.GetTabSettingsManager() failed with error: ", t_error);
-			return null;
-		}
+		return m_tabSettingsManager.Peek();
 	}
 
 
 	//*********************************
 	public void PopTabSettingsManager() {
-		try {
-			if (m_tabSettingsManager.isEmpty())
-				return;
-
-			m_tabSettingsManager.pop();
-		}
-		catch (Throwable t_error) {
-			Logger.LogException("EvaluationContext.GetTabSettingsManager() failed with error: ", t_error);
-		}
+		m_tabSettingsManager.Pop();
 	}
 }
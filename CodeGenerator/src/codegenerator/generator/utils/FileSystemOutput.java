@@ -0,0 +1,287 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>The usual destination:  each file is written straight into its output directory, which is made the first time it's needed.  A
+ * file tag that asks for a temp file gets one next to the original, and it replaces the original in one rename once it's finished, so
+ * a file that fails part way through doesn't take the original and its custom code with it.</p>
+ *
+ * <p>When unchanged files are skipped, a file that already exists is compared with the output as it is generated instead of being
+ * written over, and if the content turns out to be the same, then the file is left alone.  No temp file is written, the original
+ * isn't deleted or renamed and its last-modified time doesn't change, so build tools don't see it as changed.  See
+ * {@link ComparingOutputStream}.</p>
+ */
+public class FileSystemOutput implements OutputDestination {
+
+	static private final String		TEMP_FILE_EXTENSION		= ".temp";
+	static private final String		EXECUTABLE_PERMISSIONS	= "rwxr--r--";
+
+
+	//===========================================
+	/**
+	 * Sets the permissions of a generated or copied file so that it can be run.
+	 */
+	static boolean MakeExecutable(Path p_file) throws IOException {
+		if (Files.setPosixFilePermissions(p_file, PosixFilePermissions.fromString(EXECUTABLE_PERMISSIONS)) == null) {
+			Logger.LogError("FileSystemOutput.MakeExecutable() failed to set the permissions for the file [" + p_file.toAbsolutePath() + "].");
+			return false;
+		}
+
+		return true;
+	}
+
+
+
+	/**
+	 * A file that is written to the file system, either in place, to a temp file or, in staging mode, to its staged file.
+	 */
+	static abstract class DiskFile extends OutputFile {
+
+		// Data members
+		protected final	File							m_currentFile;		// What the output will be before this file replaces it.  In staging mode, that can be a staged file.
+		protected final	File							m_targetFile;
+		protected final	boolean							m_skipUnchanged;
+		protected final	boolean							m_makeExecutable;
+		protected final	GenerationManifest.OutputStamp	m_stamp;			// NULL unless the file is being recorded in the manifest.
+		private 		ComparingOutputStream			m_comparingStream	= null;
+
+
+		//*********************************
+		protected DiskFile(File								p_outputFile,
+						   boolean							p_isNewFile,
+						   Charset							p_charset,
+						   String							p_source,
+						   File								p_currentFile,
+						   File								p_targetFile,
+						   boolean							p_skipUnchanged,
+						   boolean							p_makeExecutable,
+						   GenerationManifest.OutputStamp	p_stamp)
+		{
+			super(p_outputFile, p_isNewFile, p_charset, p_source);
+
+			m_currentFile		= p_currentFile;
+			m_targetFile		= p_targetFile;
+			m_skipUnchanged		= p_skipUnchanged;
+			m_makeExecutable	= p_makeExecutable;
+			m_stamp				= p_stamp;
+		}
+
+
+		//*********************************
+		@Override
+		public boolean ScanCustomCode(CustomCodeManager p_customCodeManager) {
+			return p_customCodeManager.ScanFile(m_currentFile, m_charset);
+		}
+
+
+		//*********************************
+		/**
+		 * When we are skipping unchanged files, the output is compared with the existing file and only written if it turns out to be different.
+		 */
+		@Override
+		public OutputStream Open() throws IOException {
+			if (m_skipUnchanged && !m_isNewFile) {
+				m_comparingStream = new ComparingOutputStream(m_currentFile, m_targetFile);
+				return m_comparingStream;
+			}
+
+			return Channels.newOutputStream(FileChannel.open(m_targetFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+		}
+
+
+		//*********************************
+		/**
+		 * @return True if the output was compared with the current file and turned out to be the same, so nothing was written.
+		 */
+		protected boolean IsUnchanged() {
+			boolean t_isUnchanged = (m_comparingStream != null) && m_comparingStream.IsUnchanged();
+			if (t_isUnchanged)
+				Logger.LogDebug("FileSystemOutput.DiskFile.IsUnchanged() left the unchanged file [" + m_outputFile.getPath() + "] alone.");
+
+			return t_isUnchanged;
+		}
+	}
+
+
+
+	/**
+	 * A file that is written in place or to a temp file next to it.
+	 */
+	private class WrittenFile extends DiskFile {
+
+		//*********************************
+		public WrittenFile(File								p_outputFile,
+						   boolean							p_isNewFile,
+						   String							p_source,
+						   File								p_targetFile,
+						   boolean							p_makeExecutable,
+						   GenerationManifest.OutputStamp	p_stamp)
+		{
+			super(p_outputFile, p_isNewFile, FileSystemOutput.this.m_charset, p_source, p_outputFile, p_targetFile, FileSystemOutput.this.m_skipUnchangedFiles, p_makeExecutable, p_stamp);
+		}
+
+
+		//*********************************
+		@Override
+		protected boolean FinishFile() throws IOException {
+			boolean t_isUnchanged = IsUnchanged();
+
+			// Finally, if we were using a temp file, it replaces the original file.  The rename does that in one step, so the original doesn't have to be deleted first.
+			if (!m_targetFile.equals(m_outputFile) && !t_isUnchanged) {
+				try {
+					m_fileSystemCache.Move(m_targetFile, m_outputFile);
+				}
+				catch (IOException t_error) {
+					Logger.LogException("FileSystemOutput.WrittenFile.FinishFile() failed to rename the temp file [" + m_targetFile.getAbsolutePath() + "] to the original file name [" + m_outputFile.getAbsolutePath() + "] for " + m_source + ": ", t_error);
+					return false;
+				}
+
+				Logger.LogDebug("FileSystemOutput.WrittenFile.FinishFile() replaced the original file [" + m_outputFile.getPath() + "] with the temp file [" + m_targetFile.getPath() + "]");
+			}
+			else if (m_isNewFile)
+				m_fileSystemCache.NoteCreated(m_outputFile);
+
+			if (m_makeExecutable && (!t_isUnchanged || !m_outputFile.canExecute()) && !MakeExecutable(m_outputFile.toPath()))
+				return false;
+
+			CountFile(t_isUnchanged);
+
+			if (m_stamp != null)
+				m_stamp.Refresh();
+
+			return true;
+		}
+	}
+
+
+
+	// Data members
+	private final	OutputFileSystemCache	m_fileSystemCache;
+	private final	Charset					m_charset;
+	private final	boolean					m_skipUnchangedFiles;
+
+
+	//*********************************
+	/**
+	 * @param p_fileSystemCache		The context's, so that the tags and this agree on what's in the output directories.
+	 * @param p_charset				The charset that the files are written in.  Existing files are read in it, too, when they are scanned
+	 * for custom code, so that the custom code comes back out the way it went in.
+	 * @param p_skipUnchangedFiles	Leave any existing file whose generated content hasn't changed alone.
+	 */
+	public FileSystemOutput(OutputFileSystemCache p_fileSystemCache, Charset p_charset, boolean p_skipUnchangedFiles) {
+		m_fileSystemCache		= p_fileSystemCache;
+		m_charset				= p_charset;
+		m_skipUnchangedFiles	= p_skipUnchangedFiles;
+	}
+
+
+	//*********************************
+	@Override
+	public OutputFile OpenFile(File p_outputFile, boolean p_useTempFile, boolean p_makeExecutable, GenerationManifest.OutputStamp p_stamp, String p_source) throws IOException {
+		File t_directory = p_outputFile.getAbsoluteFile().getParentFile();
+		if (!m_fileSystemCache.CreateDirectory(t_directory.toPath())) {
+			Logger.LogError("FileSystemOutput.OpenFile() failed to create the destination directory [" + t_directory.getPath() + "] for " + p_source + ".");
+			return null;
+		}
+
+		boolean	t_isNewFile		= !m_fileSystemCache.Exists(p_outputFile);
+		File	t_targetFile	= p_outputFile;		// We'll default the target file to the "original" file and only switch it to a temp file if needed.
+		if (p_useTempFile) {
+			t_targetFile = new File(p_outputFile.getAbsolutePath() + TEMP_FILE_EXTENSION);
+			if (m_fileSystemCache.Exists(t_targetFile) && !m_fileSystemCache.Delete(t_targetFile)) {	// This should theoretically never happen if this code is properly cleaning up after itself, but just in case, we'll delete it here before we move on.
+				Logger.LogError("FileSystemOutput.OpenFile() failed to delete the unexpected temp file [" + t_targetFile.getAbsolutePath() + "].");
+				return null;
+			}
+		}
+
+		return new WrittenFile(p_outputFile, t_isNewFile, p_source, t_targetFile, p_makeExecutable, p_stamp);
+	}
+
+
+	//*********************************
+	@Override
+	public boolean CopyFile(File p_outputFile, Path p_sourceFile, boolean p_makeExecutable) throws IOException {
+		File t_directory = p_outputFile.getAbsoluteFile().getParentFile();
+		if (!m_fileSystemCache.CreateDirectory(t_directory.toPath())) {		// This can be called by more than one file at the same time in parallel mode, so we use the same thread-safe directory creation as the generated files.
+			Logger.LogError("FileSystemOutput.CopyFile() failed to create the destination directory [" + t_directory.getPath() + "].");
+			return false;
+		}
+
+		if (m_fileSystemCache.Exists(p_outputFile) && !m_fileSystemCache.Delete(p_outputFile)) {
+			Logger.LogError("FileSystemOutput.CopyFile() failed to delete the old copy [" + p_outputFile.getPath() + "].");
+			return false;
+		}
+
+		Files.copy(p_sourceFile, p_outputFile.toPath());
+
+		if (p_makeExecutable && !MakeExecutable(p_outputFile.toPath()))
+			return false;
+
+		m_fileSystemCache.NoteCreated(p_outputFile);
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean HasFailed() {
+		return false;
+	}
+
+
+	//*********************************
+	/**
+	 * The files are already in place.
+	 */
+	@Override
+	public boolean Commit() {
+		return true;
+	}
+
+
+	//*********************************
+	/**
+	 * The files that were written before the failure stay written, the same as they always have.
+	 */
+	@Override
+	public void Abandon() {
+	}
+
+
+	//*********************************
+	@Override
+	public void LogStatistics() {
+	}
+}
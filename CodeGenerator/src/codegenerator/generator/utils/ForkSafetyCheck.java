@@ -0,0 +1,191 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.util.*;
+
+import codegenerator.generator.tags.*;
+
+
+
+/**
+ * <p>Walks a file's template tree before {@link FileTag} hands it to a {@link ParallelFileEvaluator} to decide whether the file can be
+ * evaluated in a forked {@link EvaluationContext} without its output changing.</p>
+ *
+ * <p>A forked context gets a snapshot of the loop counters that are visible where the file tag is, so anything in the file that only
+ * reads them is fine.  What isn't fine is a <code>first</code>, <code>counterIncrement</code> or <code>counterDecrement</code> tag that
+ * uses a counter from outside the file, because in serial mode the changes it makes to that counter carry over to the files that
+ * are generated after it and a snapshot would throw them away.  The same goes for <code>typeConvertLoadFile</code> since the types it
+ * loads have to be there for the files that come after it.  And since an <code>include</code> or a nested <code>file</code> tag whose
+ * template name has to be evaluated can't be looked at until then, those are treated as unsafe, too.  A file that fails the check is
+ * simply evaluated in the thread that found it, in the same order as serial mode.</p>
+ *
+ * <p>Loading a template defines the variables that its "set" tags set, and in serial mode that happens when the tag that pulls it in
+ * is evaluated.  So a template that the file pulls in through an <code>include</code> or a nested <code>file</code> tag and that sets
+ * a variable makes the file unsafe, since a forked file would define it out of order and from another thread.  A <code>variable</code>
+ * tag that evaluates a variable is checked by checking the contents of its definition, and the check keeps that definition so that
+ * the forked file gets it even if the parent loads a template that sets the same variable again while the file is being generated.
+ * A variable that isn't defined yet makes the file unsafe.</p>
+ */
+public class ForkSafetyCheck {
+
+	// Data members
+	private final EvaluationContext		m_evaluationContext;								// The context the file would be forked from.  It tells us which counter names are already visible from outside the file.
+	private 	  int					m_loopDepth				= 0;
+	private final LinkedList<String>	m_loopCounterNames		= new LinkedList<>();		// The optionalCounterName of each forEach inside the file that we are currently inside of.
+	private final LinkedList<String>	m_counterVariableNames	= new LinkedList<>();
+	private final LinkedList<Tag_Base>	m_templatePath			= new LinkedList<>();		// The included templates we are inside of so that a recursive include doesn't send us around in circles.
+	private 	  int					m_pulledInDepth			= 0;						// How many templates pulled in by an include or nested file tag we are inside of.
+	private final HashMap<String, Variable>	m_variableDefinitions	= new HashMap<>();	// The definition of each variable that the file evaluates.
+
+
+	//*********************************
+	public ForkSafetyCheck(EvaluationContext p_evaluationContext) {
+		m_evaluationContext = p_evaluationContext;
+	}
+
+
+	//*********************************
+	public EvaluationContext GetEvaluationContext() {
+		return m_evaluationContext;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_variableName
+	 * @param p_definition	The "set" tag that the variable would be evaluated from.
+	 */
+	public void AddVariableDefinition(String p_variableName, Variable p_definition) {
+		m_variableDefinitions.put(p_variableName, p_definition);
+	}
+
+
+	//*********************************
+	/**
+	 * @return The definition of each variable that the file evaluates, for {@link EvaluationContext#SetVariableDefinitions(Map)}.
+	 */
+	public Map<String, Variable> GetVariableDefinitions() {
+		return m_variableDefinitions;
+	}
+
+
+	//*********************************
+	public void EnterLoop(String p_optionalCounterName) {
+		++m_loopDepth;
+		m_loopCounterNames.push((p_optionalCounterName != null) ? p_optionalCounterName : "");
+	}
+
+
+	//*********************************
+	public void ExitLoop() {
+		--m_loopDepth;
+		m_loopCounterNames.pop();
+	}
+
+
+	//*********************************
+	public void EnterCounterVariable(String p_counterName) {
+		m_counterVariableNames.push(p_counterName);
+	}
+
+
+	//*********************************
+	public void ExitCounterVariable() {
+		m_counterVariableNames.pop();
+	}
+
+
+	//*********************************
+	/**
+	 * Tells whether the counter that a tag would get from {@link EvaluationContext#GetLoopCounter()} or {@link EvaluationContext#GetNamedCounter(String)}
+	 * is created inside the file being checked.  This mirrors how those functions look the counters up.
+	 *
+	 * @param p_optionalCounterName	NULL for the counter of the forEach directly around the tag.
+	 * @return
+	 */
+	public boolean IsLocalCounter(String p_optionalCounterName) {
+		if (p_optionalCounterName == null)
+			return m_loopDepth > 0;
+
+		for (String t_nextName: m_loopCounterNames) {
+			if (t_nextName.equalsIgnoreCase(p_optionalCounterName))
+				return true;
+		}
+
+		// Named forEach counters are looked up before counter variables, so a counter variable in the file only wins if nothing outside the file already has that name.
+		return m_counterVariableNames.contains(p_optionalCounterName) && (m_evaluationContext.GetNamedCounter(p_optionalCounterName) == null);
+	}
+
+
+	//*********************************
+	/**
+	 * @return True if the tag being checked is in a template that an <code>include</code> or nested <code>file</code> tag pulls into the file.
+	 */
+	public boolean IsInPulledInTemplate() {
+		return m_pulledInDepth > 0;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_templateFileName	The constant name of a template that an <code>include</code> or <code>file</code> tag pulls into the file.
+	 * NULL if the name has to be evaluated, which makes the file unsafe since we can't know what it will be.
+	 * @return
+	 */
+	public boolean CheckTemplate(String p_templateFileName) {
+		if (p_templateFileName == null)
+			return false;
+
+		File t_templateFile = new File(p_templateFileName);
+		if (!t_templateFile.exists())
+			return false;	// The tag will report the missing file when it is evaluated, and it will do it in order.
+
+		++m_pulledInDepth;
+		boolean t_isSafe = CheckTemplate(TemplateCache.GetTemplate(t_templateFile));
+		--m_pulledInDepth;
+
+		return t_isSafe;
+	}
+
+
+	//*********************************
+	/**
+	 * Checks a template that an <code>include</code> or <code>file</code> tag pulls into the file or the contents of a variable that it evaluates.
+	 *
+	 * @param p_template	NULL if the template couldn't be loaded, in which case the tag will report it when it is evaluated.
+	 * @return
+	 */
+	public boolean CheckTemplate(Tag_Base p_template) {
+		if ((p_template == null) || m_templatePath.contains(p_template))
+			return false;
+
+		m_templatePath.push(p_template);
+		boolean t_isSafe = p_template.CheckForkSafety(this);
+		m_templatePath.pop();
+
+		return t_isSafe;
+	}
+}
@@ -59,7 +59,7 @@ public class GeneralBlock extends Tag_Base {
 	//*********************************
 	@Override
 	public Tag_Base GetInstance() {
-		return null;	// This should never be called for this class.
+		return new GeneralBlock();	// The parser never calls this for this class, but CompiledTagReader does when it loads a compiled template.
 	}
 
 
@@ -74,7 +74,7 @@ public class GeneralBlock extends Tag_Base {
 			Token				t_nextToken;
 			TagParser			t_tagParser;
 			Tag_Base	t_newBlock;
-			while ((t_nextToken = p_tokenizer.GetNextToken()) != null) {
+			while ((t_nextToken = p_tokenizer.GetNextTextToken()) != null) {	// Anything between the tags in a general block is ignored, so we only need the tokenizer to find the next delimiter for us.
 				if (t_nextToken.m_tokenType == Token.TOKEN_TYPE_CLOSING_DELIMITER) {
 					Logger.LogError("GeneralBlock.Parse() found a token of type [" + t_nextToken.GetTokenTypeName() + "] at line [" + p_tokenizer.GetLineCount() + "].");
 					return false;
@@ -0,0 +1,646 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import coreutil.config.*;
+import coreutil.logging.*;
+
+
+
+/**
+	<p>Remembers, from one generation to the next, what each generated file was made from so that {@link codegenerator.generator.tags.FileTag}
+	can skip a file without evaluating it at all if none of that has changed.</p>
+
+	<p>For every file that it could fork in parallel mode (see {@link ForkSafetyCheck}), FileTag has a {@link DependencyRecorder} collect
+	the template files the file was generated from and every config value, node count and existence test that the tags in the file read
+	while it was evaluated.  Those are saved here, along with the file tag's own settings and the size and last-modified time of the file
+	that was written.  In the next generation, when the same file tag comes up with the same output file name, each of those is looked up
+	again: the template files are hashed, the config reads are re-resolved against the new config tree and the output file is checked to
+	make sure nobody has touched it.  If every one of them comes back the same, then the file would come out the same, so it is left alone
+	and its entry is carried over to the new manifest.</p>
+
+	<p>Config nodes are recorded by their path from the root, with the index of each node among its siblings of the same name, so that
+	a node added or removed somewhere else in the tree doesn't change it.  A read whose node can't be found in the new tree just means the
+	file has to be generated again.  That is the rule everywhere in here: anything that can't be shown to be the same counts as changed.</p>
+
+	<p>The manifest is only saved if the whole generation succeeds so that a failed run can't leave behind entries for files that weren't
+	finished.</p>
+*/
+public class GenerationManifest {
+
+	static private final int	MANIFEST_MAGIC		= 0x43474D46;	// "CGMF"
+	static private final int	MANIFEST_VERSION	= 1;
+
+	static public final int		READ_VALUE			= 1;	// The string value of a value on a node.
+	static public final int		READ_NODE_COUNT		= 2;	// How many child nodes of a name a node has.
+	static public final int		READ_VALUE_LIST		= 3;	// All of the child values of a name on a node.
+	static public final int		READ_EXISTS			= 4;	// Whether a node has a child node or value of a name.
+	static public final int		READ_COUNTER		= 5;	// The value of a loop counter from outside the file.
+	static public final int		READ_CURRENT_VALUE	= 6;	// The value that a forEach outside the file is iterating over.
+	static public final int		READ_OUTER_CONTEXT	= 7;	// The node that an outer context from outside the file points to.
+	static public final int		READ_TYPE			= 8;	// A typeConvert lookup.
+
+
+	//===========================================
+	/**
+	 * One thing that a file read while it was being generated.  What the fields hold depends on the type.  For the config reads, the
+	 * path is the node's path and the name is the child name.  For the counter, current value and outer context reads, only the name
+	 * is used.  For a type lookup, they are the target language, source type and group.
+	 */
+	static public final class ConfigRead {
+		private final int		m_type;
+		private final String	m_path;
+		private final String	m_name;
+		private final String	m_qualifier;
+		private final String	m_value;
+
+		public ConfigRead(int p_type, String p_path, String p_name, String p_qualifier, String p_value) {
+			m_type		= p_type;
+			m_path		= p_path;
+			m_name		= p_name;
+			m_qualifier	= p_qualifier;
+			m_value		= p_value;
+		}
+
+		public int GetType() {
+			return m_type;
+		}
+
+		public String GetName() {
+			return m_name;
+		}
+
+		/**
+		 * Two reads with the same key always read the same thing, so only the first one in a file has to be kept.
+		 */
+		public String GetKey() {
+			return m_type + "\u0000" + m_path + "\u0000" + m_name + "\u0000" + m_qualifier;
+		}
+	}
+
+
+	//===========================================
+	/**
+	 * A generated file's size and last-modified time as they were right after it was written.
+	 */
+	static public final class OutputStamp {
+		private final String		m_path;
+		private volatile long	m_size;
+		private volatile long	m_lastModified;
+
+		public OutputStamp(String p_path, long p_size, long p_lastModified) {
+			m_path			= p_path;
+			m_size			= p_size;
+			m_lastModified	= p_lastModified;
+		}
+
+		static public OutputStamp Take(String p_path) {
+			File t_file = new File(p_path);
+			return new OutputStamp(p_path, t_file.length(), t_file.lastModified());
+		}
+
+		/**
+		 * For a file that is still being written by the {@link OutputPipeline}.  It has to be refreshed once the file is done.
+		 */
+		static public OutputStamp Pending(String p_path) {
+			return new OutputStamp(p_path, -1, -1);
+		}
+
+		public void Refresh() {
+			File t_file = new File(m_path);
+			m_size			= t_file.length();
+			m_lastModified	= t_file.lastModified();
+		}
+
+		public String GetPath() {
+			return m_path;
+		}
+
+		public boolean IsUnchanged() {
+			File t_file = new File(m_path);
+			return (t_file.lastModified() == m_lastModified) && (t_file.length() == m_size) && t_file.isFile();
+		}
+	}
+
+
+	//===========================================
+	static public final class Entry {
+		private final String				m_settings;
+		private final OutputStamp			m_output;
+		private final TreeMap<String, String>	m_templateHashes;
+		private final List<ConfigRead>		m_reads;
+		private final List<OutputStamp>		m_nestedOutputs;
+
+		public Entry(String p_settings, OutputStamp p_output, TreeMap<String, String> p_templateHashes, List<ConfigRead> p_reads, List<OutputStamp> p_nestedOutputs) {
+			m_settings			= p_settings;
+			m_output			= p_output;
+			m_templateHashes	= p_templateHashes;
+			m_reads				= p_reads;
+			m_nestedOutputs		= p_nestedOutputs;
+		}
+
+		public Set<String> GetTemplates() {
+			return m_templateHashes.keySet();
+		}
+
+		public List<ConfigRead> GetReads() {
+			return m_reads;
+		}
+
+		public OutputStamp GetOutput() {
+			return m_output;
+		}
+
+		public List<OutputStamp> GetNestedOutputs() {
+			return m_nestedOutputs;
+		}
+	}
+
+
+	// Data members
+	private final File									m_manifestFile;
+	private final boolean								m_forceRebuild;
+	private		  HashMap<String, Entry>				m_previousEntries	= new HashMap<>();			// What was loaded.  It isn't changed after Load() so any thread can read it.
+	private final ConcurrentHashMap<String, Entry>		m_entries			= new ConcurrentHashMap<>();	// What will be saved.
+	private final ConcurrentHashMap<String, String>		m_templateHashes	= new ConcurrentHashMap<>();	// Each template file is only hashed once per generation.
+	private final ConcurrentHashMap<String, String>		m_templatePaths		= new ConcurrentHashMap<>();	// Template names as the tags give them to their canonical paths.
+	private final ConcurrentHashMap<ConfigNode, String>	m_nodePaths			= new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, ConfigNode>	m_pathNodes			= new ConcurrentHashMap<>();
+	private		  ConfigNode							m_rootNode			= null;
+
+	private final AtomicInteger							m_upToDateCount		= new AtomicInteger();
+	private final AtomicInteger							m_recordedCount		= new AtomicInteger();
+
+
+	//*********************************
+	/**
+	 * @param p_manifestFile	Where the manifest is read from and saved to.
+	 * @param p_forceRebuild	Ignore what is in the manifest file so that every file is generated, and then save a new one.
+	 */
+	public GenerationManifest(File p_manifestFile, boolean p_forceRebuild) {
+		m_manifestFile	= p_manifestFile;
+		m_forceRebuild	= p_forceRebuild;
+	}
+
+
+	//*********************************
+	/**
+	 * Reads the entries from the last generation.  A missing or out of date manifest isn't an error.  It just means that every file
+	 * is generated this time.
+	 *
+	 * @param p_rootNode	The root of the config tree that this generation uses.  The recorded node paths are resolved against it.
+	 * @return
+	 */
+	public boolean Load(ConfigNode p_rootNode) {
+		m_rootNode = p_rootNode;
+		m_pathNodes.put("", p_rootNode);
+
+		if (m_forceRebuild || !m_manifestFile.exists())
+			return true;
+
+		try (DataInputStream t_manifestStream = new DataInputStream(new BufferedInputStream(new FileInputStream(m_manifestFile)))) {
+			if (t_manifestStream.readInt() != MANIFEST_MAGIC) {
+				Logger.LogError("GenerationManifest.Load() found that [" + m_manifestFile.getPath() + "] is not a generation manifest.");
+				return false;
+			}
+
+			int t_version = t_manifestStream.readInt();
+			if (t_version != MANIFEST_VERSION) {
+				Logger.LogInfo("GenerationManifest.Load() found manifest version [" + t_version + "] in [" + m_manifestFile.getPath() + "] but it only reads version [" + MANIFEST_VERSION + "].  Every file will be generated.");
+				return true;
+			}
+
+			HashMap<String, Entry> t_entries = new HashMap<>();
+			int t_entryCount = t_manifestStream.readInt();
+			for (int i = 0; i < t_entryCount; ++i) {
+				String		t_settings	= ReadString(t_manifestStream);
+				OutputStamp	t_output	= ReadStamp(t_manifestStream);
+
+				TreeMap<String, String> t_templateHashes = new TreeMap<>();
+				int t_count = t_manifestStream.readInt();
+				for (int j = 0; j < t_count; ++j)
+					t_templateHashes.put(ReadString(t_manifestStream), ReadString(t_manifestStream));
+
+				t_count = t_manifestStream.readInt();
+				ArrayList<ConfigRead> t_reads = new ArrayList<>(t_count);
+				for (int j = 0; j < t_count; ++j)
+					t_reads.add(new ConfigRead(t_manifestStream.readByte(), ReadString(t_manifestStream), ReadString(t_manifestStream), ReadString(t_manifestStream), ReadString(t_manifestStream)));
+
+				t_count = t_manifestStream.readInt();
+				ArrayList<OutputStamp> t_nestedOutputs = new ArrayList<>(t_count);
+				for (int j = 0; j < t_count; ++j)
+					t_nestedOutputs.add(ReadStamp(t_manifestStream));
+
+				t_entries.put(t_output.GetPath(), new Entry(t_settings, t_output, t_templateHashes, t_reads, t_nestedOutputs));
+			}
+
+			m_previousEntries = t_entries;
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("GenerationManifest.Load() failed with error reading [" + m_manifestFile.getPath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Writes this generation's entries to a temp file and then moves it over the old manifest so that an interrupted save can't leave a
+	 * half-written manifest behind.
+	 */
+	public boolean Save() {
+		File t_tempFile = new File(m_manifestFile.getAbsolutePath() + ".temp");
+		try {
+			File t_directory = t_tempFile.getParentFile();
+			if ((t_directory != null) && !t_directory.exists())
+				Files.createDirectories(t_directory.toPath());
+
+			try (DataOutputStream t_manifestStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(t_tempFile)))) {
+				t_manifestStream.writeInt(MANIFEST_MAGIC);
+				t_manifestStream.writeInt(MANIFEST_VERSION);
+
+				TreeMap<String, Entry> t_entries = new TreeMap<>(m_entries);	// Sorted so that the same generation always saves the same manifest.
+				t_manifestStream.writeInt(t_entries.size());
+				for (Entry t_entry: t_entries.values()) {
+					WriteString(t_manifestStream, t_entry.m_settings);
+					WriteStamp(t_manifestStream, t_entry.m_output);
+
+					t_manifestStream.writeInt(t_entry.m_templateHashes.size());
+					for (Map.Entry<String, String> t_template: t_entry.m_templateHashes.entrySet()) {
+						WriteString(t_manifestStream, t_template.getKey());
+						WriteString(t_manifestStream, t_template.getValue());
+					}
+
+					t_manifestStream.writeInt(t_entry.m_reads.size());
+					for (ConfigRead t_read: t_entry.m_reads) {
+						t_manifestStream.writeByte(t_read.m_type);
+						WriteString(t_manifestStream, t_read.m_path);
+						WriteString(t_manifestStream, t_read.m_name);
+						WriteString(t_manifestStream, t_read.m_qualifier);
+						WriteString(t_manifestStream, t_read.m_value);
+					}
+
+					t_manifestStream.writeInt(t_entry.m_nestedOutputs.size());
+					for (OutputStamp t_nestedOutput: t_entry.m_nestedOutputs)
+						WriteStamp(t_manifestStream, t_nestedOutput);
+				}
+			}
+
+			Files.move(t_tempFile.toPath(), m_manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("GenerationManifest.Save() failed with error writing [" + m_manifestFile.getPath() + "]: ", t_error);
+			t_tempFile.delete();
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * The key that a generated file is recorded under.
+	 */
+	public String GetOutputKey(String p_filePath, String p_fileName) {
+		return Paths.get(p_filePath, p_fileName).toAbsolutePath().normalize().toString();
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_templateFileName	A template file name as a tag has it.
+	 * @return The canonical path that the template is recorded under.
+	 */
+	public String GetTemplateKey(String p_templateFileName) {
+		return m_templatePaths.computeIfAbsent(p_templateFileName, p_name -> {
+			try {
+				return new File(p_name).getCanonicalPath();
+			}
+			catch (IOException t_error) {
+				return new File(p_name).getAbsolutePath();
+			}
+		});
+	}
+
+
+	//*********************************
+	/**
+	 * @return The SHA-256 of the template file's contents, or an empty string if it can't be read.
+	 */
+	public String GetTemplateHash(String p_templateKey) {
+		return m_templateHashes.computeIfAbsent(p_templateKey, p_key -> {
+			try {
+				byte[]	t_digest	= MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(Paths.get(p_key)));
+				StringBuilder t_hash = new StringBuilder(t_digest.length * 2);
+				for (byte t_nextByte: t_digest)
+					t_hash.append(Character.forDigit((t_nextByte >> 4) & 0xF, 16)).append(Character.forDigit(t_nextByte & 0xF, 16));
+
+				return t_hash.toString();
+			}
+			catch (Throwable t_error) {
+				return "";
+			}
+		});
+	}
+
+
+	//*********************************
+	/**
+	 * @return The node's path from the root as "/name[index]/name[index]...", where the index counts only the siblings with the same
+	 * name, the same way a forEach sees them.
+	 */
+	public String GetNodePath(ConfigNode p_node) {
+		if ((p_node == m_rootNode) || (p_node == null))
+			return "";
+
+		String t_path = m_nodePaths.get(p_node);
+		if (t_path != null)
+			return t_path;
+
+		ConfigNode	t_parent	= p_node.GetParentNode();
+		int			t_index		= 0;
+		if (t_parent != null) {
+			for (ConfigNode t_sibling: t_parent.GetChildNodeList()) {
+				if (t_sibling == p_node)
+					break;
+
+				if (t_sibling.GetName().equalsIgnoreCase(p_node.GetName()))
+					++t_index;
+			}
+		}
+
+		t_path = GetNodePath(t_parent) + "/" + p_node.GetName() + "[" + t_index + "]";
+		m_nodePaths.put(p_node, t_path);
+		return t_path;
+	}
+
+
+	//*********************************
+	/**
+	 * @return NULL if the path doesn't lead to a node in this generation's config tree.
+	 */
+	public ConfigNode GetNode(String p_path) {
+		ConfigNode t_node = m_pathNodes.get(p_path);
+		if (t_node != null)
+			return t_node;
+
+		int t_separator	= p_path.lastIndexOf('/');
+		int t_bracket	= p_path.lastIndexOf('[');
+		if ((t_separator < 0) || (t_bracket < t_separator) || !p_path.endsWith("]"))
+			return null;
+
+		ConfigNode t_parent = GetNode(p_path.substring(0, t_separator));
+		if (t_parent == null)
+			return null;
+
+		String	t_name = p_path.substring(t_separator + 1, t_bracket);
+		int		t_index;
+		try {
+			t_index = Integer.parseInt(p_path.substring(t_bracket + 1, p_path.length() - 1));
+		}
+		catch (NumberFormatException t_error) {
+			return null;
+		}
+
+		for (ConfigNode t_child: t_parent.GetChildNodeList()) {
+			if (t_child.GetName().equalsIgnoreCase(t_name) && (t_index-- == 0)) {
+				m_pathNodes.put(p_path, t_child);
+				return t_child;
+			}
+		}
+
+		return null;
+	}
+
+
+	//===========================================
+	/**
+	 * These are what both the tags and the up-to-date check use to turn a node into the recorded value so that the two always agree.
+	 */
+	static public String CountChildNodes(ConfigNode p_node, String p_name) {
+		int t_count = 0;
+		for (ConfigNode t_child: p_node.GetChildNodeList()) {
+			if (t_child.GetName().equalsIgnoreCase(p_name))
+				++t_count;
+		}
+
+		return Integer.toString(t_count);
+	}
+
+
+	//===========================================
+	static public String JoinChildValues(ConfigNode p_node, String p_name) {
+		StringBuilder t_values = new StringBuilder();
+		for (coreutil.config.ConfigValue t_child: p_node.GetChildValueList()) {
+			if (t_child.GetName().equalsIgnoreCase(p_name))
+				t_values.append(t_child.GetStringValue()).append('\u0000');
+		}
+
+		return t_values.toString();
+	}
+
+
+	//===========================================
+	static public String Exists(ConfigNode p_node, String p_name) {
+		return Boolean.toString((p_node.GetNode(p_name) != null) || (p_node.GetValue(p_name) != null));
+	}
+
+
+	//*********************************
+	/**
+	 * Looks a recorded read up again as it is in this generation.
+	 *
+	 * @return NULL if what it read is gone.
+	 */
+	private String Reread(ConfigRead p_read, EvaluationContext p_evaluationContext) {
+		switch (p_read.m_type) {
+			case READ_VALUE: {
+				ConfigNode t_node = GetNode(p_read.m_path);
+				if (t_node == null)
+					return null;
+
+				coreutil.config.ConfigValue t_value = t_node.GetValue(p_read.m_name);
+				return (t_value != null) ? t_value.GetStringValue() : null;
+			}
+
+			case READ_NODE_COUNT: {
+				ConfigNode t_node = GetNode(p_read.m_path);
+				return (t_node != null) ? CountChildNodes(t_node, p_read.m_name) : null;
+			}
+
+			case READ_VALUE_LIST: {
+				ConfigNode t_node = GetNode(p_read.m_path);
+				return (t_node != null) ? JoinChildValues(t_node, p_read.m_name) : null;
+			}
+
+			case READ_EXISTS: {
+				ConfigNode t_node = GetNode(p_read.m_path);
+				return (t_node != null) ? Exists(t_node, p_read.m_name) : null;
+			}
+
+			case READ_COUNTER: {
+				LoopCounter t_counter = (p_read.m_name == null) ? p_evaluationContext.GetLoopCounter() : p_evaluationContext.GetNamedCounter(p_read.m_name);
+				return (t_counter != null) ? Integer.toString(t_counter.GetCounter()) : null;
+			}
+
+			case READ_CURRENT_VALUE: {
+				coreutil.config.ConfigValue t_value = p_evaluationContext.GetCurrentValue();
+				return ((t_value != null) && t_value.GetName().equalsIgnoreCase(p_read.m_name)) ? t_value.GetStringValue() : null;
+			}
+
+			case READ_OUTER_CONTEXT: {
+				ConfigNode t_node = p_evaluationContext.GetOuterContextManager().GetOuterContext(p_read.m_name);
+				return (t_node != null) ? GetNodePath(t_node) : null;
+			}
+
+			case READ_TYPE:
+				return DataTypeManager.GetTypeConversion(p_read.m_path, p_read.m_name, p_read.m_qualifier);
+
+			default:
+				return null;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Called by a file tag before it evaluates anything in its file.
+	 *
+	 * @param p_outputKey			See {@link #GetOutputKey(String, String)}.
+	 * @param p_settings			The file tag's settings and anything it gets from the context around it that isn't recorded as a read.
+	 * @param p_evaluationContext	The context the file would be generated with.
+	 * @return The entry from the last generation if the file would come out the same as it did then, otherwise NULL.
+	 */
+	public Entry GetUpToDateEntry(String p_outputKey, String p_settings, EvaluationContext p_evaluationContext) {
+		Entry t_entry = m_previousEntries.get(p_outputKey);
+		if ((t_entry == null) || !t_entry.m_settings.equals(p_settings) || !t_entry.m_output.IsUnchanged())
+			return null;
+
+		for (OutputStamp t_nestedOutput: t_entry.m_nestedOutputs) {
+			if (!t_nestedOutput.IsUnchanged())
+				return null;
+		}
+
+		for (Map.Entry<String, String> t_template: t_entry.m_templateHashes.entrySet()) {
+			if (!GetTemplateHash(t_template.getKey()).equals(t_template.getValue()))
+				return null;
+		}
+
+		for (ConfigRead t_read: t_entry.m_reads) {
+			if (!Objects.equals(Reread(t_read, p_evaluationContext), t_read.m_value))
+				return null;
+		}
+
+		return t_entry;
+	}
+
+
+	//*********************************
+	/**
+	 * Keeps a skipped file's entry, and those of the files nested in it, for the next generation.
+	 */
+	public void CarryForward(Entry p_entry) {
+		m_entries.put(p_entry.m_output.GetPath(), p_entry);
+
+		for (OutputStamp t_nestedOutput: p_entry.m_nestedOutputs) {
+			Entry t_nestedEntry = m_previousEntries.get(t_nestedOutput.GetPath());
+			if (t_nestedEntry != null)
+				m_entries.put(t_nestedOutput.GetPath(), t_nestedEntry);
+		}
+
+		m_upToDateCount.incrementAndGet();
+	}
+
+
+	//*********************************
+	/**
+	 * Records a file that was just generated.
+	 */
+	public void AddEntry(String p_settings, OutputStamp p_output, DependencyRecorder p_recorder) {
+		TreeMap<String, String> t_templateHashes = new TreeMap<>();
+		for (String t_template: p_recorder.GetTemplates())
+			t_templateHashes.put(t_template, GetTemplateHash(t_template));
+
+		m_entries.put(p_output.GetPath(), new Entry(p_settings, p_output, t_templateHashes, new ArrayList<>(p_recorder.GetReads()), new ArrayList<>(p_recorder.GetNestedOutputs())));
+		m_recordedCount.incrementAndGet();
+	}
+
+
+	//*********************************
+	public int GetUpToDateCount() {
+		return m_upToDateCount.get();
+	}
+
+
+	//*********************************
+	public int GetRecordedCount() {
+		return m_recordedCount.get();
+	}
+
+
+	//===========================================
+	static private void WriteString(DataOutputStream p_stream, String p_value) throws IOException {
+		if (p_value == null) {
+			p_stream.writeInt(-1);
+			return;
+		}
+
+		byte[] t_bytes = p_value.getBytes(java.nio.charset.StandardCharsets.UTF_8);	// writeUTF() can't handle more than 64K and a config value could, in theory, be bigger than that.
+		p_stream.writeInt(t_bytes.length);
+		p_stream.write(t_bytes);
+	}
+
+
+	//===========================================
+	static private String ReadString(DataInputStream p_stream) throws IOException {
+		int t_length = p_stream.readInt();
+		if (t_length < 0)
+			return null;
+
+		byte[] t_bytes = new byte[t_length];
+		p_stream.readFully(t_bytes);
+		return new String(t_bytes, java.nio.charset.StandardCharsets.UTF_8);
+	}
+
+
+	//===========================================
+	static private void WriteStamp(DataOutputStream p_stream, OutputStamp p_stamp) throws IOException {
+		WriteString(p_stream, p_stamp.m_path);
+		p_stream.writeLong(p_stamp.m_size);
+		p_stream.writeLong(p_stamp.m_lastModified);
+	}
+
+
+	//===========================================
+	static private OutputStamp ReadStamp(DataInputStream p_stream) throws IOException {
+		return new OutputStamp(ReadString(p_stream), p_stream.readLong(), p_stream.readLong());
+	}
+}
@@ -21,54 +21,54 @@
 package codegenerator.generator.utils;
 
 
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+
+
 /**
  * This is used by {@link ForEach} and {@link CounterVariable} to hold their counter values in the {@link EvaluationContext} objects.
  */
 public class LoopCounter {
 
 	// Static members
-	static private int		s_idSource	= 0;
+	static private final AtomicInteger	s_idSource	= new AtomicInteger();	// Counters are created by every forEach on every thread in parallel mode, so this can't be a plain static int.
 
-	static private synchronized int GetNextID() {
-		return ++s_idSource;
-	}
 
 	// Data members
-	private int				m_counterID				= GetNextID();
-	private String			m_optionalCounterName	= null;
-	private int				m_counter				= 0;			// This needs to be zero so that we can properly control First/Else tags by only incrementing the counter when it should be.  Otherwise, with a default of 1, it looks like the counter and, therefore, any First/Else is "ON" immediately, which is definitely the wrong behavior.
+	private final	int									m_counterID;
+	private			String								m_optionalCounterName	= null;
+	private			int									m_counter				= 0;	// This needs to be zero so that we can properly control First/Else tags by only incrementing the counter when it should be.  Otherwise, with a default of 1, it looks like the counter and, therefore, any First/Else is "ON" immediately, which is definitely the wrong behavior.
+	private			IdentityHashMap<Object, Integer>	m_lastValuesSeen		= null;	// The last counter value that each first tag saw.  This used to be kept on the FirstElse instance, but that made it impossible to share a parsed tree between threads.
 
 
 	//*********************************
-	public LoopCounter() {}
+	public LoopCounter() {
+		m_counterID = s_idSource.incrementAndGet();
+	}
 
 
 	//*********************************
-	// This was only used when I tried to set up multi-threading of {@link FileTag} objects.  Since I backed that out when I realized it required more context management than I was willing to mess with at the time, this function is no longer needed.  However, since I can't say "Never" on trying multi-threading again, I'm going to leave it hear just in case.
-//	private LoopCounter(LoopCounter p_parentCounter) {
-//		m_parentCounter			= p_parentCounter.m_parentCounter;
-//		m_counterID				= p_parentCounter.m_counterID;
-//		m_optionalCounterName	= p_parentCounter.m_optionalCounterName;
-//		m_counter				= p_parentCounter.m_counter;
-//	}
+	private LoopCounter(LoopCounter p_otherCounter) {
+		m_counterID				= p_otherCounter.m_counterID;
+		m_optionalCounterName	= p_otherCounter.m_optionalCounterName;
+		m_counter				= p_otherCounter.m_counter;
+
+		if (p_otherCounter.m_lastValuesSeen != null)
+			m_lastValuesSeen = new IdentityHashMap<>(p_otherCounter.m_lastValuesSeen);
+	}
 
 
 	//*********************************
-	// This was only used when I tried to set up multi-threading of {@link FileTag} objects.  Since I backed that out when I realized it required more context management than I was willing to mess with at the time, this function is no longer needed.  However, since I can't say "Never" on trying multi-threading again, I'm going to leave it hear just in case.
-//	/**
-//	 * In shifting to multithreading on the "file" evaluations (and allowing nested file tags), we have to snap-shot the parent loop counters so that
-//	 * we have the correct static values while we are in the file evaluation.  If we didn't, the parent loop counters would be changing outside the file
-//	 * eval and would completely pollute any usage of those parent loop counters inside the file evaluation.
-//	 *
-//	 * @param p_parentCounter
-//	 */
-//	public LoopCounter DuplicateCountersForNewFile() {
-//		LoopCounter t_newCounter = new LoopCounter(this);
-//		if (m_parentCounter != null)
-//			t_newCounter.SetParentCounter(m_parentCounter.DuplicateCountersForNewFile());
-//
-//		return t_newCounter;
-//	}
+	/**
+	 * In multithreading the "file" evaluations, we have to snap-shot the parent loop counters so that we have the correct static
+	 * values while we are in the file evaluation.  If we didn't, the parent loop counters would be changing outside the file eval
+	 * and would completely pollute any usage of those parent loop counters inside the file evaluation.
+	 */
+	public LoopCounter DuplicateCounterForNewFile() {
+		return new LoopCounter(this);
+	}
 
 
 	//*********************************
@@ -105,4 +105,27 @@ public class LoopCounter {
 	public int GetCounter() {
 		return m_counter;
 	}
+
+
+	//*********************************
+	/**
+	 * @param p_tag	The first tag asking.
+	 * @return The counter value the last time the tag saw this counter or zero if it hasn't seen it yet.
+	 */
+	public int GetLastValueSeenBy(Object p_tag) {
+		if (m_lastValuesSeen == null)
+			return 0;
+
+		Integer t_lastValue = m_lastValuesSeen.get(p_tag);
+		return (t_lastValue != null) ? t_lastValue : 0;
+	}
+
+
+	//*********************************
+	public void SetLastValueSeenBy(Object p_tag, int p_counterValue) {
+		if (m_lastValuesSeen == null)
+			m_lastValuesSeen = new IdentityHashMap<>();
+
+		m_lastValuesSeen.put(p_tag, p_counterValue);
+	}
 }
@@ -0,0 +1,286 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+
+/**
+ * <p>Generates into memory instead of the file system, for {@link codegenerator.generator.CodeGenerator#Generate(codegenerator.generator.tags.Tag_Base, coreutil.config.ConfigNode, Map)}
+ * and {@link codegenerator.generator.CodeGenerator#GeneratePublisher(codegenerator.generator.tags.Tag_Base, coreutil.config.ConfigNode, Map, int)}.
+ * Each file that {@link codegenerator.generator.tags.FileTag} generates is collected as text and, when it is closed, handed to the
+ * consumer as a {@link GeneratedOutput} named by its output path relative to the working directory, the same way archive entries are
+ * named.  Nothing is written to or read from the output directories.</p>
+ *
+ * <p>The previous version of a file, which is where its custom code comes from and what decides whether it is new, is looked up by
+ * that same name in the map of prior contents that the caller passes in.  When there is no consumer, every file is also kept here so
+ * that a file generated twice in one run starts from what the first one generated, the same as it would on disk.  With a consumer,
+ * the files are handed off and forgotten so that a long generation doesn't have to hold all of them, and a file generated twice
+ * starts from its prior contents both times.</p>
+ *
+ * <p>The consumer is called on whichever thread generated the file, so in parallel mode it has to be thread-safe.  Files that
+ * {@link codegenerator.generator.tags.CopyFile} copies are read in as text in the output charset, since that is all a generated file
+ * can be.</p>
+ */
+public class MemoryOutput implements OutputDestination {
+
+	//===========================================
+	/**
+	 * One generated file.
+	 */
+	static public final class GeneratedOutput {
+		private final String	m_path;
+		private final String	m_content;
+
+		public GeneratedOutput(String p_path, String p_content) {
+			m_path		= p_path;
+			m_content	= p_content;
+		}
+
+		/**
+		 * @return The output path relative to the working directory, with forward slashes.
+		 */
+		public String GetPath() {
+			return m_path;
+		}
+
+		public String GetContent() {
+			return m_content;
+		}
+	}
+
+
+	//===========================================
+	public interface OutputConsumer {
+		/**
+		 * @return false to stop the generation.  The file that was being handed off fails.
+		 */
+		boolean Accept(GeneratedOutput p_output);
+	}
+
+
+
+	/**
+	 * A file that is collected as text.  Its previous version is whatever the caller passed in for it.
+	 */
+	private class MemoryFile extends OutputFile {
+
+		// Data members
+		private final String m_previousContent;		// NULL if it's new.
+
+
+		//*********************************
+		public MemoryFile(File p_outputFile, String p_previousContent, String p_source) {
+			super(p_outputFile, (p_previousContent == null), MemoryOutput.this.m_charset, p_source);
+
+			m_previousContent = p_previousContent;
+		}
+
+
+		//*********************************
+		@Override
+		public boolean ScanCustomCode(CustomCodeManager p_customCodeManager) {
+			return p_customCodeManager.Scan(new StringReader(m_previousContent), GetOutputPath(m_outputFile));
+		}
+
+
+		//*********************************
+		/**
+		 * Text doesn't need to be encoded to end up in memory.
+		 */
+		@Override
+		public Writer OpenWriter() {
+			return OpenTextWriter(m_outputFile);
+		}
+
+
+		//*********************************
+		/**
+		 * Only used if something hands this bytes instead of text.  They are decoded in the output charset when the stream is closed.
+		 */
+		@Override
+		public OutputStream Open() {
+			String t_path = GetOutputPath(m_outputFile);
+			return new ByteArrayOutputStream(8192) {
+				private boolean m_closed = false;
+
+				@Override
+				public void close() throws IOException {
+					if (m_closed)
+						return;
+
+					m_closed = true;
+					AddOutput(t_path, toString(m_charset));
+				}
+			};
+		}
+
+
+		//*********************************
+		/**
+		 * Closing the writer is what handed it off.
+		 */
+		@Override
+		protected boolean FinishFile() {
+			CountFile(false);
+			return true;
+		}
+	}
+
+
+	// Data members
+	private final	Path							m_baseDirectory		= new File("").toPath().toAbsolutePath().normalize();
+	private final	Map<String, String>				m_priorContents;
+	private final	OutputConsumer					m_consumer;				// NULL to keep every file here instead.
+	private final	Charset							m_charset;
+	private final	ConcurrentHashMap<String, String>	m_generatedContents	= new ConcurrentHashMap<>();
+
+
+	//*********************************
+	/**
+	 * @param p_priorContents	The previous version of each file by its relative path.  NULL if there aren't any.
+	 * @param p_consumer		Gets each file as it is finished.  NULL to keep them all for {@link #GetGeneratedContents()}.
+	 * @param p_charset			The charset that copied files are read in.
+	 */
+	public MemoryOutput(Map<String, String> p_priorContents, OutputConsumer p_consumer, Charset p_charset) {
+		m_priorContents	= (p_priorContents != null) ? p_priorContents : Collections.emptyMap();
+		m_consumer		= p_consumer;
+		m_charset		= p_charset;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputFile	Where the file would have been generated.
+	 * @return The name it's handed off with.
+	 */
+	private String GetOutputPath(File p_outputFile) {
+		return OutputArchive.GetRelativeName(m_baseDirectory, p_outputFile);
+	}
+
+
+	//*********************************
+	/**
+	 * @return The previous version of the file.  NULL if it's new.
+	 */
+	private String GetPreviousContent(File p_outputFile) {
+		String t_path		= GetOutputPath(p_outputFile);
+		String t_content	= m_generatedContents.get(t_path);
+		return (t_content != null) ? t_content : m_priorContents.get(t_path);
+	}
+
+
+	//*********************************
+	@Override
+	public OutputFile OpenFile(File p_outputFile, boolean p_useTempFile, boolean p_makeExecutable, GenerationManifest.OutputStamp p_stamp, String p_source) {
+		return new MemoryFile(p_outputFile, GetPreviousContent(p_outputFile), p_source);
+	}
+
+
+	//*********************************
+	/**
+	 * The copy is read in as text and handed off with the generated files.
+	 */
+	@Override
+	public boolean CopyFile(File p_outputFile, Path p_sourceFile, boolean p_makeExecutable) throws IOException {
+		AddOutput(GetOutputPath(p_outputFile), Files.readString(p_sourceFile, m_charset));
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean HasFailed() {
+		return false;
+	}
+
+
+	//*********************************
+	/**
+	 * The files have already been handed off or kept as they were finished.
+	 */
+	@Override
+	public boolean Commit() {
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public void Abandon() {
+	}
+
+
+	//*********************************
+	@Override
+	public void LogStatistics() {
+	}
+
+
+	//*********************************
+	/**
+	 * @return A writer for the file's content.  It is handed off when the writer is closed, and the close fails if the consumer
+	 * won't take it.
+	 */
+	private Writer OpenTextWriter(File p_outputFile) {
+		String t_path = GetOutputPath(p_outputFile);
+		return new StringWriter(8192) {
+			private boolean m_closed = false;
+
+			@Override
+			public void close() throws IOException {
+				if (m_closed)
+					return;
+
+				m_closed = true;
+				AddOutput(t_path, toString());
+			}
+		};
+	}
+
+
+	//*********************************
+	/**
+	 * @return Every file generated in this run by its relative path.  This is only filled in when there is no consumer.
+	 */
+	public Map<String, String> GetGeneratedContents() {
+		return m_generatedContents;
+	}
+
+
+	//*********************************
+	private void AddOutput(String p_path, String p_content) throws IOException {
+		if (m_consumer == null) {
+			m_generatedContents.put(p_path, p_content);
+			return;
+		}
+
+		if (!m_consumer.Accept(new GeneratedOutput(p_path, p_content)))
+			throw new IOException("MemoryOutput's consumer stopped taking files at [" + p_path + "].");
+	}
+}
@@ -0,0 +1,376 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.xml.parsers.*;
+
+import org.xml.sax.*;
+
+import coreutil.config.*;
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>Loads a config that is split over several variables files, like one per database module, as if it were one file.  The files
+ * are parsed at the same time, each by its own XMLConfigParser, and then merged in the order they were given in, so the merged tree
+ * is the same every time:  the top-level nodes and values of all of the files end up under one root node, each file's in the order
+ * they are in the file.  A directory stands for all of the ".xml" files in it in name order.</p>
+ *
+ * <p>The top-level nodes with the merged names (by default just "global") are the exception.  Each file would have its own and
+ * "root.global" lookups only ever find the first one, so instead they are combined into one node, where the first file that
+ * has it puts it.  If two of the files have a value with the same name in one of them, or at the top level, it's a collision:  it
+ * is logged as a warning and the first file's value is the one that is kept.  The nodes inside them are just added in order since
+ * they are usually lists.</p>
+ *
+ * <p>The files are parsed with every node already pointing to the parent it will have in the merged tree, so the merge is only a
+ * matter of adding them to their parents' lists.  ConfigNode hands out its own lists, so they are added to those directly, which
+ * AddNode() can't do since it always makes a new, empty node.</p>
+ */
+public class MultiFileConfig {
+
+	static public final List<String>	DEFAULT_MERGED_NODE_NAMES	= List.of("global");
+
+	static private final String			CONFIG_FILE_EXTENSION		= ".xml";
+
+
+	//===========================================
+	/**
+	 * @param p_paths	Files and directories.
+	 * @return The files in order with the directories replaced by their ".xml" files in name order.  NULL if one of the paths doesn't
+	 * exist.
+	 */
+	static public List<File> ListConfigFiles(List<String> p_paths) {
+		ArrayList<File> t_files = new ArrayList<>();
+		for (String t_path: p_paths) {
+			File t_file = new File(t_path);
+			if (t_file.isDirectory()) {
+				File[] t_directoryFiles = t_file.listFiles(t_nextFile -> t_nextFile.isFile() && t_nextFile.getName().toLowerCase().endsWith(CONFIG_FILE_EXTENSION));
+				if (t_directoryFiles == null) {
+					Logger.LogError("MultiFileConfig.ListConfigFiles() could not list the directory [" + t_path + "].");
+					return null;
+				}
+
+				Arrays.sort(t_directoryFiles, Comparator.comparing(File::getName));
+				t_files.addAll(Arrays.asList(t_directoryFiles));
+			}
+			else if (t_file.isFile())
+				t_files.add(t_file);
+			else {
+				Logger.LogError("MultiFileConfig.ListConfigFiles() could not find the config values file or directory [" + t_path + "].");
+				return null;
+			}
+		}
+
+		return t_files;
+	}
+
+
+
+	// Data members
+	private final	List<File>					m_configFiles;
+	private final	ConfigNode					m_rootNode			= new ConfigNode(null, null);
+	private final	HashMap<String, ConfigNode>	m_mergedNodes		= new HashMap<>();		// By lower-case name.
+	private			int							m_collisionCount	= 0;
+
+
+	//*********************************
+	/**
+	 * @param p_configFiles			In the order to merge them.
+	 * @param p_mergedNodeNames		The top-level nodes to combine.
+	 */
+	public MultiFileConfig(List<File> p_configFiles, Collection<String> p_mergedNodeNames) {
+		m_configFiles = p_configFiles;
+
+		for (String t_name: p_mergedNodeNames)
+			m_mergedNodes.put(t_name.toLowerCase(), new ConfigNode(t_name, m_rootNode));
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_parallelism		The most files to parse at the same time.
+	 */
+	public boolean Load(int p_parallelism) {
+		ExecutorService t_executor = Executors.newFixedThreadPool(Math.max(1, Math.min(p_parallelism, m_configFiles.size())));
+		try {
+			ArrayList<Future<FileParser>> t_parses = new ArrayList<>(m_configFiles.size());
+			for (File t_configFile: m_configFiles) {
+				t_parses.add(t_executor.submit(() -> {
+					FileParser t_parser = new FileParser(t_configFile);
+					SAXParserFactory.newInstance().newSAXParser().parse(t_configFile, t_parser);
+					return t_parser;
+				}));
+			}
+
+			// Every parse is waited for, even after one fails, so that they all report their errors.
+			ArrayList<FileParser>	t_parsers	= new ArrayList<>(m_configFiles.size());
+			boolean					t_success	= true;
+			for (int i = 0; i < t_parses.size(); ++i) {
+				try {
+					t_parsers.add(t_parses.get(i).get());
+				}
+				catch (ExecutionException t_error) {
+					Logger.LogException("MultiFileConfig.Load() failed to parse the config values file [" + m_configFiles.get(i).getPath() + "]: ", t_error.getCause());
+					t_success = false;
+				}
+			}
+
+			if (!t_success)
+				return false;
+
+			HashMap<String, File> t_valueSources = new HashMap<>();		// Which file each top-level or merged value came from, by its lower-case path.
+			for (FileParser t_parser: t_parsers)
+				Merge(t_parser, t_valueSources);
+
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("MultiFileConfig.Load() failed with error: ", t_error);
+			return false;
+		}
+		finally {
+			t_executor.shutdown();
+		}
+	}
+
+
+	//*********************************
+	public ConfigNode GetRootNode() {
+		return m_rootNode;
+	}
+
+
+	//*********************************
+	/**
+	 * @return How many values were left out because an earlier file had one with the same name.
+	 */
+	public int GetCollisionCount() {
+		return m_collisionCount;
+	}
+
+
+	//*********************************
+	private void Merge(FileParser p_parser, HashMap<String, File> p_valueSources) {
+		if (p_parser == null)
+			return;
+
+		// The first file names the root.  The others should agree, but it doesn't change anything if they don't.
+		if (m_rootNode.GetName() == null)
+			m_rootNode.SetName(p_parser.m_rootName);
+		else if ((p_parser.m_rootName != null) && !m_rootNode.GetName().equalsIgnoreCase(p_parser.m_rootName))
+			Logger.LogWarning("MultiFileConfig.Merge() found the root node [" + p_parser.m_rootName + "] in the config values file [" + p_parser.m_configFile.getPath() + "] but the root is named [" + m_rootNode.GetName() + "].");
+
+		for (ConfigValue t_value: p_parser.m_topValues)
+			MergeValue(m_rootNode, "", t_value, p_parser.m_configFile, p_valueSources);
+
+		for (Object t_item: p_parser.m_topItems) {
+			if (t_item instanceof ConfigNode) {
+				m_rootNode.GetChildNodeList().add((ConfigNode)t_item);
+				continue;
+			}
+
+			// The merged node goes where the first file that has one has it.
+			MergedPart t_part			= (MergedPart)t_item;
+			ConfigNode t_mergedNode		= t_part.m_mergedNode;
+			if (!m_rootNode.GetChildNodeList().contains(t_mergedNode)) {
+				t_mergedNode.SetName(t_part.m_name);
+				if (t_part.m_description != null)
+					t_mergedNode.SetDescription(t_part.m_description);
+
+				m_rootNode.GetChildNodeList().add(t_mergedNode);
+			}
+
+			for (ConfigValue t_value: t_part.m_partNode.GetChildValueList())
+				MergeValue(t_mergedNode, t_mergedNode.GetName() + ".", t_value, p_parser.m_configFile, p_valueSources);
+
+			t_mergedNode.GetChildNodeList().addAll(t_part.m_childNodes);
+		}
+	}
+
+
+	//*********************************
+	private void MergeValue(ConfigNode p_node, String p_pathPrefix, ConfigValue p_value, File p_configFile, HashMap<String, File> p_valueSources) {
+		String	t_path			= p_pathPrefix + p_value.GetName();
+		File	t_firstFile		= p_valueSources.putIfAbsent(t_path.toLowerCase(), p_configFile);
+		if (t_firstFile == null) {
+			p_node.GetChildValueList().add(p_value);
+			return;
+		}
+
+		ConfigValue t_firstValue = p_node.GetValue(p_value.GetName());
+		boolean		t_isSame	 = (t_firstValue != null) && Objects.equals(t_firstValue.GetStringValue(), p_value.GetStringValue());
+
+		++m_collisionCount;
+		Logger.LogWarning("MultiFileConfig.Merge() found the value [" + t_path + "] in the config values file [" + p_configFile.getPath() + "] after it was already in [" + t_firstFile.getPath() + "]" + (t_isSame ? " with the same value" : " with a different value") + ".  The first one is kept.");
+	}
+
+
+
+	/**
+	 * One file's part of a merged node:  a node of its own for XMLConfigParser to add the values to, which is never part of the
+	 * tree, and the child nodes, which are made with the merged node as their parent.
+	 */
+	static private class MergedPart {
+		private final	ConfigNode				m_mergedNode;
+		private final	String					m_name;
+		private			String					m_description	= null;
+		private final	ConfigNode				m_partNode;
+		private final	ArrayList<ConfigNode>	m_childNodes	= new ArrayList<>();
+
+		public MergedPart(ConfigNode p_mergedNode, String p_name) {
+			m_mergedNode	= p_mergedNode;
+			m_name			= p_name;
+			m_partNode		= new ConfigNode(p_name, null);
+		}
+	}
+
+
+
+	/**
+	 * Parses one file with XMLConfigParser's handling for everything below the top level.  The root element is at depth 0, so the
+	 * top-level nodes and values are at depth 1 and the children of a merged node are at depth 2.  Nothing it makes is added to
+	 * the shared nodes until the merge, so the files can be parsed at the same time.
+	 */
+	private class FileParser extends XMLConfigParser {
+
+		// Data members
+		private final	File							m_configFile;
+		private			String							m_rootName		= null;
+		private final	ArrayList<Object>				m_topItems		= new ArrayList<>();	// The top-level ConfigNodes and MergedParts in order.
+		private final	ArrayList<ConfigValue>			m_topValues		= new ArrayList<>();
+		private final	HashMap<String, MergedPart>		m_parts			= new HashMap<>();
+		private			MergedPart						m_currentPart	= null;					// Only set inside a merged node.
+		private			int								m_depth			= -1;
+
+
+		//*********************************
+		public FileParser(File p_configFile) {
+			m_configFile = p_configFile;
+		}
+
+
+		//*********************************
+		@Override
+		public void startElement(String p_uri, String p_localName, String p_qName, Attributes p_attributes) throws SAXException {
+			++m_depth;
+
+			String t_name			= p_attributes.getValue(NAME_ATTR);
+			String t_description	= p_attributes.getValue(DESCRIPTION_ATTR);
+
+			if (m_depth == 0) {
+				if (p_qName.equalsIgnoreCase(NODE_TAG))
+					m_rootName = t_name;
+				else if (!p_qName.equalsIgnoreCase(CONFIG_TAG))
+					throw new SAXException("MultiFileConfig found the tag [" + p_qName + "] where the root node was expected.");
+
+				return;
+			}
+
+			if (m_depth == 1) {
+				if (p_qName.equalsIgnoreCase(NODE_TAG)) {
+					ConfigNode t_mergedNode = (t_name != null) ? m_mergedNodes.get(t_name.toLowerCase()) : null;
+					if (t_mergedNode != null) {
+						m_currentPart = m_parts.get(t_name.toLowerCase());
+						if (m_currentPart == null) {
+							m_currentPart = new MergedPart(t_mergedNode, t_name);
+							m_parts.put(t_name.toLowerCase(), m_currentPart);
+							m_topItems.add(m_currentPart);
+						}
+
+						if ((t_description != null) && (m_currentPart.m_description == null))
+							m_currentPart.m_description = t_description;
+
+						m_nodeStack.addFirst(m_currentPart.m_partNode);
+						return;
+					}
+
+					ConfigNode t_node = new ConfigNode(t_name, m_rootNode);
+					if (t_description != null)
+						t_node.SetDescription(t_description);
+
+					m_topItems.add(t_node);
+					m_nodeStack.addFirst(t_node);
+				}
+				else if (p_qName.equalsIgnoreCase(VALUE_TAG)) {
+					ConfigValue t_value = new ConfigValue(t_name, "");
+					if (t_description != null)
+						t_value.SetDescription(t_description);
+
+					m_topValues.add(t_value);
+					m_inValue		= true;
+					m_currentValue	= t_value;
+				}
+				else
+					throw new SAXException("MultiFileConfig found the unknown tag [" + p_qName + "].");
+
+				return;
+			}
+
+			if ((m_depth == 2) && (m_currentPart != null) && p_qName.equalsIgnoreCase(NODE_TAG)) {
+				ConfigNode t_node = new ConfigNode(t_name, m_currentPart.m_mergedNode);
+				if (t_description != null)
+					t_node.SetDescription(t_description);
+
+				m_currentPart.m_childNodes.add(t_node);
+				m_nodeStack.addFirst(t_node);
+				return;
+			}
+
+			super.startElement(p_uri, p_localName, p_qName, p_attributes);
+		}
+
+
+		//*********************************
+		@Override
+		public void endElement(String p_uri, String p_localName, String p_qName) throws SAXException {
+			int t_depth = m_depth--;
+			if (t_depth == 0)
+				return;
+
+			if (t_depth == 1) {
+				if (p_qName.equalsIgnoreCase(NODE_TAG)) {
+					m_nodeStack.removeFirst();
+					m_currentPart = null;
+				}
+				else {
+					m_inValue		= false;
+					m_currentValue	= null;
+				}
+
+				return;
+			}
+
+			if ((t_depth == 2) && (m_currentPart != null) && p_qName.equalsIgnoreCase(NODE_TAG)) {
+				m_nodeStack.removeFirst();
+				return;
+			}
+
+			super.endElement(p_uri, p_localName, p_qName);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import coreutil.config.*;
+
+
+
+/**
+ * A value set for the ConfigManager around a config tree that was loaded some other way than FileConfigValueSet does it, so that
+ * the config substitution can find its values.  It can't be reloaded.
+ */
+public class NodeConfigValueSet extends ConfigValueSet {
+
+	//*********************************
+	/**
+	 * @param p_setName		Usually the name of the file the tree came from.
+	 * @param p_rootNode
+	 */
+	public NodeConfigValueSet(String p_setName, ConfigNode p_rootNode) {
+		super(p_setName);
+		m_rootNode = p_rootNode;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean InitFromConfig() {
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean Reload() {
+		return false;
+	}
+}
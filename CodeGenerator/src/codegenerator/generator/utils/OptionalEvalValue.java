@@ -1,6 +1,7 @@
 package codegenerator.generator.utils;
 
 
+import java.io.*;
 import java.util.LinkedList;
 
 import codegenerator.generator.tags.*;
@@ -10,40 +11,85 @@ import codegenerator.generator.tags.*;
 /**
  * This is a helper class for attribute names and/or values that may have tags in their values that need to be evaluated and that can only
  * happen in the Evaluate() phase.  If the value is otherwise constant, then we can return that value without evaluation.
+ *
+ * <p>Whether the value is constant is worked out when the value is created instead of the first time it is evaluated so that
+ * nothing in here changes during evaluation and the same instance can be evaluated by more than one thread at a time.</p>
  */
 public class OptionalEvalValue {
 
 	// Data members
-	private GeneralBlock	m_value;
-	private String			m_constValue;	// If the value does NOT contain any tags that require evaluation, then we can grab that string the first time we go through Evaluate() and cache it here.
+	private final GeneralBlock	m_value;
+	private final String		m_constValue;	// If the value does NOT contain any tags that require evaluation, then this is that string.
 
 
 	//*********************************
 	public OptionalEvalValue(GeneralBlock p_value) {
-		m_value = p_value;
+		m_value			= p_value;
+		m_constValue	= GetConstantText(p_value);
 	}
 
 
-	//*********************************
+	//===========================================
 	/**
-	 * If the const value has been set, then == TRUE, otherwise false.  If the const value is set the first time through the Evaluate() phase, then this will
-	 * obviously become TRUE at that time.
-	 * @return
+	 * @return The text of the value if it is only made up of plain text, otherwise NULL.
 	 */
-	public boolean IsConstant() {
-		if (m_constValue != null)
-			return true;
+	static private String GetConstantText(GeneralBlock p_value) {
+		if (p_value == null)
+			return null;
+
+		LinkedList<Tag_Base> t_valueContents = p_value.GetChildTagList();
+		if (t_valueContents == null)
+			return null;
+
+		StringBuilder t_constText = new StringBuilder();
+		for (Tag_Base t_nextContent: t_valueContents) {
+			if (!(t_nextContent instanceof Text) || t_nextContent.HasContentTags())
+				return null;	// A text tag with child tags is a parent for text-safe tags, like config values, that have to be evaluated every time.
+
+			String t_text = ((Text)t_nextContent).GetText();
+			if (t_text != null)
+				t_constText.append(t_text);
+		}
 
-		return false;
+		return t_constText.toString();
 	}
 
 
 	//*********************************
+	public boolean IsConstant() {
+		return m_constValue != null;
+	}
+
+
+	//*********************************
+	/**
+	 * @return NULL if the value has to be evaluated.
+	 */
 	public String GetValue() {
-		if (m_constValue != null)
-			return m_constValue;
+		return m_constValue;
+	}
 
-		return null;
+
+	//*********************************
+	/**
+	 * Gets the value without an evaluation context if it is only made up of plain text, so it can be used on a freshly parsed template.
+	 *
+	 * @return NULL if the value contains any tags that have to be evaluated.
+	 */
+	public String GetConstantText() {
+		return m_constValue;
+	}
+
+
+	//*********************************
+	public void WriteCompiled(CompiledTagWriter p_writer) throws IOException {
+		p_writer.WriteTag(m_value);
+	}
+
+
+	//*********************************
+	static public OptionalEvalValue ReadCompiled(CompiledTagReader p_reader) throws IOException {
+		return new OptionalEvalValue((GeneralBlock)p_reader.ReadTag());
 	}
 
 
@@ -52,16 +98,6 @@ public class OptionalEvalValue {
 		if (m_constValue != null)
 			return m_constValue;
 
-		// If there is anything other than TEXT tags in the contents of the value, then it will require evaluation to get the final value every time we come through.
-		LinkedList<Tag_Base> t_valueContents = m_value.GetChildTagList();
-		for (Tag_Base t_nextContent: t_valueContents) {
-			if (!t_nextContent.GetName().equalsIgnoreCase(Text.TAG_NAME))
-				return Tag_Base.EvaluateToString(m_value, p_evaluationContext);
-		}
-
-		// If we get here, then there were only Text tags in the value so we can just evaluate it once here and return that const value.
-		m_constValue = Tag_Base.EvaluateToString(m_value, p_evaluationContext);
-
-		return m_constValue;
+		return Tag_Base.EvaluateToString(m_value, p_evaluationContext);
 	}
 }
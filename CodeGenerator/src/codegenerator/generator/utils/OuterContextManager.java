@@ -22,8 +22,6 @@ package codegenerator.generator.utils;
 
 
 
-import java.util.*;
-
 import coreutil.config.*;
 
 
@@ -34,7 +32,7 @@ import coreutil.config.*;
 public class OuterContextManager {
 
 	// Data members
-	private final TreeMap<String, ConfigNode>	m_contextMap	= new TreeMap<>();
+	private PersistentNameMap<ConfigNode>	m_contextMap	= PersistentNameMap.Empty();
 
 
 	//*********************************
@@ -45,29 +43,30 @@ public class OuterContextManager {
 	/**
 	 * In shifting to multithreading on the "file" evaluations (and allowing nested file tags), we have to snap-shot the context so that
 	 * we have the correct values while we are in the file evaluation.  If we didn't, the context would be changing outside the file
-	 * eval and would completely pollute any usage of those context values inside the file evaluation.
+	 * eval and would completely pollute any usage of those context values inside the file evaluation.  Since the map is persistent,
+	 * the snap-shot is just a reference to the other manager's map and costs the same no matter how many contexts are set.
 	 *
 	 * @param p_otherOuterContextManager
 	 */
 	public OuterContextManager(OuterContextManager p_otherOuterContextManager) {
-		m_contextMap.putAll(p_otherOuterContextManager.m_contextMap);
+		m_contextMap = p_otherOuterContextManager.m_contextMap;
 	}
 
 
 	//*********************************
 	public void SetOuterContext(String p_contextName, ConfigNode p_contextNode) {
-		m_contextMap.put(p_contextName, p_contextNode);
+		m_contextMap = m_contextMap.Put(p_contextName, p_contextNode);
 	}
 
 
 	//*********************************
 	public ConfigNode GetOuterContext(String p_contextName) {
-		return m_contextMap.get(p_contextName);
+		return m_contextMap.Get(p_contextName);
 	}
 
 
 	//*********************************
 	public void RemoveOuterContext(String p_contextName) {
-		m_contextMap.remove(p_contextName);
+		m_contextMap = m_contextMap.Remove(p_contextName);
 	}
 }
@@ -0,0 +1,402 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.zip.*;
+
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>Generates into a zip (or jar) file instead of the file system.  Each file that {@link codegenerator.generator.tags.FileTag}
+ * generates or {@link codegenerator.generator.tags.CopyFile} copies becomes an entry in the archive, named by its output path relative
+ * to the base directory, which is the working directory unless it is set.  An output path outside the base directory keeps its whole
+ * path minus the root.</p>
+ *
+ * <p>The archive is written as a new file next to the old one and only replaces it in {@link #Commit()}, so a failed generation leaves
+ * the old archive alone.  Until then, the old archive is where the previous version of each file comes from, both for its custom code
+ * and for whether it is new.  Entries in the old archive that aren't generated again are carried over into the new one, the same way a
+ * file in the output directory that isn't generated again is left there.</p>
+ *
+ * <p>Each file is buffered in memory until it is closed, and then it is written to the archive as one entry.  The entries all go
+ * through one ZipOutputStream, so that is done under a lock and files generated in parallel go in in whatever order they finish.  A
+ * zip entry can't be replaced once it's written, so a file that is generated twice in one run fails the second time.  Each file
+ * reserves its entry with {@link #ReserveEntry(File)} before it is generated so that happens before any of it is.</p>
+ */
+public class OutputArchive implements OutputDestination {
+
+	/**
+	 * A file that becomes an entry in the archive.  Its previous version is its entry in the old archive.
+	 */
+	private class ArchiveFile extends OutputFile {
+
+		//*********************************
+		public ArchiveFile(File p_outputFile, boolean p_isNewFile, String p_source) {
+			super(p_outputFile, p_isNewFile, OutputArchive.this.m_charset, p_source);
+		}
+
+
+		//*********************************
+		@Override
+		public boolean ScanCustomCode(CustomCodeManager p_customCodeManager) {
+			try {
+				return p_customCodeManager.Scan(new InputStreamReader(OpenPreviousEntry(m_outputFile), m_charset), GetEntryName(m_outputFile));
+			}
+			catch (Throwable t_error) {
+				Logger.LogException("OutputArchive.ArchiveFile.ScanCustomCode() failed to open the previous entry [" + GetEntryName(m_outputFile) + "]: ", t_error);
+				return false;
+			}
+		}
+
+
+		//*********************************
+		@Override
+		public OutputStream Open() {
+			return OpenEntry(m_outputFile);
+		}
+
+
+		//*********************************
+		/**
+		 * Closing the stream is what added it to the archive.
+		 */
+		@Override
+		protected boolean FinishFile() {
+			CountFile(false);
+			return true;
+		}
+	}
+
+
+	// Data members
+	private final	File					m_archiveFile;
+	private final	File					m_tempFile;
+	private final	Path					m_baseDirectory;
+	private 		ZipFile					m_previousArchive	= null;		// NULL if there wasn't one.
+	private 		ZipOutputStream			m_zipStream			= null;
+	private final	ReentrantLock			m_zipLock			= new ReentrantLock();
+	private final	Set<String>				m_writtenEntries	= ConcurrentHashMap.newKeySet();
+	private 		int						m_carriedEntryCount	= 0;
+	private 		long					m_archiveSize		= 0;
+	private final	Charset					m_charset;
+
+
+	//*********************************
+	/**
+	 * @param p_archiveFile
+	 * @param p_baseDirectory	The directory that entry names are relative to.  NULL for the working directory.
+	 * @param p_charset			The charset that the files are written and scanned in.
+	 */
+	public OutputArchive(File p_archiveFile, File p_baseDirectory, Charset p_charset) {
+		m_archiveFile	= p_archiveFile.getAbsoluteFile();
+		m_tempFile		= new File(m_archiveFile.getPath() + ".temp");
+		m_baseDirectory	= ((p_baseDirectory != null) ? p_baseDirectory : new File("")).toPath().toAbsolutePath().normalize();
+		m_charset		= p_charset;
+	}
+
+
+	//*********************************
+	/**
+	 * Opens the old archive, if there is one, and starts the new one.
+	 */
+	public boolean Open() {
+		try {
+			if (m_archiveFile.exists())
+				m_previousArchive = new ZipFile(m_archiveFile);
+
+			File t_directory = m_archiveFile.getParentFile();
+			if (t_directory != null)
+				Files.createDirectories(t_directory.toPath());
+
+			m_zipStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(m_tempFile), 64 * 1024));
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputArchive.Open() failed to open the archive [" + m_archiveFile.getPath() + "]: ", t_error);
+			Abandon();
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputFile	Where the file would have been generated.
+	 * @return The name of its entry.
+	 */
+	private String GetEntryName(File p_outputFile) {
+		return GetRelativeName(m_baseDirectory, p_outputFile);
+	}
+
+
+	//===========================================
+	/**
+	 * @param p_baseDirectory	An absolute normalized path.
+	 * @param p_outputFile
+	 * @return The output file's path relative to the base directory, with forward slashes.  A path outside the base directory keeps its
+	 * whole path minus the root.
+	 */
+	static public String GetRelativeName(Path p_baseDirectory, File p_outputFile) {
+		Path t_path = p_outputFile.toPath().toAbsolutePath().normalize();
+		Path t_relativePath = t_path.startsWith(p_baseDirectory) ? p_baseDirectory.relativize(t_path) : t_path.getRoot().relativize(t_path);
+
+		StringBuilder t_name = new StringBuilder();
+		for (Path t_part: t_relativePath) {
+			if (t_name.length() > 0)
+				t_name.append('/');		// Zip entry names always use forward slashes.
+
+			t_name.append(t_part.toString());
+		}
+
+		return t_name.toString();
+	}
+
+
+	//*********************************
+	/**
+	 * @return True if the file was in the old archive.
+	 */
+	private boolean HasPreviousEntry(File p_outputFile) {
+		return (m_previousArchive != null) && (m_previousArchive.getEntry(GetEntryName(p_outputFile)) != null);
+	}
+
+
+	//*********************************
+	/**
+	 * @return The previous version of the file from the old archive.  This is safe to call from more than one thread.
+	 */
+	private InputStream OpenPreviousEntry(File p_outputFile) throws IOException {
+		ZipEntry t_entry = (m_previousArchive != null) ? m_previousArchive.getEntry(GetEntryName(p_outputFile)) : null;
+		if (t_entry == null)
+			throw new FileNotFoundException("OutputArchive has no previous entry for [" + p_outputFile.getPath() + "].");
+
+		return m_previousArchive.getInputStream(t_entry);
+	}
+
+
+	//*********************************
+	/**
+	 * Claims the file's entry before it is generated.
+	 *
+	 * @return false if the file has already been generated in this run, since its entry can't be replaced.
+	 */
+	private boolean ReserveEntry(File p_outputFile) {
+		return m_writtenEntries.add(GetEntryName(p_outputFile));
+	}
+
+
+	//*********************************
+	/**
+	 * @return A stream for the content of a file whose entry has been reserved.  It is added to the archive when the stream is closed.
+	 */
+	private OutputStream OpenEntry(File p_outputFile) {
+		String t_entryName = GetEntryName(p_outputFile);
+		return new ByteArrayOutputStream(8192) {
+			private boolean m_closed = false;
+
+			@Override
+			public void close() throws IOException {
+				if (m_closed)
+					return;
+
+				m_closed = true;
+				AddEntry(t_entryName, buf, count);
+			}
+		};
+	}
+
+
+	//*********************************
+	/**
+	 * A file that has already been generated into the archive in this run can't be generated again.
+	 */
+	@Override
+	public OutputFile OpenFile(File p_outputFile, boolean p_useTempFile, boolean p_makeExecutable, GenerationManifest.OutputStamp p_stamp, String p_source) {
+		if (!ReserveEntry(p_outputFile)) {
+			Logger.LogError("OutputArchive.OpenFile() found that the file [" + GetEntryName(p_outputFile) + "] has already been generated into the archive and it can't be replaced, for " + p_source + ".");
+			return null;
+		}
+
+		return new ArchiveFile(p_outputFile, !HasPreviousEntry(p_outputFile), p_source);
+	}
+
+
+	//*********************************
+	/**
+	 * A zip entry can't carry the executable bit, so that's left to whatever unpacks it.
+	 */
+	@Override
+	public boolean CopyFile(File p_outputFile, Path p_sourceFile, boolean p_makeExecutable) throws IOException {
+		AddFile(p_outputFile, p_sourceFile);
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean HasFailed() {
+		return false;
+	}
+
+
+	//*********************************
+	/**
+	 * Adds a copy of the source file as the output file's entry.
+	 */
+	public void AddFile(File p_outputFile, Path p_sourceFile) throws IOException {
+		if (!ReserveEntry(p_outputFile))
+			throw new IOException("OutputArchive already has an entry for [" + GetEntryName(p_outputFile) + "] from this generation and it can't be replaced.");
+
+		byte[] t_bytes = Files.readAllBytes(p_sourceFile);
+		AddEntry(GetEntryName(p_outputFile), t_bytes, t_bytes.length);
+	}
+
+
+	//*********************************
+	/**
+	 * Carries over the old archive's entries that weren't generated again, finishes the new archive and puts it in place of the old
+	 * one.  This must only be called once nothing else is being generated or written.
+	 */
+	@Override
+	public boolean Commit() {
+		try {
+			if (m_previousArchive != null) {
+				Enumeration<? extends ZipEntry> t_entries = m_previousArchive.entries();
+				while (t_entries.hasMoreElements()) {
+					ZipEntry t_entry = t_entries.nextElement();
+					if (m_writtenEntries.contains(t_entry.getName()))
+						continue;
+
+					ZipEntry t_carriedEntry = new ZipEntry(t_entry.getName());
+					t_carriedEntry.setTime(t_entry.getTime());
+					m_zipStream.putNextEntry(t_carriedEntry);
+					try (InputStream t_input = m_previousArchive.getInputStream(t_entry)) {
+						t_input.transferTo(m_zipStream);
+					}
+
+					m_zipStream.closeEntry();
+					++m_carriedEntryCount;
+				}
+
+				m_previousArchive.close();
+				m_previousArchive = null;
+			}
+
+			m_zipStream.close();
+			m_zipStream = null;
+
+			try {
+				Files.move(m_tempFile.toPath(), m_archiveFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException t_error) {
+				Files.move(m_tempFile.toPath(), m_archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			m_archiveSize = m_archiveFile.length();
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputArchive.Commit() failed to finish the archive [" + m_archiveFile.getPath() + "]: ", t_error);
+			Abandon();
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Called instead of {@link #Commit()} when the generation failed.  The old archive is left as it was.
+	 */
+	@Override
+	public void Abandon() {
+		try {
+			if (m_zipStream != null)
+				m_zipStream.close();
+
+			if (m_previousArchive != null)
+				m_previousArchive.close();
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputArchive.Abandon() failed to close the archive [" + m_archiveFile.getPath() + "]: ", t_error);
+		}
+		finally {
+			m_zipStream			= null;
+			m_previousArchive	= null;
+			m_tempFile.delete();
+		}
+	}
+
+
+	//*********************************
+	@Override
+	public void LogStatistics() {
+		Logger.LogInfo("Archive entry count:            "	+ (GetWrittenEntryCount() + GetCarriedEntryCount()) + " (" + GetCarriedEntryCount() + " carried over from the previous archive)");
+		Logger.LogInfo("Archive size (bytes):           "	+ GetArchiveSize());
+	}
+
+
+	//*********************************
+	/**
+	 * @return The entries generated or copied in this run.
+	 */
+	public int GetWrittenEntryCount() {
+		return m_writtenEntries.size();
+	}
+
+
+	//*********************************
+	public int GetCarriedEntryCount() {
+		return m_carriedEntryCount;
+	}
+
+
+	//*********************************
+	/**
+	 * @return The size of the archive after the commit.
+	 */
+	public long GetArchiveSize() {
+		return m_archiveSize;
+	}
+
+
+	//*********************************
+	private void AddEntry(String p_entryName, byte[] p_bytes, int p_length) throws IOException {
+		try {
+			m_zipLock.lock();
+
+			m_zipStream.putNextEntry(new ZipEntry(p_entryName));
+			m_zipStream.write(p_bytes, 0, p_length);
+			m_zipStream.closeEntry();
+		}
+		finally {
+			m_zipLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>Check mode: the generation runs as usual, but instead of being written, each file is compared with the one that is already in
+ * the output to find out whether the output is up to date.  Nothing in the output is created, deleted or written.</p>
+ *
+ * <p>A generated file is compared as it comes in, the same way {@link ComparingOutputStream} does, except that at the first
+ * difference the file is marked stale and the rest of it is thrown away instead of compared.  A copied file is stale if its size
+ * differs from the source's or, when the sizes match, at the first byte that does.</p>
+ *
+ * <p>The results are kept by absolute path, so if the same file is generated more than once, the last one is what counts, the
+ * same as it would be in the output.</p>
+ */
+public class OutputCheck implements OutputDestination {
+
+	static public final int		STATE_UP_TO_DATE	= 0;
+	static public final int		STATE_STALE			= 1;
+	static public final int		STATE_MISSING		= 2;
+
+
+	/**
+	 * A file that is compared with the one in the output instead of being written.
+	 */
+	private class CheckedFile extends OutputFile {
+
+		// Data members
+		private ComparisonStream m_checkStream = null;
+
+
+		//*********************************
+		public CheckedFile(File p_outputFile, boolean p_isNewFile, String p_source) {
+			super(p_outputFile, p_isNewFile, OutputCheck.this.m_charset, p_source);
+		}
+
+
+		//*********************************
+		@Override
+		public boolean ScanCustomCode(CustomCodeManager p_customCodeManager) {
+			return p_customCodeManager.ScanFile(m_outputFile, m_charset);
+		}
+
+
+		//*********************************
+		@Override
+		public OutputStream Open() throws IOException {
+			m_checkStream = OpenComparison(m_outputFile, !m_isNewFile);
+			return m_checkStream;
+		}
+
+
+		//*********************************
+		/**
+		 * Closing the stream is what recorded whether it's up to date.
+		 */
+		@Override
+		protected boolean FinishFile() {
+			CountFile((m_checkStream != null) && (m_checkStream.GetState() == STATE_UP_TO_DATE));
+			return true;
+		}
+	}
+
+
+	// Data members
+	private final	ConcurrentHashMap<String, Integer>	m_results			= new ConcurrentHashMap<>();
+	private final	OutputFileSystemCache				m_fileSystemCache;
+	private final	Charset								m_charset;
+	private final	long								m_startTime			= System.currentTimeMillis();
+	private 		long								m_checkMillis		= 0;
+
+
+	//*********************************
+	/**
+	 * @param p_fileSystemCache	The context's, for whether the files are in the output.
+	 * @param p_charset			The charset that the files would be written in, which is what they are compared and scanned in.
+	 */
+	public OutputCheck(OutputFileSystemCache p_fileSystemCache, Charset p_charset) {
+		m_fileSystemCache	= p_fileSystemCache;
+		m_charset			= p_charset;
+	}
+
+
+	//*********************************
+	/**
+	 * Nothing in the output is created, so the file's directory isn't made either.
+	 */
+	@Override
+	public OutputFile OpenFile(File p_outputFile, boolean p_useTempFile, boolean p_makeExecutable, GenerationManifest.OutputStamp p_stamp, String p_source) {
+		return new CheckedFile(p_outputFile, !m_fileSystemCache.Exists(p_outputFile), p_source);
+	}
+
+
+	//*********************************
+	/**
+	 * The copy is only compared with the one that's there.
+	 */
+	@Override
+	public boolean CopyFile(File p_outputFile, Path p_sourceFile, boolean p_makeExecutable) throws IOException {
+		CheckCopy(p_outputFile, p_sourceFile);
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean HasFailed() {
+		return false;
+	}
+
+
+	//*********************************
+	/**
+	 * Nothing is put into the output.  This just lists the files that aren't up to date.
+	 */
+	@Override
+	public boolean Commit() {
+		m_checkMillis = System.currentTimeMillis() - m_startTime;
+
+		for (String t_file: GetStaleFiles())
+			Logger.LogError("Stale:   " + t_file);
+
+		for (String t_file: GetMissingFiles())
+			Logger.LogError("Missing: " + t_file);
+
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public void Abandon() {
+	}
+
+
+	//*********************************
+	@Override
+	public void LogStatistics() {
+		Logger.LogInfo("Checked file count:             "	+ GetCheckedCount());
+		Logger.LogInfo("    Stale:                      "	+ GetStaleFiles().size());
+		Logger.LogInfo("    Missing:                    "	+ GetMissingFiles().size());
+		Logger.LogInfo("Check time (millisec):          "	+ m_checkMillis);
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputFile	The file in the output to compare with.
+	 * @param p_exists		False if the file isn't there, in which case the generated content is just thrown away.
+	 * @return A stream to write the generated content to.  The result is recorded when it is closed.
+	 */
+	private ComparisonStream OpenComparison(File p_outputFile, boolean p_exists) throws IOException {
+		return new ComparisonStream(p_outputFile, p_exists);
+	}
+
+
+	//*********************************
+	/**
+	 * Records whether the output file is a copy of the source file.
+	 */
+	private void CheckCopy(File p_outputFile, Path p_sourceFile) throws IOException {
+		Path t_outputPath = p_outputFile.toPath();
+		if (!Files.exists(t_outputPath))
+			AddResult(p_outputFile, STATE_MISSING);
+		else if ((Files.size(t_outputPath) != Files.size(p_sourceFile)) || (Files.mismatch(t_outputPath, p_sourceFile) >= 0))
+			AddResult(p_outputFile, STATE_STALE);
+		else
+			AddResult(p_outputFile, STATE_UP_TO_DATE);
+	}
+
+
+	//*********************************
+	private void AddResult(File p_outputFile, int p_state) {
+		m_results.put(p_outputFile.getAbsolutePath(), p_state);
+	}
+
+
+	//*********************************
+	public int GetCheckedCount() {
+		return m_results.size();
+	}
+
+
+	//*********************************
+	/**
+	 * @return The paths of the files that are in the output but aren't what would be generated, in order.
+	 */
+	public List<String> GetStaleFiles() {
+		return GetFiles(STATE_STALE);
+	}
+
+
+	//*********************************
+	/**
+	 * @return The paths of the files that would be generated but aren't in the output, in order.
+	 */
+	public List<String> GetMissingFiles() {
+		return GetFiles(STATE_MISSING);
+	}
+
+
+	//*********************************
+	private List<String> GetFiles(int p_state) {
+		ArrayList<String> t_files = new ArrayList<>();
+		for (Map.Entry<String, Integer> t_result: m_results.entrySet()) {
+			if (t_result.getValue() == p_state)
+				t_files.add(t_result.getKey());
+		}
+
+		Collections.sort(t_files);
+		return t_files;
+	}
+
+
+
+	/**
+	 * Compares the generated bytes with the output file's until they stop matching.
+	 */
+	public class ComparisonStream extends OutputStream {
+
+		// Data members
+		private final	File			m_outputFile;
+		private			InputStream		m_existing;						// NULL if the file is missing or once the output stops matching.
+		private final	byte[]			m_compareBuffer		= new byte[8192];
+		private			int				m_state;
+		private			boolean			m_closed			= false;
+
+
+		//*********************************
+		private ComparisonStream(File p_outputFile, boolean p_exists) throws IOException {
+			m_outputFile	= p_outputFile;
+			m_existing		= p_exists ? new FileInputStream(p_outputFile) : null;
+			m_state			= p_exists ? STATE_UP_TO_DATE : STATE_MISSING;
+		}
+
+
+		//*********************************
+		@Override
+		public void write(int p_byte) throws IOException {
+			write(new byte[] {(byte)p_byte}, 0, 1);
+		}
+
+
+		//*********************************
+		@Override
+		public void write(byte[] p_bytes, int p_offset, int p_length) throws IOException {
+			if (m_existing == null)
+				return;
+
+			int t_comparedCount = 0;
+			int t_readCount;
+			while (t_comparedCount < p_length) {
+				t_readCount = m_existing.read(m_compareBuffer, 0, Math.min(p_length - t_comparedCount, m_compareBuffer.length));
+				if ((t_readCount <= 0) || !Arrays.equals(m_compareBuffer, 0, t_readCount, p_bytes, p_offset + t_comparedCount, p_offset + t_comparedCount + t_readCount)) {
+					MarkStale();
+					return;
+				}
+
+				t_comparedCount += t_readCount;
+			}
+		}
+
+
+		//*********************************
+		@Override
+		public void close() throws IOException {
+			if (m_closed)
+				return;
+
+			m_closed = true;
+
+			if ((m_existing != null) && (m_existing.read() >= 0))
+				MarkStale();	// The old file has more in it than was generated.
+
+			if (m_existing != null)
+				m_existing.close();
+
+			AddResult(m_outputFile, m_state);
+		}
+
+
+		//*********************************
+		public int GetState() {
+			return m_state;
+		}
+
+
+		//*********************************
+		private void MarkStale() throws IOException {
+			m_existing.close();
+			m_existing	= null;
+			m_state		= STATE_STALE;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.file.*;
+
+
+
+/**
+ * <p>Where the files that {@link codegenerator.generator.tags.FileTag} generates and {@link codegenerator.generator.tags.CopyFile}
+ * copies end up.  {@link codegenerator.generator.CodeGenerator} picks one for the whole generation and puts it in the
+ * {@link EvaluationContext}, so the tags only ever write text to the {@link OutputFile} they get from it and never have to know
+ * which output mode is on.</p>
+ *
+ * <p>{@link FileSystemOutput} writes the files in place, {@link OutputStaging} holds them until the generation has succeeded,
+ * {@link OutputArchive} writes them into a zip file, {@link MemoryOutput} hands them back to the caller and {@link OutputCheck} only
+ * compares them with what is there.  In write-behind mode, {@link OutputPipeline} wraps whichever one of those it is and does its
+ * writing on the pipeline's own threads.</p>
+ *
+ * <p>Every method that deals with one file can be called from the threads that generate files in parallel.</p>
+ */
+public interface OutputDestination {
+
+	/**
+	 * Sets up a file for a file tag to generate.  It finds out whether the file is new, where its custom code comes from and where
+	 * its text will be written.
+	 *
+	 * @param p_outputFile		The file as the file tag names it.
+	 * @param p_useTempFile		Write a new version to a temp file that replaces the old one once it's finished.  It only applies where
+	 * there's an old file in place to protect.
+	 * @param p_makeExecutable
+	 * @param p_stamp			The file's manifest stamp, which is filled in once the file is in the output.  NULL if it isn't recorded.
+	 * @param p_source			Where the file comes from, for the messages.
+	 * @return NULL if the file can't be generated.  The reason has been logged.
+	 */
+	OutputFile OpenFile(File p_outputFile, boolean p_useTempFile, boolean p_makeExecutable, GenerationManifest.OutputStamp p_stamp, String p_source) throws IOException;
+
+	/**
+	 * Copies a file into the output as it is.
+	 *
+	 * @return false if it failed.  It is expected to have logged why.
+	 */
+	boolean CopyFile(File p_outputFile, Path p_sourceFile, boolean p_makeExecutable) throws IOException;
+
+	/**
+	 * @return True if a file that was handed off to be finished later has already failed, so the generation has to stop.
+	 */
+	boolean HasFailed();
+
+	/**
+	 * Called once every file has been generated.  Anything that was held back goes into the output now.
+	 *
+	 * @return false if it failed.  It is expected to have logged why.
+	 */
+	boolean Commit();
+
+	/**
+	 * Called instead of {@link #Commit()} when the generation failed.
+	 */
+	void Abandon();
+
+	/**
+	 * Logs what the destination did in this generation, after the generation's own statistics.
+	 */
+	void LogStatistics();
+}
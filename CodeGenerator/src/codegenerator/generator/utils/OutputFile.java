@@ -0,0 +1,149 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.charset.*;
+
+import codegenerator.generator.tags.*;
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>One file that a file tag is generating, as its {@link OutputDestination} set it up.  The file tag scans the previous version of
+ * it for custom code, writes its text to {@link #OpenWriter()} and then calls {@link #Close()}.  Everything that has to happen to the
+ * file after its text has been written is done in {@link #Finish()}, which in write-behind mode the {@link OutputPipeline} calls on one
+ * of its own threads, so nothing in here can touch the evaluation context.</p>
+ */
+public abstract class OutputFile implements OutputPipeline.FileOutput {
+
+	// Data members
+	protected final	File		m_outputFile;
+	protected final	boolean		m_isNewFile;
+	protected final	Charset		m_charset;
+	protected final	String		m_source;					// Where the file comes from, for the messages.
+	private 		boolean		m_isAbandoned	= false;
+
+
+	//*********************************
+	protected OutputFile(File p_outputFile, boolean p_isNewFile, Charset p_charset, String p_source) {
+		m_outputFile	= p_outputFile;
+		m_isNewFile		= p_isNewFile;
+		m_charset		= p_charset;
+		m_source		= p_source;
+	}
+
+
+	//*********************************
+	public File GetOutputFile() {
+		return m_outputFile;
+	}
+
+
+	//*********************************
+	/**
+	 * @return True if there's no previous version of the file.
+	 */
+	public boolean IsNewFile() {
+		return m_isNewFile;
+	}
+
+
+	//*********************************
+	/**
+	 * Saves the custom code in the previous version of the file so that the CustomCode tags can put it back.  This is only called
+	 * if the file isn't new.
+	 */
+	public abstract boolean ScanCustomCode(CustomCodeManager p_customCodeManager);
+
+
+	//*********************************
+	/**
+	 * @return The writer that the file's text goes to.  It has to be closed before {@link #Close()} is called.
+	 */
+	public Writer OpenWriter() throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(Open(), m_charset));
+	}
+
+
+	//*********************************
+	/**
+	 * Called by the file tag once the writer has been closed.
+	 *
+	 * @return false if the file couldn't be finished.
+	 */
+	public boolean Close() {
+		return Finish();
+	}
+
+
+	//*********************************
+	/**
+	 * The file failed to generate.  What was written of it is left where it is, the same as it always has been, so it can be
+	 * looked at to see where it failed.
+	 */
+	public void Abandon() {
+		m_isAbandoned = true;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean Finish() {
+		if (m_isAbandoned)
+			return true;	// The file tag has already reported it.
+
+		try {
+			return FinishFile();
+		}
+		catch (Throwable t_error) {
+			ReportError(t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Does whatever the destination has to do with the file once its text has been written and counts it.
+	 */
+	protected abstract boolean FinishFile() throws IOException;
+
+
+	//*********************************
+	@Override
+	public void ReportError(Throwable p_error) {
+		Logger.LogException("OutputFile.ReportError() failed writing the output file [" + m_outputFile.getAbsolutePath() + "] for " + m_source + ": ", p_error);
+	}
+
+
+	//*********************************
+	/**
+	 * Counts the finished file with the file tag's counts.
+	 */
+	protected void CountFile(boolean p_isUnchanged) {
+		FileTag.IncrementFileCount(m_isNewFile, p_isUnchanged);
+	}
+}
@@ -0,0 +1,248 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>Remembers what is in the output directories for one generation so that {@link codegenerator.generator.tags.FileTag} and
+ * {@link codegenerator.generator.tags.CopyFile} don't have to ask the file system whether each file and directory exists.  The first
+ * time a directory is needed, it is listed once, and every existence check in it after that is answered from the listing.  The tags
+ * tell this about the files they create and delete so that the listing stays right.  Nothing else is expected to change the output
+ * while it is being generated.</p>
+ *
+ * <p>The directories are kept in a ConcurrentHashMap, so the file tags being evaluated in parallel only ever contend on the same
+ * directory, and only while it is first being listed.</p>
+ *
+ * <p>On a file system that ignores case, a file can exist under a name that differs from the one asked for only in case.  The listing
+ * can't tell that apart from a file that really isn't there, so a name that only matches that way is checked with the file system.</p>
+ */
+public class OutputFileSystemCache {
+
+	//===========================================
+	static private final class DirectoryListing {
+		private volatile	boolean			m_exists;
+		private final		Set<String>		m_names				= ConcurrentHashMap.newKeySet();
+		private final		Set<String>		m_lowerCaseNames	= ConcurrentHashMap.newKeySet();
+
+		public DirectoryListing(boolean p_exists, String[] p_names) {
+			m_exists = p_exists;
+			if (p_names != null) {
+				for (String t_name: p_names)
+					Add(t_name);
+			}
+		}
+
+		public void Add(String p_name) {
+			m_names.add(p_name);
+			m_lowerCaseNames.add(p_name.toLowerCase());
+		}
+
+		public void Remove(String p_name) {
+			m_names.remove(p_name);		// The lower case name stays since another file could still have it.  It only costs a real check.
+		}
+	}
+
+
+	// Data members
+	private final ConcurrentHashMap<String, DirectoryListing>	m_directories			= new ConcurrentHashMap<>();	// By absolute path.
+	private final AtomicInteger									m_fileSystemCallCount	= new AtomicInteger();
+	private final AtomicInteger									m_cachedAnswerCount		= new AtomicInteger();
+
+
+	//*********************************
+	/**
+	 * Makes sure the directory and any missing parent directories exist.  This is safe to call from file tags that are being evaluated
+	 * in parallel, even for the same directory.
+	 *
+	 * @param p_directory
+	 * @return
+	 */
+	public boolean CreateDirectory(Path p_directory) {
+		DirectoryListing t_listing = null;
+		try {
+			t_listing = GetListing(GetPath(p_directory.toFile()));
+			if (t_listing.m_exists) {
+				m_cachedAnswerCount.incrementAndGet();
+				return true;
+			}
+
+			m_fileSystemCallCount.incrementAndGet();
+			Files.createDirectories(p_directory);	// This is fine to call from more than one thread for the same directory.
+			t_listing.m_exists = true;
+
+			NoteCreated(p_directory.toFile());		// So the parent's listing knows about it, too.
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputFileSystemCache.CreateDirectory() failed to create the directory [" + p_directory.toAbsolutePath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_file
+	 * @return True if the file or directory exists.
+	 */
+	public boolean Exists(File p_file) {
+		Path				t_path		= GetPath(p_file);
+		DirectoryListing	t_listing	= GetListing(t_path.getParent());
+		String				t_name		= t_path.getFileName().toString();
+		if (t_listing.m_names.contains(t_name) || !t_listing.m_lowerCaseNames.contains(t_name.toLowerCase())) {
+			m_cachedAnswerCount.incrementAndGet();
+			return t_listing.m_names.contains(t_name);
+		}
+
+		m_fileSystemCallCount.incrementAndGet();
+		return p_file.exists();
+	}
+
+
+	//*********************************
+	/**
+	 * Tells the cache that a file or directory was just created in a directory that it may have listed already.
+	 */
+	public void NoteCreated(File p_file) {
+		Path				t_path		= GetPath(p_file);
+		Path				t_parent	= t_path.getParent();
+		DirectoryListing	t_listing	= (t_parent != null) ? m_directories.get(t_parent.toString()) : null;
+		if (t_listing != null) {
+			t_listing.Add(t_path.getFileName().toString());
+			t_listing.m_exists = true;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Deletes the file and takes it out of its directory's listing.
+	 *
+	 * @return false if it couldn't be deleted.
+	 */
+	public boolean Delete(File p_file) {
+		m_fileSystemCallCount.incrementAndGet();
+		if (!p_file.delete())
+			return false;
+
+		Forget(p_file);
+		return true;
+	}
+
+
+	//*********************************
+	/**
+	 * Moves the file over the target with one rename, if the file system can, and updates the listings.
+	 */
+	public void Move(File p_source, File p_target) throws IOException {
+		m_fileSystemCallCount.incrementAndGet();
+		try {
+			Files.move(p_source.toPath(), p_target.toPath(), StandardCopyOption.ATOMIC_MOVE);	// A rename replaces the target in the same step, so it doesn't have to be deleted first.
+		}
+		catch (AtomicMoveNotSupportedException t_error) {
+			m_fileSystemCallCount.incrementAndGet();
+			Files.move(p_source.toPath(), p_target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		Forget(p_source);
+		NoteCreated(p_target);
+	}
+
+
+	//*********************************
+	/**
+	 * For a file system call that a tag made itself, so that it shows up in the count.
+	 */
+	public void CountFileSystemCall() {
+		m_fileSystemCallCount.incrementAndGet();
+	}
+
+
+	//*********************************
+	/**
+	 * @return The directory listings, creates, existence checks, deletes and moves that actually went to the file system.
+	 */
+	public int GetFileSystemCallCount() {
+		return m_fileSystemCallCount.get();
+	}
+
+
+	//*********************************
+	/**
+	 * @return The existence checks that were answered from a listing instead.
+	 */
+	public int GetCachedAnswerCount() {
+		return m_cachedAnswerCount.get();
+	}
+
+
+	//*********************************
+	public int GetDirectoryCount() {
+		return m_directories.size();
+	}
+
+
+	//*********************************
+	private void Forget(File p_file) {
+		Path				t_path		= GetPath(p_file);
+		DirectoryListing	t_listing	= m_directories.get(t_path.getParent().toString());
+		if (t_listing != null)
+			t_listing.Remove(t_path.getFileName().toString());
+	}
+
+
+	//===========================================
+	/**
+	 * The same file can be named more than one way, like "out" and "./out", so everything is looked up by its absolute normalized path.
+	 */
+	static private Path GetPath(File p_file) {
+		return p_file.toPath().toAbsolutePath().normalize();
+	}
+
+
+	//*********************************
+	/**
+	 * Lists the directory the first time it is asked for.  A directory that doesn't exist yet gets an empty listing.
+	 */
+	private DirectoryListing GetListing(Path p_directory) {
+		String				t_key		= p_directory.toString();
+		DirectoryListing	t_listing	= m_directories.get(t_key);
+		if (t_listing != null)
+			return t_listing;
+
+		return m_directories.computeIfAbsent(t_key, p_key -> {
+			m_fileSystemCallCount.incrementAndGet();
+			String[] t_names = new File(p_key).list();	// NULL if it isn't there (or isn't a directory, which the write will report).
+			return new DirectoryListing(t_names != null, t_names);
+		});
+	}
+}
@@ -0,0 +1,363 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+
+
+
+/**
+ * <p>The clean-ups that can be done to a generated file as it is written instead of in a pass over the files afterwards: converting
+ * the line endings, stripping the whitespace off the ends of the lines and making sure the file ends with a line ending.  Each one is
+ * a writer that goes between the file's {@link Cursor} and the writer that the file is written with, so the text is only handled once
+ * on its way out.  An instance of this is just the settings, which are global with {@link EvaluationContext#SetOutputFilters(OutputFilters)}
+ * and can be overridden by each file tag.</p>
+ *
+ * <p>The filters only ever hold back or change what is at the end of a line, or at the end of the file, and only until they can
+ * tell what comes next.  The cursor sees the text before it is filtered, so its column and leading whitespace for the current line
+ * are still right for <code><b>tabStop</b></code>, <code><b>tabMarker</b></code> and <code><b>customCode</b></code>:  whitespace that
+ * is held back because it might be trailing is written as soon as anything but a line ending follows it.</p>
+ */
+public class OutputFilters {
+
+	static public final int		LINE_ENDINGS_KEEP	= 0;	// Write them the way the templates and custom code have them.
+	static public final int		LINE_ENDINGS_LF		= 1;
+	static public final int		LINE_ENDINGS_CRLF	= 2;
+
+	static public final int		SETTING_UNSET		= -1;	// For the overrides in Override(): keep the setting that is being overridden.
+
+	static public final OutputFilters	NONE		= new OutputFilters(LINE_ENDINGS_KEEP, false, false);
+
+
+	//===========================================
+	/**
+	 * @param p_lineEndingsName	"keep", "lf" or "crlf".
+	 * @return The matching LINE_ENDINGS_ value or -1 if the name isn't one of them.
+	 */
+	static public int ParseLineEndings(String p_lineEndingsName) {
+		if (p_lineEndingsName.equalsIgnoreCase("keep"))
+			return LINE_ENDINGS_KEEP;
+
+		if (p_lineEndingsName.equalsIgnoreCase("lf"))
+			return LINE_ENDINGS_LF;
+
+		if (p_lineEndingsName.equalsIgnoreCase("crlf"))
+			return LINE_ENDINGS_CRLF;
+
+		return -1;
+	}
+
+
+
+	// Data members
+	private final int		m_lineEndings;
+	private final boolean	m_trimTrailingWhitespace;
+	private final boolean	m_ensureFinalNewline;
+
+
+	//*********************************
+	/**
+	 * @param p_lineEndings				One of the LINE_ENDINGS_ values.
+	 * @param p_trimTrailingWhitespace	Strip spaces and tabs from the ends of the lines, including the last one.
+	 * @param p_ensureFinalNewline		Add a line ending to the end of a file that doesn't end with one.  An empty file is left empty.
+	 */
+	public OutputFilters(int p_lineEndings, boolean p_trimTrailingWhitespace, boolean p_ensureFinalNewline) {
+		m_lineEndings				= p_lineEndings;
+		m_trimTrailingWhitespace	= p_trimTrailingWhitespace;
+		m_ensureFinalNewline		= p_ensureFinalNewline;
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_lineEndings				A LINE_ENDINGS_ value or SETTING_UNSET.
+	 * @param p_trimTrailingWhitespace	0 for off, 1 for on or SETTING_UNSET.
+	 * @param p_ensureFinalNewline		0 for off, 1 for on or SETTING_UNSET.
+	 * @return These settings with the ones that are set replaced.
+	 */
+	public OutputFilters Override(int p_lineEndings, int p_trimTrailingWhitespace, int p_ensureFinalNewline) {
+		if ((p_lineEndings == SETTING_UNSET) && (p_trimTrailingWhitespace == SETTING_UNSET) && (p_ensureFinalNewline == SETTING_UNSET))
+			return this;
+
+		return new OutputFilters((p_lineEndings				!= SETTING_UNSET) ? p_lineEndings					: m_lineEndings,
+								 (p_trimTrailingWhitespace	!= SETTING_UNSET) ? (p_trimTrailingWhitespace == 1)	: m_trimTrailingWhitespace,
+								 (p_ensureFinalNewline		!= SETTING_UNSET) ? (p_ensureFinalNewline == 1)		: m_ensureFinalNewline);
+	}
+
+
+	//*********************************
+	/**
+	 * @return True if none of the filters are turned on.
+	 */
+	public boolean IsEmpty() {
+		return (m_lineEndings == LINE_ENDINGS_KEEP) && !m_trimTrailingWhitespace && !m_ensureFinalNewline;
+	}
+
+
+	//*********************************
+	/**
+	 * @return The settings as text, for the generation manifest.
+	 */
+	public String GetSettings() {
+		return m_lineEndings + ":" + m_trimTrailingWhitespace + ":" + m_ensureFinalNewline;
+	}
+
+
+	//*********************************
+	/**
+	 * Puts the filters that are turned on in front of the writer.  Closing what this returns closes the writer, too, and that is when
+	 * anything held back for the end of the file is dealt with.
+	 *
+	 * @param p_writer
+	 * @return The writer itself if there aren't any.
+	 */
+	public Writer Wrap(Writer p_writer) {
+		Writer t_writer = p_writer;
+		if (m_lineEndings != LINE_ENDINGS_KEEP)
+			t_writer = new LineEndingFilter(t_writer, (m_lineEndings == LINE_ENDINGS_CRLF) ? "\r\n" : "\n");
+
+		// The final newline goes in before the line endings are converted so that it gets converted with the rest of them.
+		if (m_ensureFinalNewline)
+			t_writer = new FinalNewlineFilter(t_writer);
+
+		// And the trailing whitespace comes off first so that the final newline filter sees what the last line really ends with.
+		if (m_trimTrailingWhitespace)
+			t_writer = new TrailingWhitespaceFilter(t_writer);
+
+		return t_writer;
+	}
+
+
+
+	/**
+	 * FilterWriter passes single characters and strings straight to the writer it wraps, so this sends them through write(char[])
+	 * where the filtering is done.
+	 */
+	static private abstract class Filter extends FilterWriter {
+
+		// Data members
+		private char[]	m_stringBuffer	= new char[256];
+
+
+		//*********************************
+		protected Filter(Writer p_writer) {
+			super(p_writer);
+		}
+
+
+		//*********************************
+		@Override
+		public void write(int p_char) throws IOException {
+			m_stringBuffer[0] = (char)p_char;
+			write(m_stringBuffer, 0, 1);
+		}
+
+
+		//*********************************
+		@Override
+		public void write(String p_text, int p_offset, int p_length) throws IOException {
+			if (m_stringBuffer.length < p_length)
+				m_stringBuffer = new char[Math.max(p_length, m_stringBuffer.length * 2)];
+
+			p_text.getChars(p_offset, p_offset + p_length, m_stringBuffer, 0);
+			write(m_stringBuffer, 0, p_length);
+		}
+	}
+
+
+
+	/**
+	 * Holds back each run of spaces and tabs until it sees what follows it.  A line ending or the end of the file drops it.
+	 */
+	static private class TrailingWhitespaceFilter extends Filter {
+
+		// Data members
+		private final StringBuilder	m_pendingWhitespace	= new StringBuilder();
+
+
+		//*********************************
+		public TrailingWhitespaceFilter(Writer p_writer) {
+			super(p_writer);
+		}
+
+
+		//*********************************
+		@Override
+		public void write(char[] p_chars, int p_offset, int p_length) throws IOException {
+			int		t_end		= p_offset + p_length;
+			int		t_runStart	= p_offset;		// The start of what can be written as it is.
+			int		i			= p_offset;
+			char	t_nextChar;
+			while (i < t_end) {
+				t_nextChar = p_chars[i];
+				if ((t_nextChar == ' ') || (t_nextChar == '\t')) {
+					out.write(p_chars, t_runStart, i - t_runStart);
+
+					int t_whitespaceStart = i;
+					while ((i < t_end) && ((p_chars[i] == ' ') || (p_chars[i] == '\t')))
+						++i;
+
+					m_pendingWhitespace.append(p_chars, t_whitespaceStart, i - t_whitespaceStart);
+					t_runStart = i;
+					continue;
+				}
+
+				// The run starts right here whenever there is whitespace pending, so it goes out first.
+				if (m_pendingWhitespace.length() > 0) {
+					if ((t_nextChar != '\n') && (t_nextChar != '\r'))
+						out.append(m_pendingWhitespace);
+
+					m_pendingWhitespace.setLength(0);
+				}
+
+				++i;
+			}
+
+			out.write(p_chars, t_runStart, t_end - t_runStart);
+		}
+
+
+		//*********************************
+		@Override
+		public void close() throws IOException {
+			m_pendingWhitespace.setLength(0);	// Whitespace at the end of the file is trailing, too.
+			super.close();
+		}
+	}
+
+
+
+	/**
+	 * Remembers what the file has ended with so far so that it can add a line ending at the end if it needs one.  The line ending
+	 * matches the last one in the file.
+	 */
+	static private class FinalNewlineFilter extends Filter {
+
+		// Data members
+		private int			m_lastChar			= -1;		// -1 until something is written.
+		private boolean		m_lastEndingIsCrLf	= false;
+
+
+		//*********************************
+		public FinalNewlineFilter(Writer p_writer) {
+			super(p_writer);
+		}
+
+
+		//*********************************
+		@Override
+		public void write(char[] p_chars, int p_offset, int p_length) throws IOException {
+			if (p_length <= 0)
+				return;
+
+			for (int i = p_offset + p_length - 1; i >= p_offset; --i) {
+				if (p_chars[i] == '\n') {
+					m_lastEndingIsCrLf = (i > p_offset) ? (p_chars[i - 1] == '\r') : (m_lastChar == '\r');
+					break;
+				}
+			}
+
+			m_lastChar = p_chars[p_offset + p_length - 1];
+			out.write(p_chars, p_offset, p_length);
+		}
+
+
+		//*********************************
+		@Override
+		public void close() throws IOException {
+			if ((m_lastChar >= 0) && (m_lastChar != '\n'))
+				out.write(m_lastEndingIsCrLf ? "\r\n" : "\n");
+
+			super.close();
+		}
+	}
+
+
+
+	/**
+	 * Turns every CRLF and LF into the line ending.  A CR on its own isn't a line ending and is left alone, but it has to be held
+	 * back until the next character shows whether it is part of a CRLF.
+	 */
+	static private class LineEndingFilter extends Filter {
+
+		// Data members
+		private final String	m_lineEnding;
+		private boolean			m_pendingCR		= false;
+
+
+		//*********************************
+		public LineEndingFilter(Writer p_writer, String p_lineEnding) {
+			super(p_writer);
+			m_lineEnding = p_lineEnding;
+		}
+
+
+		//*********************************
+		@Override
+		public void write(char[] p_chars, int p_offset, int p_length) throws IOException {
+			int		t_end		= p_offset + p_length;
+			int		t_runStart	= p_offset;
+			char	t_nextChar;
+			for (int i = p_offset; i < t_end; ++i) {
+				t_nextChar = p_chars[i];
+
+				// A pending CR was at the end of the run before this character, so the run starts here, too.
+				if (m_pendingCR) {
+					m_pendingCR = false;
+					if (t_nextChar == '\n') {
+						out.write(m_lineEnding);
+						t_runStart = i + 1;
+						continue;
+					}
+
+					out.write('\r');
+				}
+
+				if (t_nextChar == '\r') {
+					out.write(p_chars, t_runStart, i - t_runStart);
+					m_pendingCR	= true;
+					t_runStart	= i + 1;
+				}
+				else if (t_nextChar == '\n') {
+					out.write(p_chars, t_runStart, i - t_runStart);
+					out.write(m_lineEnding);
+					t_runStart = i + 1;
+				}
+			}
+
+			out.write(p_chars, t_runStart, t_end - t_runStart);
+		}
+
+
+		//*********************************
+		@Override
+		public void close() throws IOException {
+			if (m_pendingCR) {
+				m_pendingCR = false;
+				out.write('\r');
+			}
+
+			super.close();
+		}
+	}
+}
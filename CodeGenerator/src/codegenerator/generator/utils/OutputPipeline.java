@@ -0,0 +1,620 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>Takes the writing of the generated files off of the threads that evaluate them.  The {@link Cursor} for a file writes into a
+ * Writer from <code>CreateWriter()</code> that just copies the text into pooled buffers.  Each buffer that fills up is handed to a
+ * small pool of I/O threads that encode it in the output charset and write it to the file, and when the file is closed, the I/O thread
+ * closes it and does everything that has to happen after that, like renaming the temp file.  So the evaluating thread never waits on
+ * the disk unless the text that has been handed off but not written yet goes over the byte budget.</p>
+ *
+ * <p>The buffers for one file are always written in order, one at a time, but different files can be written at the same time.  Opening
+ * a file that is still being written waits for it first so that the file tag sees the file as it will be on disk, the same as it would
+ * have in serial mode, before it scans it for custom code.</p>
+ *
+ * <p>An error writing a file is reported by its {@link FileOutput} so that it can say which file tag the file came from.  Once one has
+ * failed, the rest of the run is failed the same way {@link ParallelFileEvaluator} does it.</p>
+ *
+ * <p>It's an {@link OutputDestination} that wraps the one the files actually go to.  That one still sets each file up and finishes
+ * it, and only the writing moves to the pipeline's threads.</p>
+ */
+public class OutputPipeline implements OutputDestination {
+
+	static private final int		CHUNK_SIZE		= 16 * 1024;			// Characters per buffer.
+	static private final int		CHUNK_BYTES		= CHUNK_SIZE * 2;		// What a buffer of chars costs against the budget.
+	static private final int		BYTE_BUFFER_SIZE	= 32 * 1024;
+
+
+	//===========================================
+	/**
+	 * What a file tag gives the pipeline for each file so that the I/O thread can open, finish and report on it.
+	 */
+	public interface FileOutput {
+		/**
+		 * @return The stream the encoded bytes go to.  It is opened by the I/O thread when the first buffer is written.
+		 */
+		OutputStream Open() throws IOException;
+
+		/**
+		 * Called by the I/O thread after the stream has been closed.
+		 *
+		 * @return false if it failed.  It is expected to have logged why.
+		 */
+		boolean Finish();
+
+		/**
+		 * Logs an error writing the file.
+		 */
+		void ReportError(Throwable p_error);
+	}
+
+
+	/**
+	 * Hands the text of the wrapped destination's file to the pipeline.  The I/O thread finishes that file once it's written, so
+	 * there's nothing left for {@link #Close()} to do.
+	 */
+	private final class WriteBehindFile extends OutputFile {
+
+		// Data members
+		private final OutputFile m_file;
+
+
+		//*********************************
+		public WriteBehindFile(OutputFile p_file, String p_source) {
+			super(p_file.GetOutputFile(), p_file.IsNewFile(), OutputPipeline.this.m_charset, p_source);
+			m_file = p_file;
+		}
+
+
+		//*********************************
+		@Override
+		public boolean ScanCustomCode(CustomCodeManager p_customCodeManager) {
+			return m_file.ScanCustomCode(p_customCodeManager);
+		}
+
+
+		//*********************************
+		@Override
+		public Writer OpenWriter() {
+			return CreateWriter(m_outputFile.getAbsolutePath(), m_file);
+		}
+
+
+		//*********************************
+		@Override
+		public OutputStream Open() throws IOException {
+			return m_file.Open();
+		}
+
+
+		//*********************************
+		@Override
+		public boolean Close() {
+			return true;
+		}
+
+
+		//*********************************
+		@Override
+		public void Abandon() {
+			m_file.Abandon();
+		}
+
+
+		//*********************************
+		@Override
+		protected boolean FinishFile() {
+			return m_file.Finish();
+		}
+
+
+		//*********************************
+		@Override
+		public void ReportError(Throwable p_error) {
+			m_file.ReportError(p_error);
+		}
+	}
+
+
+	// Data members
+	private final	OutputDestination									m_destination;
+	private final	int													m_threadCount;
+	private final	ExecutorService										m_executor;
+	private final	Charset												m_charset;
+	private final	Semaphore											m_budget;
+	private final	int													m_budgetBytes;
+	private final	ConcurrentLinkedQueue<char[]>						m_charBuffers		= new ConcurrentLinkedQueue<>();
+	private final	ConcurrentLinkedQueue<ByteBuffer>					m_byteBuffers		= new ConcurrentLinkedQueue<>();
+	private final	ConcurrentHashMap<String, CompletableFuture<Void>>	m_pendingFiles		= new ConcurrentHashMap<>();	// The last write of each file that hasn't finished yet, by path.
+	private final	ConcurrentLinkedQueue<CompletableFuture<Void>>		m_files				= new ConcurrentLinkedQueue<>();
+	private final	AtomicBoolean										m_failed			= new AtomicBoolean(false);
+	private final	AtomicInteger										m_fileCount			= new AtomicInteger();
+	private final	AtomicLong											m_waitNanos			= new AtomicLong();
+	private final	AtomicInteger										m_inFlightBytes		= new AtomicInteger();
+	private final	AtomicInteger										m_peakInFlightBytes	= new AtomicInteger();
+
+
+	//*********************************
+	/**
+	 * @param p_threadCount		The number of files that can be written at the same time.
+	 * @param p_budgetBytes		How much text can be handed off and not written yet before the evaluating threads have to wait.
+	 * @param p_charset			The charset the files are written in.
+	 * @param p_destination		Where the files go.
+	 */
+	public OutputPipeline(int p_threadCount, int p_budgetBytes, Charset p_charset, OutputDestination p_destination) {
+		AtomicInteger t_threadNumber = new AtomicInteger();
+		m_executor = Executors.newFixedThreadPool(Math.max(1, p_threadCount), p_runnable -> {
+			Thread t_thread = new Thread(p_runnable, "FileWriter-" + t_threadNumber.incrementAndGet());
+			t_thread.setDaemon(true);
+			return t_thread;
+		});
+
+		m_destination	= p_destination;
+		m_threadCount	= p_threadCount;
+		m_charset		= p_charset;
+		m_budgetBytes	= Math.max(p_budgetBytes, CHUNK_BYTES);	// It has to hold at least one buffer or a file could never get started.
+		m_budget		= new Semaphore(m_budgetBytes);
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_path	The path of the file as the file tag names it.
+	 * @param p_output
+	 * @return A writer whose text ends up in the file.  Closing it hands the file off to be finished, so the file tag must not touch
+	 * the file after that.
+	 */
+	private Writer CreateWriter(String p_path, FileOutput p_output) {
+		return new WriteBehindWriter(p_path, p_output);
+	}
+
+
+	//*********************************
+	/**
+	 * Waits until anything that was handed off for the file has been written and finished.
+	 */
+	private void WaitForFile(String p_path) {
+		CompletableFuture<Void> t_pending = m_pendingFiles.get(p_path);
+		if (t_pending == null)
+			return;
+
+		long t_startTime = System.nanoTime();
+		t_pending.join();
+		m_waitNanos.addAndGet(System.nanoTime() - t_startTime);
+	}
+
+
+	//*********************************
+	/**
+	 * A file that is still being written is waited for first so that the destination sees it as it will be.
+	 */
+	@Override
+	public OutputFile OpenFile(File p_outputFile, boolean p_useTempFile, boolean p_makeExecutable, GenerationManifest.OutputStamp p_stamp, String p_source) throws IOException {
+		WaitForFile(p_outputFile.getAbsolutePath());
+
+		OutputFile t_file = m_destination.OpenFile(p_outputFile, p_useTempFile, p_makeExecutable, p_stamp, p_source);
+		if (t_file == null)
+			return null;
+
+		return new WriteBehindFile(t_file, p_source);
+	}
+
+
+	//*********************************
+	@Override
+	public boolean CopyFile(File p_outputFile, Path p_sourceFile, boolean p_makeExecutable) throws IOException {
+		return m_destination.CopyFile(p_outputFile, p_sourceFile, p_makeExecutable);
+	}
+
+
+	//*********************************
+	@Override
+	public boolean HasFailed() {
+		return m_failed.get();
+	}
+
+
+	//*********************************
+	/**
+	 * The files still being written have to finish before the destination can put them into the output.
+	 */
+	@Override
+	public boolean Commit() {
+		if (!WaitForCompletion()) {
+			m_destination.Abandon();
+			return false;
+		}
+
+		return m_destination.Commit();
+	}
+
+
+	//*********************************
+	/**
+	 * Every file is waited for even though the generation failed so that nothing is still writing after this returns.
+	 */
+	@Override
+	public void Abandon() {
+		WaitForCompletion();
+		m_destination.Abandon();
+	}
+
+
+	//*********************************
+	@Override
+	public void LogStatistics() {
+		Logger.LogInfo("Write-behind I/O threads:       "	+ m_threadCount);
+		Logger.LogInfo("Files written behind:           "	+ GetFileCount());
+		Logger.LogInfo("Peak bytes waiting to write:    "	+ GetPeakInFlightBytes() + " of " + GetBudgetBytes());
+		Logger.LogInfo("Writer waits (millisec):        "	+ GetWaitMillis());
+
+		m_destination.LogStatistics();
+	}
+
+
+	//*********************************
+	/**
+	 * Waits for every file that has been handed off and then shuts the I/O threads down.
+	 *
+	 * @return false if any file failed.
+	 */
+	public boolean WaitForCompletion() {
+		try {
+			CompletableFuture<Void> t_nextFile;
+			while ((t_nextFile = m_files.poll()) != null)
+				t_nextFile.join();
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputPipeline.WaitForCompletion() failed with error: ", t_error);
+			m_failed.set(true);
+		}
+		finally {
+			m_executor.shutdown();
+		}
+
+		return !m_failed.get();
+	}
+
+
+	//*********************************
+	public int GetFileCount() {
+		return m_fileCount.get();
+	}
+
+
+	//*********************************
+	/**
+	 * @return How long the evaluating threads spent waiting on the pipeline, either for the budget or for a file to finish.
+	 */
+	public long GetWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(m_waitNanos.get());
+	}
+
+
+	//*********************************
+	public int GetPeakInFlightBytes() {
+		return m_peakInFlightBytes.get();
+	}
+
+
+	//*********************************
+	public int GetBudgetBytes() {
+		return m_budgetBytes;
+	}
+
+
+	//*********************************
+	private char[] TakeCharBuffer() {
+		char[] t_buffer = m_charBuffers.poll();
+		return (t_buffer != null) ? t_buffer : new char[CHUNK_SIZE];
+	}
+
+
+	//*********************************
+	private ByteBuffer TakeByteBuffer() {
+		ByteBuffer t_buffer = m_byteBuffers.poll();
+		return (t_buffer != null) ? t_buffer : ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+	}
+
+
+	//*********************************
+	/**
+	 * Called by the evaluating thread before it hands a buffer off.  This is the only place it can be made to wait.
+	 */
+	private void AcquireBudget() throws InterruptedException {
+		if (!m_budget.tryAcquire(CHUNK_BYTES)) {
+			long t_startTime = System.nanoTime();
+			m_budget.acquire(CHUNK_BYTES);
+			m_waitNanos.addAndGet(System.nanoTime() - t_startTime);
+		}
+
+		int t_inFlightBytes = m_inFlightBytes.addAndGet(CHUNK_BYTES);
+		m_peakInFlightBytes.accumulateAndGet(t_inFlightBytes, Math::max);
+	}
+
+
+	//*********************************
+	private void ReleaseBudget(char[] p_buffer) {
+		m_charBuffers.add(p_buffer);
+		m_inFlightBytes.addAndGet(-CHUNK_BYTES);
+		m_budget.release(CHUNK_BYTES);
+	}
+
+
+
+	//===========================================
+	/**
+	 * The writer for one file.  Everything but the constructor and the Writer functions runs on the I/O threads, one job at a time.
+	 */
+	private final class WriteBehindWriter extends Writer {
+
+		// Data members
+		private final	String					m_path;
+		private final	FileOutput				m_output;
+		private 		char[]					m_buffer		= null;
+		private 		int						m_length		= 0;
+		private 		CompletableFuture<Void>	m_lastWrite		= CompletableFuture.completedFuture(null);
+		private 		boolean					m_closed		= false;
+
+		// These are only touched by the I/O jobs.
+		private final	CharsetEncoder			m_encoder;
+		private 		OutputStream			m_stream		= null;
+		private 		ByteBuffer				m_bytes			= null;
+		private 		boolean					m_fileFailed		= false;
+
+
+		//*********************************
+		public WriteBehindWriter(String p_path, FileOutput p_output) {
+			m_path		= p_path;
+			m_output	= p_output;
+			m_encoder	= m_charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);	// The same as an OutputStreamWriter does.
+
+			m_pendingFiles.put(m_path, m_lastWrite);
+		}
+
+
+		//*********************************
+		@Override
+		public void write(char[] p_chars, int p_offset, int p_length) throws IOException {
+			while (p_length > 0) {
+				if (m_buffer == null)
+					StartBuffer();
+
+				int t_count = Math.min(p_length, CHUNK_SIZE - m_length);
+				System.arraycopy(p_chars, p_offset, m_buffer, m_length, t_count);
+				m_length	+= t_count;
+				p_offset	+= t_count;
+				p_length	-= t_count;
+
+				if (m_length == CHUNK_SIZE)
+					HandOff();
+			}
+		}
+
+
+		//*********************************
+		@Override
+		public void write(String p_string, int p_offset, int p_length) throws IOException {
+			while (p_length > 0) {
+				if (m_buffer == null)
+					StartBuffer();
+
+				int t_count = Math.min(p_length, CHUNK_SIZE - m_length);
+				p_string.getChars(p_offset, p_offset + t_count, m_buffer, m_length);
+				m_length	+= t_count;
+				p_offset	+= t_count;
+				p_length	-= t_count;
+
+				if (m_length == CHUNK_SIZE)
+					HandOff();
+			}
+		}
+
+
+		//*********************************
+		@Override
+		public void write(int p_char) throws IOException {
+			write(new char[] {(char)p_char}, 0, 1);
+		}
+
+
+		//*********************************
+		/**
+		 * Nothing is written until a buffer fills up or the file is closed.
+		 */
+		@Override
+		public void flush() {}
+
+
+		//*********************************
+		@Override
+		public void close() throws IOException {
+			if (m_closed)
+				return;
+
+			m_closed = true;
+
+			if (m_buffer != null)
+				HandOff();
+
+			CompletableFuture<Void> t_finished = m_lastWrite.thenRunAsync(this::FinishFile, m_executor);
+			m_lastWrite = t_finished;
+			m_files.add(t_finished);
+			m_pendingFiles.put(m_path, t_finished);
+			t_finished.thenRun(() -> m_pendingFiles.remove(m_path, t_finished));
+			m_fileCount.incrementAndGet();
+		}
+
+
+		//*********************************
+		private void StartBuffer() throws IOException {
+			try {
+				AcquireBudget();
+			}
+			catch (InterruptedException t_error) {
+				throw new InterruptedIOException("OutputPipeline was interrupted waiting for the budget.");
+			}
+
+			m_buffer	= TakeCharBuffer();
+			m_length	= 0;
+		}
+
+
+		//*********************************
+		/**
+		 * A surrogate pair can't be encoded in two halves, so a high surrogate at the end of a full buffer is moved to the next one.
+		 */
+		private void HandOff() throws IOException {
+			char[]	t_buffer	= m_buffer;
+			boolean	t_isSplit	= (m_length == CHUNK_SIZE) && Character.isHighSurrogate(t_buffer[m_length - 1]);
+			int		t_length	= t_isSplit ? (m_length - 1) : m_length;
+			char	t_carry		= t_isSplit ? t_buffer[m_length - 1] : 0;
+
+			m_buffer = null;
+			m_length = 0;
+
+			m_lastWrite = m_lastWrite.thenRunAsync(() -> WriteBuffer(t_buffer, t_length), m_executor);
+
+			if (t_isSplit) {
+				StartBuffer();
+				m_buffer[m_length++] = t_carry;
+			}
+		}
+
+
+		//*********************************
+		private void WriteBuffer(char[] p_buffer, int p_length) {
+			try {
+				if (m_fileFailed || PipelineFailed())
+					return;
+
+				if (m_stream == null) {
+					m_stream	= m_output.Open();
+					m_bytes		= TakeByteBuffer();
+				}
+
+				Encode(CharBuffer.wrap(p_buffer, 0, p_length), false);
+			}
+			catch (Throwable t_error) {
+				Fail(t_error);
+			}
+			finally {
+				ReleaseBudget(p_buffer);
+			}
+		}
+
+
+		//*********************************
+		private void Encode(CharBuffer p_chars, boolean p_endOfInput) throws IOException {
+			CoderResult t_result;
+			do {
+				t_result = m_encoder.encode(p_chars, m_bytes, p_endOfInput);
+				if (t_result.isOverflow())
+					WriteBytes();
+			} while (t_result.isOverflow());
+
+			if (t_result.isError())
+				t_result.throwException();
+		}
+
+
+		//*********************************
+		private void WriteBytes() throws IOException {
+			m_stream.write(m_bytes.array(), 0, m_bytes.position());
+			m_bytes.clear();
+		}
+
+
+		//*********************************
+		private void FinishFile() {
+			try {
+				if (!m_fileFailed && !PipelineFailed()) {
+					if (m_stream == null) {
+						m_stream	= m_output.Open();	// An empty file still has to be written.
+						m_bytes		= TakeByteBuffer();
+					}
+
+					Encode(CharBuffer.allocate(0), true);
+
+					CoderResult t_result;
+					while ((t_result = m_encoder.flush(m_bytes)).isOverflow())
+						WriteBytes();
+
+					if (t_result.isError())
+						t_result.throwException();
+
+					WriteBytes();
+				}
+			}
+			catch (Throwable t_error) {
+				Fail(t_error);
+			}
+
+			try {
+				if (m_stream != null)
+					m_stream.close();
+			}
+			catch (Throwable t_error) {
+				Fail(t_error);
+			}
+
+			if (m_bytes != null) {
+				m_bytes.clear();
+				m_byteBuffers.add(m_bytes);
+				m_bytes = null;
+			}
+
+			if (!m_fileFailed && !PipelineFailed() && !m_output.Finish())
+				OutputPipeline.this.m_failed.set(true);
+		}
+
+
+		//*********************************
+		private boolean PipelineFailed() {
+			return OutputPipeline.this.m_failed.get();
+		}
+
+
+		//*********************************
+		private void Fail(Throwable p_error) {
+			if (!m_fileFailed) {
+				m_fileFailed = true;
+				m_output.ReportError(p_error);
+			}
+
+			OutputPipeline.this.m_failed.set(true);
+		}
+	}
+}
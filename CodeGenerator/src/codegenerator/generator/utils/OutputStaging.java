@@ -0,0 +1,475 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>Holds every file that a generation writes or copies in a staging directory until the whole generation has succeeded, and then
+ * moves them all into place with {@link #Commit()}.  If anything fails, the output tree hasn't been touched at all instead of being
+ * left half regenerated.</p>
+ *
+ * <p>Each run gets its own directory under the staging directory it is given, and each output directory gets its own numbered
+ * directory under that, so a staged file keeps its own name and the commit can move them one output directory at a time.  Each file is
+ * moved with a single atomic rename that replaces the old file, which is one metadata operation instead of the delete and rename that
+ * the temp files take.  That only works if the staging directory is on the same file system as the output, so a move that can't be
+ * atomic falls back to a plain one and is counted.</p>
+ *
+ * <p>A file that has already been staged in this run is what a later file tag for the same file starts from, for its custom code and
+ * when unchanged files are skipped, the same as it would be if it had been written in place.  A staged file doesn't need a temp
+ * file since nothing is replaced until the commit.</p>
+ *
+ * <p>If a run fails, its staging directory is left where it is so that what it generated can be looked at, the same way a failed temp
+ * file is left next to its original.</p>
+ */
+public class OutputStaging implements OutputDestination {
+
+	static public final int		SYNC_NONE		= 0;	// Leave it to the OS.
+	static public final int		SYNC_PER_FILE	= 1;	// Force each file to disk as soon as it is finished.
+	static public final int		SYNC_PER_RUN	= 2;	// Force all of them at once just before the commit.
+
+	static private final String	RUN_DIRECTORY_PREFIX	= "run-";
+
+
+	//===========================================
+	/**
+	 * @param p_name	none, file or run.
+	 * @return -1 if it isn't one of them.
+	 */
+	static public int ParseSyncPolicy(String p_name) {
+		if (p_name.equalsIgnoreCase("none"))
+			return SYNC_NONE;
+
+		if (p_name.equalsIgnoreCase("file"))
+			return SYNC_PER_FILE;
+
+		if (p_name.equalsIgnoreCase("run"))
+			return SYNC_PER_RUN;
+
+		return -1;
+	}
+
+
+	//===========================================
+	/**
+	 * Everything staged for one output directory.
+	 */
+	static private final class DirectoryBatch {
+		private final File										m_outputDirectory;
+		private final File										m_stagedDirectory;
+		private final ConcurrentHashMap<String, StagedFile>		m_files		= new ConcurrentHashMap<>();	// By file name.  Only the files that have been finished are in here.
+
+		public DirectoryBatch(File p_outputDirectory, File p_stagedDirectory) {
+			m_outputDirectory	= p_outputDirectory;
+			m_stagedDirectory	= p_stagedDirectory;
+		}
+	}
+
+
+	//===========================================
+	static private final class StagedFile {
+		private final File										m_stagedFile;
+		private final File										m_outputFile;
+		private final List<GenerationManifest.OutputStamp>		m_stamps	= Collections.synchronizedList(new ArrayList<>());	// The file could be generated more than once and each one of them could have been recorded.
+
+		public StagedFile(File p_stagedFile, File p_outputFile) {
+			m_stagedFile	= p_stagedFile;
+			m_outputFile	= p_outputFile;
+		}
+	}
+
+
+	/**
+	 * A file that is written to its staged location.
+	 */
+	private class StagedOutputFile extends FileSystemOutput.DiskFile {
+
+		//*********************************
+		public StagedOutputFile(File							p_outputFile,
+								boolean							p_isNewFile,
+								String							p_source,
+								File							p_currentFile,
+								File							p_stagedFile,
+								boolean							p_makeExecutable,
+								GenerationManifest.OutputStamp	p_stamp)
+		{
+			super(p_outputFile, p_isNewFile, OutputStaging.this.m_charset, p_source, p_currentFile, p_stagedFile, OutputStaging.this.m_skipUnchangedFiles, p_makeExecutable, p_stamp);
+		}
+
+
+		//*********************************
+		/**
+		 * A staged file is done once it's added to the files to commit.  If it was compared with what was already staged for it, then
+		 * it's still staged even if it didn't change.
+		 */
+		@Override
+		protected boolean FinishFile() throws IOException {
+			boolean t_isUnchanged	= IsUnchanged();
+			boolean t_isStaged		= !t_isUnchanged || m_currentFile.equals(m_targetFile);
+			if (t_isStaged) {
+				if (m_makeExecutable && !FileSystemOutput.MakeExecutable(m_targetFile.toPath()))
+					return false;
+
+				if (!AddFile(m_outputFile, m_stamp)) {
+					Logger.LogError("OutputStaging.StagedOutputFile.FinishFile() failed to stage the file [" + m_outputFile.getAbsolutePath() + "] for " + m_source + ".");
+					return false;
+				}
+			}
+			else if (m_stamp != null)
+				m_stamp.Refresh();
+
+			CountFile(t_isUnchanged);
+			return true;
+		}
+	}
+
+
+	// Data members
+	private final	File										m_baseDirectory;
+	private final	int											m_syncPolicy;
+	private final	OutputFileSystemCache						m_fileSystemCache;
+	private final	Charset										m_charset;
+	private final	boolean										m_skipUnchangedFiles;
+	private 		File										m_runDirectory		= null;
+	private final	ConcurrentHashMap<String, DirectoryBatch>	m_directories		= new ConcurrentHashMap<>();	// By the output directory's absolute path.
+	private final	AtomicInteger								m_directoryCount	= new AtomicInteger();
+	private final	AtomicInteger								m_stagedFileCount	= new AtomicInteger();
+	private 		int											m_nonAtomicMoveCount	= 0;
+	private 		long										m_commitMillis		= 0;
+
+
+	//*********************************
+	/**
+	 * @param p_baseDirectory	Where the run's staging directory is made.  It should be on the same file system as the output.
+	 * @param p_syncPolicy		One of the SYNC_ values.
+	 * @param p_fileSystemCache	The context's, for whether the files are already in the output.
+	 * @param p_charset			The charset that the files are written and scanned in.
+	 * @param p_skipUnchangedFiles	Leave a file that is already in the output, or already staged, alone if its content hasn't changed.
+	 */
+	public OutputStaging(File p_baseDirectory, int p_syncPolicy, OutputFileSystemCache p_fileSystemCache, Charset p_charset, boolean p_skipUnchangedFiles) {
+		m_baseDirectory			= p_baseDirectory;
+		m_syncPolicy			= p_syncPolicy;
+		m_fileSystemCache		= p_fileSystemCache;
+		m_charset				= p_charset;
+		m_skipUnchangedFiles	= p_skipUnchangedFiles;
+	}
+
+
+	//*********************************
+	/**
+	 * Makes the run's staging directory.  This has to be called before anything is staged.
+	 */
+	public boolean Open() {
+		try {
+			Files.createDirectories(m_baseDirectory.toPath());
+			m_runDirectory = Files.createTempDirectory(m_baseDirectory.toPath(), RUN_DIRECTORY_PREFIX).toFile();
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputStaging.Open() failed to create a staging directory in [" + m_baseDirectory.getAbsolutePath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputFile
+	 * @return Where the file has to be written to be staged.  Its staging directory is made the first time a file in its output
+	 * directory is asked for.
+	 */
+	private File GetStagedFile(File p_outputFile) throws IOException {
+		File t_outputFile = p_outputFile.getAbsoluteFile();
+		return new File(GetBatch(t_outputFile.getParentFile()).m_stagedDirectory, t_outputFile.getName());
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_outputFile
+	 * @return The staged file if this one has already been staged in this run, since that is what will be in the output once it is
+	 * committed, or the output file itself if it hasn't.
+	 */
+	private File GetCurrentFile(File p_outputFile) {
+		File			t_outputFile	= p_outputFile.getAbsoluteFile();
+		DirectoryBatch	t_batch			= m_directories.get(t_outputFile.getParent());
+		if (t_batch != null) {
+			StagedFile t_stagedFile = t_batch.m_files.get(t_outputFile.getName());
+			if (t_stagedFile != null)
+				return t_stagedFile.m_stagedFile;
+		}
+
+		return p_outputFile;
+	}
+
+
+	//*********************************
+	/**
+	 * The output directory isn't made until the files are committed to it.
+	 */
+	@Override
+	public OutputFile OpenFile(File p_outputFile, boolean p_useTempFile, boolean p_makeExecutable, GenerationManifest.OutputStamp p_stamp, String p_source) throws IOException {
+		File	t_currentFile	= GetCurrentFile(p_outputFile);
+		boolean	t_isNewFile		= (t_currentFile == p_outputFile) && !m_fileSystemCache.Exists(p_outputFile);	// A staged file that is current has already been written.
+		return new StagedOutputFile(p_outputFile, t_isNewFile, p_source, t_currentFile, GetStagedFile(p_outputFile), p_makeExecutable, p_stamp);
+	}
+
+
+	//*********************************
+	/**
+	 * The copy is staged with the generated files and goes into place when they do.
+	 */
+	@Override
+	public boolean CopyFile(File p_outputFile, Path p_sourceFile, boolean p_makeExecutable) throws IOException {
+		Path t_stagedPath = GetStagedFile(p_outputFile).toPath();
+		Files.deleteIfExists(t_stagedPath);
+		Files.copy(p_sourceFile, t_stagedPath);
+
+		if (p_makeExecutable && !FileSystemOutput.MakeExecutable(t_stagedPath))
+			return false;
+
+		if (!AddFile(p_outputFile, null)) {
+			Logger.LogError("OutputStaging.CopyFile() failed to stage the copy of the source file [" + p_sourceFile.toString() + "].");
+			return false;
+		}
+
+		return true;
+	}
+
+
+	//*********************************
+	@Override
+	public boolean HasFailed() {
+		return false;
+	}
+
+
+	//*********************************
+	/**
+	 * Adds a file that has been finished in its staged location to the ones that will be committed.
+	 *
+	 * @param p_outputFile
+	 * @param p_stamp		The file's manifest stamp, which is filled in once it is committed.  NULL if it isn't recorded.
+	 */
+	public boolean AddFile(File p_outputFile, GenerationManifest.OutputStamp p_stamp) {
+		File t_outputFile = p_outputFile.getAbsoluteFile();
+		try {
+			DirectoryBatch	t_batch			= GetBatch(t_outputFile.getParentFile());
+			StagedFile		t_stagedFile	= t_batch.m_files.computeIfAbsent(t_outputFile.getName(), p_name -> {
+				m_stagedFileCount.incrementAndGet();
+				return new StagedFile(new File(t_batch.m_stagedDirectory, p_name), t_outputFile);
+			});
+
+			if (p_stamp != null)
+				t_stagedFile.m_stamps.add(p_stamp);
+
+			if (m_syncPolicy == SYNC_PER_FILE)
+				Sync(t_stagedFile.m_stagedFile.toPath());
+
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputStaging.AddFile() failed to stage the file [" + t_outputFile.getPath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Moves every staged file into place, one output directory at a time, and then removes the run's staging directory.  This must
+	 * only be called once nothing else is being generated or written.
+	 *
+	 * @return false if a file couldn't be moved.  The ones that were moved before it stay moved.
+	 */
+	@Override
+	public boolean Commit() {
+		long t_startTime = System.nanoTime();
+		try {
+			TreeMap<String, DirectoryBatch> t_batches = new TreeMap<>(m_directories);	// Sorted just so the commit always goes in the same order.
+
+			if (m_syncPolicy == SYNC_PER_RUN) {
+				for (DirectoryBatch t_batch: t_batches.values()) {
+					for (StagedFile t_stagedFile: t_batch.m_files.values())
+						Sync(t_stagedFile.m_stagedFile.toPath());
+				}
+			}
+
+			for (DirectoryBatch t_batch: t_batches.values()) {
+				if (t_batch.m_files.isEmpty())
+					continue;
+
+				Files.createDirectories(t_batch.m_outputDirectory.toPath());
+
+				for (StagedFile t_stagedFile: t_batch.m_files.values()) {
+					if (!Move(t_stagedFile))
+						return false;
+
+					for (GenerationManifest.OutputStamp t_stamp: t_stagedFile.m_stamps)
+						t_stamp.Refresh();
+				}
+
+				// The renames themselves are only on disk once the directory is.
+				if (m_syncPolicy != SYNC_NONE)
+					SyncDirectory(t_batch.m_outputDirectory.toPath());
+			}
+
+			for (DirectoryBatch t_batch: t_batches.values())
+				t_batch.m_stagedDirectory.delete();
+
+			if (!m_runDirectory.delete())
+				Logger.LogWarning("OutputStaging.Commit() could not remove the staging directory [" + m_runDirectory.getAbsolutePath() + "].  Something other than the generator must have put a file in it.");
+
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputStaging.Commit() failed with error: ", t_error);
+			return false;
+		}
+		finally {
+			m_commitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t_startTime);
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Called instead of {@link #Commit()} when the generation failed.  Nothing is done to the output.
+	 */
+	@Override
+	public void Abandon() {
+		if (m_runDirectory != null)
+			Logger.LogError("OutputStaging.Abandon() left the output alone.  The files that were generated before the failure are in [" + m_runDirectory.getAbsolutePath() + "].");
+	}
+
+
+	//*********************************
+	@Override
+	public void LogStatistics() {
+		Logger.LogInfo("Staged file count:              "	+ GetStagedFileCount() + " in " + GetDirectoryCount() + " directories");
+		Logger.LogInfo("Commit time (millisec):         "	+ GetCommitMillis());
+		Logger.LogInfo("Non-atomic moves:               "	+ GetNonAtomicMoveCount());
+	}
+
+
+	//*********************************
+	public int GetStagedFileCount() {
+		return m_stagedFileCount.get();
+	}
+
+
+	//*********************************
+	public int GetDirectoryCount() {
+		return m_directoryCount.get();
+	}
+
+
+	//*********************************
+	public int GetNonAtomicMoveCount() {
+		return m_nonAtomicMoveCount;
+	}
+
+
+	//*********************************
+	public long GetCommitMillis() {
+		return m_commitMillis;
+	}
+
+
+	//*********************************
+	private DirectoryBatch GetBatch(File p_outputDirectory) throws IOException {
+		String			t_key	= p_outputDirectory.getAbsolutePath();
+		DirectoryBatch	t_batch	= m_directories.get(t_key);
+		if (t_batch != null)
+			return t_batch;
+
+		try {
+			t_batch = m_directories.computeIfAbsent(t_key, p_key -> {
+				File t_stagedDirectory = new File(m_runDirectory, Integer.toString(m_directoryCount.incrementAndGet()));
+				if (!t_stagedDirectory.mkdir())
+					throw new UncheckedIOException(new IOException("OutputStaging could not create the staging directory [" + t_stagedDirectory.getAbsolutePath() + "]."));
+
+				return new DirectoryBatch(new File(p_key), t_stagedDirectory);
+			});
+		}
+		catch (UncheckedIOException t_error) {
+			throw t_error.getCause();
+		}
+
+		return t_batch;
+	}
+
+
+	//*********************************
+	private boolean Move(StagedFile p_stagedFile) {
+		Path t_source = p_stagedFile.m_stagedFile.toPath();
+		Path t_target = p_stagedFile.m_outputFile.toPath();
+		try {
+			try {
+				Files.move(t_source, t_target, StandardCopyOption.ATOMIC_MOVE);	// A rename replaces the file that is there in one step.
+			}
+			catch (AtomicMoveNotSupportedException t_error) {
+				Files.move(t_source, t_target, StandardCopyOption.REPLACE_EXISTING);
+				++m_nonAtomicMoveCount;
+			}
+
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("OutputStaging.Move() failed to move the staged file [" + t_source + "] to [" + t_target + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	private void Sync(Path p_file) throws IOException {
+		try (FileChannel t_channel = FileChannel.open(p_file, StandardOpenOption.WRITE)) {
+			t_channel.force(true);
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Not every platform lets a directory be opened to sync it, so this does what it can.
+	 */
+	private void SyncDirectory(Path p_directory) {
+		try (FileChannel t_channel = FileChannel.open(p_directory, StandardOpenOption.READ)) {
+			t_channel.force(true);
+		}
+		catch (IOException t_error) {
+			Logger.LogDebug("OutputStaging.SyncDirectory() could not sync the directory [" + p_directory + "]: " + t_error.getMessage());
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>Runs the evaluation of {@link codegenerator.generator.tags.FileTag} outputs in parallel.  Generating a file only writes that one file, so once the file tag
+ * has evaluated its file name and forked the {@link EvaluationContext}, the rest of the work can run on another thread while the
+ * parent template carries on to the next file.  Every file is still generated from exactly the same context values it would have
+ * had in serial mode, so the output is the same.</p>
+ *
+ * <p>The number of files waiting or running at once is bounded by a semaphore so that a template that generates thousands of files
+ * doesn't fork thousands of contexts before the first one is written.  When the bound is hit, the parent thread waits.  A file tag
+ * inside a file that is already being generated on a worker thread doesn't wait, though.  If it can't get a slot right away, it
+ * just generates its file in the thread it is already on, which keeps the workers from all waiting on each other.</p>
+ *
+ * <p>The tasks can run either on a fixed pool of platform threads or, if the JVM has them, on virtual threads.  As soon as one file
+ * fails, every task that hasn't started yet is cancelled and no new ones are accepted so that the run stops as quickly as it would
+ * have in serial mode.</p>
+ */
+public class ParallelFileEvaluator {
+
+	// Static members
+	static private final ThreadLocal<Boolean>	s_isWorkerThread	= ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+
+	// Data members
+	private final	ExecutorService						m_executor;
+	private final	Semaphore							m_taskSlots;
+	private final	ConcurrentLinkedQueue<Future<?>>	m_tasks				= new ConcurrentLinkedQueue<>();
+	private final	AtomicBoolean						m_failed			= new AtomicBoolean(false);
+	private final	AtomicInteger						m_forkedFileCount	= new AtomicInteger();
+	private final	AtomicInteger						m_inlineFileCount	= new AtomicInteger();
+
+
+	//*********************************
+	/**
+	 * @param p_threadCount			The number of files that can be generated at the same time.
+	 * @param p_useVirtualThreads	Run the tasks on virtual threads instead of a fixed thread pool.  This falls back to the thread pool if the JVM doesn't have virtual threads.
+	 */
+	public ParallelFileEvaluator(int p_threadCount, boolean p_useVirtualThreads) {
+		int t_threadCount = Math.max(1, p_threadCount);
+
+		ExecutorService t_executor = null;
+		if (p_useVirtualThreads) {
+			t_executor = CreateVirtualThreadExecutor();
+			if (t_executor == null)
+				Logger.LogWarning("ParallelFileEvaluator() could not create a virtual thread executor on this JVM, so it will use a pool of [" + t_threadCount + "] platform threads instead.");
+		}
+
+		if (t_executor == null) {
+			AtomicInteger t_threadNumber = new AtomicInteger();
+			t_executor = Executors.newFixedThreadPool(t_threadCount, p_runnable -> {
+				Thread t_thread = new Thread(p_runnable, "FileEvaluator-" + t_threadNumber.incrementAndGet());
+				t_thread.setDaemon(true);	// If something goes badly wrong, we don't want idle workers keeping the JVM alive.
+				return t_thread;
+			});
+		}
+
+		m_executor	= t_executor;
+		m_taskSlots	= new Semaphore(t_threadCount * 2);	// One running and one queued per thread keeps the workers busy without letting the parent run too far ahead.
+	}
+
+
+	//===========================================
+	/**
+	 * We build against Java 17, so the virtual thread executor has to be looked up by reflection.
+	 *
+	 * @return NULL if this JVM doesn't have virtual threads.
+	 */
+	static private ExecutorService CreateVirtualThreadExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (Throwable t_error) {
+			return null;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Queues a file to be generated on another thread.
+	 *
+	 * @param p_fileTask	Returns false if the file failed.  It is expected to have logged why.
+	 * @return false if the task wasn't queued, either because a file has already failed or because this is a worker thread and there
+	 * isn't a free slot.  The caller should generate the file itself if {@link #HasFailed()} is still false.
+	 */
+	public boolean Submit(Callable<Boolean> p_fileTask) {
+		try {
+			if (m_failed.get())
+				return false;
+
+			if (s_isWorkerThread.get()) {
+				if (!m_taskSlots.tryAcquire()) {
+					m_inlineFileCount.incrementAndGet();
+					return false;
+				}
+			}
+			else
+				m_taskSlots.acquire();
+
+			if (m_failed.get()) {
+				m_taskSlots.release();
+				return false;
+			}
+
+			m_tasks.add(m_executor.submit(() -> RunTask(p_fileTask)));
+			m_forkedFileCount.incrementAndGet();
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("ParallelFileEvaluator.Submit() failed with error: ", t_error);
+			Fail();
+			return false;
+		}
+	}
+
+
+	//*********************************
+	private void RunTask(Callable<Boolean> p_fileTask) {
+		try {
+			s_isWorkerThread.set(Boolean.TRUE);
+
+			if (m_failed.get())
+				return;		// Another file has already failed, so there's no point in generating this one.
+
+			if (!p_fileTask.call())
+				Fail();
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("ParallelFileEvaluator.RunTask() failed with error: ", t_error);
+			Fail();
+		}
+		finally {
+			s_isWorkerThread.set(Boolean.FALSE);	// Virtual threads aren't reused, but pool threads are.
+			m_taskSlots.release();
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * Marks the run as failed and cancels every task that hasn't started yet.  Tasks that are already running are left to finish
+	 * since interrupting one in the middle of a write would leave a half-written file behind without the error that explains it.
+	 */
+	public void Fail() {
+		if (!m_failed.compareAndSet(false, true))
+			return;
+
+		for (Future<?> t_nextTask: m_tasks)
+			t_nextTask.cancel(false);
+	}
+
+
+	//*********************************
+	public boolean HasFailed() {
+		return m_failed.get();
+	}
+
+
+	//*********************************
+	/**
+	 * Waits for every queued file, including the ones that were queued by other files while this was waiting, and then shuts down
+	 * the executor.
+	 *
+	 * @return false if any file failed.
+	 */
+	public boolean WaitForCompletion() {
+		try {
+			Future<?> t_nextTask;
+			while ((t_nextTask = m_tasks.poll()) != null) {
+				try {
+					t_nextTask.get();
+				}
+				catch (CancellationException t_error) {
+					// This is expected for the tasks that were cancelled by Fail().
+				}
+				catch (ExecutionException t_error) {
+					Logger.LogException("ParallelFileEvaluator.WaitForCompletion() found a file task that failed with error: ", t_error.getCause());
+					Fail();
+				}
+			}
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("ParallelFileEvaluator.WaitForCompletion() failed with error: ", t_error);
+			Fail();
+		}
+		finally {
+			m_executor.shutdown();
+		}
+
+		return !m_failed.get();
+	}
+
+
+	//*********************************
+	public int GetForkedFileCount() {
+		return m_forkedFileCount.get();
+	}
+
+
+	//*********************************
+	/**
+	 * @return The number of files that a worker thread generated itself because there wasn't a free slot to queue them in.
+	 */
+	public int GetInlineFileCount() {
+		return m_inlineFileCount.get();
+	}
+}
@@ -0,0 +1,160 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.util.function.*;
+
+
+
+/**
+ * <p>An immutable map from names to values that {@link EvaluationContext} uses for the counter variables and {@link OuterContextManager}
+ * uses for the outer contexts.  Put() and Remove() return a new map and leave this one alone, and the new map shares every entry
+ * that it didn't have to change with this one.  So a forked context can take the map it was forked from as it is instead of copying
+ * it, and nothing the parent does to its own map afterwards can show up in the fork's.</p>
+ *
+ * <p>The entries are kept as a chain with the newest at the head.  Put() adds an entry in front of any older entry with the same name,
+ * which hides it, and Remove() takes out the newest entry for the name, which uncovers the older one again.  That matches the way the
+ * tags that use this nest.  There are only ever a handful of names in use at a time so the linear lookup costs less than hashing.</p>
+ */
+public final class PersistentNameMap<T> {
+
+	//===========================================
+	static private final class Entry<T> {
+		private final String	m_name;
+		private final T			m_value;
+		private final Entry<T>	m_next;
+
+		public Entry(String p_name, T p_value, Entry<T> p_next) {
+			m_name	= p_name;
+			m_value	= p_value;
+			m_next	= p_next;
+		}
+	}
+
+
+	// Static members
+	static private final PersistentNameMap<Object>	s_empty		= new PersistentNameMap<>(null);
+
+
+	// Data members
+	private final Entry<T>		m_head;
+
+
+	//===========================================
+	@SuppressWarnings("unchecked")
+	static public <T> PersistentNameMap<T> Empty() {
+		return (PersistentNameMap<T>)s_empty;
+	}
+
+
+	//*********************************
+	private PersistentNameMap(Entry<T> p_head) {
+		m_head = p_head;
+	}
+
+
+	//*********************************
+	public PersistentNameMap<T> Put(String p_name, T p_value) {
+		return new PersistentNameMap<>(new Entry<>(p_name, p_value, m_head));
+	}
+
+
+	//*********************************
+	/**
+	 * @return NULL if there is no entry for the name.
+	 */
+	public T Get(String p_name) {
+		for (Entry<T> t_entry = m_head; t_entry != null; t_entry = t_entry.m_next) {
+			if (t_entry.m_name.equals(p_name))
+				return t_entry.m_value;
+		}
+
+		return null;
+	}
+
+
+	//*********************************
+	/**
+	 * Only the entries in front of the one that is removed have to be copied.  The tags remove the name they put last, so that is
+	 * almost always just the head.
+	 *
+	 * @return This map if there is no entry for the name.
+	 */
+	public PersistentNameMap<T> Remove(String p_name) {
+		Entry<T> t_removed = m_head;
+		while ((t_removed != null) && !t_removed.m_name.equals(p_name))
+			t_removed = t_removed.m_next;
+
+		if (t_removed == null)
+			return this;
+
+		return new PersistentNameMap<>(CopyUntil(m_head, t_removed));
+	}
+
+
+	//===========================================
+	static private <T> Entry<T> CopyUntil(Entry<T> p_entry, Entry<T> p_removed) {
+		if (p_entry == p_removed)
+			return p_removed.m_next;
+
+		return new Entry<>(p_entry.m_name, p_entry.m_value, CopyUntil(p_entry.m_next, p_removed));
+	}
+
+
+	//*********************************
+	/**
+	 * @return A map with the same names, in the same order, whose values have been passed through the function.
+	 */
+	public PersistentNameMap<T> MapValues(UnaryOperator<T> p_function) {
+		if (m_head == null)
+			return this;
+
+		return new PersistentNameMap<>(MapEntries(m_head, p_function));
+	}
+
+
+	//===========================================
+	static private <T> Entry<T> MapEntries(Entry<T> p_entry, UnaryOperator<T> p_function) {
+		if (p_entry == null)
+			return null;
+
+		return new Entry<>(p_entry.m_name, p_function.apply(p_entry.m_value), MapEntries(p_entry.m_next, p_function));
+	}
+
+
+	//*********************************
+	/**
+	 * Passes every value to the consumer, newest first, including any that are hidden by a newer entry with the same name.
+	 */
+	public void ForEachValue(Consumer<T> p_consumer) {
+		for (Entry<T> t_entry = m_head; t_entry != null; t_entry = t_entry.m_next)
+			p_consumer.accept(t_entry.m_value);
+	}
+
+
+	//*********************************
+	public boolean IsEmpty() {
+		return (m_head == null);
+	}
+}
@@ -0,0 +1,380 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import javax.xml.parsers.*;
+
+import org.xml.sax.*;
+
+import coreutil.config.*;
+import coreutil.logging.*;
+
+
+
+/**
+ * <p>A config values file that is too big to hold in memory all at once.  The top-level nodes with the streamed names (e.g. "table")
+ * are left out when the file is loaded, and everything else, like the "global" node that is reached through "root.", is loaded the
+ * usual way and stays resident.  Then each {@link codegenerator.generator.tags.ForEach} tag that loops over one of the streamed names
+ * on the root node reads the file again and builds the nodes one at a time:  each one is evaluated as soon as it has been read and
+ * then let go before the next one is read, so only one of them (plus whatever files are still being generated from them in parallel
+ * mode) is ever in memory.</p>
+ *
+ * <p>Each streamed node gets the root node as its parent so that "^" references and "root." work from inside it the same as they
+ * do with the whole tree loaded, but the root node doesn't have it as a child.  That means a forEach loop on the root node is the
+ * only way to get to the streamed nodes:  anything else that looks for them on the root node, like an <code><b>if</b></code> tag
+ * testing whether one exists or a "root.table.className" value, doesn't find them.  Every loop over them costs a read of the file, so
+ * a template that loops over them several times reads the file that many times.</p>
+ *
+ * <p>Any number of loops can stream the file at the same time, each with its own parser, so the files that are being generated in
+ * parallel can each have their own.</p>
+ */
+public class StreamedConfig {
+
+	//===========================================
+	public interface NodeVisitor {
+		/**
+		 * @return false to stop streaming.
+		 */
+		boolean Visit(ConfigNode p_node) throws Throwable;
+	}
+
+
+
+	// Data members
+	private final	File				m_configFile;
+	private final	HashSet<String>		m_streamedNames		= new HashSet<>();		// Lower case since the node names are matched without case.
+	private			ConfigNode			m_rootNode			= null;
+	private			int					m_leftOutNodeCount	= 0;
+	private final	AtomicInteger		m_passCount			= new AtomicInteger();
+	private final	AtomicLong			m_streamedNodeCount	= new AtomicLong();
+
+
+	//*********************************
+	/**
+	 * @param p_configFile		The config values file.
+	 * @param p_streamedNames	The names of the top-level nodes to stream instead of load.
+	 */
+	public StreamedConfig(File p_configFile, Collection<String> p_streamedNames) {
+		m_configFile = p_configFile;
+
+		for (String t_name: p_streamedNames)
+			m_streamedNames.add(t_name.toLowerCase());
+	}
+
+
+	//*********************************
+	/**
+	 * Loads everything but the streamed nodes.
+	 */
+	public boolean Load() {
+		if (!m_configFile.exists()) {
+			Logger.LogError("StreamedConfig.Load() could not find the config values file [" + m_configFile.getPath() + "].");
+			return false;
+		}
+
+		try {
+			ResidentParser t_parser = new ResidentParser();
+			SAXParserFactory.newInstance().newSAXParser().parse(m_configFile, t_parser);
+
+			m_rootNode			= t_parser.GetRootNode();
+			m_leftOutNodeCount	= t_parser.GetLeftOutNodeCount();
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("StreamedConfig.Load() failed to parse the config values file [" + m_configFile.getPath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	public ConfigNode GetRootNode() {
+		return m_rootNode;
+	}
+
+
+	//*********************************
+	/**
+	 * @return The resident config as a value set for the ConfigManager, for the config substitution.
+	 */
+	public ConfigValueSet GetValueSet() {
+		return new NodeConfigValueSet(m_configFile.getName(), m_rootNode);	// It can't be reloaded since the streamed nodes are read from the file as they are needed.
+	}
+
+
+	//*********************************
+	/**
+	 * @param p_parentNode	The node a forEach tag is looping on.
+	 * @param p_nodeName	The name of the nodes it is looping over.
+	 * @return True if they have to come from {@link #StreamNodes(String, NodeVisitor)}.
+	 */
+	public boolean IsStreamed(ConfigNode p_parentNode, String p_nodeName) {
+		return (p_parentNode == m_rootNode) && m_streamedNames.contains(p_nodeName.toLowerCase());
+	}
+
+
+	//*********************************
+	/**
+	 * Reads the file again and hands each top-level node with the name to the visitor, in file order, as soon as it has been read.
+	 *
+	 * @return False if the file couldn't be read or the visitor stopped it.
+	 */
+	public boolean StreamNodes(String p_nodeName, NodeVisitor p_visitor) {
+		m_passCount.incrementAndGet();
+
+		StreamingParser t_parser = new StreamingParser(p_nodeName, p_visitor);
+		try {
+			SAXParserFactory.newInstance().newSAXParser().parse(m_configFile, t_parser);
+			return true;
+		}
+		catch (StoppedException t_stopped) {
+			// If the visitor returned false, whatever stopped it has already said why.
+			if (t_stopped.GetError() != null)
+				Logger.LogException("StreamedConfig.StreamNodes() failed to evaluate a [" + p_nodeName + "] node from the config values file [" + m_configFile.getPath() + "]: ", t_stopped.GetError());
+
+			return false;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("StreamedConfig.StreamNodes() failed to read the [" + p_nodeName + "] nodes from the config values file [" + m_configFile.getPath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//*********************************
+	/**
+	 * @return How many nodes were left out of the resident config.
+	 */
+	public int GetLeftOutNodeCount() {
+		return m_leftOutNodeCount;
+	}
+
+
+	//*********************************
+	/**
+	 * @return How many times the file was read for a loop.
+	 */
+	public int GetPassCount() {
+		return m_passCount.get();
+	}
+
+
+	//*********************************
+	/**
+	 * @return How many nodes were built for the loops, all passes together.
+	 */
+	public long GetStreamedNodeCount() {
+		return m_streamedNodeCount.get();
+	}
+
+
+
+	//===========================================
+	static private class StoppedException extends SAXException {
+		private static final long serialVersionUID = 1L;
+
+		private final Throwable	m_error;		// NULL if the visitor returned false.
+
+		public StoppedException(Throwable p_error) {
+			super("The streamed node visitor stopped.");
+			m_error = p_error;
+		}
+
+		public Throwable GetError() {
+			return m_error;
+		}
+	}
+
+
+
+	/**
+	 * Builds the resident config the same way XMLConfigParser does except that it skips over the streamed nodes.  The root element
+	 * is at depth 0, so the top-level nodes are the ones at depth 1.
+	 */
+	private class ResidentParser extends XMLConfigParser {
+
+		// Data members
+		private int		m_depth				= -1;
+		private int		m_skipDepth			= 0;		// More than zero while inside a streamed node.
+		private int		m_leftOutCount		= 0;
+
+
+		//*********************************
+		public ConfigNode GetRootNode() {
+			return m_rootNode;
+		}
+
+
+		//*********************************
+		public int GetLeftOutNodeCount() {
+			return m_leftOutCount;
+		}
+
+
+		//*********************************
+		@Override
+		public void startElement(String p_uri, String p_localName, String p_qName, Attributes p_attributes) throws SAXException {
+			++m_depth;
+
+			if (m_skipDepth > 0) {
+				++m_skipDepth;
+				return;
+			}
+
+			if ((m_depth == 1) && p_qName.equalsIgnoreCase(NODE_TAG) && m_streamedNames.contains(String.valueOf(p_attributes.getValue(NAME_ATTR)).toLowerCase())) {
+				m_skipDepth = 1;
+				++m_leftOutCount;
+				return;
+			}
+
+			super.startElement(p_uri, p_localName, p_qName, p_attributes);
+		}
+
+
+		//*********************************
+		@Override
+		public void endElement(String p_uri, String p_localName, String p_qName) throws SAXException {
+			--m_depth;
+
+			if (m_skipDepth > 0) {
+				--m_skipDepth;
+				return;
+			}
+
+			super.endElement(p_uri, p_localName, p_qName);
+		}
+
+
+		//*********************************
+		@Override
+		public void characters(char[] p_chars, int p_start, int p_length) throws SAXException {
+			if (m_skipDepth == 0)
+				super.characters(p_chars, p_start, p_length);
+		}
+
+
+		//*********************************
+		@Override
+		public void ignorableWhitespace(char[] p_chars, int p_start, int p_length) throws SAXException {
+			if (m_skipDepth == 0)
+				super.ignorableWhitespace(p_chars, p_start, p_length);
+		}
+	}
+
+
+
+	/**
+	 * Skips everything but the top-level nodes with one name.  Each of those is built with XMLConfigParser's own handling on top of a
+	 * node stack that only ever holds that node and its descendants, and it is handed to the visitor when it ends.
+	 */
+	private class StreamingParser extends XMLConfigParser {
+
+		// Data members
+		private final	String			m_nodeName;
+		private final	NodeVisitor		m_visitor;
+		private			int				m_depth			= -1;
+		private			ConfigNode		m_currentNode	= null;		// The streamed node being built.
+
+
+		//*********************************
+		public StreamingParser(String p_nodeName, NodeVisitor p_visitor) {
+			m_nodeName	= p_nodeName;
+			m_visitor	= p_visitor;
+		}
+
+
+		//*********************************
+		@Override
+		public void startElement(String p_uri, String p_localName, String p_qName, Attributes p_attributes) throws SAXException {
+			++m_depth;
+
+			if (m_currentNode != null) {
+				super.startElement(p_uri, p_localName, p_qName, p_attributes);
+				return;
+			}
+
+			if ((m_depth == 1) && p_qName.equalsIgnoreCase(NODE_TAG) && m_nodeName.equalsIgnoreCase(p_attributes.getValue(NAME_ATTR))) {
+				m_currentNode = new ConfigNode(p_attributes.getValue(NAME_ATTR), StreamedConfig.this.m_rootNode);	// Not added to the root's children.
+
+				String t_description = p_attributes.getValue(DESCRIPTION_ATTR);
+				if (t_description != null)
+					m_currentNode.SetDescription(t_description);
+
+				m_nodeStack.addFirst(m_currentNode);
+			}
+		}
+
+
+		//*********************************
+		@Override
+		public void endElement(String p_uri, String p_localName, String p_qName) throws SAXException {
+			--m_depth;
+
+			if (m_currentNode == null)
+				return;
+
+			if (m_depth > 0) {
+				super.endElement(p_uri, p_localName, p_qName);
+				return;
+			}
+
+			// The streamed node itself is ending.
+			ConfigNode t_node = m_currentNode;
+			m_nodeStack.removeFirst();
+			m_currentNode = null;
+
+			m_streamedNodeCount.incrementAndGet();
+
+			boolean t_continue;
+			try {
+				t_continue = m_visitor.Visit(t_node);
+			}
+			catch (Throwable t_error) {
+				throw new StoppedException(t_error);
+			}
+
+			if (!t_continue)
+				throw new StoppedException(null);
+		}
+
+
+		//*********************************
+		@Override
+		public void characters(char[] p_chars, int p_start, int p_length) throws SAXException {
+			if (m_currentNode != null)
+				super.characters(p_chars, p_start, p_length);
+		}
+
+
+		//*********************************
+		@Override
+		public void ignorableWhitespace(char[] p_chars, int p_start, int p_length) throws SAXException {
+			if (m_currentNode != null)
+				super.ignorableWhitespace(p_chars, p_start, p_length);
+		}
+	}
+}
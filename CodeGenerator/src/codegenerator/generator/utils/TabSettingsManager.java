@@ -28,12 +28,16 @@ public class TabSettingsManager {
 	static public  final int		OUTPUT_TYPE_TABS			= 1;
 	static public  final int		OUTPUT_TYPE_SPACES			= 2;
 
+	static private final String		TAB_RUN						= "\t".repeat(32);		// GetPadding() copies from these in bulk instead of appending one character at a time.
+	static private final String		SPACE_RUN					= " ".repeat(128);
 
-	// Static members
-	// !!!!NOTE!!!! Since the generator is strictly single threaded, these static class members do not require locking around them in this code.
+
+	// Data members
+	// !!!!NOTE!!!! Each EvaluationContext has its own stack of these (a forked context gets copies), so these members do not require locking around them in this code.
 	private int		m_tabSize				= -1;
 	private int		m_outputType			= OUTPUT_TYPE_UNDEFINED;
 	private int		m_markerColumnNumber	= -1;
+	private final StringBuilder	m_padding		= new StringBuilder();	// Reused by every GetPadding() call.
 
 
 	//*********************************
@@ -43,6 +47,18 @@ public class TabSettingsManager {
 	}
 
 
+	//*********************************
+	/**
+	 * Used when an EvaluationContext is forked for a file that is being generated in parallel so that a marker set in that file
+	 * doesn't move the marker for anyone else.
+	 */
+	public TabSettingsManager(TabSettingsManager p_otherTabSettingsManager) {
+		m_tabSize				= p_otherTabSettingsManager.m_tabSize;
+		m_outputType			= p_otherTabSettingsManager.m_outputType;
+		m_markerColumnNumber	= p_otherTabSettingsManager.m_markerColumnNumber;
+	}
+
+
 	//*********************************
 	public void SetTabSize(int p_tabSize) {
 		m_tabSize = p_tabSize;
@@ -81,33 +97,28 @@ public class TabSettingsManager {
 
 	//*********************************
 	/**
-	 * This steps through the current line and counts the columns, substituting the tab size for each tab and handling adjustment for when there is text within a tab stop.
-	 * @return
+	 * Builds the padding for a <code><b>tabStop</b></code> so that it can be written with one call.
+	 *
+	 * @param p_tabCount
+	 * @param p_spaceCount
+	 * @return The tabs followed by the spaces.  It's this manager's own buffer so it's only good until the next call.
 	 */
-	public int GetCurrentLineLength(String p_currentLine) {
-		int		t_index			= 0;
-		int		t_lineLength	= 0;
-		boolean t_lastWasTab	= false;
-		while (t_index < p_currentLine.length()) {
-			if (p_currentLine.charAt(t_index++) == '\t') {
-				if (t_lastWasTab) {
-					t_lineLength += m_tabSize;
-					continue;
-				}
-
-				t_lastWasTab = true;
-				t_lineLength = ((t_lineLength / m_tabSize) + 1) * m_tabSize;	// When a tab is preceded by some number of characters and since tab stops are fixed and you can type "into" the next tab space up to (s_tabSize - 1) characters, this is the easiest way to calculate the next tab stop position after the end of an arbitrary character string.
-				continue;
-			}
-
-			t_lastWasTab = false;
-			++t_lineLength;			// This may not be internationalization safe if the template charset has characters that are more than one column wide.
-		}
-
+	public CharSequence GetPadding(int p_tabCount, int p_spaceCount) {
+		m_padding.setLength(0);
+		AppendRun(TAB_RUN, p_tabCount);
+		AppendRun(SPACE_RUN, p_spaceCount);
 
-		return t_lineLength;
+		return m_padding;
 	}
 
 
-
+	//*********************************
+	private void AppendRun(String p_run, int p_count) {
+		int t_nextCount;
+		while (p_count > 0) {
+			t_nextCount = Math.min(p_count, p_run.length());
+			m_padding.append(p_run, 0, t_nextCount);
+			p_count -= t_nextCount;
+		}
+	}
 }
@@ -340,7 +340,7 @@ public class TagAttributeParser {
 								// If we are inside double quotes, then we need to keep the white space, not ignore it.
 								if (t_expectDoubleQuote) {
 									t_text = new Text();
-									t_text.SetText(t_nextToken.m_tokenValue);
+									t_text.SetText(t_nextToken.GetTokenValue());
 
 									if (m_attributeName == null)
 										m_attributeName = new GeneralBlock();
@@ -362,7 +362,7 @@ public class TagAttributeParser {
 								// If we are inside double quotes, then we need to keep the white space, not ignore it.
 								if (t_expectDoubleQuote) {
 									t_text = new Text();
-									t_text.SetText(t_nextToken.m_tokenValue);
+									t_text.SetText(t_nextToken.GetTokenValue());
 
 									if (m_value == null)
 										m_value = new GeneralBlock();
@@ -379,7 +379,7 @@ public class TagAttributeParser {
 					case Token.TOKEN_TYPE_WORD:
 						// I think that if we get this outside of tag delimiters, then it's safe to assume that we are getting a single-word constant value and we need to wrap it in a Text object and move on.
 						t_text = new Text();
-						t_text.SetText(t_nextToken.m_tokenValue);
+						t_text.SetText(t_nextToken.GetTokenValue());
 
 						switch (t_parseState) {
 							case START_NAME:
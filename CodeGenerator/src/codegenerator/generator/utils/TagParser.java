@@ -94,7 +94,7 @@ public class TagParser {
 				return false;
 			}
 
-			m_tagName = t_nextToken.m_tokenValue;
+			m_tagName = t_nextToken.GetTokenValue();
 
 //			if (m_tagName.equals(TypeConvert.TAG_NAME))
 //				Logger.LogVerbose("Pause");
@@ -0,0 +1,320 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.zip.*;
+
+import codegenerator.generator.tags.*;
+import coreutil.logging.*;
+
+
+
+/**
+	<p>A compiled template bundle is a single file that holds the parsed tag trees for a root template and every template
+	it can reach through <code>file</code> and <code>include</code> tags.  It is written by {@link codegenerator.generator.TemplateCompiler}
+	and, if one is loaded at startup, {@link TemplateCache} asks it for a template before it falls back to parsing the
+	template file.</p>
+
+	<p>The bundle starts with an index of the canonical path of each template, the size and CRC-32C of the template file's
+	contents when it was compiled and where its tree is in the data section that follows the index.  The trees are written
+	by {@link CompiledTagWriter} rather than java serialization because serialization turned out to be slower than just
+	parsing the templates.  A tree is only decoded when it is asked for and only if the template file still has the recorded
+	size and CRC.  If it doesn't, then the caller gets NULL and parses the file as usual.  The CRC is only there to notice
+	that a template has been edited, so it doesn't need to be a cryptographic hash, which would cost more to set up and run
+	than parsing a small template does.</p>
+
+	<p>BUNDLE_VERSION has to be bumped whenever what any tag writes in WriteCompiled() changes.</p>
+*/
+public class TemplateBundle {
+
+	static private final int	BUNDLE_MAGIC	= 0x43475442;	// "CGTB"
+	static private final int	BUNDLE_VERSION	= 4;	// 2: OptionalEvalValue no longer writes its constant value since it works it out when it is read.  3: Variable "set" tags write the template they were set in.  4: File tags write their output filter settings.
+
+
+	//===========================================
+	/**
+	 * The index information for one template in the bundle.
+	 */
+	static private class BundleEntry {
+		private final long		m_sourceSize;
+		private final long		m_sourceCRC;
+		private final int		m_offset;		// Relative to the start of the data section.
+		private final int		m_length;
+
+		public BundleEntry(long p_sourceSize, long p_sourceCRC, int p_offset, int p_length) {
+			m_sourceSize	= p_sourceSize;
+			m_sourceCRC		= p_sourceCRC;
+			m_offset		= p_offset;
+			m_length		= p_length;
+		}
+	}
+
+
+	// Static members
+	static private final ReentrantLock					s_bundleLock	= new ReentrantLock();
+	static private		 ByteBuffer						s_data			= null;		// The bundle's data section.  It is only ever read through duplicate()s so that it is safe to share between threads.
+	static private		 HashMap<String, BundleEntry>	s_entries		= null;		// This is replaced, never modified, once it is loaded so it can be read outside of the lock.
+
+	static private		 int							s_loadCount		= 0;
+	static private		 int							s_staleCount	= 0;
+
+
+	//===========================================
+	/**
+	 * Writes the trees to a new bundle file, replacing any existing file.
+	 *
+	 * @param p_bundleFile
+	 * @param p_templates	The parsed trees keyed by the canonical path of the template file they were parsed from.
+	 * @return
+	 */
+	static public boolean Write(File p_bundleFile, Map<String, Tag_Base> p_templates) {
+		try {
+			// Encode all of the trees first so that we know their sizes before we write the index.
+			ArrayList<String>	t_paths		= new ArrayList<>(p_templates.size());
+			ArrayList<byte[]>	t_sources	= new ArrayList<>(p_templates.size());
+			ArrayList<byte[]>	t_trees		= new ArrayList<>(p_templates.size());
+			for (Map.Entry<String, Tag_Base> t_nextTemplate: p_templates.entrySet()) {
+				ByteArrayOutputStream	t_treeBytes		= new ByteArrayOutputStream();
+				CompiledTagWriter		t_treeWriter	= new CompiledTagWriter(t_treeBytes);
+				t_treeWriter.WriteTag(t_nextTemplate.getValue());
+				t_treeWriter.Flush();
+
+				t_paths.add(t_nextTemplate.getKey());
+				t_sources.add(Files.readAllBytes(Paths.get(t_nextTemplate.getKey())));
+				t_trees.add(t_treeBytes.toByteArray());
+			}
+
+
+			try (DataOutputStream t_bundleStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(p_bundleFile)))) {
+				t_bundleStream.writeInt(BUNDLE_MAGIC);
+				t_bundleStream.writeInt(BUNDLE_VERSION);
+				t_bundleStream.writeInt(t_paths.size());
+
+				int t_offset = 0;
+				for (int i = 0; i < t_paths.size(); ++i) {
+					CRC32C t_crc = new CRC32C();
+					t_crc.update(t_sources.get(i));
+
+					t_bundleStream.writeUTF(t_paths.get(i));
+					t_bundleStream.writeLong(t_sources.get(i).length);
+					t_bundleStream.writeLong(t_crc.getValue());
+					t_bundleStream.writeInt(t_offset);
+					t_bundleStream.writeInt(t_trees.get(i).length);
+
+					t_offset += t_trees.get(i).length;
+				}
+
+				for (byte[] t_nextTree: t_trees)
+					t_bundleStream.write(t_nextTree);
+			}
+
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("TemplateBundle.Write() failed with error for bundle file [" + p_bundleFile.getPath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//===========================================
+	/**
+	 * Reads the bundle into memory and makes it the bundle that {@link #GetTemplate(String)} reads from.  Bundles are small
+	 * enough that reading the whole thing at once is cheaper than going back to the file for each template.
+	 *
+	 * @param p_bundleFile
+	 * @return
+	 */
+	static public boolean Load(File p_bundleFile) {
+		try {
+			ByteBuffer t_bundle;
+			try (FileChannel t_bundleChannel = FileChannel.open(p_bundleFile.toPath(), StandardOpenOption.READ)) {
+				t_bundle = ByteBuffer.allocate((int)t_bundleChannel.size());
+				while (t_bundle.hasRemaining()) {
+					if (t_bundleChannel.read(t_bundle) < 0)
+						break;
+				}
+
+				t_bundle.flip();
+			}
+
+			DataInputStream t_indexStream = new DataInputStream(new ByteArrayInputStream(t_bundle.array(), 0, t_bundle.limit()));
+			if ((t_bundle.limit() < 12) || (t_indexStream.readInt() != BUNDLE_MAGIC)) {
+				Logger.LogError("TemplateBundle.Load() found that the file [" + p_bundleFile.getPath() + "] is not a template bundle.");
+				return false;
+			}
+
+			int t_version = t_indexStream.readInt();
+			if (t_version != BUNDLE_VERSION) {
+				Logger.LogError("TemplateBundle.Load() found bundle version [" + t_version + "] in the file [" + p_bundleFile.getPath() + "] but it only reads version [" + BUNDLE_VERSION + "].  The bundle needs to be recompiled.");
+				return false;
+			}
+
+			HashMap<String, BundleEntry>	t_entries		= new HashMap<>();
+			int								t_entryCount	= t_indexStream.readInt();
+			for (int i = 0; i < t_entryCount; ++i) {
+				String	t_path			= t_indexStream.readUTF();
+				long	t_sourceSize	= t_indexStream.readLong();
+				long	t_sourceCRC		= t_indexStream.readLong();
+				int		t_offset		= t_indexStream.readInt();
+				int		t_length		= t_indexStream.readInt();
+
+				t_entries.put(t_path, new BundleEntry(t_sourceSize, t_sourceCRC, t_offset, t_length));
+			}
+
+			t_bundle.position(t_bundle.limit() - t_indexStream.available());	// The stream has read exactly the index, so what is left is the data section.
+			ByteBuffer t_data = t_bundle.slice();
+
+			try {
+				s_bundleLock.lock();
+
+				s_data		= t_data;
+				s_entries	= t_entries;
+			}
+			finally {
+				s_bundleLock.unlock();
+			}
+
+			Logger.LogInfo("TemplateBundle.Load() loaded [" + t_entries.size() + "] templates from the bundle [" + p_bundleFile.getPath() + "].");
+
+			return true;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("TemplateBundle.Load() failed with error for bundle file [" + p_bundleFile.getPath() + "]: ", t_error);
+			return false;
+		}
+	}
+
+
+	//===========================================
+	/**
+	 * Returns a new copy of the compiled tree for the template if there is a loaded bundle, the template is in it and the
+	 * template file hasn't changed since the bundle was compiled.
+	 *
+	 * @param p_canonicalPath
+	 * @return NULL in every other case, in which case the caller needs to parse the template file itself.
+	 */
+	static public Tag_Base GetTemplate(String p_canonicalPath) {
+		ByteBuffer						t_data;
+		HashMap<String, BundleEntry>	t_entries;
+
+		try {
+			s_bundleLock.lock();
+
+			t_data		= s_data;
+			t_entries	= s_entries;
+		}
+		finally {
+			s_bundleLock.unlock();
+		}
+
+		if (t_entries == null)
+			return null;
+
+		BundleEntry t_entry = t_entries.get(p_canonicalPath);
+		if (t_entry == null)
+			return null;
+
+		try {
+			byte[] t_source = Files.readAllBytes(Paths.get(p_canonicalPath));
+
+			CRC32C t_crc = new CRC32C();
+			t_crc.update(t_source);
+
+			if ((t_source.length != t_entry.m_sourceSize) || (t_crc.getValue() != t_entry.m_sourceCRC)) {
+				Logger.LogDebug("TemplateBundle.GetTemplate() found that the template [" + p_canonicalPath + "] has changed since the bundle was compiled.");
+				IncrementStaleCount();
+				return null;
+			}
+
+			ByteBuffer t_tree = t_data.duplicate();
+			t_tree.position(t_entry.m_offset);
+			t_tree.limit(t_entry.m_offset + t_entry.m_length);
+
+			CompiledTagReader	t_treeReader	= new CompiledTagReader(t_tree.slice());
+			Tag_Base			t_template		= t_treeReader.ReadTag();
+
+			try {
+				s_bundleLock.lock();
+
+				++s_loadCount;
+			}
+			finally {
+				s_bundleLock.unlock();
+			}
+
+			return t_template;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("TemplateBundle.GetTemplate() failed with error for the template [" + p_canonicalPath + "]: ", t_error);
+			IncrementStaleCount();
+			return null;
+		}
+	}
+
+
+	//===========================================
+	static private void IncrementStaleCount() {
+		try {
+			s_bundleLock.lock();
+
+			++s_staleCount;
+		}
+		finally {
+			s_bundleLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public int GetLoadCount() {
+		try {
+			s_bundleLock.lock();
+
+			return s_loadCount;
+		}
+		finally {
+			s_bundleLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public int GetStaleCount() {
+		try {
+			s_bundleLock.lock();
+
+			return s_staleCount;
+		}
+		finally {
+			s_bundleLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,314 @@
+/*
+	Copyright 2016 Wes Kaylor
+
+	This file is part of CodeGenerator.
+
+	CodeGenerator is free software: you can redistribute it and/or modify
+	it under the terms of the GNU Lesser General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	CodeGenerator is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU Lesser General Public License for more details.
+
+	You should have received a copy of the GNU Lesser General Public License
+	along with CodeGenerator.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package codegenerator.generator.utils;
+
+
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import codegenerator.generator.tags.*;
+import coreutil.logging.*;
+
+
+
+/**
+	<p>A process-wide cache of parsed template trees that is shared by {@link FileTag} and {@link Include}.  Without it, every
+	tag that points at a template parses its own copy and any tag whose template name has to be evaluated re-parses the
+	file every time it is evaluated.</p>
+
+	<p>Templates are keyed by their canonical path.  A cached tree is only reused if the file's last-modified time and size
+	haven't changed since it was parsed, otherwise the file is parsed again.  The cache is bounded and evicts the least
+	recently used template when it is full.  All access is locked so that it is safe to use from more than one thread, but
+	the lock is not held while a template is being parsed.</p>
+
+	<p>If a compiled {@link TemplateBundle} has been loaded, then a miss is filled from the bundle when it has a current tree for
+	the template and the template file is only parsed when it doesn't.</p>
+
+	<p>{@link #PreloadReferencedTemplates(File, Tag_Base, int)} fills the cache up front by parsing every template that can be
+	reached from the root template through constant template names in parallel, so that evaluation doesn't have to stop
+	and parse them one at a time.</p>
+
+	<p>The cache doesn't define the variables that a template's "set" tags set, and neither does the preload.  The {@link FileTag}
+	or {@link Include} that loads the template does that each time it loads it, hit or miss, so a cached or preloaded tree defines
+	them in the same order that parsing a fresh copy for every tag did.  See {@link Variable}.</p>
+*/
+public class TemplateCache {
+
+	static public final int		DEFAULT_MAX_TEMPLATE_COUNT	= 256;
+
+
+	//===========================================
+	/**
+	 * The parsed tree for one template file and the file attributes it was parsed from.
+	 */
+	static private class CachedTemplate {
+		private final Tag_Base	m_template;
+		private final long		m_lastModified;
+		private final long		m_fileSize;
+
+		public CachedTemplate(Tag_Base p_template, long p_lastModified, long p_fileSize) {
+			m_template		= p_template;
+			m_lastModified	= p_lastModified;
+			m_fileSize		= p_fileSize;
+		}
+
+		public boolean IsCurrent(BasicFileAttributes p_fileAttributes) {
+			return (m_lastModified == p_fileAttributes.lastModifiedTime().toMillis()) && (m_fileSize == p_fileAttributes.size());
+		}
+	}
+
+
+	// Static members
+	static private final ReentrantLock					s_cacheLock			= new ReentrantLock();
+	static private		 int							s_maxTemplateCount	= DEFAULT_MAX_TEMPLATE_COUNT;
+	static private final LinkedHashMap<String, CachedTemplate>	s_templates	= new LinkedHashMap<>(16, 0.75f, true) {	// Access order gives us the LRU ordering for free.
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedTemplate> p_eldest) {
+			if (size() <= s_maxTemplateCount)
+				return false;
+
+			++s_evictionCount;
+			return true;
+		}
+	};
+
+	static private		 int							s_hitCount			= 0;	// A preloaded template counts as a miss when it is preloaded and as a hit each time it is used.
+	static private		 int							s_missCount			= 0;
+	static private		 int							s_evictionCount		= 0;
+
+
+	//===========================================
+	/**
+	 * Returns the parsed tree for the template file, parsing it only if it isn't already in the cache or if the file has changed since it was cached.
+	 *
+	 * @param p_templateFile
+	 * @return NULL if the file couldn't be parsed.  The parser will have already logged the details.
+	 */
+	static public Tag_Base GetTemplate(File p_templateFile) {
+		try {
+			String				t_templateKey		= p_templateFile.getCanonicalPath();
+			BasicFileAttributes	t_fileAttributes	= Files.readAttributes(Paths.get(t_templateKey), BasicFileAttributes.class);
+
+			try {
+				s_cacheLock.lock();
+
+				CachedTemplate t_cachedTemplate = s_templates.get(t_templateKey);
+				if ((t_cachedTemplate != null) && t_cachedTemplate.IsCurrent(t_fileAttributes)) {
+					++s_hitCount;
+					return t_cachedTemplate.m_template;
+				}
+
+				++s_missCount;
+			}
+			finally {
+				s_cacheLock.unlock();
+			}
+
+
+			// We parse outside of the lock so that other threads aren't held up by it.  If two threads miss on the same template at the same time, they will both parse it and the last one in wins, which is harmless.
+			// If a compiled bundle is loaded and it has a current tree for this template, then we don't need to parse it at all.
+			Tag_Base t_template = TemplateBundle.GetTemplate(t_templateKey);
+			if (t_template == null) {
+				TemplateParser t_parser = new TemplateParser();
+				t_template = t_parser.ParseTemplate(new File(t_templateKey));
+				if (t_template == null)
+					return null;
+			}
+
+			try {
+				s_cacheLock.lock();
+
+				s_templates.put(t_templateKey, new CachedTemplate(t_template, t_fileAttributes.lastModifiedTime().toMillis(), t_fileAttributes.size()));
+			}
+			finally {
+				s_cacheLock.unlock();
+			}
+
+			return t_template;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("TemplateCache.GetTemplate() failed with error for template file [" + p_templateFile.getPath() + "]: ", t_error);
+			return null;
+		}
+	}
+
+
+	//===========================================
+	/**
+	 * Parses one template and then forks a task for each of the templates it references that hasn't already been seen.
+	 */
+	static private class PreloadTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final File						m_templateFile;
+		private		  Tag_Base					m_template;		// The root template has already been parsed by the time we get it.
+		private final Set<String>				m_seenTemplates;
+		private final AtomicInteger				m_preloadCount;
+
+		public PreloadTask(File p_templateFile, Tag_Base p_template, Set<String> p_seenTemplates, AtomicInteger p_preloadCount) {
+			m_templateFile		= p_templateFile;
+			m_template			= p_template;
+			m_seenTemplates		= p_seenTemplates;
+			m_preloadCount		= p_preloadCount;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				if (m_template == null) {
+					m_template = GetTemplate(m_templateFile);
+					if (m_template == null) {
+						// The parser has already logged why, but with other templates being parsed at the same time, its messages may be mixed in with theirs.  The file will be parsed again when a tag that uses it is evaluated, which will report the errors in order and in the context of that tag.
+						Logger.LogInfo("TemplateCache.PreloadTask.compute() could not parse the template [" + m_templateFile.getPath() + "].  It will be parsed again when it is used so that the errors are reported there.");
+						return;
+					}
+
+					m_preloadCount.incrementAndGet();
+				}
+
+				LinkedList<String> t_templateNames = new LinkedList<>();
+				m_template.CollectTemplateReferences(t_templateNames);
+
+				ArrayList<PreloadTask> t_subtasks = new ArrayList<>();
+				for (String t_nextName: t_templateNames) {
+					File t_nextFile = new File(t_nextName);
+					if (!t_nextFile.exists())
+						continue;	// FileTag and Include will report the missing file when they are evaluated, if they are evaluated at all.
+
+					if (m_seenTemplates.add(t_nextFile.getCanonicalPath()))
+						t_subtasks.add(new PreloadTask(t_nextFile, null, m_seenTemplates, m_preloadCount));
+				}
+
+				invokeAll(t_subtasks);
+			}
+			catch (Throwable t_error) {
+				Logger.LogException("TemplateCache.PreloadTask.compute() failed with error for template file [" + m_templateFile.getPath() + "]: ", t_error);
+			}
+		}
+	}
+
+
+	//===========================================
+	/**
+	 * Parses every template that can be reached from the root template through <code>file</code> and <code>include</code>
+	 * tags with constant template names and puts them in the cache.  The templates are parsed in parallel on a ForkJoinPool.
+	 * A template that fails to parse here isn't treated as an error yet since the tag that uses it might never be
+	 * evaluated.  It is left out of the cache so that it is parsed again, and its errors reported, when it is used.  Nothing is
+	 * defined here.  The variables are defined when the tags load their templates during the evaluation.
+	 *
+	 * @param p_templateFile	The root template's file.
+	 * @param p_template		The root template's parsed tree.
+	 * @param p_parallelism		The number of threads to parse with.
+	 * @return The number of templates that were parsed or loaded from a bundle, not counting the root.
+	 */
+	static public int PreloadReferencedTemplates(File p_templateFile, Tag_Base p_template, int p_parallelism) {
+		ForkJoinPool t_pool = new ForkJoinPool(Math.max(1, p_parallelism));
+		try {
+			Set<String>		t_seenTemplates	= ConcurrentHashMap.newKeySet();
+			AtomicInteger	t_preloadCount	= new AtomicInteger();
+
+			t_seenTemplates.add(p_templateFile.getCanonicalPath());
+
+			t_pool.invoke(new PreloadTask(p_templateFile, p_template, t_seenTemplates, t_preloadCount));
+
+			return t_preloadCount.get();
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("TemplateCache.PreloadReferencedTemplates() failed with error for template file [" + p_templateFile.getPath() + "]: ", t_error);
+			return 0;
+		}
+		finally {
+			t_pool.shutdown();
+		}
+	}
+
+
+	//===========================================
+	static public void SetMaxTemplateCount(int p_maxTemplateCount) {
+		try {
+			s_cacheLock.lock();
+
+			s_maxTemplateCount = Math.max(1, p_maxTemplateCount);
+		}
+		finally {
+			s_cacheLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public void Clear() {
+		try {
+			s_cacheLock.lock();
+
+			s_templates.clear();
+		}
+		finally {
+			s_cacheLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public int GetHitCount() {
+		try {
+			s_cacheLock.lock();
+
+			return s_hitCount;
+		}
+		finally {
+			s_cacheLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public int GetMissCount() {
+		try {
+			s_cacheLock.lock();
+
+			return s_missCount;
+		}
+		finally {
+			s_cacheLock.unlock();
+		}
+	}
+
+
+	//===========================================
+	static public int GetEvictionCount() {
+		try {
+			s_cacheLock.lock();
+
+			return s_evictionCount;
+		}
+		finally {
+			s_cacheLock.unlock();
+		}
+	}
+}
@@ -23,6 +23,10 @@ package codegenerator.generator.utils;
 
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
 import java.util.*;
 
 import coreutil.logging.*;
@@ -32,6 +36,16 @@ import coreutil.logging.*;
 /**
  * The tokenizer used to convert a template file's contents into tokens that are used by the various
  * parsers.
+ *
+ * <p>The whole template is loaded (memory-mapped if it is large) and decoded into a single char buffer up front and each token is
+ * just a (type, start, length) span over that buffer.  A token only creates a String for its value when a consumer
+ * actually asks for it with {@link Token#GetTokenValue()}.  Consumers that only need to collect the text, like
+ * {@link codegenerator.generator.tags.Text}, can use {@link Token#AppendTo(StringBuilder)} to copy the span straight
+ * out of the buffer.</p>
+ *
+ * <p>Outside of tags, the parsers don't care about words, white space, equals signs or quotes, so they use
+ * {@link #GetNextTextToken()} to get everything up to the next delimiter as one {@link Token#TOKEN_TYPE_TEXT} span.  The
+ * fine-grained tokens from {@link #GetNextToken()} are only needed inside tag bodies and attribute values.</p>
  */
 public class TemplateTokenizer {
 
@@ -43,13 +57,46 @@ public class TemplateTokenizer {
 		static public final int		TOKEN_TYPE_WHITE_SPACE			= 3;
 		static public final int		TOKEN_TYPE_WORD					= 4;
 		static public final int		TOKEN_TYPE_DOUBLE_QUOTE			= 5;
+		static public final int		TOKEN_TYPE_TEXT					= 6;	// A raw run of template text between delimiters that is returned by GetNextTextToken().
 
 		public	int		m_tokenType;
-		public	String	m_tokenValue;
+		private	String	m_tokenValue;		// This is only filled in the first time GetTokenValue() is called for span tokens.
+		private	char[]	m_buffer		= null;
+		private	int		m_start			= 0;
+		private	int		m_length		= 0;
 
 		public Token(int p_type, String p_value) {
-			m_tokenType = p_type;
-			m_tokenValue = p_value;
+			m_tokenType		= p_type;
+			m_tokenValue	= p_value;
+			m_length		= p_value.length();
+		}
+
+		public Token(int p_type, char[] p_buffer, int p_start, int p_length) {
+			m_tokenType		= p_type;
+			m_buffer		= p_buffer;
+			m_start			= p_start;
+			m_length		= p_length;
+		}
+
+		public String GetTokenValue() {
+			if (m_tokenValue == null)
+				m_tokenValue = new String(m_buffer, m_start, m_length);
+
+			return m_tokenValue;
+		}
+
+		public int GetLength() {
+			return m_length;
+		}
+
+		/**
+		 * Appends the token's text to the builder without creating an intermediate String for it.
+		 */
+		public void AppendTo(StringBuilder p_builder) {
+			if (m_tokenValue != null)
+				p_builder.append(m_tokenValue);
+			else
+				p_builder.append(m_buffer, m_start, m_length);
 		}
 
 		public String GetTokenTypeName() {
@@ -66,6 +113,8 @@ public class TemplateTokenizer {
 					return "Word         ";
 				case TOKEN_TYPE_DOUBLE_QUOTE:
 					return "Double quote ";
+				case TOKEN_TYPE_TEXT:
+					return "Text         ";
 			};
 
 			return "Not defined";
@@ -75,10 +124,12 @@ public class TemplateTokenizer {
 	static private class SpecialSymbol {
 		private String	m_symbol;
 		private int		m_tokenType;
+		private Token	m_token;		// Symbol tokens always have the same value, so we can hand out the same immutable token every time instead of creating a new one.
 
 		public SpecialSymbol(String p_symbol, int p_tokenType) {
 			m_symbol	= p_symbol;
 			m_tokenType	= p_tokenType;
+			m_token		= new Token(p_tokenType, p_symbol);
 		}
 
 		public int GetSymbolLength() {
@@ -92,14 +143,35 @@ public class TemplateTokenizer {
 		public int GetTokenType() {
 			return m_tokenType;
 		}
+
+		public Token GetToken() {
+			return m_token;
+		}
 	}
 
+
+	static private final int	MIN_MAPPED_FILE_SIZE	= 256 * 1024;
+	static private final int	SYMBOL_TABLE_SIZE		= 128;		// Symbols are looked up by their first character.  This covers ASCII, which is what delimiters will be in practice, and anything else falls back to m_otherSymbols.
+
+
+	// Static members
+	static private boolean	s_logTokens		= false;	// Logging every token is only useful when debugging the parsers and it forces a String to be created for every token, so it has to be turned on explicitly.
+
+
+	//===========================================
+	static public void SetTokenLogging(boolean p_logTokens) {
+		s_logTokens = p_logTokens;
+	}
+
+
 	protected	File 						m_sourceTempateFile;
-	protected	BufferedReader				m_fileReader;
 	protected	LinkedList<SpecialSymbol>	m_symbolList		= new LinkedList<TemplateTokenizer.SpecialSymbol>();
+	protected	SpecialSymbol[][]			m_symbolTable		= new SpecialSymbol[SYMBOL_TABLE_SIZE][];	// The symbols from m_symbolList indexed by their first character, in the same order as the list so that the first symbol added still wins.
+	protected	SpecialSymbol[]				m_otherSymbols		= null;										// Any symbols whose first character is outside of m_symbolTable.
 
-	protected	String						m_currentLine		= null;
-	protected	int							m_currentLineIndex	= -1;
+	protected	char[]						m_buffer			= null;		// The entire contents of the template file with all line endings normalized to '\n'.
+	protected	int							m_bufferEnd			= 0;
+	protected	int							m_position			= 0;		// The index of the next character in m_buffer that hasn't been consumed by a token yet.
 	protected	int							m_lineCount			= 0;
 
 	protected	Token						m_pushBackToken		= null;	// I'm trying this for the time being to kludge ConfigValue parsing.  Normally, the TemplateParser eats the first string after the opening delimiter and uses that as the tag name to get the next tag from the TagFactory, but that screws us up in the ConfigValue case because then there's nothing for it to parse but its closing delimiter.  Therefore, we'll use the PushBackToken() functionality to push the first string "back on the TemplateTokenizer" so that the ConfigValue will get it when it calls GetNextToke(), etc.
@@ -114,10 +186,12 @@ public class TemplateTokenizer {
 	public boolean Init(File t_sourceTempateFile) {
 		try {
 			m_sourceTempateFile = t_sourceTempateFile;
-			m_fileReader 		= new BufferedReader(new FileReader(m_sourceTempateFile));
 
-			m_symbolList.add(new SpecialSymbol("=", Token.TOKEN_TYPE_EQUALS));
-			m_symbolList.add(new SpecialSymbol("\"", Token.TOKEN_TYPE_DOUBLE_QUOTE));
+			if (!LoadBuffer())
+				return false;
+
+			AddSymbol(new SpecialSymbol("=", Token.TOKEN_TYPE_EQUALS));
+			AddSymbol(new SpecialSymbol("\"", Token.TOKEN_TYPE_DOUBLE_QUOTE));
 
 			if (!ReadHeader())	// Fails if there is no header or a malformed header in the template file.
 				return false;
@@ -131,11 +205,72 @@ public class TemplateTokenizer {
 	}
 
 
+	//*********************************
+	/**
+	 * Maps the template file and decodes it into m_buffer in one pass.  The line endings are normalized to '\n' as the
+	 * characters are copied so that the tokens see exactly what the old line-by-line reader gave them.
+	 */
+	protected boolean LoadBuffer() {
+		try (FileChannel t_channel = FileChannel.open(m_sourceTempateFile.toPath(), StandardOpenOption.READ)) {
+			// Mapping a file has a fixed setup cost that is only worth paying for large templates, so the typical small template is just read straight into a heap buffer.
+			long		t_fileSize	= t_channel.size();
+			ByteBuffer	t_fileBytes;
+			if (t_fileSize >= MIN_MAPPED_FILE_SIZE)
+				t_fileBytes = t_channel.map(FileChannel.MapMode.READ_ONLY, 0, t_fileSize);
+			else {
+				t_fileBytes = ByteBuffer.allocate((int)t_fileSize);
+				while (t_fileBytes.hasRemaining() && (t_channel.read(t_fileBytes) >= 0));
+				t_fileBytes.flip();
+			}
+
+			CharBuffer t_decodedFile = Charset.defaultCharset().decode(t_fileBytes);	// The template files have always been read with the platform default charset, so we'll stick with that.
+
+			int		t_length	= t_decodedFile.remaining();
+			char[]	t_buffer	= new char[t_length + 1];		// Plus one for the trailing newline we may need to add below.
+			int		t_end		= 0;
+			char	t_nextChar;
+
+			for (int i = 0; i < t_length; i++) {
+				t_nextChar = t_decodedFile.get(i);
+				if (t_nextChar == '\r') {
+					if ((i + 1 < t_length) && (t_decodedFile.get(i + 1) == '\n'))
+						continue;	// Drop the CR of a CRLF pair and let the LF be copied on the next pass.
+
+					t_nextChar = '\n';
+				}
+
+				t_buffer[t_end++] = t_nextChar;
+			}
+
+			// The last line is always terminated with a newline, whether or not the file had one, because the end of every line is treated as white space.
+			if ((t_end > 0) && (t_buffer[t_end - 1] != '\n'))
+				t_buffer[t_end++] = '\n';
+
+			m_buffer	= t_buffer;
+			m_bufferEnd	= t_end;
+			m_position	= 0;
+			m_lineCount	= 0;
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("TemplateTokenizer.LoadBuffer() failed to load the template file [" + m_sourceTempateFile.getAbsolutePath() + "]: ", t_error);
+			return false;
+		}
+
+		return true;
+	}
+
+
 	public int GetLineCount() {
 		return m_lineCount;
 	}
 
 
+	//*********************************
+	public File GetSourceTemplateFile() {
+		return m_sourceTempateFile;
+	}
+
+
 	//*********************************
 	public void PushBackToken(Token p_token) {
 		if (m_pushBackToken != null) {
@@ -155,92 +290,126 @@ public class TemplateTokenizer {
 			return t_nextToken;
 		}
 
-		char			t_currentChar		= 0;
-		int				t_currentTokenType	= Token.TOKEN_TYPE_NOT_TOKEN;
-		StringBuilder	t_currentText		= new StringBuilder();
-		Token			t_symbolToken;
-		Token			t_resultToken		= null;
+		Token	t_resultToken	= null;
+		int		t_tokenStart	= m_position;
 
 		try {
-			while (m_currentLine != null) {
-				while (true) {
-//					if (m_currentLine.contains("<%first%>?"))
-//							Logger.LogVerbose("Pause here.");
-
-					if (m_currentLineIndex < m_currentLine.length())
-						t_currentChar = m_currentLine.charAt(m_currentLineIndex);
-					else if (m_currentLineIndex == m_currentLine.length())
-						t_currentChar = '\n';	// We have to treat the end-of-line as a white-space character in this new parser so we can't leave it out of the stream;
-					else if (!GetNextLine())
-						return t_resultToken = null;
-					else
-						continue;
-
-					switch (t_currentTokenType) {
-						case Token.TOKEN_TYPE_NOT_TOKEN:
-							if (Character.isWhitespace(t_currentChar)) {
-								t_currentText.append(t_currentChar);
-								t_currentTokenType = Token.TOKEN_TYPE_WHITE_SPACE;
-							}
-							else if ((t_symbolToken = IsSymbol(t_currentChar, true)) != null) {
-								return t_resultToken = t_symbolToken;
-							}
-							else {
-								t_currentText.append(t_currentChar);
-								t_currentTokenType = Token.TOKEN_TYPE_WORD;
-							}
-
-							break;
-						case Token.TOKEN_TYPE_WHITE_SPACE:
-							if (Character.isWhitespace(t_currentChar))
-								t_currentText.append(t_currentChar);
-							else
-								return t_resultToken = new Token(Token.TOKEN_TYPE_WHITE_SPACE, t_currentText.toString());	// If we started as white space, then anything that's not white space, symbol or not, marks the end of the whitespace.
-
-							break;
-						case Token.TOKEN_TYPE_WORD:
-							if (Character.isWhitespace(t_currentChar) || ((t_symbolToken = IsSymbol(t_currentChar, false)) != null))
-								return t_resultToken = new Token(Token.TOKEN_TYPE_WORD, t_currentText.toString());
-
-							t_currentText.append(t_currentChar);
-							break;
-					}
-
-					++m_currentLineIndex;	// Step to the next character in the line.
+			if (m_position >= m_bufferEnd)
+				return null;
+
+			char t_currentChar = m_buffer[m_position];
+			if (Character.isWhitespace(t_currentChar)) {
+				while (Character.isWhitespace(m_buffer[m_position])) {
+					StepToNextChar();
+					if (m_position >= m_bufferEnd)
+						return null;	// White space that runs to the end of the file is dropped, the same as it always has been.
 				}
 
-
+				return t_resultToken = new Token(Token.TOKEN_TYPE_WHITE_SPACE, m_buffer, t_tokenStart, m_position - t_tokenStart);	// If we started as white space, then anything that's not white space, symbol or not, marks the end of the whitespace.
 			}
+
+			if ((t_resultToken = IsSymbol(t_currentChar, true)) != null)
+				return t_resultToken;
+
+			// Otherwise, this is a word and it runs until we hit white space or a symbol.  Since the buffer always ends with a newline, we can't run off the end of it here.
+			do {
+				++m_position;
+				t_currentChar = m_buffer[m_position];
+			} while (!Character.isWhitespace(t_currentChar) && (IsSymbol(t_currentChar, false) == null));
+
+			return t_resultToken = new Token(Token.TOKEN_TYPE_WORD, m_buffer, t_tokenStart, m_position - t_tokenStart);
 		}
 		catch (Throwable t_error) {
-			Logger.LogException("TemplateTokenizer.GetNextToken() failed with error at line [" + m_currentLineIndex + "]: ", t_error);
+			Logger.LogException("TemplateTokenizer.GetNextToken() failed with error at line [" + m_lineCount + "]: ", t_error);
 			return null;
 		}
 		finally {
-			if (t_resultToken != null)
-				Logger.LogVerbose("Token [" + t_resultToken.GetTokenTypeName() + "]	value [" + t_resultToken.m_tokenValue + "]");
+			if (s_logTokens && (t_resultToken != null))
+				Logger.LogVerbose("Token [" + t_resultToken.GetTokenTypeName() + "]	value [" + t_resultToken.GetTokenValue() + "]");
 		}
+	}
 
-		return null;
+
+	//*********************************
+	/**
+	 * Returns everything from the current position up to the next opening or closing delimiter as a single
+	 * {@link Token#TOKEN_TYPE_TEXT} token.  If the current position is already at a delimiter, then the delimiter token is
+	 * returned instead.  Equals signs and double quotes are just part of the text here.
+	 *
+	 * @return NULL if the end of the file is reached without finding another delimiter.
+	 */
+	public Token GetNextTextToken() {
+		// If a token has been pushed back on the tokenizer, then it is the next one that must returned.
+		if (m_pushBackToken != null) {
+			Token t_nextToken = m_pushBackToken;
+			m_pushBackToken = null;
+			return t_nextToken;
+		}
+
+		Token	t_resultToken	= null;
+		int		t_textStart		= m_position;
+
+		try {
+			SpecialSymbol t_symbol;
+			while (m_position < m_bufferEnd) {
+				t_symbol = FindSymbol(m_buffer[m_position]);
+				if (t_symbol == null) {
+					StepToNextChar();
+					continue;
+				}
+
+				if ((t_symbol.GetTokenType() == Token.TOKEN_TYPE_OPENING_DELIMITER) ||
+					(t_symbol.GetTokenType() == Token.TOKEN_TYPE_CLOSING_DELIMITER))
+				{
+					// Hand back the text in front of the delimiter first.  The delimiter itself will be found again on the next call.
+					if (m_position > t_textStart)
+						return t_resultToken = new Token(Token.TOKEN_TYPE_TEXT, m_buffer, t_textStart, m_position - t_textStart);
+
+					m_position += t_symbol.GetSymbolLength();
+					return t_resultToken = t_symbol.GetToken();
+				}
+
+				m_position += t_symbol.GetSymbolLength();	// Equals and double quotes are single characters that are just part of the text.
+			}
+
+			return null;	// Text that runs to the end of the file without finding a delimiter is dropped, the same as GetNextToken() does with trailing white space.
+		}
+		catch (Throwable t_error) {
+			Logger.LogException("TemplateTokenizer.GetNextTextToken() failed with error at line [" + m_lineCount + "]: ", t_error);
+			return null;
+		}
+		finally {
+			if (s_logTokens && (t_resultToken != null))
+				Logger.LogVerbose("Token [" + t_resultToken.GetTokenTypeName() + "]	value [" + t_resultToken.GetTokenValue() + "]");
+		}
 	}
 
 
 	//*********************************
-	public String GetCurrentLine() {
-		return (m_currentLine == null) ? "" : m_currentLine;
+	/**
+	 * Consumes the current character.  The line count only moves to the next line when we step past a newline and there
+	 * is something after it, which is when the old line reader would have read the next line.
+	 */
+	protected void StepToNextChar() {
+		if ((m_buffer[m_position++] == '\n') && (m_position < m_bufferEnd))
+			++m_lineCount;
 	}
 
 
 	//*********************************
-	protected boolean GetNextLine() throws Exception {
-		m_currentLine = m_fileReader.readLine();
-		if (m_currentLine == null)	// This means that we've reached the EOF.
-			return false;
+	public String GetCurrentLine() {
+		if (m_position >= m_bufferEnd)
+			return "";
 
-		m_currentLineIndex = 0;	// We have a new line, so we need to be sure that the index is reset.
-		m_lineCount++;
+		int t_lineStart = m_position;
+		while ((t_lineStart > 0) && (m_buffer[t_lineStart - 1] != '\n'))
+			--t_lineStart;
 
-		return true;
+		int t_lineEnd = m_position;
+		while ((t_lineEnd < m_bufferEnd) && (m_buffer[t_lineEnd] != '\n'))
+			++t_lineEnd;
+
+		return new String(m_buffer, t_lineStart, t_lineEnd - t_lineStart);
 	}
 
 
@@ -255,44 +424,73 @@ public class TemplateTokenizer {
 
 
 	//*********************************
-	protected Token IsSymbol(char p_unknownChar, boolean p_moveCurrentIndexIfIsSymbol) {
-		int		t_peekIndex;
-		char	t_peekChar;
+	protected void AddSymbol(SpecialSymbol p_symbol) {
+		m_symbolList.add(p_symbol);
+
+		char t_firstChar = p_symbol.GetSymbol().charAt(0);
+		if (t_firstChar < SYMBOL_TABLE_SIZE)
+			m_symbolTable[t_firstChar] = AppendSymbol(m_symbolTable[t_firstChar], p_symbol);
+		else
+			m_otherSymbols = AppendSymbol(m_otherSymbols, p_symbol);
+	}
+
+
+	//*********************************
+	private SpecialSymbol[] AppendSymbol(SpecialSymbol[] p_symbols, SpecialSymbol p_newSymbol) {
+		if (p_symbols == null)
+			return new SpecialSymbol[] { p_newSymbol };
+
+		SpecialSymbol[] t_symbols = Arrays.copyOf(p_symbols, p_symbols.length + 1);
+		t_symbols[p_symbols.length] = p_newSymbol;
+		return t_symbols;
+	}
+
+
+	//*********************************
+	/**
+	 * Finds the symbol that starts at the current position, if any.  Only the symbols that start with p_unknownChar are checked.
+	 */
+	protected SpecialSymbol FindSymbol(char p_unknownChar) {
+		SpecialSymbol[] t_candidates = (p_unknownChar < SYMBOL_TABLE_SIZE) ? m_symbolTable[p_unknownChar] : m_otherSymbols;
+		if (t_candidates == null)
+			return null;
+
 		String	t_symbol;
+		int		t_symbolLength;
 
-NextSym:for (SpecialSymbol t_nextSymbol: m_symbolList) {
-			t_peekIndex		= m_currentLineIndex;
-			t_peekChar		= p_unknownChar;
+NextSym:for (SpecialSymbol t_nextSymbol: t_candidates) {
 			t_symbol		= t_nextSymbol.GetSymbol();
+			t_symbolLength	= t_symbol.length();
+
+			if (p_unknownChar != t_symbol.charAt(0))
+				continue;
 
-			// If this is a multi-char symbol, we have to be sure that its length isn't greater than the remaining characters in the current line, otherwise we'll get an exception in the loop below.
-			if ((t_peekIndex + t_symbol.length() - 1) > m_currentLine.length())
+			// If this is a multi-char symbol, we have to be sure that its length isn't greater than the remaining characters in the buffer.  Symbols can't contain a newline, so a match can never span two lines.
+			if ((m_position + t_symbolLength) > m_bufferEnd)
 				continue;
 
-			for (int i = 0; i < t_symbol.length(); i++) {
-				if (t_peekChar != t_symbol.charAt(i))
+			for (int i = 1; i < t_symbolLength; i++) {
+				if (m_buffer[m_position + i] != t_symbol.charAt(i))
 					continue NextSym;
+			}
 
-				++t_peekIndex;
+			return t_nextSymbol;
+		}
 
-				// If
-				if (t_peekIndex == m_currentLine.length()) {
-					if (i < (t_symbol.length() - 1))	// If we get to the end of the line and the current symbol still has one or more characters in it, then this symbol is not a match and we need to move on to the next symbol.
-						continue NextSym;
-					else
-						break;	// Otherwise, we've matched the symbol and we're done.
-				}
+		return null;
+	}
 
-				t_peekChar = m_currentLine.charAt(t_peekIndex);
-			}
 
-			if (p_moveCurrentIndexIfIsSymbol)
-				m_currentLineIndex = t_peekIndex;
+	//*********************************
+	protected Token IsSymbol(char p_unknownChar, boolean p_moveCurrentIndexIfIsSymbol) {
+		SpecialSymbol t_symbol = FindSymbol(p_unknownChar);
+		if (t_symbol == null)
+			return null;
 
-			return new Token(t_nextSymbol.GetTokenType(), t_nextSymbol.GetSymbol());
-		}
+		if (p_moveCurrentIndexIfIsSymbol)
+			m_position += t_symbol.GetSymbolLength();
 
-		return null;
+		return t_symbol.GetToken();
 	}
 
 
@@ -313,7 +511,11 @@ NextSym:for (SpecialSymbol t_nextSymbol: m_symbolList) {
 	//*********************************
 	protected boolean ReadHeader() {
 		try {
-			String t_headerLine = m_fileReader.readLine();
+			int t_headerEnd = 0;
+			while ((t_headerEnd < m_bufferEnd) && (m_buffer[t_headerEnd] != '\n'))
+				++t_headerEnd;
+
+			String t_headerLine = new String(m_buffer, 0, t_headerEnd);
 			m_lineCount++;
 
 			String t_headerParts[] = t_headerLine.trim().split("[ \\t]+");
@@ -324,7 +526,7 @@ NextSym:for (SpecialSymbol t_nextSymbol: m_symbolList) {
 
 			String t_attribute[] = t_headerParts[1].split("=");
 			if (t_attribute[0].contains("openingDelimiter"))
-				m_symbolList.add(new SpecialSymbol(t_attribute[1].trim(), Token.TOKEN_TYPE_OPENING_DELIMITER));
+				AddSymbol(new SpecialSymbol(t_attribute[1].trim(), Token.TOKEN_TYPE_OPENING_DELIMITER));
 			else  {
 				Logger.LogError("ReadHeader() failed with error: the first attribute of the header was not openingDelimiter.");
 				return false;
@@ -332,14 +534,18 @@ NextSym:for (SpecialSymbol t_nextSymbol: m_symbolList) {
 
 			t_attribute = t_headerParts[2].split("=");
 			if (t_attribute[0].contains("closingDelimiter"))
-				m_symbolList.add(new SpecialSymbol(t_attribute[1].trim(), Token.TOKEN_TYPE_CLOSING_DELIMITER));
+				AddSymbol(new SpecialSymbol(t_attribute[1].trim(), Token.TOKEN_TYPE_CLOSING_DELIMITER));
 			else  {
 				Logger.LogError("ReadHeader() failed with error: the first attribute of the header was not closingDelimiter.");
 				return false;
 			}
 
-			if (!GetNextLine())	// If this returns FALSE, then we are at EOF and we need to just return what text we have.  m_currentLine is already set == null, so we will automatically be handled correctly (i.e. return null) the next time this function is called.
+			// If there is nothing after the header line, then we are at EOF and there's nothing to parse.
+			m_position = t_headerEnd + 1;
+			if (m_position >= m_bufferEnd)
 				return false;
+
+			m_lineCount++;
 		}
 		catch (Throwable t_error) {
 			Logger.LogException("TemplateTokenizer.ReadHeader() failed with error: ", t_error);
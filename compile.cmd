@@ -0,0 +1,14 @@
+@echo off
+
+
+# The command line parameters must be in the correct order.
+# Usage: ./compile <root template file path> <bundle file path>
+#
+# Compiles the root template and every template it references into one bundle file.  Pass the bundle to the generator with
+# its "--templateBundle <bundle file path>" option so that it doesn't have to parse the templates on every run.  Run this from
+# the same directory the generator will be run from since template names are resolved relative to it.
+
+# NOTE: The CodeGeneratorConfig.xml is defaulted in the command line below.  If you copy this script to some other location, you will have to add the path to that file or make it a parameter, too.
+
+
+java -cp lib/coreutil.jar;lib/code_generator.jar codegenerator.generator.TemplateCompiler_Main CodeGeneratorConfig.xml %1 %2
@@ -0,0 +1,12 @@
+@echo off
+
+
+# Usage: ./snapshot <variables file path> [<variables file path> ...]
+#
+# Writes a binary snapshot of each variables file next to it, with ".snapshot" added to its name.  The generator memory-maps the
+# snapshot instead of parsing the XML for as long as the snapshot is newer than the file, so run this again after the file changes.
+
+# NOTE: The CodeGeneratorConfig.xml is defaulted in the command line below.  If you copy this script to some other location, you will have to add the path to that file or make it a parameter, too.
+
+
+java -cp lib/coreutil.jar;lib/code_generator.jar codegenerator.generator.ConfigSnapshot_Main CodeGeneratorConfig.xml %*